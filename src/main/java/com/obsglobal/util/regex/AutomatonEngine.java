@@ -0,0 +1,184 @@
+package com.obsglobal.util.regex;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Engine matching in time linear in the input, for patterns without backreferences, lookaround, atomic groups,
+ * possessive quantifiers or <code>\G</code>.
+ * <p/>
+ * Each search runs a leftmost-first {@link LazyDfa} forward to find where the match a backtracking matcher would
+ * prefer ends, then a reversed one backward from there to find the earliest position it can start at, which is
+ * where that match starts. Neither ever revisits a position, so no expression can make a search blow up. Programs
+ * are compiled once per pattern; the automata are built afresh for each input and bounded to
+ * {@link #DEFAULT_MAX_STATES} states.
+ * <p/>
+ * When the {@link LiteralPrefilter} of {@link RegexUtil} is enabled, searches only start in the windows around the
+ * occurrences of the pattern's required literals.
+ * <p/>
+ * Whether {@link Pattern} tries to match between the halves of a surrogate pair depends on its internal
+ * representation of the expression, so inputs containing surrogate pairs are handed to it when a match could
+ * start there.
+ */
+public class AutomatonEngine implements RegexEngine {
+	public static final int DEFAULT_MAX_STATES = 4096;
+
+	private static final Programs UNSUPPORTED = new Programs(null, null);
+
+	private final int maxStates;
+	private final Map<Pattern, Programs> programs = Collections.synchronizedMap(new WeakHashMap<Pattern, Programs>());
+
+	public AutomatonEngine() {
+		this(DEFAULT_MAX_STATES);
+	}
+
+	public AutomatonEngine(int maxStates) {
+		this.maxStates = maxStates;
+	}
+
+	@Override
+	public String getName() {
+		return "DFA";
+	}
+
+	@Override
+	public boolean supports(Pattern pattern) {
+		return getPrograms(pattern) != UNSUPPORTED;
+	}
+
+	@Override
+	public MatchOffsets findAllMatchOffsets(Pattern pattern, CharSequence input) {
+		final MatchOffsets offsets = new MatchOffsets();
+		visitMatchOffsets(pattern, input, new Visitor() {
+			@Override
+			public boolean visitMatch(int start, int end) {
+				offsets.add(start, end);
+				return true;
+			}
+		});
+
+		return offsets;
+	}
+
+	@Override
+	public int visitMatchOffsets(Pattern pattern, CharSequence input, Visitor visitor) {
+		Programs compiled = getPrograms(pattern);
+		if (compiled == UNSUPPORTED)
+			throw new UnsupportedOperationException("Not a regular expression: "+ pattern.pattern());
+
+		if (compiled.forward.isPairSensitive() && containsSurrogatePair(input))
+			return RegexUtil.BACKTRACKING_ENGINE.visitMatchOffsets(pattern, input, visitor);
+
+		LazyDfa forward = new LazyDfa(compiled.forward, true, maxStates);
+		LazyDfa backward = new LazyDfa(compiled.backward, false, maxStates);
+		LiteralPrefilter prefilter = RegexUtil.getPrefilter(pattern);
+		int[] window = new int[3];
+		int length = input.length();
+		int from = 0, visited = 0;
+		while (from <= length) {
+			int lastStart = length;
+			if (prefilter != null) {
+				// matches contain a literal, so are never empty
+				if (from == length || !prefilter.findWindow(input, from, window))
+					break;
+				from = window[0];
+				lastStart = window[1];
+			}
+
+			int end = findEnd(forward, compiled.forward, input, from, lastStart);
+			if (end < 0) {
+				if (prefilter == null)
+					break;
+				from = lastStart + 1;
+				continue;
+			}
+
+			int start = findStart(backward, compiled.backward, input, from, end);
+			++visited;
+			if (!visitor.visitMatch(start, end))
+				break;
+			// like Matcher.find, move past an empty match so it is not found again
+			from = end == start ? end + 1 : end;
+		}
+
+		return visited;
+	}
+
+	/**
+	 * @return the end of the leftmost-first match starting between the given offsets, or -1 if there is none
+	 */
+	private static int findEnd(LazyDfa dfa, AutomatonProgram program, CharSequence input, int from, int lastStart) {
+		int mask = program.getAssertionMask();
+		int length = input.length();
+		int state = dfa.getInitialState(true);
+		int end = -1;
+		for (int index = from; ; index++) {
+			if (index == lastStart + 1) {
+				state = dfa.stopSearching(state);
+				if (dfa.isDead(state))
+					return end;
+			}
+
+			int assertions = mask == 0 ? 0 : AutomatonProgram.evaluate(mask, input, index);
+			int result = dfa.step(state, assertions, index < length ? input.charAt(index) : LazyDfa.END_OF_INPUT);
+			if ((result & 1) != 0)
+				end = index;
+
+			state = result >>> 1;
+			if (index == length || dfa.isDead(state))
+				return end;
+		}
+	}
+
+	/**
+	 * @return the earliest offset, not before the given one, from which the pattern matches up to the given end
+	 */
+	private static int findStart(LazyDfa dfa, AutomatonProgram program, CharSequence input, int from, int end) {
+		int mask = program.getAssertionMask();
+		int state = dfa.getInitialState(false);
+		int start = end;
+		for (int index = end; ; index--) {
+			int assertions = mask == 0 ? 0 : AutomatonProgram.evaluate(mask, input, index);
+			int result = dfa.step(state, assertions, index > from ? input.charAt(index - 1) : LazyDfa.END_OF_INPUT);
+			if ((result & 1) != 0)
+				start = index;
+
+			state = result >>> 1;
+			if (index == from || dfa.isDead(state))
+				return start;
+		}
+	}
+
+	private static boolean containsSurrogatePair(CharSequence input) {
+		for (int index = 1; index < input.length(); index++) {
+			if (Character.isLowSurrogate(input.charAt(index)) && Character.isHighSurrogate(input.charAt(index - 1)))
+				return true;
+		}
+
+		return false;
+	}
+
+	private Programs getPrograms(Pattern pattern) {
+		Programs compiled = programs.get(pattern);
+		if (compiled == null) {
+			RegexNode root = RegexParser.parse(pattern);
+			AutomatonProgram forward = AutomatonProgram.compile(root, false);
+			AutomatonProgram backward = forward == null ? null : AutomatonProgram.compile(root, true);
+			compiled = backward == null ? UNSUPPORTED : new Programs(forward, backward);
+			programs.put(pattern, compiled);
+		}
+
+		return compiled;
+	}
+
+	private static final class Programs {
+		final AutomatonProgram forward, backward;
+
+		Programs(AutomatonProgram forward, AutomatonProgram backward) {
+			this.forward = forward;
+			this.backward = backward;
+		}
+	}
+}
@@ -0,0 +1,571 @@
+package com.obsglobal.util.regex;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Thompson NFA compiled from a {@link RegexNode} tree, over UTF-16 code units.
+ * <p/>
+ * Character sets are split into code unit sequences the way {@link Pattern} decodes its input: supplementary code
+ * points become a high and a low surrogate, a lone high surrogate only matches when no low surrogate follows, and
+ * a lone low surrogate always matches on its own. Alternatives are ordered by preference, so a leftmost-first
+ * simulation finds the match a backtracking {@link Pattern} would. Assertions are evaluated on the input by
+ * {@link #check(int, CharSequence, int)} with the same semantics as {@link Pattern}'s default bounds.
+ */
+final class AutomatonProgram {
+	static final int CHARACTER = 0, SPLIT = 1, JUMP = 2, ASSERT = 3, MATCH = 4;
+
+	static final int BEGIN_INPUT = 0, BEGIN_LINE = 1, BEGIN_UNIX_LINE = 2, END_INPUT = 3,
+			END_INPUT_OR_TERMINATOR = 4, END_INPUT_OR_UNIX_TERMINATOR = 5, END_LINE = 6, END_UNIX_LINE = 7,
+			WORD_BOUNDARY = 8, UNICODE_WORD_BOUNDARY = 9, NOT_WORD_BOUNDARY = 10, NOT_UNICODE_WORD_BOUNDARY = 11,
+			NOT_LOW_SURROGATE = 12;
+
+	/** the most instructions a program may have, guarding against huge counted repetitions */
+	static final int MAX_INSTRUCTIONS = 20000;
+
+	private static final Map<Integer, CodePointSet> WORD_CHARACTERS = new ConcurrentHashMap<Integer, CodePointSet>();
+	private static final CodePointSet BMP = CodePointSet.ranges(0, 0xD7FF, 0xDC00, 0xFFFF);
+	private static final CodePointSet HIGH_SURROGATES = CodePointSet.range(0xD800, 0xDBFF);
+
+	private final boolean reverse;
+	private int size = 0;
+	private int[] opcodes = new int[64], next = new int[64], alternates = new int[64];
+	private char[][] ranges = new char[64][];
+	private int start, assertionMask;
+	private boolean pairSensitive;
+
+	private AutomatonProgram(boolean reverse) {
+		this.reverse = reverse;
+	}
+
+	/**
+	 * Compiles the given tree, reversed to match backwards from a match end if asked.
+	 *
+	 * @return <code>null</code> if the tree uses constructs a finite automaton cannot match as {@link Pattern} does
+	 */
+	static AutomatonProgram compile(RegexNode root, boolean reverse) {
+		if (!isRegular(root))
+			return null;
+
+		AutomatonProgram program = new AutomatonProgram(reverse);
+		try {
+			int match = program.add(MATCH, -1, -1, null);
+			program.start = program.emit(root, match);
+		}
+		catch (ProgramTooLargeException e) {
+			return null;
+		}
+
+		if (!reverse) {
+			int inPair = evaluate(program.assertionMask, "\uD800\uDC00", 1);
+			program.pairSensitive = program.reaches(inPair, true) || (program.reaches(inPair, false) && !program.reaches(0, false));
+		}
+
+		return program;
+	}
+
+	/**
+	 * @return whether the tree only uses constructs that are matched without backtracking-specific semantics
+	 */
+	static boolean isRegular(RegexNode node) {
+		switch (node.getType()) {
+			case BACKREFERENCE:
+			case LOOKAROUND:
+			case ATOMIC:
+			case OPAQUE:
+				return false;
+			case ASSERTION:
+				return node.getAssertion() != RegexNode.Assertion.PREVIOUS_MATCH_END;
+			case REPEAT:
+				// empty iterations are where backtracking engines differ most, leave them to Pattern
+				if (node.getQuantifier() == RegexNode.Quantifier.POSSESSIVE || (node.getMax() > 1 && isNullable(node.getChild())))
+					return false;
+				// Pattern does not backtrack into \R from outside the repeated group, an automaton would
+				if (containsLineBreak(node.getChild()))
+					return false;
+				break;
+			default:
+				break;
+		}
+
+		for (RegexNode child : node.getChildren()) {
+			if (!isRegular(child))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return whether the node contains a <code>\R</code>, parsed as <code>\r\n</code> or a single line break
+	 */
+	private static boolean containsLineBreak(RegexNode node) {
+		if (node.getType() == RegexNode.Type.ALTERNATION && node.getChildren().size() == 2) {
+			RegexNode pair = node.getChild();
+			if (pair.getType() == RegexNode.Type.CONCATENATION && pair.getChildren().size() == 2
+					&& pair.getStart() == node.getStart() && pair.getEnd() == node.getEnd()
+					&& CodePointSet.of('\r').equals(pair.getChildren().get(0).getCharacters()))
+				return true;
+		}
+
+		for (RegexNode child : node.getChildren()) {
+			if (containsLineBreak(child))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return whether the node can match the empty string
+	 */
+	static boolean isNullable(RegexNode node) {
+		switch (node.getType()) {
+			case EMPTY:
+			case ASSERTION:
+			case LOOKAROUND:
+				return true;
+			case CHARACTER:
+				return false;
+			case BACKREFERENCE:
+			case OPAQUE:
+				return true;
+			case CONCATENATION:
+				for (RegexNode child : node.getChildren()) {
+					if (!isNullable(child))
+						return false;
+				}
+				return true;
+			case ALTERNATION:
+				for (RegexNode child : node.getChildren()) {
+					if (isNullable(child))
+						return true;
+				}
+				return false;
+			case REPEAT:
+				return node.getMin() == 0 || isNullable(node.getChild());
+			default:
+				return isNullable(node.getChild());
+		}
+	}
+
+	int getStart() {
+		return start;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int getOpcode(int pc) {
+		return opcodes[pc];
+	}
+
+	int getNext(int pc) {
+		return next[pc];
+	}
+
+	int getAlternate(int pc) {
+		return alternates[pc];
+	}
+
+	/**
+	 * @return the assertion kind of an {@link #ASSERT} instruction
+	 */
+	int getAssertion(int pc) {
+		return alternates[pc];
+	}
+
+	/**
+	 * @return a bit per assertion kind used by this program
+	 */
+	int getAssertionMask() {
+		return assertionMask;
+	}
+
+	boolean isReverse() {
+		return reverse;
+	}
+
+	/**
+	 * Tells whether a match may start between the halves of a surrogate pair. {@link Pattern} skips those positions
+	 * when searching for some expressions and not for others, depending on how it represents them internally.
+	 */
+	boolean isPairSensitive() {
+		return pairSensitive;
+	}
+
+	/**
+	 * @return whether the match instruction, or an instruction accepting a low surrogate if asked, can be reached
+	 * from the start without reading input
+	 */
+	private boolean reaches(int assertions, boolean lowSurrogate) {
+		boolean[] visited = new boolean[size];
+		int[] pending = new int[size * 2 + 1];
+		int top = 0;
+		pending[top++] = start;
+		while (top > 0) {
+			int pc = pending[--top];
+			if (visited[pc])
+				continue;
+			visited[pc] = true;
+
+			switch (opcodes[pc]) {
+				case CHARACTER:
+					if (lowSurrogate && acceptsAny(pc, 0xDC00, 0xDFFF))
+						return true;
+					break;
+				case SPLIT:
+					pending[top++] = alternates[pc];
+					pending[top++] = next[pc];
+					break;
+				case JUMP:
+					pending[top++] = next[pc];
+					break;
+				case ASSERT:
+					if ((assertions & (1 << alternates[pc])) != 0)
+						pending[top++] = next[pc];
+					break;
+				case MATCH:
+					if (!lowSurrogate)
+						return true;
+					break;
+				default:
+					break;
+			}
+		}
+
+		return false;
+	}
+
+	private boolean acceptsAny(int pc, int first, int last) {
+		char[] unitRanges = ranges[pc];
+		for (int index = 0; index < unitRanges.length; index += 2) {
+			if (unitRanges[index] <= last && unitRanges[index + 1] >= first)
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return whether the {@link #CHARACTER} instruction accepts the given code unit
+	 */
+	boolean accepts(int pc, int c) {
+		char[] unitRanges = ranges[pc];
+		int low = 0, high = unitRanges.length / 2 - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (c < unitRanges[middle * 2])
+				high = middle - 1;
+			else if (c > unitRanges[middle * 2 + 1])
+				low = middle + 1;
+			else
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return the assertions of the given mask that hold at the given position of the input
+	 */
+	static int evaluate(int mask, CharSequence input, int index) {
+		int holding = 0;
+		for (int remaining = mask; remaining != 0; remaining &= remaining - 1) {
+			int kind = Integer.numberOfTrailingZeros(remaining);
+			if (check(kind, input, index))
+				holding |= 1 << kind;
+		}
+
+		return holding;
+	}
+
+	/**
+	 * Checks an assertion the way {@link Pattern}'s nodes do, for a matcher over the whole input.
+	 */
+	static boolean check(int kind, CharSequence input, int index) {
+		int length = input.length();
+		switch (kind) {
+			case BEGIN_INPUT:
+				return index == 0;
+			case END_INPUT:
+				return index == length;
+			case BEGIN_LINE:
+				if (index == length)
+					return false;	// like Perl, not after a trailing line terminator
+				if (index > 0) {
+					char c = input.charAt(index - 1);
+					if (c != '\n' && c != '\r' && (c | 1) != '\u2029' && c != '\u0085')
+						return false;
+					if (c == '\r' && input.charAt(index) == '\n')
+						return false;
+				}
+				return true;
+			case BEGIN_UNIX_LINE:
+				return index < length && (index == 0 || input.charAt(index - 1) == '\n');
+			case END_INPUT_OR_TERMINATOR:
+				if (index < length - 2)
+					return false;
+				if (index == length - 2)
+					return input.charAt(index) == '\r' && input.charAt(index + 1) == '\n';
+				return index == length || isTerminatorBefore(input, index);
+			case END_LINE:
+				return index == length || isTerminatorBefore(input, index);
+			case END_INPUT_OR_UNIX_TERMINATOR:
+				return index == length || (index == length - 1 && input.charAt(index) == '\n');
+			case END_UNIX_LINE:
+				return index == length || input.charAt(index) == '\n';
+			case WORD_BOUNDARY:
+				return isWordBoundary(input, index, 0);
+			case UNICODE_WORD_BOUNDARY:
+				return isWordBoundary(input, index, Pattern.UNICODE_CHARACTER_CLASS);
+			case NOT_WORD_BOUNDARY:
+				return !isWordBoundary(input, index, 0);
+			case NOT_UNICODE_WORD_BOUNDARY:
+				return !isWordBoundary(input, index, Pattern.UNICODE_CHARACTER_CLASS);
+			case NOT_LOW_SURROGATE:
+				return index == length || !Character.isLowSurrogate(input.charAt(index));
+			default:
+				throw new IllegalArgumentException("Unknown assertion: "+ kind);
+		}
+	}
+
+	/**
+	 * @return whether a line terminator starts at the index, not counting the line feed of a CR LF pair
+	 */
+	private static boolean isTerminatorBefore(CharSequence input, int index) {
+		char c = input.charAt(index);
+		if (c == '\n')
+			return index == 0 || input.charAt(index - 1) != '\r';
+
+		return c == '\r' || c == '\u0085' || (c | 1) == '\u2029';
+	}
+
+	private static boolean isWordBoundary(CharSequence input, int index, int flags) {
+		CodePointSet word = getWordCharacters(flags);
+		boolean left = false, right = false;
+		if (index > 0) {
+			int codePoint = Character.codePointBefore(input, index);
+			left = word.contains(codePoint) || (Character.getType(codePoint) == Character.NON_SPACING_MARK
+					&& hasBaseCharacter(input, index - 1));
+		}
+		if (index < input.length()) {
+			int codePoint = Character.codePointAt(input, index);
+			right = word.contains(codePoint) || (Character.getType(codePoint) == Character.NON_SPACING_MARK
+					&& hasBaseCharacter(input, index));
+		}
+
+		return left ^ right;
+	}
+
+	/**
+	 * @return whether the non-spacing marks ending at the index follow a letter or digit
+	 */
+	private static boolean hasBaseCharacter(CharSequence input, int index) {
+		for (int offset = index; offset >= 0; offset--) {
+			int codePoint = Character.codePointAt(input, offset);
+			if (Character.isLetterOrDigit(codePoint))
+				return true;
+			if (Character.getType(codePoint) != Character.NON_SPACING_MARK)
+				return false;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return the code points {@link Pattern} treats as word characters for <code>\b</code>, found by asking it,
+	 * as the definition differs between Java versions
+	 */
+	static CodePointSet getWordCharacters(int flags) {
+		CodePointSet word = WORD_CHARACTERS.get(flags);
+		if (word == null) {
+			Matcher boundary = Pattern.compile("\\b", flags).matcher("");
+			int[] wordRanges = new int[16];
+			int count = 0;
+			for (int codePoint = 0; codePoint <= Character.MAX_CODE_POINT; codePoint++) {
+				if (!boundary.reset(new String(Character.toChars(codePoint))).lookingAt())
+					continue;
+
+				if (count > 0 && wordRanges[count - 1] == codePoint - 1)
+					wordRanges[count - 1] = codePoint;
+				else {
+					if (count == wordRanges.length)
+						wordRanges = Arrays.copyOf(wordRanges, count * 2);
+					wordRanges[count++] = codePoint;
+					wordRanges[count++] = codePoint;
+				}
+			}
+
+			word = CodePointSet.ranges(Arrays.copyOf(wordRanges, count));
+			WORD_CHARACTERS.put(flags, word);
+		}
+
+		return word;
+	}
+
+	/**
+	 * Emits the instructions for a node that continue at the given instruction.
+	 *
+	 * @return the entry instruction
+	 */
+	private int emit(RegexNode node, int continuation) {
+		switch (node.getType()) {
+			case EMPTY:
+				return continuation;
+			case CHARACTER:
+				return emitCharacters(node.getCharacters(), continuation);
+			case ASSERTION:
+				return add(ASSERT, continuation, assertionKind(node), null);
+			case GROUP:
+				return emit(node.getChild(), continuation);
+			case CONCATENATION:
+				int entry = continuation;
+				List<RegexNode> children = node.getChildren();
+				for (int index = 0; index < children.size(); index++)
+					entry = emit(children.get(reverse ? index : children.size() - 1 - index), entry);
+				return entry;
+			case ALTERNATION:
+				int alternative = emit(node.getChildren().get(node.getChildren().size() - 1), continuation);
+				for (int index = node.getChildren().size() - 2; index >= 0; index--)
+					alternative = add(SPLIT, emit(node.getChildren().get(index), continuation), alternative, null);
+				return alternative;
+			case REPEAT:
+				return emitRepeat(node, continuation);
+			default:
+				throw new IllegalArgumentException("Not a regular construct: "+ node);
+		}
+	}
+
+	private int emitRepeat(RegexNode node, int continuation) {
+		boolean greedy = node.getQuantifier() == RegexNode.Quantifier.GREEDY;
+		int entry;
+		if (node.getMax() == RegexNode.UNBOUNDED) {
+			int loop = add(SPLIT, -1, -1, null);
+			int body = emit(node.getChild(), loop);
+			next[loop] = greedy ? body : continuation;
+			alternates[loop] = greedy ? continuation : body;
+			entry = loop;
+		}
+		else {
+			entry = continuation;
+			for (int count = node.getMin(); count < node.getMax(); count++) {
+				int body = emit(node.getChild(), entry);
+				entry = greedy ? add(SPLIT, body, continuation, null) : add(SPLIT, continuation, body, null);
+			}
+		}
+
+		for (int count = 0; count < node.getMin(); count++)
+			entry = emit(node.getChild(), entry);
+
+		return entry;
+	}
+
+	private int emitCharacters(CodePointSet characters, int continuation) {
+		int entry = -1;
+		CodePointSet units = characters.intersect(BMP);
+		if (!units.isEmpty())
+			entry = add(CHARACTER, continuation, -1, toUnitRanges(units));
+
+		CodePointSet highs = characters.intersect(HIGH_SURROGATES);
+		if (!highs.isEmpty()) {
+			// a lone high surrogate, not followed by a low one that would pair with it
+			int alternative;
+			if (reverse)
+				alternative = add(ASSERT, add(CHARACTER, continuation, -1, toUnitRanges(highs)), NOT_LOW_SURROGATE, null);
+			else
+				alternative = add(CHARACTER, add(ASSERT, continuation, NOT_LOW_SURROGATE, null), -1, toUnitRanges(highs));
+			entry = entry < 0 ? alternative : add(SPLIT, entry, alternative, null);
+		}
+
+		CodePointSet supplementary = characters.intersect(CodePointSet.range(0x10000, Character.MAX_CODE_POINT));
+		for (int index = 0; index < supplementary.rangeCount(); index++) {
+			int first = supplementary.rangeStart(index), last = supplementary.rangeEnd(index);
+			char firstHigh = Character.highSurrogate(first), lastHigh = Character.highSurrogate(last);
+			char firstLow = Character.lowSurrogate(first), lastLow = Character.lowSurrogate(last);
+			int alternative;
+			if (firstHigh == lastHigh)
+				alternative = emitPair(firstHigh, firstHigh, firstLow, lastLow, continuation);
+			else {
+				alternative = emitPair(firstHigh, firstHigh, firstLow, '\uDFFF', continuation);
+				if (lastHigh - firstHigh > 1)
+					alternative = add(SPLIT, alternative,
+							emitPair((char) (firstHigh + 1), (char) (lastHigh - 1), '\uDC00', '\uDFFF', continuation), null);
+				alternative = add(SPLIT, alternative, emitPair(lastHigh, lastHigh, '\uDC00', lastLow, continuation), null);
+			}
+			entry = entry < 0 ? alternative : add(SPLIT, entry, alternative, null);
+		}
+
+		// an empty set never matches
+		return entry < 0 ? add(CHARACTER, continuation, -1, new char[0]) : entry;
+	}
+
+	private int emitPair(char firstHigh, char lastHigh, char firstLow, char lastLow, int continuation) {
+		char[] highs = { firstHigh, lastHigh }, lows = { firstLow, lastLow };
+		if (reverse)
+			return add(CHARACTER, add(CHARACTER, continuation, -1, highs), -1, lows);
+
+		return add(CHARACTER, add(CHARACTER, continuation, -1, lows), -1, highs);
+	}
+
+	private static char[] toUnitRanges(CodePointSet units) {
+		char[] unitRanges = new char[units.rangeCount() * 2];
+		for (int index = 0; index < units.rangeCount(); index++) {
+			unitRanges[index * 2] = (char) units.rangeStart(index);
+			unitRanges[index * 2 + 1] = (char) units.rangeEnd(index);
+		}
+
+		return unitRanges;
+	}
+
+	private int assertionKind(RegexNode node) {
+		boolean unixLines = (node.getFlags() & Pattern.UNIX_LINES) != 0;
+		boolean unicode = (node.getFlags() & Pattern.UNICODE_CHARACTER_CLASS) != 0;
+		switch (node.getAssertion()) {
+			case BEGIN_INPUT:
+				return BEGIN_INPUT;
+			case BEGIN_LINE:
+				return unixLines ? BEGIN_UNIX_LINE : BEGIN_LINE;
+			case END_INPUT:
+				return END_INPUT;
+			case END_INPUT_OR_TERMINATOR:
+				return unixLines ? END_INPUT_OR_UNIX_TERMINATOR : END_INPUT_OR_TERMINATOR;
+			case END_LINE:
+				return unixLines ? END_UNIX_LINE : END_LINE;
+			case WORD_BOUNDARY:
+				return unicode ? UNICODE_WORD_BOUNDARY : WORD_BOUNDARY;
+			case NOT_WORD_BOUNDARY:
+				return unicode ? NOT_UNICODE_WORD_BOUNDARY : NOT_WORD_BOUNDARY;
+			default:
+				throw new IllegalArgumentException("Unsupported assertion: "+ node.getAssertion());
+		}
+	}
+
+	private int add(int opcode, int nextPc, int alternate, char[] unitRanges) {
+		if (size == MAX_INSTRUCTIONS)
+			throw new ProgramTooLargeException();
+
+		if (size == opcodes.length) {
+			opcodes = Arrays.copyOf(opcodes, size * 2);
+			next = Arrays.copyOf(next, size * 2);
+			alternates = Arrays.copyOf(alternates, size * 2);
+			ranges = Arrays.copyOf(ranges, size * 2);
+		}
+		if (opcode == ASSERT)
+			assertionMask |= 1 << alternate;
+
+		opcodes[size] = opcode;
+		next[size] = nextPc;
+		alternates[size] = alternate;
+		ranges[size] = unitRanges;
+		return size++;
+	}
+
+	private static class ProgramTooLargeException extends RuntimeException {
+	}
+}
@@ -0,0 +1,749 @@
+package com.obsglobal.util.regex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Finds the constructs that can make a backtracking matcher take exponential or polynomial time, and measures
+ * how badly they really do.
+ * <p/>
+ * The expression is parsed with {@link RegexParser} and three kinds of construct are flagged:
+ * <ul>
+ * <li>an unbounded repeat whose body can match two of its own iterations in one, as in <code>(a+)+</code> or
+ * <code>(\w+\s?)*</code>, or has alternatives matching a common string, as in <code>(a|a)*</code>: exponential;</li>
+ * <li>a bounded repeat of such a body that contains an unbounded repeat, as in <code>(.*a){5}</code>:
+ * polynomial, of the degree of its upper bound;</li>
+ * <li>unbounded repeats following each other, separated by nothing that must match, whose bodies match a common
+ * string, as in <code>\d+\d*x</code>: polynomial, of the degree of the number of repeats;</li>
+ * <li>a repeat leading an unanchored expression whose rest can fail, as in <code>\s+$</code> or
+ * <code>a+b</code>: {@link Matcher#find()} retries it at every start, so it is quadratic, possessive or not.</li>
+ * </ul>
+ * Whether two parts of the expression match a common string is decided by compiling them with {@link Pattern} and
+ * trying short example strings built from the tree, so the verdicts may miss some constructs but are never based
+ * on a guess about Pattern's syntax. Possessive repeats never backtrack and are otherwise skipped.
+ * <p/>
+ * Each construct comes with an attack string: a prefix reaching it, a pump repeated to make the matcher try its
+ * ambiguous ways, and a suffix making the match fail. {@link #measureGrowth} counts the characters the matcher
+ * reads on growing attack strings, within a time budget, to estimate the complexity it actually shows.
+ */
+public class BacktrackingAnalyzer {
+	/** attack strings are not grown beyond this many code units */
+	public static final int MAX_ATTACK_LENGTH = 20000;
+	/** a single match attempt is abandoned after this many character reads */
+	public static final long MAX_STEPS = 20000000L;
+	/** attack strings capped this short show exponential growth whatever their measured slope */
+	private static final int EXPONENTIAL_LENGTH = 64;
+	private static final String[] SUFFIXES = { "!", "\n", "\u0000", "_", "0", " ", "a", "A", "!\n" };
+	private static final String PREFERRED_CHARACTERS =
+			"abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 _-.,:;/@";
+
+	public enum Complexity {
+		LINEAR, POLYNOMIAL, EXPONENTIAL;
+
+		/**
+		 * @return a short description, such as <code>O(n^2)</code> for a polynomial of degree 2
+		 */
+		public String describe(int degree) {
+			switch (this) {
+				case POLYNOMIAL:
+					return "O(n^"+ degree +")";
+				case EXPONENTIAL:
+					return "exponential";
+				default:
+					return "linear";
+			}
+		}
+	}
+
+	/**
+	 * A risky construct, with the span of the expression it covers and an attack string demonstrating it.
+	 */
+	public static final class Vulnerability {
+		private final Complexity complexity;
+		private final int degree, start, end;
+		private final String description, prefix, pump, suffix;
+
+		Vulnerability(Complexity complexity, int degree, int start, int end, String description,
+					  String prefix, String pump, String suffix) {
+			this.complexity = complexity;
+			this.degree = degree;
+			this.start = start;
+			this.end = end;
+			this.description = description;
+			this.prefix = prefix;
+			this.pump = pump;
+			this.suffix = suffix;
+		}
+
+		/**
+		 * @return the complexity the construct suggests
+		 */
+		public Complexity getComplexity() {
+			return complexity;
+		}
+
+		/**
+		 * @return the degree of a {@link Complexity#POLYNOMIAL} construct
+		 */
+		public int getDegree() {
+			return degree;
+		}
+
+		/**
+		 * @return the offset in the expression where the construct starts
+		 */
+		public int getStart() {
+			return start;
+		}
+
+		/**
+		 * @return the offset in the expression where the construct ends
+		 */
+		public int getEnd() {
+			return end;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+
+		public String getPrefix() {
+			return prefix;
+		}
+
+		public String getPump() {
+			return pump;
+		}
+
+		public String getSuffix() {
+			return suffix;
+		}
+
+		/**
+		 * @return the prefix, the pump the given number of times and the suffix
+		 */
+		public String getAttackString(int pumps) {
+			StringBuilder attack = new StringBuilder(prefix);
+			for (int index = 0; index < pumps; index++)
+				attack.append(pump);
+
+			return attack.append(suffix).toString();
+		}
+
+		@Override
+		public String toString() {
+			return complexity.describe(degree) +" at "+ start +"-"+ end +": "+ description;
+		}
+	}
+
+	/**
+	 * How the reads of a match attempt grew with the length of the attack string.
+	 */
+	public static final class Growth {
+		private final Complexity complexity;
+		private final int degree;
+		private final int[] lengths;
+		private final long[] steps;
+		private final boolean limited;
+
+		Growth(Complexity complexity, int degree, int[] lengths, long[] steps, boolean limited) {
+			this.complexity = complexity;
+			this.degree = degree;
+			this.lengths = lengths;
+			this.steps = steps;
+			this.limited = limited;
+		}
+
+		public Complexity getComplexity() {
+			return complexity;
+		}
+
+		public int getDegree() {
+			return degree;
+		}
+
+		/**
+		 * @return the attack string lengths measured, in code units
+		 */
+		public int[] getLengths() {
+			return lengths.clone();
+		}
+
+		/**
+		 * @return the characters read for each length
+		 */
+		public long[] getSteps() {
+			return steps.clone();
+		}
+
+		/**
+		 * @return whether growth was stopped by the step limit or the time budget rather than the maximum length
+		 */
+		public boolean isLimited() {
+			return limited;
+		}
+
+		@Override
+		public String toString() {
+			return complexity.describe(degree);
+		}
+	}
+
+	/**
+	 * The vulnerabilities of an expression and the growth measured for each.
+	 */
+	public static final class Report {
+		private final List<Vulnerability> vulnerabilities;
+		private final List<Growth> growths;
+
+		Report(List<Vulnerability> vulnerabilities, List<Growth> growths) {
+			this.vulnerabilities = Collections.unmodifiableList(vulnerabilities);
+			this.growths = Collections.unmodifiableList(growths);
+		}
+
+		public List<Vulnerability> getVulnerabilities() {
+			return vulnerabilities;
+		}
+
+		/**
+		 * @return the growth measured for the vulnerability with the same index
+		 */
+		public List<Growth> getGrowths() {
+			return growths;
+		}
+
+		/**
+		 * @return the worst complexity among the vulnerabilities, taking the worse of the flagged and the measured
+		 * one for each: newer JVMs memoize some repeats, so a construct measured tame may not be elsewhere
+		 */
+		public Complexity getComplexity() {
+			Complexity worst = Complexity.LINEAR;
+			for (int index = 0; index < vulnerabilities.size(); index++) {
+				Complexity complexity = getComplexity(index);
+				if (complexity.compareTo(worst) > 0)
+					worst = complexity;
+			}
+
+			return worst;
+		}
+
+		/**
+		 * @return the highest degree among the vulnerabilities found polynomial
+		 */
+		public int getDegree() {
+			int degree = 1;
+			for (int index = 0; index < vulnerabilities.size(); index++) {
+				if (getComplexity(index) == Complexity.POLYNOMIAL)
+					degree = Math.max(degree, getDegree(index));
+			}
+
+			return degree;
+		}
+
+		@Override
+		public String toString() {
+			return getComplexity().describe(getDegree());
+		}
+
+		private Complexity getComplexity(int index) {
+			Complexity flagged = vulnerabilities.get(index).getComplexity();
+			Complexity measured = growths.get(index).getComplexity();
+			return measured.compareTo(flagged) > 0 ? measured : flagged;
+		}
+
+		private int getDegree(int index) {
+			Vulnerability vulnerability = vulnerabilities.get(index);
+			Growth growth = growths.get(index);
+			int degree = vulnerability.getComplexity() == Complexity.POLYNOMIAL ? vulnerability.getDegree() : 1;
+			return growth.getComplexity() == Complexity.POLYNOMIAL ? Math.max(degree, growth.getDegree()) : degree;
+		}
+	}
+
+	private final Pattern pattern;
+	private final String expression;
+	private final RegexNode root;
+	private final List<Vulnerability> vulnerabilities = new ArrayList<Vulnerability>();
+	private final Map<RegexNode, Pattern> nodePatterns = new HashMap<RegexNode, Pattern>();
+
+	private BacktrackingAnalyzer(Pattern pattern) {
+		this.pattern = pattern;
+		this.expression = pattern.pattern();
+		this.root = RegexParser.parse(pattern);
+	}
+
+	/**
+	 * @return the risky constructs of the pattern, in the order they appear
+	 */
+	public static List<Vulnerability> findVulnerabilities(Pattern pattern) {
+		BacktrackingAnalyzer analyzer = new BacktrackingAnalyzer(pattern);
+		analyzer.inspect(analyzer.root);
+		analyzer.inspectLeadingRepeat();
+		return analyzer.vulnerabilities;
+	}
+
+	/**
+	 * Finds the vulnerabilities of the pattern and measures each, sharing the time budget between them.
+	 *
+	 * @throws MatchInterruptedException if the calling thread is interrupted
+	 */
+	public static Report analyze(Pattern pattern, long budgetMillis) {
+		List<Vulnerability> vulnerabilities = findVulnerabilities(pattern);
+		List<Growth> growths = new ArrayList<Growth>();
+		long deadline = System.nanoTime() + budgetMillis * 1000000L;
+		for (int index = 0; index < vulnerabilities.size(); index++) {
+			long remainingMillis = Math.max(1, (deadline - System.nanoTime()) / 1000000L);
+			growths.add(measureGrowth(pattern, vulnerabilities.get(index), remainingMillis / (vulnerabilities.size() - index)));
+		}
+
+		return new Report(vulnerabilities, growths);
+	}
+
+	/**
+	 * Counts the characters read by {@link Matcher#find()} and {@link Matcher#matches()} on attack strings
+	 * doubling in pumps, until they exceed {@link #MAX_ATTACK_LENGTH}, an attempt exceeds {@link #MAX_STEPS}
+	 * or the time budget runs out, and classifies how the count grew.
+	 *
+	 * @throws MatchInterruptedException if the calling thread is interrupted
+	 */
+	public static Growth measureGrowth(Pattern pattern, Vulnerability vulnerability, long budgetMillis) {
+		long deadline = System.nanoTime() + budgetMillis * 1000000L;
+		List<Integer> lengths = new ArrayList<Integer>();
+		List<Long> steps = new ArrayList<Long>();
+		boolean limited = false;
+		for (int pumps = 1; ; pumps *= 2) {
+			String attack = vulnerability.getAttackString(pumps);
+			if (attack.length() > MAX_ATTACK_LENGTH)
+				break;
+
+			long remainingMillis = (deadline - System.nanoTime()) / 1000000L;
+			if (remainingMillis <= 0) {
+				limited = true;
+				break;
+			}
+
+			StepCounter input = new StepCounter(attack, remainingMillis);
+			try {
+				Matcher matcher = pattern.matcher(input);
+				matcher.find();
+				matcher.matches();
+			}
+			catch (MatchInterruptedException ex) {
+				if (!ex.isTimedOut() && input.steps <= MAX_STEPS)
+					throw ex;
+				limited = true;
+				break;
+			}
+			catch (StackOverflowError ex) {
+				limited = true;
+				break;
+			}
+			lengths.add(attack.length());
+			steps.add(input.steps);
+		}
+
+		int[] lengthArray = new int[lengths.size()];
+		long[] stepArray = new long[steps.size()];
+		for (int index = 0; index < lengthArray.length; index++) {
+			lengthArray[index] = lengths.get(index);
+			stepArray[index] = steps.get(index);
+		}
+
+		return classify(lengthArray, stepArray, limited);
+	}
+
+	/**
+	 * Estimates the complexity from the slopes of log steps over log length: constant for a polynomial, doubling
+	 * with the length for an exponential.
+	 */
+	static Growth classify(int[] lengths, long[] steps, boolean limited) {
+		int count = lengths.length;
+		boolean shortLimit = limited && (count == 0 || lengths[count - 1] <= EXPONENTIAL_LENGTH);
+		if (count < 2)
+			return new Growth(shortLimit ? Complexity.EXPONENTIAL : Complexity.LINEAR, 1, lengths, steps, limited);
+
+		double last = slope(lengths, steps, count - 1);
+		double previous = count > 2 ? slope(lengths, steps, count - 2) : last;
+		Complexity complexity;
+		int degree = 1;
+		if ((last >= 3 && last >= previous * 1.5) || (shortLimit && last >= 3))
+			complexity = Complexity.EXPONENTIAL;
+		else if (last >= 1.5) {
+			complexity = Complexity.POLYNOMIAL;
+			degree = (int) Math.round(last);
+		}
+		else
+			complexity = Complexity.LINEAR;
+
+		return new Growth(complexity, degree, lengths, steps, limited);
+	}
+
+	private static double slope(int[] lengths, long[] steps, int index) {
+		return Math.log((double) Math.max(1, steps[index]) / Math.max(1, steps[index - 1]))
+				/ Math.log((double) lengths[index] / lengths[index - 1]);
+	}
+
+	private void inspect(RegexNode node) {
+		if (node.getType() == RegexNode.Type.LOOKAROUND && node.isBehind())
+			return;	// bounded by Pattern, and matched backwards
+
+		if (node.getType() == RegexNode.Type.REPEAT)
+			inspectRepeat(node);
+		else if (node.getType() == RegexNode.Type.CONCATENATION)
+			inspectSequence(node);
+
+		for (RegexNode child : node.getChildren())
+			inspect(child);
+	}
+
+	private void inspectRepeat(RegexNode repeat) {
+		if (repeat.getQuantifier() == RegexNode.Quantifier.POSSESSIVE || repeat.getMax() < 2)
+			return;
+
+		RegexNode body = repeat.getChild();
+		String iteration = example(body, true);
+		if (iteration.isEmpty())
+			return;
+
+		String description = null, pump = findDoubleIteration(body, iteration);
+		if (pump != null)
+			description = containsRepeat(body, false) ? "nested quantifier" : "repeat matching two iterations as one";
+		else if (hasOverlappingAlternatives(body)) {
+			description = "overlapping alternatives under a repeat";
+			pump = iteration;
+		}
+		if (description == null)
+			return;
+
+		if (repeat.getMax() == RegexNode.UNBOUNDED)
+			addVulnerability(Complexity.EXPONENTIAL, 1, repeat, repeat, description, pump);
+		else if (containsRepeat(body, true))
+			addVulnerability(Complexity.POLYNOMIAL, repeat.getMax(), repeat, repeat, description, pump);
+	}
+
+	/**
+	 * @return a string the body matches both in one iteration and in two, or <code>null</code> if none was found
+	 */
+	private String findDoubleIteration(RegexNode body, String iteration) {
+		List<String> candidates = new ArrayList<String>();
+		candidates.add(iteration + iteration);
+		collectAlternativeExamples(body, candidates);
+		for (String candidate : candidates) {
+			if (!matches(body, candidate))
+				continue;
+
+			for (int split = 1; split < candidate.length(); split++) {
+				if (Character.isLowSurrogate(candidate.charAt(split)) && Character.isHighSurrogate(candidate.charAt(split - 1)))
+					continue;
+				if (matches(body, candidate.substring(0, split)) && matches(body, candidate.substring(split)))
+					return candidate;
+			}
+		}
+
+		return null;
+	}
+
+	private static void collectAlternativeExamples(RegexNode node, List<String> examples) {
+		if (node.getType() == RegexNode.Type.LOOKAROUND)
+			return;
+
+		if (node.getType() == RegexNode.Type.ALTERNATION) {
+			for (RegexNode alternative : node.getChildren()) {
+				String example = example(alternative, true);
+				if (!example.isEmpty() && !examples.contains(example))
+					examples.add(example);
+			}
+		}
+
+		for (RegexNode child : node.getChildren())
+			collectAlternativeExamples(child, examples);
+	}
+
+	private void inspectSequence(RegexNode sequence) {
+		List<RegexNode> items = sequence.getChildren();
+		for (int first = 0; first < items.size(); first++) {
+			RegexNode repeat = unwrap(items.get(first));
+			if (!isUnboundedRepeat(repeat))
+				continue;
+
+			String common = null;
+			int degree = 1, last = first;
+			for (int next = first + 1; next < items.size(); next++) {
+				RegexNode other = unwrap(items.get(next));
+				String shared = isUnboundedRepeat(other) ? commonExample(repeat.getChild(), other.getChild()) : null;
+				if (shared != null) {
+					common = common == null ? shared : common;
+					++degree;
+					last = next;
+				}
+				else if (!isNullable(items.get(next)))
+					break;
+			}
+			if (degree < 2)
+				continue;
+
+			addVulnerability(Complexity.POLYNOMIAL, degree, items.get(first), items.get(last),
+					"adjacent repeats matching a common string", common);
+			first = last;
+		}
+	}
+
+	/**
+	 * Flags an unbounded repeat the expression starts with, unless already flagged, when a run of characters it
+	 * accepts followed by one of the suffixes makes every match attempt fail.
+	 */
+	private void inspectLeadingRepeat() {
+		RegexNode first = unwrap(root);
+		if (first.getType() == RegexNode.Type.CONCATENATION)
+			first = first.getChildren().get(0);
+		RegexNode repeat = unwrap(first);
+		if (repeat.getType() != RegexNode.Type.REPEAT || repeat.getMax() != RegexNode.UNBOUNDED)
+			return;
+		for (Vulnerability vulnerability : vulnerabilities) {
+			if (vulnerability.getStart() == first.getStart())
+				return;
+		}
+
+		String pump = example(repeat.getChild(), true);
+		if (pump.isEmpty())
+			return;
+
+		String probe = pump + pump + pump + pump;
+		for (String suffix : SUFFIXES) {
+			if (!pattern.matcher(probe + suffix).find()) {
+				vulnerabilities.add(0, new Vulnerability(Complexity.POLYNOMIAL, 2, first.getStart(), first.getEnd(),
+						"leading repeat retried at every start", "", pump, suffix));
+				return;
+			}
+		}
+	}
+
+	private void addVulnerability(Complexity complexity, int degree, RegexNode first, RegexNode last,
+								  String description, String pump) {
+		String prefix = prefix(root, first);
+		if (prefix == null)
+			prefix = "";
+
+		String suffix = SUFFIXES[0];
+		String probe = prefix + pump + pump + pump + pump;
+		for (String candidate : SUFFIXES) {
+			if (!pattern.matcher(probe + candidate).find()) {
+				suffix = candidate;
+				break;
+			}
+		}
+
+		vulnerabilities.add(new Vulnerability(complexity, degree, first.getStart(), last.getEnd(), description,
+				prefix, pump, suffix));
+	}
+
+	private boolean hasOverlappingAlternatives(RegexNode node) {
+		if (node.getType() == RegexNode.Type.LOOKAROUND || node.getType() == RegexNode.Type.ATOMIC)
+			return false;
+
+		if (node.getType() == RegexNode.Type.ALTERNATION) {
+			List<RegexNode> alternatives = node.getChildren();
+			for (int first = 0; first < alternatives.size(); first++) {
+				for (int second = first + 1; second < alternatives.size(); second++) {
+					if (commonExample(alternatives.get(first), alternatives.get(second)) != null)
+						return true;
+				}
+			}
+		}
+
+		for (RegexNode child : node.getChildren()) {
+			if (hasOverlappingAlternatives(child))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return a non-empty example of one node that the other also matches, or <code>null</code>
+	 */
+	private String commonExample(RegexNode first, RegexNode second) {
+		String example = example(first, true);
+		if (!example.isEmpty() && matches(second, example))
+			return example;
+
+		example = example(second, true);
+		if (!example.isEmpty() && matches(first, example))
+			return example;
+
+		return null;
+	}
+
+	/**
+	 * @return whether the part of the expression the node was parsed from matches the whole of the given string
+	 */
+	private boolean matches(RegexNode node, String input) {
+		Pattern nodePattern = nodePatterns.get(node);
+		if (nodePattern == null && !nodePatterns.containsKey(node)) {
+			try {
+				nodePattern = Pattern.compile(expression.substring(node.getStart(), node.getEnd()),
+						node.getFlags() & ~Pattern.LITERAL);
+			}
+			catch (PatternSyntaxException ex) {
+				nodePattern = null;	// e.g. a backreference to a group outside the part
+			}
+			nodePatterns.put(node, nodePattern);
+		}
+
+		return nodePattern != null && nodePattern.matcher(input).matches();
+	}
+
+	/**
+	 * @return a short string the node matches, non-empty if requested and possible
+	 */
+	static String example(RegexNode node, boolean nonEmpty) {
+		switch (node.getType()) {
+			case CHARACTER:
+				return example(node.getCharacters());
+			case GROUP:
+			case ATOMIC:
+				return example(node.getChild(), nonEmpty);
+			case CONCATENATION:
+				StringBuilder builder = new StringBuilder();
+				for (RegexNode child : node.getChildren())
+					builder.append(example(child, false));
+				if (builder.length() == 0 && nonEmpty) {
+					for (RegexNode child : node.getChildren()) {
+						String childExample = example(child, true);
+						if (!childExample.isEmpty())
+							return childExample;
+					}
+				}
+				return builder.toString();
+			case ALTERNATION:
+				for (RegexNode child : node.getChildren()) {
+					String childExample = example(child, nonEmpty);
+					if (!nonEmpty || !childExample.isEmpty())
+						return childExample;
+				}
+				return "";
+			case REPEAT:
+				int times = nonEmpty ? Math.max(1, node.getMin()) : node.getMin();
+				if (node.getMax() == 0)
+					return "";
+				String iteration = example(node.getChild(), times > 0);
+				StringBuilder repeated = new StringBuilder();
+				for (int index = 0; index < times; index++)
+					repeated.append(iteration);
+				return repeated.toString();
+			default:
+				return "";
+		}
+	}
+
+	private static String example(CodePointSet characters) {
+		if (characters.isEmpty())
+			return "";
+
+		for (int index = 0; index < PREFERRED_CHARACTERS.length(); index++) {
+			char c = PREFERRED_CHARACTERS.charAt(index);
+			if (characters.contains(c))
+				return String.valueOf(c);
+		}
+
+		return new String(Character.toChars(characters.rangeStart(0)));
+	}
+
+	/**
+	 * @return an example of the input leading up to the target node, or <code>null</code> if it is not below the node
+	 */
+	private static String prefix(RegexNode node, RegexNode target) {
+		if (node == target)
+			return "";
+
+		StringBuilder preceding = new StringBuilder();
+		for (RegexNode child : node.getChildren()) {
+			String prefix = prefix(child, target);
+			if (prefix != null)
+				return preceding + prefix;
+			if (node.getType() == RegexNode.Type.CONCATENATION)
+				preceding.append(example(child, false));
+		}
+
+		return null;
+	}
+
+	private static boolean isNullable(RegexNode node) {
+		switch (node.getType()) {
+			case CHARACTER:
+			case OPAQUE:
+				return false;
+			case GROUP:
+			case ATOMIC:
+				return isNullable(node.getChild());
+			case CONCATENATION:
+				for (RegexNode child : node.getChildren()) {
+					if (!isNullable(child))
+						return false;
+				}
+				return true;
+			case ALTERNATION:
+				for (RegexNode child : node.getChildren()) {
+					if (isNullable(child))
+						return true;
+				}
+				return false;
+			case REPEAT:
+				return node.getMin() == 0 || isNullable(node.getChild());
+			default:
+				return true;
+		}
+	}
+
+	private static boolean containsRepeat(RegexNode node, boolean unbounded) {
+		if (node.getType() == RegexNode.Type.REPEAT && node.getQuantifier() != RegexNode.Quantifier.POSSESSIVE
+				&& node.getMax() >= (unbounded ? RegexNode.UNBOUNDED : 2))
+			return true;
+
+		for (RegexNode child : node.getChildren()) {
+			if (containsRepeat(child, unbounded))
+				return true;
+		}
+
+		return false;
+	}
+
+	private static boolean isUnboundedRepeat(RegexNode node) {
+		return node.getType() == RegexNode.Type.REPEAT && node.getMax() == RegexNode.UNBOUNDED
+				&& node.getQuantifier() != RegexNode.Quantifier.POSSESSIVE;
+	}
+
+	/**
+	 * @return the node inside any plain groups around it
+	 */
+	private static RegexNode unwrap(RegexNode node) {
+		while (node.getType() == RegexNode.Type.GROUP)
+			node = node.getChild();
+
+		return node;
+	}
+
+	/**
+	 * Counts character reads, and stops the match once there are too many.
+	 */
+	private static final class StepCounter extends InterruptibleCharSequence {
+		long steps = 0;
+
+		StepCounter(CharSequence delegate, long timeoutMillis) {
+			super(delegate, timeoutMillis);
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (++steps > MAX_STEPS)
+				throw new MatchInterruptedException("Matching exceeded "+ MAX_STEPS +" steps", false);
+
+			return super.charAt(index);
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package com.obsglobal.util.regex;
+
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+/**
+ * The {@link java.util.regex} engine itself, which supports every pattern but may backtrack exponentially.
+ */
+public class BacktrackingEngine implements RegexEngine {
+	@Override
+	public String getName() {
+		return "java.util.regex";
+	}
+
+	@Override
+	public boolean supports(Pattern pattern) {
+		return true;
+	}
+
+	@Override
+	public MatchOffsets findAllMatchOffsets(Pattern pattern, CharSequence input) {
+		return RegexUtil.findAllMatchOffsets(pattern, input);
+	}
+
+	@Override
+	public int visitMatchOffsets(Pattern pattern, CharSequence input, final Visitor visitor) {
+		return RegexUtil.visitMatches(pattern, input, new MatchVisitor() {
+			@Override
+			public boolean visitMatch(MatchResult match) {
+				return visitor.visitMatch(match.start(), match.end());
+			}
+		});
+	}
+}
@@ -0,0 +1,203 @@
+package com.obsglobal.util.regex;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of Unicode code points, stored as sorted, disjoint, inclusive ranges.
+ */
+public final class CodePointSet {
+	public static final CodePointSet EMPTY = new CodePointSet(new int[0]);
+	public static final CodePointSet ALL = new CodePointSet(new int[] { 0, Character.MAX_CODE_POINT });
+
+	/** interleaved range starts and ends, both inclusive */
+	private final int[] ranges;
+
+	private CodePointSet(int[] ranges) {
+		this.ranges = ranges;
+	}
+
+	public static CodePointSet of(int codePoint) {
+		return range(codePoint, codePoint);
+	}
+
+	public static CodePointSet range(int first, int last) {
+		if (first > last)
+			throw new IllegalArgumentException("Illegal range: "+ first +"-"+ last);
+
+		return new CodePointSet(new int[] { first, last });
+	}
+
+	/**
+	 * @param ranges interleaved inclusive range starts and ends, in any order and possibly overlapping
+	 */
+	public static CodePointSet ranges(int... ranges) {
+		if (isNormalized(ranges))
+			return new CodePointSet(ranges.clone());
+
+		CodePointSet set = EMPTY;
+		for (int index = 0; index + 1 < ranges.length; index += 2)
+			set = set.union(range(ranges[index], ranges[index + 1]));
+
+		return set;
+	}
+
+	private static boolean isNormalized(int[] ranges) {
+		if (ranges.length % 2 != 0)
+			return false;
+		for (int index = 0; index < ranges.length; index += 2) {
+			if (ranges[index] < 0 || ranges[index] > ranges[index + 1] || ranges[index + 1] > Character.MAX_CODE_POINT)
+				return false;
+			if (index > 0 && ranges[index] <= ranges[index - 1] + 1)
+				return false;
+		}
+
+		return true;
+	}
+
+	public boolean contains(int codePoint) {
+		int low = 0, high = ranges.length / 2 - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (codePoint < ranges[middle * 2])
+				high = middle - 1;
+			else if (codePoint > ranges[middle * 2 + 1])
+				low = middle + 1;
+			else
+				return true;
+		}
+
+		return false;
+	}
+
+	public boolean isEmpty() {
+		return ranges.length == 0;
+	}
+
+	public int rangeCount() {
+		return ranges.length / 2;
+	}
+
+	public int rangeStart(int index) {
+		return ranges[index * 2];
+	}
+
+	public int rangeEnd(int index) {
+		return ranges[index * 2 + 1];
+	}
+
+	/**
+	 * @return the number of code points in this set
+	 */
+	public int size() {
+		int size = 0;
+		for (int index = 0; index < ranges.length; index += 2)
+			size += ranges[index + 1] - ranges[index] + 1;
+
+		return size;
+	}
+
+	public CodePointSet union(CodePointSet other) {
+		if (other.isEmpty())
+			return this;
+		if (isEmpty())
+			return other;
+
+		int[] merged = new int[ranges.length + other.ranges.length];
+		int count = 0, left = 0, right = 0;
+		while (left < ranges.length || right < other.ranges.length) {
+			int first, last;
+			if (right >= other.ranges.length || (left < ranges.length && ranges[left] <= other.ranges[right])) {
+				first = ranges[left];
+				last = ranges[left + 1];
+				left += 2;
+			}
+			else {
+				first = other.ranges[right];
+				last = other.ranges[right + 1];
+				right += 2;
+			}
+
+			// merge overlapping or adjacent ranges
+			if (count > 0 && (long) first <= (long) merged[count - 1] + 1)
+				merged[count - 1] = Math.max(merged[count - 1], last);
+			else {
+				merged[count++] = first;
+				merged[count++] = last;
+			}
+		}
+
+		return new CodePointSet(Arrays.copyOf(merged, count));
+	}
+
+	public CodePointSet complement() {
+		int[] complement = new int[ranges.length + 2];
+		int count = 0, next = 0;
+		for (int index = 0; index < ranges.length; index += 2) {
+			if (ranges[index] > next) {
+				complement[count++] = next;
+				complement[count++] = ranges[index] - 1;
+			}
+			next = ranges[index + 1] + 1;
+		}
+		if (next <= Character.MAX_CODE_POINT) {
+			complement[count++] = next;
+			complement[count++] = Character.MAX_CODE_POINT;
+		}
+
+		return new CodePointSet(Arrays.copyOf(complement, count));
+	}
+
+	public CodePointSet intersect(CodePointSet other) {
+		return complement().union(other.complement()).complement();
+	}
+
+	public CodePointSet subtract(CodePointSet other) {
+		return intersect(other.complement());
+	}
+
+	/**
+	 * Adds the ASCII case counterparts of the ASCII letters in this set, as {@link java.util.regex.Pattern#CASE_INSENSITIVE}
+	 * does without {@link java.util.regex.Pattern#UNICODE_CASE}.
+	 */
+	public CodePointSet foldAsciiCase() {
+		CodePointSet folded = this;
+		CodePointSet upper = intersect(range('A', 'Z')), lower = intersect(range('a', 'z'));
+		for (int index = 0; index < upper.rangeCount(); index++)
+			folded = folded.union(range(upper.rangeStart(index) + 32, upper.rangeEnd(index) + 32));
+		for (int index = 0; index < lower.rangeCount(); index++)
+			folded = folded.union(range(lower.rangeStart(index) - 32, lower.rangeEnd(index) - 32));
+
+		return folded;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof CodePointSet && Arrays.equals(ranges, ((CodePointSet) other).ranges);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(ranges);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		for (int index = 0; index < ranges.length; index += 2) {
+			appendCodePoint(builder, ranges[index]);
+			if (ranges[index + 1] != ranges[index]) {
+				builder.append('-');
+				appendCodePoint(builder, ranges[index + 1]);
+			}
+		}
+
+		return builder.append(']').toString();
+	}
+
+	private static void appendCodePoint(StringBuilder builder, int codePoint) {
+		if (codePoint > ' ' && codePoint < 0x7F && "[]-\\^".indexOf(codePoint) < 0)
+			builder.append((char) codePoint);
+		else
+			builder.append(String.format("\\x{%X}", codePoint));
+	}
+}
@@ -0,0 +1,343 @@
+package com.obsglobal.util.regex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+/**
+ * Runs a pattern over every file in a directory tree, like <code>grep -r</code>, reporting each match with its
+ * line and column as soon as its file is scanned.
+ * <p/>
+ * The tree is walked on the calling thread while files are scanned on a fixed pool of threads, with at most twice
+ * as many files read as there are threads, so memory stays bounded however large the tree. Files are read through
+ * NIO channels; larger ones are memory-mapped when the charset is single-byte. Files with a NUL in their first
+ * {@link #BINARY_PROBE_LENGTH} bytes are taken as binary and skipped, as grep does.
+ */
+public class DirectoryGrep {
+	public static final int BINARY_PROBE_LENGTH = 8000;
+	static final int MAP_THRESHOLD = 1 << 20;
+
+	public interface Visitor {
+		/**
+		 * Called on the scanning threads, concurrently for different files but in order within each.
+		 *
+		 * @return <code>false</code> to stop the search
+		 */
+		boolean visitHit(Hit hit);
+	}
+
+	/**
+	 * A match in a file, with its one-based line and column.
+	 */
+	public static final class Hit {
+		private final Path file;
+		private final int line, column, start, end;
+		private final String text;
+
+		Hit(Path file, int line, int column, int start, int end, String text) {
+			this.file = file;
+			this.line = line;
+			this.column = column;
+			this.start = start;
+			this.end = end;
+			this.text = text;
+		}
+
+		public Path getFile() {
+			return file;
+		}
+
+		public int getLine() {
+			return line;
+		}
+
+		public int getColumn() {
+			return column;
+		}
+
+		public int getStart() {
+			return start;
+		}
+
+		public int getEnd() {
+			return end;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		@Override
+		public String toString() {
+			return file +":"+ line +":"+ column +":"+ text;
+		}
+	}
+
+	private final Pattern pattern;
+	private final int threadCount;
+	private Charset charset = StandardCharsets.ISO_8859_1;
+	private final List<PathMatcher> includes = new ArrayList<PathMatcher>();
+	private final List<PathMatcher> excludes = new ArrayList<PathMatcher>();
+	private final AtomicLong filesScanned = new AtomicLong();
+	private final AtomicLong filesSkipped = new AtomicLong();
+	private final AtomicLong bytesScanned = new AtomicLong();
+	private final AtomicLong matchCount = new AtomicLong();
+	private volatile boolean stopped = false;
+
+	public DirectoryGrep(Pattern pattern) {
+		this(pattern, Runtime.getRuntime().availableProcessors());
+	}
+
+	public DirectoryGrep(Pattern pattern, int threadCount) {
+		if (threadCount < 1)
+			throw new IllegalArgumentException("Thread count must be positive: "+ threadCount);
+
+		this.pattern = pattern;
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * Sets the charset files are decoded with, by default ISO-8859-1 so that offsets are those of
+	 * {@link MappedCharSequence#open(java.io.File)}.
+	 */
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Limits the search to files matching any of the given comma separated globs, against either their name or
+	 * their path relative to the searched directory.
+	 */
+	public void setIncludes(String globs) {
+		setGlobs(includes, globs);
+	}
+
+	/**
+	 * Skips files and whole directories matching any of the given comma separated globs, as
+	 * {@link #setIncludes(String)} matches them.
+	 */
+	public void setExcludes(String globs) {
+		setGlobs(excludes, globs);
+	}
+
+	/**
+	 * Searches every included file under the given directory, until done, the visitor stops it or the calling
+	 * thread is interrupted. Unreadable files are counted as skipped.
+	 *
+	 * @return the number of matches
+	 */
+	public long grep(final Path root, final Visitor visitor) throws IOException, InterruptedException {
+		filesScanned.set(0);
+		filesSkipped.set(0);
+		bytesScanned.set(0);
+		matchCount.set(0);
+		stopped = false;
+		final ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "grep-"+ threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		final int maxPending = threadCount * 2;
+		final Semaphore pending = new Semaphore(maxPending);
+		final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+		try {
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+					if (stopped || Thread.currentThread().isInterrupted())
+						return FileVisitResult.TERMINATE;
+
+					return directory.equals(root) || !matches(excludes, root.relativize(directory))
+							? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) {
+					if (stopped || Thread.currentThread().isInterrupted())
+						return FileVisitResult.TERMINATE;
+
+					Path relative = root.relativize(file);
+					if (!attributes.isRegularFile() || (!includes.isEmpty() && !matches(includes, relative))
+							|| matches(excludes, relative))
+						return FileVisitResult.CONTINUE;
+
+					try {
+						pending.acquire();
+					}
+					catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						return FileVisitResult.TERMINATE;
+					}
+					executor.execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								if (!stopped)
+									scan(file, attributes.size(), visitor);
+							}
+							catch (IOException ex) {
+								filesSkipped.incrementAndGet();
+							}
+							catch (MatchInterruptedException ex) {
+								// stopping
+							}
+							catch (RuntimeException ex) {
+								failure.compareAndSet(null, ex);
+								stopped = true;
+							}
+							finally {
+								pending.release();
+							}
+						}
+					});
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException ex) {
+					filesSkipped.incrementAndGet();
+					return FileVisitResult.CONTINUE;
+				}
+			});
+
+			if (Thread.interrupted())
+				throw new InterruptedException("Search was interrupted");
+
+			pending.acquire(maxPending);	// every file scanned
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		if (failure.get() != null)
+			throw failure.get();
+
+		return matchCount.get();
+	}
+
+	public long getFilesScanned() {
+		return filesScanned.get();
+	}
+
+	/**
+	 * @return the number of binary or unreadable files
+	 */
+	public long getFilesSkipped() {
+		return filesSkipped.get();
+	}
+
+	public long getBytesScanned() {
+		return bytesScanned.get();
+	}
+
+	public long getMatchCount() {
+		return matchCount.get();
+	}
+
+	private void scan(final Path file, long size, final Visitor visitor) throws IOException {
+		final CharSequence input = read(file, size);
+		if (input == null) {
+			filesSkipped.incrementAndGet();
+			return;
+		}
+
+		filesScanned.incrementAndGet();
+		bytesScanned.addAndGet(size);
+		// created on this pool thread, so shutting the pool down stops a runaway matcher
+		RegexUtil.visitMatches(pattern, new InterruptibleCharSequence(input), new MatchVisitor() {
+			private int line = 1, lineStart = 0, position = 0;
+
+			@Override
+			public boolean visitMatch(MatchResult match) {
+				for (; position < match.start(); position++) {
+					if (input.charAt(position) == '\n') {
+						++line;
+						lineStart = position + 1;
+					}
+				}
+
+				matchCount.incrementAndGet();
+				if (stopped || !visitor.visitHit(new Hit(file, line, match.start() - lineStart + 1, match.start(),
+						match.end(), input.subSequence(match.start(), match.end()).toString())))
+					stopped = true;
+				return !stopped;
+			}
+		});
+	}
+
+	/**
+	 * @return the file's text, or <code>null</code> if it looks binary
+	 */
+	private CharSequence read(Path file, long size) throws IOException {
+		if (size >= MAP_THRESHOLD && MappedCharSequence.isSupported(charset)) {
+			MappedCharSequence mapped = MappedCharSequence.open(file.toFile(), charset);
+			for (int index = 0; index < BINARY_PROBE_LENGTH && index < mapped.length(); index++) {
+				if (mapped.charAt(index) == '\0')
+					return null;
+			}
+
+			return mapped;
+		}
+
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			ByteBuffer bytes = ByteBuffer.allocate((int) Math.min(size, Integer.MAX_VALUE - 8));
+			while (bytes.hasRemaining() && channel.read(bytes) >= 0)
+				;
+			byte[] array = bytes.array();
+			for (int index = 0; index < BINARY_PROBE_LENGTH && index < bytes.position(); index++) {
+				if (array[index] == 0)
+					return null;
+			}
+
+			return new String(array, 0, bytes.position(), charset);
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	private static boolean matches(List<PathMatcher> matchers, Path relative) {
+		for (PathMatcher matcher : matchers) {
+			if (matcher.matches(relative) || matcher.matches(relative.getFileName()))
+				return true;
+		}
+
+		return false;
+	}
+
+	private static void setGlobs(List<PathMatcher> matchers, String globs) {
+		matchers.clear();
+		for (String glob : globs.split(",")) {
+			glob = glob.trim();
+			if (!glob.isEmpty())
+				matchers.add(FileSystems.getDefault().getPathMatcher("glob:"+ glob));
+		}
+	}
+}
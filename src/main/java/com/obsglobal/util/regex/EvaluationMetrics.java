@@ -0,0 +1,105 @@
+package com.obsglobal.util.regex;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Where the time of one evaluation went, recorded by an {@link EvaluationRecorder}.
+ * <p/>
+ * Phases that did not run, such as {@link Phase#REPLACE} when matching, take no time. Allocations are those of the
+ * threads running each phase, or -1 if the JVM does not count them.
+ */
+public class EvaluationMetrics {
+	public enum Phase {
+		/** compiling the expression, usually a {@link PatternCache} hit */
+		COMPILE,
+		/** finding the matches */
+		SCAN,
+		/** finding the matches and building the replaced text */
+		REPLACE,
+		/** installing the match highlights */
+		HIGHLIGHT,
+		/** setting the text, then laying out and painting the text component */
+		RENDER;
+
+		String getName() {
+			return name().toLowerCase(Locale.ENGLISH);
+		}
+	}
+
+	private final String engineName;
+	private final long[] phaseNanos;
+	private final long charactersScanned;
+	private final long matchCount;
+	private final long allocatedBytes;
+
+	public EvaluationMetrics(String engineName, long[] phaseNanos, long charactersScanned, long matchCount,
+							 long allocatedBytes) {
+		if (phaseNanos.length != Phase.values().length)
+			throw new IllegalArgumentException("Expected a time per phase: "+ Arrays.toString(phaseNanos));
+
+		this.engineName = engineName;
+		this.phaseNanos = phaseNanos.clone();
+		this.charactersScanned = charactersScanned;
+		this.matchCount = matchCount;
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	/**
+	 * @return the engine that found the matches, or <code>null</code> if not known
+	 */
+	public String getEngineName() {
+		return engineName;
+	}
+
+	public long getNanos(Phase phase) {
+		return phaseNanos[phase.ordinal()];
+	}
+
+	public long getTotalNanos() {
+		long total = 0;
+		for (long nanos : phaseNanos)
+			total += nanos;
+
+		return total;
+	}
+
+	public long getCharactersScanned() {
+		return charactersScanned;
+	}
+
+	public long getMatchCount() {
+		return matchCount;
+	}
+
+	/**
+	 * @return the matches found per second of scanning or replacing, 0 if neither took measurable time
+	 */
+	public double getMatchesPerSecond() {
+		long nanos = getNanos(Phase.SCAN) + getNanos(Phase.REPLACE);
+		return nanos == 0 ? 0 : matchCount * 1e9 / nanos;
+	}
+
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * @return the phases that took time, then the amounts, like
+	 * <code>compile 0.0 ms, scan 12.3 ms, render 4.5 ms, 1048576 chars, 120 matches, 9756 matches/s, 1.2 MB</code>
+	 */
+	@Override
+	public String toString() {
+		StringBuilder summary = new StringBuilder();
+		for (Phase phase : Phase.values()) {
+			if (getNanos(phase) > 0)
+				summary.append(String.format(Locale.ENGLISH, "%s %.1f ms, ", phase.getName(), getNanos(phase) / 1e6));
+		}
+		summary.append(charactersScanned).append(" chars, ").append(matchCount).append(matchCount == 1 ? " match, " : " matches, ")
+				.append(Math.round(getMatchesPerSecond())).append(" matches/s");
+		if (allocatedBytes >= 0)
+			summary.append(String.format(Locale.ENGLISH, ", %.1f MB", allocatedBytes / 1e6));
+
+		return summary.toString();
+	}
+}
@@ -0,0 +1,76 @@
+package com.obsglobal.util.regex;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Collects the {@link EvaluationMetrics} of one evaluation as it runs, then publishes them to the
+ * {@link RegexMetrics#getSharedMetrics() shared metrics}.
+ * <p/>
+ * Each phase is timed between {@link #begin} and {@link #end} on one thread, and may be timed several times,
+ * adding up; different phases may run on different threads, one after the other.
+ */
+public class EvaluationRecorder {
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private final long[] phaseNanos = new long[EvaluationMetrics.Phase.values().length];
+	private final long[] phaseStarts = new long[phaseNanos.length];
+	private final long[] phaseStartBytes = new long[phaseNanos.length];
+	private String engineName = null;
+	private long charactersScanned = 0;
+	private long matchCount = 0;
+	private long allocatedBytes = 0;
+
+	public synchronized void begin(EvaluationMetrics.Phase phase) {
+		phaseStartBytes[phase.ordinal()] = getAllocatedBytes();
+		phaseStarts[phase.ordinal()] = System.nanoTime();
+	}
+
+	public synchronized void end(EvaluationMetrics.Phase phase) {
+		phaseNanos[phase.ordinal()] += System.nanoTime() - phaseStarts[phase.ordinal()];
+		long startBytes = phaseStartBytes[phase.ordinal()];
+		allocatedBytes = startBytes < 0 || allocatedBytes < 0 ? -1 : allocatedBytes + getAllocatedBytes() - startBytes;
+	}
+
+	public synchronized void setEngineName(String engineName) {
+		this.engineName = engineName;
+	}
+
+	public synchronized void addCharactersScanned(long characters) {
+		charactersScanned += characters;
+	}
+
+	public synchronized void addMatches(long matches) {
+		matchCount += matches;
+	}
+
+	/**
+	 * @return the metrics recorded so far, without publishing them
+	 */
+	public synchronized EvaluationMetrics getMetrics() {
+		return new EvaluationMetrics(engineName, phaseNanos, charactersScanned, matchCount, allocatedBytes);
+	}
+
+	/**
+	 * Publishes the metrics recorded to the shared metrics.
+	 */
+	public EvaluationMetrics finish() {
+		EvaluationMetrics metrics = getMetrics();
+		RegexMetrics.getSharedMetrics().record(metrics);
+		return metrics;
+	}
+
+	/**
+	 * @return the bytes allocated by the current thread so far, or -1 if the JVM does not count them
+	 */
+	static long getAllocatedBytes() {
+		if (!(THREADS instanceof com.sun.management.ThreadMXBean))
+			return -1;
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled())
+			return -1;
+
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -0,0 +1,341 @@
+package com.obsglobal.util.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Matches an expression compiled under every combination of the {@link RegexUtil#OPTIONS} that can change its
+ * matches, concurrently on a fixed pool of threads, and compares each result with that of the given flags.
+ * <p/>
+ * Options that cannot affect the expression, such as {@link Pattern#DOTALL} without a <code>.</code>, keep their
+ * given value, so an expression with few metacharacters is explored in a handful of combinations rather than 256.
+ * Patterns come from the shared {@link PatternCache}. Scan times are of concurrent scans, so they compare the
+ * combinations with each other rather than with a scan alone.
+ */
+public class FlagExplorer {
+	public static final int MAX_COMBINATIONS = 1 << RegexUtil.OPTIONS.length;
+
+	public interface Visitor {
+		/**
+		 * Called on the pool threads as each combination is done, in no particular order.
+		 *
+		 * @return <code>false</code> to stop exploring
+		 */
+		boolean visitResult(Result result);
+	}
+
+	/**
+	 * The matches of one combination of options, with how they differ from those of the given flags.
+	 */
+	public static final class Result {
+		private final int flags;
+		private final int matchCount, added, removed;
+		private final long scanNanos, digest;
+		private final String error;
+
+		Result(int flags, int matchCount, int added, int removed, long scanNanos, long digest, String error) {
+			this.flags = flags;
+			this.matchCount = matchCount;
+			this.added = added;
+			this.removed = removed;
+			this.scanNanos = scanNanos;
+			this.digest = digest;
+			this.error = error;
+		}
+
+		public int getFlags() {
+			return flags;
+		}
+
+		/**
+		 * @return the number of matches, or -1 if the expression failed to compile or match
+		 */
+		public int getMatchCount() {
+			return matchCount;
+		}
+
+		/**
+		 * @return the number of matches not found with the given flags, or -1 if either failed
+		 */
+		public int getAdded() {
+			return added;
+		}
+
+		/**
+		 * @return the number of matches with the given flags not found by this combination, or -1 if either failed
+		 */
+		public int getRemoved() {
+			return removed;
+		}
+
+		public long getScanNanos() {
+			return scanNanos;
+		}
+
+		/**
+		 * @return a hash of the match offsets, equal for combinations finding the same matches
+		 */
+		public long getDigest() {
+			return digest;
+		}
+
+		/**
+		 * @return why the expression failed to compile or match, or <code>null</code>
+		 */
+		public String getError() {
+			return error;
+		}
+
+		public boolean isSameAsGiven() {
+			return added == 0 && removed == 0;
+		}
+
+		@Override
+		public String toString() {
+			return "["+ RegexUtil.formatOptions(flags) +"] "+ (error != null ? error
+					: matchCount +" matches, +"+ added +" -"+ removed +", "+ scanNanos / 1000 +" us");
+		}
+	}
+
+	private final String expression;
+	private final int flags;
+	private final int threadCount;
+	private long timeBudgetMillis = 0;
+	private volatile boolean stopped = false;
+
+	/**
+	 * @param flags the flags the other combinations are compared with
+	 */
+	public FlagExplorer(String expression, int flags) {
+		this(expression, flags, Runtime.getRuntime().availableProcessors());
+	}
+
+	public FlagExplorer(String expression, int flags, int threadCount) {
+		if (threadCount < 1)
+			throw new IllegalArgumentException("Thread count must be positive: "+ threadCount);
+
+		this.expression = expression;
+		this.flags = flags;
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * Abandons a combination once its scan takes longer than this, reporting it as failed; zero or less for no limit.
+	 */
+	public void setTimeBudgetMillis(long timeBudgetMillis) {
+		this.timeBudgetMillis = timeBudgetMillis;
+	}
+
+	/**
+	 * @return the options that may change the matches of the given expression over the given input: a
+	 * conservative reading of the expression text, so an option is only left out when it cannot matter
+	 */
+	public static int getRelevantOptions(String expression, CharSequence input) {
+		boolean letters = false, nonAscii = false, dot = false, anchors = false, comments = false, meta = false;
+		boolean classes = false, inputEnd = false;
+		for (int index = 0; index < expression.length(); index++) {
+			char c = expression.charAt(index);
+			inputEnd |= c == '\\' && index + 1 < expression.length() && expression.charAt(index + 1) == 'Z';
+			letters |= Character.isLetter(c) || c == '\\';	// escapes include back references
+			nonAscii |= c > 0x7F;
+			dot |= c == '.';
+			classes |= c == '[' || c == '\\';
+			anchors |= c == '^' || c == '$';
+			comments |= Character.isWhitespace(c) || c == '#';
+			meta |= "\\^$.|?*+()[]{}#".indexOf(c) >= 0 || Character.isWhitespace(c);
+		}
+
+		int options = 0;
+		// \Z, like $, ends before a final line terminator, which is only \n in UNIX_LINES mode
+		if (dot || anchors || inputEnd)
+			options |= Pattern.UNIX_LINES;
+		if (letters)
+			options |= Pattern.CASE_INSENSITIVE;
+		if (comments)
+			options |= Pattern.COMMENTS;
+		if (anchors)
+			options |= Pattern.MULTILINE;
+		if (meta)
+			options |= Pattern.LITERAL;
+		if (dot)
+			options |= Pattern.DOTALL;
+		boolean nonAsciiInput = hasNonAscii(input);
+		if (letters && (nonAscii || nonAsciiInput))
+			options |= Pattern.UNICODE_CASE;
+		// canonical equivalence changes how classes step over the input, even over plain ASCII
+		if (nonAscii || nonAsciiInput || classes)
+			options |= Pattern.CANON_EQ;
+
+		return options;
+	}
+
+	/**
+	 * @return the flags of every combination explored, those given first
+	 */
+	public List<Integer> getCombinations(CharSequence input) {
+		int relevant = getRelevantOptions(expression, input);
+		List<Integer> options = new ArrayList<Integer>();
+		for (int option : RegexUtil.OPTIONS) {
+			if ((relevant & option) != 0)
+				options.add(option);
+		}
+
+		List<Integer> combinations = new ArrayList<Integer>(1 << options.size());
+		combinations.add(flags);
+		for (int subset = 0; subset < 1 << options.size(); subset++) {
+			int combination = flags & ~relevant;
+			for (int index = 0; index < options.size(); index++) {
+				if ((subset & (1 << index)) != 0)
+					combination |= options.get(index);
+			}
+			if (combination != flags)
+				combinations.add(combination);
+		}
+
+		return combinations;
+	}
+
+	/**
+	 * Matches every combination, until done, the visitor stops it or the calling thread is interrupted.
+	 *
+	 * @return the results, in the order of {@link #getCombinations(CharSequence)}, without those not run
+	 */
+	public List<Result> explore(final CharSequence input, final Visitor visitor) throws InterruptedException {
+		stopped = false;
+		List<Integer> combinations = getCombinations(input);
+		// the matches of the given flags, which every other combination is compared with
+		final MatchOffsets[] given = new MatchOffsets[1];
+		Result givenResult = match(flags, input, null, given);
+		if (!visitor.visitResult(givenResult))
+			stopped = true;
+
+		final ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "explore-"+ threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		List<Result> results = new ArrayList<Result>(combinations.size());
+		results.add(givenResult);
+		try {
+			List<Future<Result>> pending = new ArrayList<Future<Result>>(combinations.size());
+			for (final Integer combination : combinations.subList(1, combinations.size())) {
+				pending.add(executor.submit(new Callable<Result>() {
+					@Override
+					public Result call() {
+						if (stopped)
+							return null;
+
+						Result result = match(combination, input, given[0], null);
+						if (!stopped && !visitor.visitResult(result))
+							stopped = true;
+						return result;
+					}
+				}));
+			}
+
+			for (Future<Result> result : pending) {
+				if (result.get() != null)
+					results.add(result.get());
+			}
+		}
+		catch (ExecutionException ex) {
+			throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause()
+					: new IllegalStateException(ex.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		return results;
+	}
+
+	/**
+	 * @param given the matches to compare with, or <code>null</code> if there are none
+	 * @param matches receives the matches, if not <code>null</code>
+	 */
+	private Result match(int combination, CharSequence input, MatchOffsets given, MatchOffsets[] matches) {
+		Pattern pattern;
+		try {
+			pattern = RegexUtil.compile(expression, combination);
+		}
+		catch (IllegalArgumentException ex) {
+			return new Result(combination, -1, -1, -1, 0, 0, ex.getMessage());
+		}
+
+		MatchOffsets offsets;
+		long start = System.nanoTime();
+		try {
+			// created on this thread, so shutting the pool down stops a runaway matcher
+			offsets = RegexUtil.findAllMatchOffsets(pattern, new InterruptibleCharSequence(input, timeBudgetMillis));
+		}
+		catch (MatchInterruptedException ex) {
+			if (!ex.isTimedOut())
+				throw ex;
+			return new Result(combination, -1, -1, -1, System.nanoTime() - start, 0, ex.getMessage());
+		}
+		long scanNanos = System.nanoTime() - start;
+
+		if (matches != null) {
+			matches[0] = offsets;
+			given = offsets;	// the given flags, the same as themselves
+		}
+		int common = given == null ? -1 : countCommon(offsets, given);
+		return new Result(combination, offsets.size(), common < 0 ? -1 : offsets.size() - common,
+				common < 0 ? -1 : given.size() - common, scanNanos, digest(offsets), null);
+	}
+
+	/**
+	 * @return the number of spans in both of the given ordered lists
+	 */
+	static int countCommon(MatchOffsets first, MatchOffsets second) {
+		int common = 0;
+		for (int index = 0, other = 0; index < first.size() && other < second.size(); ) {
+			long key = (long) first.start(index) << 32 | first.end(index);
+			long otherKey = (long) second.start(other) << 32 | second.end(other);
+			if (key == otherKey) {
+				++common;
+				++index;
+				++other;
+			}
+			else if (key < otherKey)
+				++index;
+			else
+				++other;
+		}
+
+		return common;
+	}
+
+	private static long digest(MatchOffsets offsets) {
+		long digest = offsets.size();
+		for (int index = 0; index < offsets.size(); index++)
+			digest = (digest * 31 + offsets.start(index)) * 31 + offsets.end(index);
+
+		return digest;
+	}
+
+	private static boolean hasNonAscii(CharSequence input) {
+		if (input instanceof PieceTable && !((PieceTable) input).isLatin1())
+			return true;
+
+		for (int index = 0; index < input.length(); index++) {
+			if (input.charAt(index) > 0x7F)
+				return true;
+		}
+
+		return false;
+	}
+}
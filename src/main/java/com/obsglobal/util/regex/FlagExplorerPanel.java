@@ -0,0 +1,289 @@
+package com.obsglobal.util.regex;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs a {@link FlagExplorer} for the editor and lists the match count, scan time and differences of each
+ * combination of options as it is done. Double-clicking a combination selects its options in the editor.
+ */
+public class FlagExplorerPanel extends JPanel {
+	private final RegexEditor editor;
+	private final ResultTableModel model = new ResultTableModel();
+	private final JTable table;
+	private final JLabel statusLabel;
+	private final JButton cancelButton;
+	private ExploreWorker currentExploration = null;
+
+	public FlagExplorerPanel(RegexEditor editor) {
+		super(new BorderLayout(5, 5));
+		this.editor = editor;
+
+		JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 5));
+		cancelButton = new JButton("Cancel");
+		cancelButton.setName("button-cancelExplore");
+		cancelButton.setEnabled(false);
+		cancelButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				cancel();
+			}
+		});
+		JButton hideButton = new JButton("Hide");
+		hideButton.setName("button-hideExplore");
+		hideButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				cancel();
+				setVisible(false);
+				getParent().revalidate();
+			}
+		});
+		statusLabel = new JLabel("");
+		statusLabel.setName("label-exploreStatus");
+		controlPanel.add(cancelButton);
+		controlPanel.add(hideButton);
+		controlPanel.add(Box.createHorizontalStrut(25));
+		controlPanel.add(statusLabel);
+
+		table = new JTable(model);
+		table.setName("table-explore");
+		table.setAutoCreateRowSorter(true);
+		table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		table.setToolTipText("Double-click a combination to select its options");
+		table.getColumnModel().getColumn(0).setPreferredWidth(300);
+		table.getColumnModel().getColumn(5).setPreferredWidth(300);
+		table.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if (e.getClickCount() == 2)
+					selectOptions();
+			}
+		});
+		JScrollPane scrollPane = new JScrollPane(table);
+		scrollPane.setPreferredSize(new Dimension(800, 200));
+
+		add(controlPanel, BorderLayout.NORTH);
+		add(scrollPane, BorderLayout.CENTER);
+	}
+
+	/**
+	 * Cancels any running exploration and starts exploring the options of the given expression in the background.
+	 *
+	 * @param flags the options selected, which the others are compared with
+	 */
+	public void explore(String expression, int flags, CharSequence input, long timeBudgetMillis) {
+		cancel();
+		model.clear();
+		FlagExplorer explorer = new FlagExplorer(expression, flags);
+		explorer.setTimeBudgetMillis(timeBudgetMillis);
+		currentExploration = new ExploreWorker(explorer, input, explorer.getCombinations(input).size());
+		cancelButton.setEnabled(true);
+		statusLabel.setForeground(Color.darkGray);
+		statusLabel.setText("Exploring "+ currentExploration.combinationCount +" combinations...");
+		currentExploration.execute();
+	}
+
+	public void cancel() {
+		if (currentExploration != null)
+			currentExploration.cancel(true);
+	}
+
+	/**
+	 * @return <code>true</code> while an exploration is running or its last results are not yet listed
+	 */
+	public boolean isExploring() {
+		return currentExploration != null;
+	}
+
+	/**
+	 * @return the results listed, in the order they were done
+	 */
+	public List<FlagExplorer.Result> getResults() {
+		return new ArrayList<FlagExplorer.Result>(model.results);
+	}
+
+	protected void selectOptions() {
+		int row = table.getSelectedRow();
+		if (row >= 0)
+			editor.selectPatternOptions(model.results.get(table.convertRowIndexToModel(row)).getFlags());
+	}
+
+	private class ExploreWorker extends SwingWorker<List<FlagExplorer.Result>, FlagExplorer.Result> {
+		private final FlagExplorer explorer;
+		private final CharSequence input;
+		private final int combinationCount;
+
+		ExploreWorker(FlagExplorer explorer, CharSequence input, int combinationCount) {
+			this.explorer = explorer;
+			this.input = input;
+			this.combinationCount = combinationCount;
+		}
+
+		@Override
+		protected List<FlagExplorer.Result> doInBackground() throws Exception {
+			return explorer.explore(input, new FlagExplorer.Visitor() {
+				@Override
+				public boolean visitResult(FlagExplorer.Result result) {
+					publish(result);
+					return !isCancelled();
+				}
+			});
+		}
+
+		@Override
+		protected void process(List<FlagExplorer.Result> results) {
+			if (currentExploration == this)
+				model.addResults(results);
+		}
+
+		@Override
+		protected void done() {
+			if (currentExploration != this)
+				return;	// superseded by a newer exploration
+
+			currentExploration = null;
+			cancelButton.setEnabled(false);
+			try {
+				List<FlagExplorer.Result> results = get();
+				model.setResults(results);
+				statusLabel.setForeground(Color.green.darker());
+				statusLabel.setText(describe(results));
+			}
+			catch (CancellationException ex) {
+				statusLabel.setForeground(Color.red);
+				statusLabel.setText("CANCELLED - Explored "+ model.getRowCount() +" of "+ combinationCount +" combinations");
+			}
+			catch (ExecutionException ex) {
+				statusLabel.setForeground(Color.red);
+				statusLabel.setText("ERROR - Failed to explore: "+ ex.getCause().getMessage());
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * @return the number of combinations and distinct results, and the fastest finding the same matches
+		 */
+		String describe(List<FlagExplorer.Result> results) {
+			FlagExplorer.Result given = results.get(0), fastest = null;
+			List<Long> digests = new ArrayList<Long>();
+			for (FlagExplorer.Result result : results) {
+				if (result.getError() != null)
+					continue;
+				if (!digests.contains(result.getDigest()))
+					digests.add(result.getDigest());
+				if (result.isSameAsGiven() && (fastest == null || result.getScanNanos() < fastest.getScanNanos()))
+					fastest = result;
+			}
+
+			String description = results.size() +" combinations, "+ digests.size() +" distinct results";
+			if (given.getError() == null && fastest != null)
+				description += String.format(", fastest with the same matches [%s] %.2f ms",
+						format(fastest.getFlags()), fastest.getScanNanos() / 1e6);
+			return description;
+		}
+	}
+
+	static String format(int flags) {
+		return flags == 0 ? "none" : RegexUtil.formatOptions(flags);
+	}
+
+	private static class ResultTableModel extends AbstractTableModel {
+		private static final String[] COLUMN_NAMES = { "Options", "Matches", "Scan (ms)", "Added", "Removed", "Same As" };
+
+		private final List<FlagExplorer.Result> results = new ArrayList<FlagExplorer.Result>();
+		private final Map<Long, Integer> firstFlags = new HashMap<Long, Integer>();
+
+		void addResults(List<FlagExplorer.Result> newResults) {
+			int firstRow = results.size();
+			results.addAll(newResults);
+			if (results.size() > firstRow)
+				fireTableRowsInserted(firstRow, results.size() - 1);
+		}
+
+		/**
+		 * Lists the final results in the order they were explored, so that each names the first combination
+		 * finding the same matches.
+		 */
+		void setResults(List<FlagExplorer.Result> finalResults) {
+			results.clear();
+			results.addAll(finalResults);
+			firstFlags.clear();
+			for (FlagExplorer.Result result : results) {
+				if (result.getError() == null && !firstFlags.containsKey(result.getDigest()))
+					firstFlags.put(result.getDigest(), result.getFlags());
+			}
+			fireTableDataChanged();
+		}
+
+		void clear() {
+			results.clear();
+			firstFlags.clear();
+			fireTableDataChanged();
+		}
+
+		@Override
+		public int getRowCount() {
+			return results.size();
+		}
+
+		@Override
+		public int getColumnCount() {
+			return COLUMN_NAMES.length;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return COLUMN_NAMES[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int column) {
+			switch (column) {
+				case 1:
+				case 3:
+				case 4:
+					return Integer.class;
+				case 2:
+					return Double.class;
+				default:
+					return String.class;
+			}
+		}
+
+		@Override
+		public Object getValueAt(int row, int column) {
+			FlagExplorer.Result result = results.get(row);
+			switch (column) {
+				case 0:
+					return format(result.getFlags());
+				case 1:
+					return result.getError() != null ? null : result.getMatchCount();
+				case 2:
+					return result.getError() != null ? null : Math.round(result.getScanNanos() / 1e4) / 100.0;
+				case 3:
+					return result.getAdded() < 0 ? null : result.getAdded();
+				case 4:
+					return result.getRemoved() < 0 ? null : result.getRemoved();
+				default:
+					if (result.getError() != null)
+						return result.getError().split("\n")[0];
+					Integer first = firstFlags.get(result.getDigest());
+					return first == null || first == result.getFlags() ? "" : format(first);
+			}
+		}
+	}
+}
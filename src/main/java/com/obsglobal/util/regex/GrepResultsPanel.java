@@ -0,0 +1,274 @@
+package com.obsglobal.util.regex;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Runs a {@link DirectoryGrep} for the editor and lists the matches as they are found, with the search throughput.
+ * Double-clicking a match opens its file in the editor.
+ */
+public class GrepResultsPanel extends JPanel {
+	static final int MAX_ROWS = 100000;
+	static final String DEFAULT_EXCLUDES = ".git,.svn,.hg";
+
+	private final RegexEditor editor;
+	private final HitTableModel model = new HitTableModel();
+	private final JTable table;
+	private final JTextField includeField, excludeField;
+	private final JLabel statusLabel;
+	private final JButton cancelButton;
+	private final Timer progressTimer;
+	private GrepWorker currentSearch = null;
+
+	public GrepResultsPanel(RegexEditor editor) {
+		super(new BorderLayout(5, 5));
+		this.editor = editor;
+
+		JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 5));
+		includeField = new JTextField("", 15);
+		includeField.setName("textField-include");
+		includeField.setToolTipText("Only search files matching one of these comma separated globs, e.g. *.log,*.txt");
+		excludeField = new JTextField(DEFAULT_EXCLUDES, 15);
+		excludeField.setName("textField-exclude");
+		excludeField.setToolTipText("Skip files and directories matching one of these comma separated globs");
+		cancelButton = new JButton("Cancel");
+		cancelButton.setName("button-cancelGrep");
+		cancelButton.setEnabled(false);
+		cancelButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				cancel();
+			}
+		});
+		JButton hideButton = new JButton("Hide");
+		hideButton.setName("button-hideGrep");
+		hideButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				cancel();
+				setVisible(false);
+				getParent().revalidate();
+			}
+		});
+		statusLabel = new JLabel("");
+		statusLabel.setName("label-grepStatus");
+		controlPanel.add(new JLabel("Include:"));
+		controlPanel.add(includeField);
+		controlPanel.add(new JLabel("Exclude:"));
+		controlPanel.add(excludeField);
+		controlPanel.add(cancelButton);
+		controlPanel.add(hideButton);
+		controlPanel.add(Box.createHorizontalStrut(25));
+		controlPanel.add(statusLabel);
+
+		table = new JTable(model);
+		table.setName("table-grep");
+		table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		table.getColumnModel().getColumn(0).setPreferredWidth(300);
+		table.getColumnModel().getColumn(3).setPreferredWidth(400);
+		table.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if (e.getClickCount() == 2)
+					openSelectedHit();
+			}
+		});
+		JScrollPane scrollPane = new JScrollPane(table);
+		scrollPane.setPreferredSize(new Dimension(800, 200));
+
+		progressTimer = new Timer(250, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				postProgress();
+			}
+		});
+
+		add(controlPanel, BorderLayout.NORTH);
+		add(scrollPane, BorderLayout.CENTER);
+	}
+
+	/**
+	 * Cancels any running search and starts searching the given directory in the background.
+	 */
+	public void search(Path directory, Pattern pattern) {
+		cancel();
+		model.clear();
+		DirectoryGrep grep = new DirectoryGrep(pattern);
+		grep.setIncludes(includeField.getText());
+		grep.setExcludes(excludeField.getText());
+		currentSearch = new GrepWorker(grep, directory);
+		cancelButton.setEnabled(true);
+		statusLabel.setForeground(Color.darkGray);
+		statusLabel.setText("Searching "+ directory +"...");
+		progressTimer.restart();
+		currentSearch.execute();
+	}
+
+	public void cancel() {
+		if (currentSearch != null)
+			currentSearch.cancel(true);
+	}
+
+	/**
+	 * @return <code>true</code> while a search is running or its last matches are not yet listed
+	 */
+	public boolean isSearching() {
+		return currentSearch != null;
+	}
+
+	/**
+	 * @return the matches listed, at most {@link #MAX_ROWS}
+	 */
+	public List<DirectoryGrep.Hit> getHits() {
+		return new ArrayList<DirectoryGrep.Hit>(model.hits);
+	}
+
+	protected void openSelectedHit() {
+		int row = table.getSelectedRow();
+		if (row >= 0)
+			editor.openHit(model.hits.get(table.convertRowIndexToModel(row)));
+	}
+
+	protected void postProgress() {
+		GrepWorker search = currentSearch;
+		if (search != null)
+			statusLabel.setText(search.describeProgress());
+	}
+
+	private class GrepWorker extends SwingWorker<Long, DirectoryGrep.Hit> {
+		private final DirectoryGrep grep;
+		private final Path directory;
+		private final long startTime = System.nanoTime();
+		private final AtomicInteger published = new AtomicInteger();
+
+		GrepWorker(DirectoryGrep grep, Path directory) {
+			this.grep = grep;
+			this.directory = directory;
+		}
+
+		@Override
+		protected Long doInBackground() throws Exception {
+			return grep.grep(directory, new DirectoryGrep.Visitor() {
+				@Override
+				public boolean visitHit(DirectoryGrep.Hit hit) {
+					if (published.getAndIncrement() < MAX_ROWS)
+						publish(hit);
+					return !isCancelled();
+				}
+			});
+		}
+
+		@Override
+		protected void process(List<DirectoryGrep.Hit> hits) {
+			if (currentSearch == this)
+				model.addHits(hits, directory);
+		}
+
+		@Override
+		protected void done() {
+			if (currentSearch != this)
+				return;	// superseded by a newer search
+
+			currentSearch = null;
+			progressTimer.stop();
+			cancelButton.setEnabled(false);
+			try {
+				get();
+				statusLabel.setForeground(Color.green.darker());
+				statusLabel.setText(describeProgress());
+			}
+			catch (CancellationException ex) {
+				statusLabel.setForeground(Color.red);
+				statusLabel.setText("CANCELLED - "+ describeProgress());
+			}
+			catch (ExecutionException ex) {
+				statusLabel.setForeground(Color.red);
+				statusLabel.setText("ERROR - Failed to search: "+ ex.getCause().getMessage());
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		String describeProgress() {
+			double seconds = Math.max(1e-3, (System.nanoTime() - startTime) / 1e9);
+			long matches = grep.getMatchCount();
+			return String.format("%d %s in %d files (%d skipped), %.1f MB/s%s", matches,
+					matches == 1 ? "match" : "matches", grep.getFilesScanned(), grep.getFilesSkipped(),
+					grep.getBytesScanned() / seconds / (1 << 20), matches > MAX_ROWS ? ", first "+ MAX_ROWS +" listed" : "");
+		}
+	}
+
+	private static class HitTableModel extends AbstractTableModel {
+		private static final String[] COLUMN_NAMES = { "File", "Line", "Column", "Match" };
+
+		private final List<DirectoryGrep.Hit> hits = new ArrayList<DirectoryGrep.Hit>();
+		private final List<String> names = new ArrayList<String>();
+
+		void addHits(List<DirectoryGrep.Hit> newHits, Path directory) {
+			int firstRow = hits.size();
+			for (DirectoryGrep.Hit hit : newHits) {
+				if (hits.size() >= MAX_ROWS)
+					break;
+
+				hits.add(hit);
+				names.add(directory.relativize(hit.getFile()).toString());
+			}
+			if (hits.size() > firstRow)
+				fireTableRowsInserted(firstRow, hits.size() - 1);
+		}
+
+		void clear() {
+			hits.clear();
+			names.clear();
+			fireTableDataChanged();
+		}
+
+		@Override
+		public int getRowCount() {
+			return hits.size();
+		}
+
+		@Override
+		public int getColumnCount() {
+			return COLUMN_NAMES.length;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return COLUMN_NAMES[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int column) {
+			return column == 1 || column == 2 ? Integer.class : String.class;
+		}
+
+		@Override
+		public Object getValueAt(int row, int column) {
+			DirectoryGrep.Hit hit = hits.get(row);
+			switch (column) {
+				case 0:
+					return names.get(row);
+				case 1:
+					return hit.getLine();
+				case 2:
+					return hit.getColumn();
+				default:
+					return hit.getText();
+			}
+		}
+	}
+}
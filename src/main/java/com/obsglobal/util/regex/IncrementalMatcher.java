@@ -0,0 +1,92 @@
+package com.obsglobal.util.regex;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps a pattern's match offsets up to date as the input is edited, without rescanning all of it.
+ * <p/>
+ * For patterns that cannot match across lines (see {@link ParallelMatcher#isLineBounded(Pattern)}) an edit can
+ * only change matches on the lines it touches. Those lines, plus one line either side as a safety margin, are
+ * rescanned with transparent bounds, and the offsets of later matches are shifted by the edit's length change.
+ * Any other pattern falls back to a full scan.
+ */
+public class IncrementalMatcher {
+	private final Pattern pattern;
+	private final boolean incremental;
+
+	public IncrementalMatcher(Pattern pattern) {
+		this.pattern = pattern;
+		this.incremental = !pattern.pattern().contains("\\G") && ParallelMatcher.isLineBounded(pattern);
+	}
+
+	public Pattern getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * @return <code>false</code> if every update rescans the full input
+	 */
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * Updates offsets found before an edit to match the edited input.
+	 *
+	 * @param offsets the matches before the edit, updated in place
+	 * @param input the input after the edit
+	 * @param editOffset where the edit happened
+	 * @param removedLength the number of characters removed at that offset
+	 * @param insertedLength the number of characters inserted in their place
+	 * @return the number of characters rescanned
+	 */
+	public int update(MatchOffsets offsets, CharSequence input, int editOffset, int removedLength, int insertedLength) {
+		if (!incremental) {
+			offsets.replace(0, offsets.size(), RegexUtil.findAllMatchOffsets(pattern, input), 0);
+			return input.length();
+		}
+
+		int windowStart = lineStart(input, Math.max(0, lineStart(input, editOffset) - 1));
+		int windowEnd = lineEnd(input, lineEnd(input, editOffset + insertedLength));
+		int oldWindowEnd = windowEnd - insertedLength + removedLength;
+
+		MatchOffsets rescanned = new MatchOffsets();
+		Matcher matcher = pattern.matcher(input);
+		matcher.useTransparentBounds(true);
+		matcher.useAnchoringBounds(false);
+		matcher.region(windowStart, windowEnd);
+		boolean atEnd = windowEnd == input.length();
+		while (matcher.find() && (matcher.start() < windowEnd || atEnd))
+			rescanned.add(matcher.start(), matcher.end());
+
+		int fromIndex = offsets.searchStart(windowStart);
+		int toIndex = atEnd ? offsets.size() : offsets.searchStart(oldWindowEnd);
+		offsets.replace(fromIndex, toIndex, rescanned, insertedLength - removedLength);
+		return windowEnd - windowStart;
+	}
+
+	/**
+	 * @return the start of the line containing the given offset
+	 */
+	static int lineStart(CharSequence input, int offset) {
+		int index = Math.min(offset, input.length());
+		while (index > 0 && input.charAt(index - 1) != '\n')
+			--index;
+
+		return index;
+	}
+
+	/**
+	 * @return the offset just past the line feed ending the line containing the given offset, or the input length
+	 */
+	static int lineEnd(CharSequence input, int offset) {
+		int index = offset;
+		while (index < input.length()) {
+			if (input.charAt(index++) == '\n')
+				return index;
+		}
+
+		return input.length();
+	}
+}
@@ -0,0 +1,72 @@
+package com.obsglobal.util.regex;
+
+/**
+ * {@link CharSequence} wrapper that lets a runaway {@link java.util.regex.Matcher} be stopped.
+ * <p/>
+ * Every few thousand character reads it checks whether the thread that created it was interrupted or the optional
+ * time budget has elapsed, and if so throws a {@link MatchInterruptedException}. Checking the creating thread,
+ * rather than the reading one, lets matchers running on pool threads be stopped by interrupting their caller.
+ */
+public class InterruptibleCharSequence implements CharSequence {
+	private static final int CHECK_MASK = (1 << 12) - 1;
+
+	private final CharSequence delegate;
+	private final Thread owner;
+	private final long deadline;
+	private final boolean timeLimited;
+	private int reads = 0;
+
+	public InterruptibleCharSequence(CharSequence delegate) {
+		this(delegate, 0);
+	}
+
+	/**
+	 * @param timeoutMillis the time budget, starting now; zero or less for no limit
+	 */
+	public InterruptibleCharSequence(CharSequence delegate, long timeoutMillis) {
+		if (delegate == null)
+			throw new NullPointerException("delegate");
+
+		this.delegate = delegate;
+		this.owner = Thread.currentThread();
+		this.timeLimited = timeoutMillis > 0;
+		this.deadline = System.nanoTime() + timeoutMillis * 1000000L;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if ((++reads & CHECK_MASK) == 0)
+			checkInterrupted();
+
+		return delegate.charAt(index);
+	}
+
+	@Override
+	public int length() {
+		return delegate.length();
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return delegate.subSequence(start, end);
+	}
+
+	@Override
+	public String toString() {
+		return delegate.toString();
+	}
+
+	/**
+	 * @return the wrapped sequence, for reads that need no checks, such as copying it
+	 */
+	public CharSequence getDelegate() {
+		return delegate;
+	}
+
+	public void checkInterrupted() {
+		if (owner.isInterrupted())
+			throw new MatchInterruptedException("Matching was interrupted", false);
+		if (timeLimited && System.nanoTime() - deadline > 0)
+			throw new MatchInterruptedException("Matching exceeded its time budget", true);
+	}
+}
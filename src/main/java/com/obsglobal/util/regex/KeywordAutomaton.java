@@ -0,0 +1,204 @@
+package com.obsglobal.util.regex;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton finding every occurrence of a set of keywords in a single pass.
+ * <p/>
+ * Keywords are added first; the automaton is built on the first search. Transitions on ASCII characters are
+ * precomputed into a table, others follow failure links. In case-insensitive mode ASCII letters are compared
+ * ignoring case.
+ */
+public class KeywordAutomaton {
+	/** the state before any input */
+	public static final int START = 0;
+
+	private static final int ASCII = 128;
+	private static final int[] NO_KEYWORDS = new int[0];
+
+	/**
+	 * Receives keyword occurrences, in order of their end offsets.
+	 */
+	public interface Visitor {
+		/**
+		 * @return <code>false</code> to stop searching
+		 */
+		boolean visitKeyword(int keyword, int start, int end);
+	}
+
+	private final boolean caseInsensitive;
+	private final List<String> keywords = new ArrayList<String>();
+	private final List<Map<Character, Integer>> children = new ArrayList<Map<Character, Integer>>();
+	private final List<int[]> stateKeywords = new ArrayList<int[]>();
+	private int[] asciiTransitions, failures;
+	private volatile int[][] outputs;
+
+	public KeywordAutomaton(boolean caseInsensitive) {
+		this.caseInsensitive = caseInsensitive;
+		addState();
+	}
+
+	public boolean isCaseInsensitive() {
+		return caseInsensitive;
+	}
+
+	/**
+	 * @return the index of the added keyword
+	 * @throws IllegalStateException if the automaton has been searched with already
+	 */
+	public int add(String keyword) {
+		if (outputs != null)
+			throw new IllegalStateException("Keywords cannot be added after searching");
+		if (keyword.isEmpty())
+			throw new IllegalArgumentException("Empty keyword");
+
+		int state = START;
+		for (int index = 0; index < keyword.length(); index++) {
+			char c = fold(keyword.charAt(index));
+			Integer next = children.get(state).get(c);
+			if (next == null) {
+				next = addState();
+				children.get(state).put(c, next);
+			}
+			state = next;
+		}
+
+		int keywordIndex = keywords.size();
+		keywords.add(keyword);
+		int[] existing = stateKeywords.get(state);
+		int[] added = Arrays.copyOf(existing, existing.length + 1);
+		added[existing.length] = keywordIndex;
+		stateKeywords.set(state, added);
+		return keywordIndex;
+	}
+
+	public int getKeywordCount() {
+		return keywords.size();
+	}
+
+	public String getKeyword(int keyword) {
+		return keywords.get(keyword);
+	}
+
+	/**
+	 * @return the state after reading the given character in the given state
+	 */
+	public int step(int state, char c) {
+		if (outputs == null)
+			build();
+
+		if (c < ASCII)
+			return asciiTransitions[state * ASCII + fold(c)];
+
+		while (true) {
+			Integer next = children.get(state).get(c);
+			if (next != null)
+				return next;
+			if (state == START)
+				return START;
+			state = failures[state];
+		}
+	}
+
+	/**
+	 * @return the keywords ending in the given state
+	 */
+	public int[] getKeywords(int state) {
+		if (outputs == null)
+			build();
+
+		return outputs[state];
+	}
+
+	/**
+	 * Reports every keyword occurrence within the given range of the input.
+	 *
+	 * @return the number of occurrences reported
+	 */
+	public int visitKeywords(CharSequence input, int from, int to, Visitor visitor) {
+		int count = 0;
+		int state = START;
+		for (int index = from; index < to; index++) {
+			state = step(state, input.charAt(index));
+			for (int keyword : outputs[state]) {
+				++count;
+				if (!visitor.visitKeyword(keyword, index + 1 - keywords.get(keyword).length(), index + 1))
+					return count;
+			}
+		}
+
+		return count;
+	}
+
+	private int addState() {
+		children.add(new HashMap<Character, Integer>(4));
+		stateKeywords.add(NO_KEYWORDS);
+		return children.size() - 1;
+	}
+
+	private char fold(char c) {
+		return caseInsensitive && c >= 'A' && c <= 'Z' ? (char) (c + 'a' - 'A') : c;
+	}
+
+	private synchronized void build() {
+		if (outputs != null)
+			return;
+
+		int stateCount = children.size();
+		int[] transitions = new int[stateCount * ASCII];
+		int[] failureLinks = new int[stateCount];
+		int[][] stateOutputs = new int[stateCount][];
+		stateOutputs[START] = stateKeywords.get(START);
+
+		// breadth first, so failure states are complete before the states that link to them
+		Queue<Integer> queue = new ArrayDeque<Integer>();
+		for (char c = 0; c < ASCII; c++) {
+			Integer next = children.get(START).get(c);
+			transitions[c] = next == null ? START : next;
+		}
+		for (Integer child : children.get(START).values()) {
+			failureLinks[child] = START;
+			queue.add(child);
+		}
+
+		while (!queue.isEmpty()) {
+			int state = queue.remove();
+			int[] own = stateKeywords.get(state), inherited = stateOutputs[failureLinks[state]];
+			int[] combined = Arrays.copyOf(own, own.length + inherited.length);
+			System.arraycopy(inherited, 0, combined, own.length, inherited.length);
+			stateOutputs[state] = combined;
+
+			for (char c = 0; c < ASCII; c++) {
+				Integer next = children.get(state).get(c);
+				transitions[state * ASCII + c] = next == null ? transitions[failureLinks[state] * ASCII + c] : next;
+			}
+			for (Map.Entry<Character, Integer> child : children.get(state).entrySet()) {
+				failureLinks[child.getValue()] = child.getKey() < ASCII
+						? transitions[failureLinks[state] * ASCII + child.getKey()]
+						: stepNonAscii(failureLinks, failureLinks[state], child.getKey());
+				queue.add(child.getValue());
+			}
+		}
+
+		asciiTransitions = transitions;
+		failures = failureLinks;
+		outputs = stateOutputs;
+	}
+
+	private int stepNonAscii(int[] failureLinks, int state, char c) {
+		while (true) {
+			Integer next = children.get(state).get(c);
+			if (next != null)
+				return next;
+			if (state == START)
+				return START;
+			state = failureLinks[state];
+		}
+	}
+}
@@ -0,0 +1,287 @@
+package com.obsglobal.util.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deterministic automaton built lazily from an {@link AutomatonProgram}, one state and transition at a time.
+ * <p/>
+ * A state is the ordered list of NFA instructions that threads are waiting at, highest priority first, plus whether
+ * new threads are still being started at every position. Stepping follows epsilon transitions in priority order,
+ * evaluating assertions from the set holding at the current position, so transitions are keyed by that set and the
+ * code unit read. In leftmost-first mode, reaching the match instruction cuts every lower priority thread, the new
+ * ones included, which is how a backtracking matcher commits to its preferred match. Otherwise all threads are kept,
+ * to find the longest match. When the cache grows past its limit it is flushed and rebuilt as needed, keeping memory
+ * bounded while each step still costs at most one pass over the program.
+ */
+final class LazyDfa {
+	/** code unit used to step past the end of the input, accepted by no instruction */
+	static final int END_OF_INPUT = 0x10000;
+	/** the state with no threads left */
+	static final int DEAD = 0;
+
+	private static final int EMPTY_SLOT = -1;
+	/** code units below this have their transitions without assertions kept in a table per state */
+	private static final int DIRECT_UNITS = 128;
+
+	private final AutomatonProgram program;
+	private final boolean leftmostFirst;
+	private final int maxStates;
+
+	private final List<int[]> kernels = new ArrayList<int[]>();
+	private final List<Boolean> searching = new ArrayList<Boolean>();
+	private final Map<StateKey, Integer> stateIds = new HashMap<StateKey, Integer>();
+
+	// per state, the step results plus one for direct code units without assertions, zero when not yet computed
+	private int[][] directTransitions;
+	// open addressing table from (state, assertions, code unit) to (next state << 1 | matched)
+	private long[] transitionKeys;
+	private int[] transitionValues;
+	private int transitionCount;
+
+	private final int[] marks, stack;
+	private int mark = 0;
+	private final int[] consuming;
+	private int flushCount = 0;
+
+	LazyDfa(AutomatonProgram program, boolean leftmostFirst, int maxStates) {
+		this.program = program;
+		this.leftmostFirst = leftmostFirst;
+		this.maxStates = maxStates;
+		this.marks = new int[program.size()];
+		this.stack = new int[program.size() * 2 + 2];
+		this.consuming = new int[program.size()];
+		clear();
+	}
+
+	/**
+	 * @return the state before reading any input, starting threads at every position if searching
+	 */
+	int getInitialState(boolean searching) {
+		return searching ? intern(new int[0], true) : intern(new int[] { program.getStart() }, false);
+	}
+
+	/**
+	 * Steps from a state on a code unit, or {@link #END_OF_INPUT}.
+	 *
+	 * @param assertions the assertions holding at the current position, see {@link AutomatonProgram#evaluate}
+	 * @return the next state shifted left by one, with the low bit set if the match instruction was reached
+	 * at the current position
+	 */
+	int step(int state, int assertions, int c) {
+		if (assertions == 0 && c < DIRECT_UNITS) {
+			int[] row = directTransitions[state];
+			if (row != null && row[c] != 0)
+				return row[c] - 1;
+		}
+
+		return cachedStep(state, assertions, c);
+	}
+
+	private int cachedStep(int state, int assertions, int c) {
+		boolean direct = assertions == 0 && c < DIRECT_UNITS;
+		long key = ((long) state << 32) | (assertions * (long) (END_OF_INPUT + 1) + c);
+		int slot = slot(key);
+		if (transitionKeys[slot] == key)
+			return transitionValues[slot];
+
+		int result = computeStep(state, assertions, c);
+		if ((result >>> 1) >= maxStates || kernels.size() > maxStates) {
+			// flush, and rebuild only the state being moved to
+			int[] kernel = kernels.get(result >>> 1);
+			boolean nextSearching = searching.get(result >>> 1);
+			clear();
+			++flushCount;
+			return (intern(kernel, nextSearching) << 1) | (result & 1);
+		}
+
+		if (direct) {
+			if (directTransitions[state] == null)
+				directTransitions[state] = new int[DIRECT_UNITS];
+			directTransitions[state][c] = result + 1;
+			return result;
+		}
+
+		if ((transitionCount + 1) * 2 > transitionKeys.length)
+			growTransitions();
+		slot = slot(key);
+		transitionKeys[slot] = key;
+		transitionValues[slot] = result;
+		++transitionCount;
+		return result;
+	}
+
+	/**
+	 * @return the given state without the threads it would start at the following positions
+	 */
+	int stopSearching(int state) {
+		if (!searching.get(state))
+			return state;
+
+		int[] kernel = kernels.get(state);
+		return kernel.length == 0 ? DEAD : intern(kernel, false);
+	}
+
+	boolean isDead(int state) {
+		return state == DEAD;
+	}
+
+	int getStateCount() {
+		return kernels.size();
+	}
+
+	/**
+	 * @return how often the cache outgrew its limit and was flushed
+	 */
+	int getFlushCount() {
+		return flushCount;
+	}
+
+	private int computeStep(int state, int assertions, int c) {
+		int[] kernel = kernels.get(state);
+		boolean stateSearching = searching.get(state);
+		if (++mark == Integer.MAX_VALUE) {
+			Arrays.fill(marks, 0);
+			mark = 1;
+		}
+
+		int consumingCount = 0;
+		boolean matched = false;
+		for (int index = 0; index <= kernel.length && !(matched && leftmostFirst); index++) {
+			int entry;
+			if (index < kernel.length)
+				entry = kernel[index];
+			else if (stateSearching)
+				entry = program.getStart();
+			else
+				break;
+
+			int top = 0;
+			stack[top++] = entry;
+			while (top > 0) {
+				int pc = stack[--top];
+				if (marks[pc] == mark)
+					continue;
+				marks[pc] = mark;
+
+				switch (program.getOpcode(pc)) {
+					case AutomatonProgram.CHARACTER:
+						consuming[consumingCount++] = pc;
+						break;
+					case AutomatonProgram.SPLIT:
+						stack[top++] = program.getAlternate(pc);
+						stack[top++] = program.getNext(pc);
+						break;
+					case AutomatonProgram.JUMP:
+						stack[top++] = program.getNext(pc);
+						break;
+					case AutomatonProgram.ASSERT:
+						if ((assertions & (1 << program.getAssertion(pc))) != 0)
+							stack[top++] = program.getNext(pc);
+						break;
+					default:
+						matched = true;
+						if (leftmostFirst)
+							top = 0;	// lower priority threads are cut
+						break;
+				}
+			}
+		}
+
+		int[] nextKernel = new int[consumingCount];
+		int nextCount = 0;
+		if (c != END_OF_INPUT) {
+			for (int index = 0; index < consumingCount; index++) {
+				int pc = consuming[index];
+				if (program.accepts(pc, c)) {
+					int target = program.getNext(pc);
+					boolean duplicate = false;
+					for (int previous = 0; previous < nextCount && !duplicate; previous++)
+						duplicate = nextKernel[previous] == target;
+					if (!duplicate)
+						nextKernel[nextCount++] = target;
+				}
+			}
+		}
+
+		boolean nextSearching = stateSearching && !(matched && leftmostFirst) && c != END_OF_INPUT;
+		int next = nextCount == 0 && !nextSearching ? DEAD : intern(Arrays.copyOf(nextKernel, nextCount), nextSearching);
+		return (next << 1) | (matched ? 1 : 0);
+	}
+
+	private int intern(int[] kernel, boolean stateSearching) {
+		StateKey key = new StateKey(kernel, stateSearching);
+		Integer id = stateIds.get(key);
+		if (id == null) {
+			id = kernels.size();
+			if (id == directTransitions.length)
+				directTransitions = Arrays.copyOf(directTransitions, id * 2);
+			kernels.add(kernel);
+			searching.add(stateSearching);
+			stateIds.put(key, id);
+		}
+
+		return id;
+	}
+
+	private void clear() {
+		kernels.clear();
+		searching.clear();
+		stateIds.clear();
+		directTransitions = new int[64][];
+		transitionKeys = new long[1024];
+		Arrays.fill(transitionKeys, EMPTY_SLOT);
+		transitionValues = new int[1024];
+		transitionCount = 0;
+		intern(new int[0], false);	// DEAD
+	}
+
+	private int slot(long key) {
+		int mask = transitionKeys.length - 1;
+		long hash = key * 0x9E3779B97F4A7C15L;
+		int slot = (int) (hash >>> 40) & mask;
+		while (transitionKeys[slot] != EMPTY_SLOT && transitionKeys[slot] != key)
+			slot = (slot + 1) & mask;
+
+		return slot;
+	}
+
+	private void growTransitions() {
+		long[] oldKeys = transitionKeys;
+		int[] oldValues = transitionValues;
+		transitionKeys = new long[oldKeys.length * 2];
+		Arrays.fill(transitionKeys, EMPTY_SLOT);
+		transitionValues = new int[oldValues.length * 2];
+		for (int index = 0; index < oldKeys.length; index++) {
+			if (oldKeys[index] != EMPTY_SLOT) {
+				int slot = slot(oldKeys[index]);
+				transitionKeys[slot] = oldKeys[index];
+				transitionValues[slot] = oldValues[index];
+			}
+		}
+	}
+
+	private static final class StateKey {
+		private final int[] kernel;
+		private final boolean searching;
+
+		StateKey(int[] kernel, boolean searching) {
+			this.kernel = kernel;
+			this.searching = searching;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof StateKey && searching == ((StateKey) other).searching
+					&& Arrays.equals(kernel, ((StateKey) other).kernel);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(kernel) * 2 + (searching ? 1 : 0);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.obsglobal.util.regex;
+
+import java.util.Arrays;
+
+/**
+ * Offsets of the line starts of an input, in an <code>int[]</code>, mapping offsets to one-based lines and
+ * columns by binary search. Lines end with <code>\n</code>, so a <code>\r\n</code> line ends with a
+ * <code>\r</code> column.
+ */
+public class LineIndex {
+	private final int[] lineStarts;
+	private final int lineCount;
+	private final int length;
+
+	private LineIndex(int[] lineStarts, int lineCount, int length) {
+		this.lineStarts = lineStarts;
+		this.lineCount = lineCount;
+		this.length = length;
+	}
+
+	/**
+	 * Scans the input once for line feeds.
+	 */
+	public static LineIndex of(CharSequence input) {
+		int length = input.length();
+		int[] lineStarts = new int[64];
+		int lineCount = 1;
+		if (input instanceof String) {
+			String text = (String) input;
+			for (int index = text.indexOf('\n'); index >= 0; index = text.indexOf('\n', index + 1)) {
+				if (lineCount == lineStarts.length)
+					lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+				lineStarts[lineCount++] = index + 1;
+			}
+		}
+		else if (input instanceof PieceTable) {
+			PieceTable text = (PieceTable) input;
+			for (int index = text.indexOf('\n', 0); index >= 0; index = text.indexOf('\n', index + 1)) {
+				if (lineCount == lineStarts.length)
+					lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+				lineStarts[lineCount++] = index + 1;
+			}
+		}
+		else {
+			for (int index = 0; index < length; index++) {
+				if (input.charAt(index) == '\n') {
+					if (lineCount == lineStarts.length)
+						lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+					lineStarts[lineCount++] = index + 1;
+				}
+			}
+		}
+
+		return new LineIndex(lineStarts, lineCount, length);
+	}
+
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * @return the length of the input indexed
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the one-based line holding the given offset; the input length is on the last line
+	 */
+	public int getLine(int offset) {
+		if (offset < 0 || offset > length)
+			throw new IndexOutOfBoundsException("Offset: "+ offset +", Length: "+ length);
+
+		int index = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+		return index >= 0 ? index + 1 : -index - 1;
+	}
+
+	/**
+	 * @return the one-based column of the given offset on its line
+	 */
+	public int getColumn(int offset) {
+		return offset - getLineStart(getLine(offset)) + 1;
+	}
+
+	/**
+	 * @return the offset of the start of the given one-based line
+	 */
+	public int getLineStart(int line) {
+		if (line < 1 || line > lineCount)
+			throw new IndexOutOfBoundsException("Line: "+ line +", Line count: "+ lineCount);
+
+		return lineStarts[line - 1];
+	}
+}
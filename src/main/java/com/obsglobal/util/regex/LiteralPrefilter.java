@@ -0,0 +1,321 @@
+package com.obsglobal.util.regex;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Skips the parts of an input that cannot contain a match, by searching for the {@link RequiredLiterals} of the
+ * pattern and only running the matcher in a window around each occurrence.
+ * <p/>
+ * Every match contains an occurrence of one of the literals. When the pattern has a maximum match length, a match
+ * containing an occurrence starts at most that many characters before the occurrence ends; when it cannot match
+ * a line feed, it starts on the occurrence's line. A window decides every match starting up to its occurrence,
+ * or its line, and the search resumes after that. Windows are matched through transparent, non-anchoring bounds,
+ * so lookarounds and anchors see the whole input and the matches are exactly those of {@link Matcher#find()}.
+ * <p/>
+ * A {@link Pattern#LITERAL} pattern without case folding is a plain substring search that needs no matcher.
+ */
+final class LiteralPrefilter {
+	/** literals shorter than this are found about as fast by the matcher itself */
+	static final int MIN_LITERAL_LENGTH = 2;
+	/** longer maximum match lengths make windows overlap too much, lines are used instead where possible */
+	static final int MAX_WINDOW_LENGTH = 1024;
+	/** the shortest leading literal {@link Pattern} finds by itself with a Boyer-Moore search */
+	private static final int BOYER_MOORE_LENGTH = 4;
+
+	private static final LiteralPrefilter NONE = new LiteralPrefilter(null, false, null, 0, false);
+	private static final Map<Pattern, LiteralPrefilter> PREFILTERS =
+			Collections.synchronizedMap(new WeakHashMap<Pattern, LiteralPrefilter>());
+
+	private final String literal;
+	private final boolean caseInsensitive;
+	private final KeywordAutomaton keywords;
+	private final int[] shifts;
+	private final int maxLength;
+	private final boolean pureLiteral;
+
+	private LiteralPrefilter(String literal, boolean caseInsensitive, KeywordAutomaton keywords, int maxLength,
+							 boolean pureLiteral) {
+		this.literal = literal;
+		this.caseInsensitive = caseInsensitive;
+		this.keywords = keywords;
+		this.maxLength = maxLength;
+		this.pureLiteral = pureLiteral;
+		this.shifts = literal == null ? null : createShifts(literal, caseInsensitive);
+	}
+
+	/**
+	 * @return the prefilter for the given pattern, or <code>null</code> if it has no usable literal or its matches
+	 * are not bounded by length or lines
+	 */
+	static LiteralPrefilter of(Pattern pattern) {
+		LiteralPrefilter prefilter = PREFILTERS.get(pattern);
+		if (prefilter == null) {
+			prefilter = analyze(pattern);
+			PREFILTERS.put(pattern, prefilter);
+		}
+
+		return prefilter == NONE ? null : prefilter;
+	}
+
+	private static LiteralPrefilter analyze(Pattern pattern) {
+		if (pattern.pattern().contains("\\G"))
+			return NONE;
+
+		RegexNode root = RegexParser.parse(pattern);
+		RequiredLiterals literals = RequiredLiterals.of(root);
+		if (literals.getMinLength() < MIN_LITERAL_LENGTH)
+			return NONE;
+
+		int maxLength = getMaxLength(root);
+		if (maxLength > MAX_WINDOW_LENGTH) {
+			if (!ParallelMatcher.isLineBounded(pattern))
+				return NONE;
+			maxLength = RegexNode.UNBOUNDED;
+		}
+
+		List<String> strings = literals.getLiterals();
+		if (strings.size() == 1) {
+			String literal = strings.get(0);
+			boolean pureLiteral = (pattern.flags() & Pattern.LITERAL) != 0
+					&& (pattern.flags() & Pattern.CASE_INSENSITIVE) == 0 && !hasSurrogates(literal);
+			// Pattern already searches for a leading literal of this length with Boyer-Moore
+			if (!pureLiteral && !literals.isCaseInsensitive() && literal.length() >= BOYER_MOORE_LENGTH
+					&& (pattern.flags() & Pattern.LITERAL) == 0 && pattern.pattern().startsWith(literal))
+				return NONE;
+
+			return new LiteralPrefilter(literal, literals.isCaseInsensitive(), null, maxLength, pureLiteral);
+		}
+
+		KeywordAutomaton keywords = new KeywordAutomaton(literals.isCaseInsensitive());
+		for (String literal : strings)
+			keywords.add(literal);
+
+		return new LiteralPrefilter(null, false, keywords, maxLength, false);
+	}
+
+	/**
+	 * @return whether every match is an occurrence of the literal, found by {@link #indexOf} alone
+	 */
+	boolean isPureLiteral() {
+		return pureLiteral;
+	}
+
+	/**
+	 * @return the length of the single literal of a pure literal pattern
+	 */
+	int getLiteralLength() {
+		return literal.length();
+	}
+
+	/**
+	 * @return the longest match in code units, or {@link RegexNode#UNBOUNDED} if windows are lines
+	 */
+	int getMaxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * Finds the next part of the input that may contain matches.
+	 *
+	 * @param window receives the offset to start matching at, the last match start the window decides,
+	 * and the end of the region to match in
+	 * @return <code>false</code> if no match starts at or after the given offset
+	 */
+	boolean findWindow(CharSequence input, int from, int[] window) {
+		int[] occurrence = findOccurrence(input, from);
+		if (occurrence == null)
+			return false;
+
+		int length = input.length();
+		if (maxLength == RegexNode.UNBOUNDED) {
+			int lineStart = occurrence[0], lineEnd = occurrence[1];
+			while (lineStart > from && input.charAt(lineStart - 1) != '\n')
+				--lineStart;
+			while (lineEnd < length && input.charAt(lineEnd) != '\n')
+				++lineEnd;
+
+			window[0] = lineStart;
+			window[1] = lineEnd;
+			window[2] = lineEnd;
+		}
+		else {
+			int start = (int) Math.max(from, (long) occurrence[1] - maxLength);
+			// Pattern may skip the second half of a surrogate pair when searching, but tries the offset it starts at
+			if (start > from && Character.isLowSurrogate(input.charAt(start)) && Character.isHighSurrogate(input.charAt(start - 1)))
+				--start;
+
+			window[0] = start;
+			window[1] = occurrence[0];
+			window[2] = (int) Math.min(length, (long) occurrence[0] + maxLength);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Visits the matches found window by window.
+	 *
+	 * @return the number of matches visited
+	 */
+	int visitMatches(Pattern pattern, CharSequence input, MatchVisitor visitor) {
+		return visitMatches(pattern, input, 0, visitor);
+	}
+
+	/**
+	 * Visits the matches starting at or after the given offset, which must not be inside an earlier match.
+	 *
+	 * @return the number of matches visited
+	 */
+	int visitMatches(Pattern pattern, CharSequence input, int from, MatchVisitor visitor) {
+		Matcher matcher = pattern.matcher(input);
+		matcher.useTransparentBounds(true);
+		matcher.useAnchoringBounds(false);
+		int[] window = new int[3];
+		int visited = 0;
+		while (from < input.length() && findWindow(input, from, window)) {
+			matcher.region(window[0], window[2]);
+			int lastEnd = 0;
+			// matches are never empty, as they contain a literal
+			while (matcher.find() && matcher.start() <= window[1]) {
+				++visited;
+				if (!visitor.visitMatch(matcher))
+					return visited;
+				lastEnd = matcher.end();
+			}
+
+			from = Math.max(window[1] + 1, lastEnd);
+		}
+
+		return visited;
+	}
+
+	/**
+	 * @return the offset of the first occurrence of the single literal at or after the given offset, or -1
+	 */
+	int indexOf(CharSequence input, int from) {
+		if (!caseInsensitive && input instanceof String)
+			return ((String) input).indexOf(literal, from);
+
+		int last = literal.length() - 1;
+		char lastChar = literal.charAt(last);
+		int limit = input.length() - last;
+		for (int index = from; index < limit; ) {
+			char c = input.charAt(index + last);
+			if (fold(c) == lastChar && regionMatches(input, index, last))
+				return index;
+
+			index += shifts[c & 0xFF];
+		}
+
+		return -1;
+	}
+
+	private int[] findOccurrence(CharSequence input, int from) {
+		if (literal != null) {
+			int index = indexOf(input, from);
+			return index < 0 ? null : new int[] { index, index + literal.length() };
+		}
+
+		final int[] occurrence = new int[2];
+		final boolean[] found = new boolean[1];
+		keywords.visitKeywords(input, from, input.length(), new KeywordAutomaton.Visitor() {
+			@Override
+			public boolean visitKeyword(int keyword, int start, int end) {
+				occurrence[0] = start;
+				occurrence[1] = end;
+				found[0] = true;
+				return false;
+			}
+		});
+
+		return found[0] ? occurrence : null;
+	}
+
+	private boolean regionMatches(CharSequence input, int index, int length) {
+		for (int offset = 0; offset < length; offset++) {
+			if (fold(input.charAt(index + offset)) != literal.charAt(offset))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the given character, folded to lower case like the literals of {@link RequiredLiterals} if needed
+	 */
+	private char fold(char c) {
+		return caseInsensitive && c >= 'A' && c <= 'Z' ? (char) (c + 'a' - 'A') : c;
+	}
+
+	/**
+	 * @return the Horspool shifts, by the low byte of the character under the end of the literal
+	 */
+	private static int[] createShifts(String literal, boolean caseInsensitive) {
+		int last = literal.length() - 1;
+		int[] shifts = new int[256];
+		for (int index = 0; index < shifts.length; index++)
+			shifts[index] = literal.length();
+		// later characters overwrite earlier ones sharing their low byte with a smaller, safe shift
+		for (int index = 0; index < last; index++) {
+			char c = literal.charAt(index);
+			shifts[c & 0xFF] = last - index;
+			if (caseInsensitive && c >= 'a' && c <= 'z')
+				shifts[(c - 'a' + 'A') & 0xFF] = last - index;
+		}
+
+		return shifts;
+	}
+
+	private static boolean hasSurrogates(String literal) {
+		for (int index = 0; index < literal.length(); index++) {
+			if (Character.isSurrogate(literal.charAt(index)))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return the most code units a node can match, or {@link RegexNode#UNBOUNDED}
+	 */
+	static int getMaxLength(RegexNode node) {
+		long length;
+		switch (node.getType()) {
+			case EMPTY:
+			case ASSERTION:
+			case LOOKAROUND:
+				return 0;
+			case CHARACTER:
+				CodePointSet characters = node.getCharacters();
+				return characters.isEmpty() || characters.rangeEnd(characters.rangeCount() - 1) < Character.MIN_SUPPLEMENTARY_CODE_POINT ? 1 : 2;
+			case GROUP:
+			case ATOMIC:
+				return getMaxLength(node.getChild());
+			case CONCATENATION:
+				length = 0;
+				for (RegexNode child : node.getChildren())
+					length += getMaxLength(child);
+				break;
+			case ALTERNATION:
+				length = 0;
+				for (RegexNode child : node.getChildren())
+					length = Math.max(length, getMaxLength(child));
+				break;
+			case REPEAT:
+				int childLength = getMaxLength(node.getChild());
+				if (node.getMax() == 0 || childLength == 0)
+					return 0;
+				length = node.getMax() == RegexNode.UNBOUNDED ? RegexNode.UNBOUNDED : (long) node.getMax() * childLength;
+				break;
+			default:
+				return RegexNode.UNBOUNDED;
+		}
+
+		return (int) Math.min(length, RegexNode.UNBOUNDED);
+	}
+}
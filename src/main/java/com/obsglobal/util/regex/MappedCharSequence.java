@@ -0,0 +1,149 @@
+package com.obsglobal.util.regex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link CharSequence} over a memory-mapped file, decoding characters lazily as the matcher reads them.
+ * <p/>
+ * The file is never loaded onto the heap, so only the pages actually visited are resident. Random access requires
+ * a fixed width encoding, so only single-byte charsets are supported; UTF-8 files can be opened as ISO-8859-1,
+ * in which case ASCII text matches exactly as it would decoded. A sequence is limited to
+ * {@link Integer#MAX_VALUE} characters, longer files are mapped up to that length.
+ */
+public class MappedCharSequence implements CharSequence {
+	private static final int SEGMENT_SHIFT = 30;
+	private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+	private final ByteBuffer[] segments;
+	private final Charset charset;
+	private final char[] decodeTable;
+	private final long fileLength;
+	private final int offset, length;
+
+	private MappedCharSequence(ByteBuffer[] segments, Charset charset, char[] decodeTable, long fileLength, int offset,
+			int length) {
+		this.segments = segments;
+		this.charset = charset;
+		this.decodeTable = decodeTable;
+		this.fileLength = fileLength;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * @return whether files in the given charset can be opened, that is whether it encodes every character it
+	 * decodes as a single byte
+	 */
+	public static boolean isSupported(Charset charset) {
+		// charsets such as x-JISAutoDetect only decode
+		return charset.canEncode() && charset.newEncoder().maxBytesPerChar() == 1.0f;
+	}
+
+	public static MappedCharSequence open(File file) throws IOException {
+		return open(file, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Maps the given file read-only. The file handle is released once mapped.
+	 *
+	 * @throws IllegalArgumentException if the charset is not {@link #isSupported(Charset) supported}
+	 */
+	public static MappedCharSequence open(File file, Charset charset) throws IOException {
+		char[] decodeTable = createDecodeTable(charset);
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			long fileLength = channel.size();
+			int length = (int) Math.min(fileLength, Integer.MAX_VALUE);
+			ByteBuffer[] segments = new ByteBuffer[(int) (((long) length + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+			for (int index = 0; index < segments.length; index++) {
+				long position = (long) index << SEGMENT_SHIFT;
+				segments[index] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+						Math.min(1L << SEGMENT_SHIFT, length - position));
+			}
+
+			return new MappedCharSequence(segments, charset, decodeTable, fileLength, 0, length);
+		}
+		finally {
+			randomAccessFile.close();
+		}
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("Index: "+ index +", Length: "+ length);
+
+		int position = offset + index;
+		return decodeTable[segments[position >>> SEGMENT_SHIFT].get(position & SEGMENT_MASK) & 0xFF];
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * @return a view sharing the same mapping
+	 */
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end)
+			throw new IndexOutOfBoundsException("Start: "+ start +", End: "+ end +", Length: "+ length);
+
+		return new MappedCharSequence(segments, charset, decodeTable, fileLength, offset + start, end - start);
+	}
+
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * @return the length of the mapped file in bytes, which may exceed {@link #length()} for very large files
+	 */
+	public long getFileLength() {
+		return fileLength;
+	}
+
+	public boolean isTruncated() {
+		return fileLength > offset + length;
+	}
+
+	@Override
+	public String toString() {
+		char[] chars = new char[length];
+		for (int index = 0; index < length; index++)
+			chars[index] = charAt(index);
+
+		return new String(chars);
+	}
+
+	private static char[] createDecodeTable(Charset charset) {
+		if (!isSupported(charset))
+			throw new IllegalArgumentException("Not a single-byte charset: "+ charset.name());
+
+		char[] decodeTable = new char[256];
+		CharsetDecoder decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		for (int value = 0; value < decodeTable.length; value++) {
+			try {
+				decodeTable[value] = decoder.decode(ByteBuffer.wrap(new byte[] { (byte) value })).charAt(0);
+			}
+			catch (CharacterCodingException ex) {
+				decodeTable[value] = '\uFFFD';
+			}
+		}
+
+		return decodeTable;
+	}
+}
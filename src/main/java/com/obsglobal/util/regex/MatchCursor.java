@@ -0,0 +1,164 @@
+package com.obsglobal.util.regex;
+
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the matches of a pattern a page at a time, resuming where the previous page stopped.
+ * <p/>
+ * The matches are those of {@link Matcher#find()} over the whole input: the matcher is kept between pages, and
+ * when a page reads the input through another view it resumes from the saved position with transparent,
+ * non-anchoring bounds, so lookarounds and anchors still see the whole input. Patterns a region start would
+ * change (see {@link RegexUtil#isRegionSensitive(Pattern)}) instead find the earlier matches again. Scans use the
+ * {@link LiteralPrefilter} like {@link RegexUtil#visitMatches}. Not thread safe.
+ */
+public class MatchCursor {
+	private final Pattern pattern;
+	private final CharSequence input;
+	private final LiteralPrefilter prefilter;
+	private Matcher matcher = null;
+	private CharSequence matcherText = null;
+	private int position = 0;
+	private int matchCount = 0;
+	private boolean exhausted = false;
+
+	public MatchCursor(Pattern pattern, CharSequence input) {
+		if (pattern == null)
+			throw new NullPointerException("pattern");
+		if (input == null)
+			throw new NullPointerException("input");
+
+		this.pattern = pattern;
+		this.input = input;
+		this.prefilter = RegexUtil.getPrefilter(pattern);
+	}
+
+	public Pattern getPattern() {
+		return pattern;
+	}
+
+	public CharSequence getInput() {
+		return input;
+	}
+
+	/**
+	 * @return where the next page starts searching
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+	/**
+	 * @return the number of matches found so far
+	 */
+	public int getMatchCount() {
+		return matchCount;
+	}
+
+	/**
+	 * @return <code>true</code> once a page found every remaining match; a page ending exactly on the last match
+	 * cannot tell, so the next one finds none
+	 */
+	public boolean isExhausted() {
+		return exhausted;
+	}
+
+	/**
+	 * Finds up to the given number of further matches.
+	 */
+	public MatchOffsets next(int limit) {
+		return next(limit, input);
+	}
+
+	/**
+	 * Finds up to the given number of further matches, reading the input through the given view of it, e.g. an
+	 * {@link InterruptibleCharSequence} created by the thread running this page. A page that throws, such as one
+	 * interrupted through its view, leaves the cursor where it was.
+	 */
+	public MatchOffsets next(int limit, CharSequence view) {
+		if (view.length() != input.length())
+			throw new IllegalArgumentException("View length "+ view.length() +" differs from input length "+ input.length());
+
+		final MatchOffsets offsets = new MatchOffsets(Math.min(Math.max(limit, 1), 1024));
+		if (exhausted || limit <= 0)
+			return offsets;
+
+		final int[] next = { position };
+		if (prefilter != null && prefilter.isPureLiteral()) {
+			int length = prefilter.getLiteralLength();
+			for (int index = prefilter.indexOf(view, next[0]); index >= 0; index = prefilter.indexOf(view, next[0])) {
+				offsets.add(index, index + length);
+				next[0] = index + length;
+				if (offsets.size() == limit)
+					break;
+			}
+		}
+		else if (prefilter != null) {
+			prefilter.visitMatches(pattern, view, next[0], new MatchVisitor() {
+				@Override
+				public boolean visitMatch(MatchResult match) {
+					offsets.add(match.start(), match.end());
+					next[0] = advance(match);
+					return offsets.size() < limit;
+				}
+			});
+		}
+		else {
+			if (matcher == null || matcherText != view) {
+				matcher = pattern.matcher(view);
+				matcher.useTransparentBounds(true);
+				matcher.useAnchoringBounds(false);
+				if (RegexUtil.isRegionSensitive(pattern)) {
+					// a region start would change the matches, so find those of the earlier pages again instead
+					int skipped = 0;
+					while (skipped < matchCount && matcher.find())
+						++skipped;
+				}
+				else
+					matcher.region(next[0], view.length());
+			}
+			matcherText = null;	// until the page completes
+			while (offsets.size() < limit && next[0] <= view.length() && matcher.find()) {
+				offsets.add(matcher.start(), matcher.end());
+				next[0] = advance(matcher);
+			}
+			matcherText = view;
+		}
+
+		position = next[0];
+		matchCount += offsets.size();
+		if (offsets.size() < limit || position > view.length())
+			exhausted = true;
+
+		return offsets;
+	}
+
+	/**
+	 * @return the next match, or <code>null</code> if there are no more
+	 */
+	public MatchResult nextMatch() {
+		MatchOffsets offsets = next(1);
+		if (offsets.isEmpty())
+			return null;
+		if (matcherText == input)
+			return matcher.toMatchResult();
+
+		// the prefilter only kept the offsets, find the groups again at the same start
+		Matcher groups = pattern.matcher(input);
+		groups.useTransparentBounds(true);
+		groups.useAnchoringBounds(false);
+		groups.region(offsets.start(0), input.length());
+		if (!groups.find())
+			throw new IllegalStateException("Match at "+ offsets.start(0) +" not found again");
+
+		return groups.toMatchResult();
+	}
+
+	/**
+	 * @return where {@link Matcher#find()} searches after the given match, one character further after an empty one
+	 */
+	private static int advance(MatchResult match) {
+		return match.end() == match.start() ? match.end() + 1 : match.end();
+	}
+}
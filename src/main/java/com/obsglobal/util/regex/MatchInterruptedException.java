@@ -0,0 +1,20 @@
+package com.obsglobal.util.regex;
+
+/**
+ * Thrown when matching is abandoned because the evaluating thread was interrupted or its time budget ran out.
+ */
+public class MatchInterruptedException extends RuntimeException {
+	private final boolean timedOut;
+
+	public MatchInterruptedException(String message, boolean timedOut) {
+		super(message);
+		this.timedOut = timedOut;
+	}
+
+	/**
+	 * @return <code>true</code> if the time budget ran out, <code>false</code> if the thread was interrupted
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+}
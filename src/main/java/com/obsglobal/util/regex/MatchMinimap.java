@@ -0,0 +1,103 @@
+package com.obsglobal.util.regex;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+/**
+ * Narrow strip beside the input marking where in the whole input the matches start, with the current match and
+ * the part of an opened file shown. Clicking it goes to the match nearest the offset clicked.
+ * <p/>
+ * Each pixel row counts the matches starting in the offsets it spans with two binary searches, so painting costs
+ * the same for millions of matches as for a few.
+ */
+public class MatchMinimap extends JComponent {
+	static final int WIDTH = 14;
+	private static final Color BACKGROUND = new Color(240, 240, 240);
+	private static final Color WINDOW = new Color(0, 0, 0, 30);
+	private static final Color CURRENT = new Color(255, 140, 0);
+
+	private final RegexEditor editor;
+	private MatchOffsets matchOffsets = null;
+	private int inputLength = 0;
+	private int currentMatch = -1;
+	private int windowStart = 0, windowEnd = -1;
+
+	public MatchMinimap(RegexEditor editor) {
+		this.editor = editor;
+		setPreferredSize(new Dimension(WIDTH, 0));
+		setToolTipText("Where the matches are in the whole input, click to go to the nearest one");
+		addMouseListener(new MouseAdapter() {
+			@Override
+			public void mousePressed(MouseEvent e) {
+				int offset = getOffset(e.getY());
+				if (offset >= 0)
+					MatchMinimap.this.editor.goToOffset(offset);
+			}
+		});
+	}
+
+	/**
+	 * @param currentMatch the index of the current match, or -1 for none
+	 * @param windowEnd the end of the part of the input shown, or -1 if it is all shown
+	 */
+	public void setMatches(MatchOffsets matchOffsets, int inputLength, int currentMatch, int windowStart, int windowEnd) {
+		this.matchOffsets = matchOffsets;
+		this.inputLength = inputLength;
+		this.currentMatch = currentMatch;
+		this.windowStart = windowStart;
+		this.windowEnd = windowEnd;
+		repaint();
+	}
+
+	/**
+	 * @return the input offset at the given height, or -1 if there is no input
+	 */
+	protected int getOffset(int y) {
+		Insets insets = getInsets();
+		int height = getHeight() - insets.top - insets.bottom;
+		if (height <= 0 || inputLength == 0)
+			return -1;
+
+		return (int) Math.max(0, Math.min(inputLength - 1L, (long) (y - insets.top) * inputLength / height));
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		Insets insets = getInsets();
+		int width = getWidth() - insets.left - insets.right;
+		int height = getHeight() - insets.top - insets.bottom;
+		g.setColor(BACKGROUND);
+		g.fillRect(insets.left, insets.top, width, height);
+		if (matchOffsets == null || matchOffsets.isEmpty() || inputLength == 0 || height <= 0)
+			return;
+
+		int from = matchOffsets.searchStart(0);
+		for (int row = 0; row < height; row++) {
+			int to = matchOffsets.searchStart((int) Math.min(Integer.MAX_VALUE, (long) (row + 1) * inputLength / height));
+			if (row == height - 1)
+				to = matchOffsets.size();
+			int count = to - from;
+			if (count > 0) {
+				// darker for denser rows
+				int shade = Math.min(160, 40 * (32 - Integer.numberOfLeadingZeros(count)));
+				g.setColor(new Color(0, 200 - shade, 0));
+				g.drawLine(insets.left + 2, insets.top + row, insets.left + width - 3, insets.top + row);
+			}
+			from = to;
+		}
+
+		if (windowEnd >= 0) {
+			int top = (int) ((long) windowStart * height / inputLength);
+			int bottom = (int) ((long) windowEnd * height / inputLength);
+			g.setColor(WINDOW);
+			g.fillRect(insets.left, insets.top + top, width, Math.max(2, bottom - top));
+		}
+		if (currentMatch >= 0 && currentMatch < matchOffsets.size()) {
+			int y = (int) ((long) matchOffsets.start(currentMatch) * height / inputLength);
+			g.setColor(CURRENT);
+			g.fillRect(insets.left, insets.top + Math.min(y, height - 2), width, 2);
+		}
+	}
+}
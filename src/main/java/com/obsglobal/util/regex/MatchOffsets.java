@@ -0,0 +1,144 @@
+package com.obsglobal.util.regex;
+
+import java.util.Arrays;
+
+/**
+ * Compact list of match spans, stored as interleaved start/end offsets in a single <code>int[]</code>.
+ */
+public class MatchOffsets {
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] offsets;
+	private int size;
+
+	public MatchOffsets() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public MatchOffsets(int initialCapacity) {
+		offsets = new int[Math.max(1, initialCapacity) * 2];
+	}
+
+	public void add(int start, int end) {
+		if (size * 2 == offsets.length)
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+
+		offsets[size * 2] = start;
+		offsets[size * 2 + 1] = end;
+		++size;
+	}
+
+	public int start(int index) {
+		checkIndex(index);
+		return offsets[index * 2];
+	}
+
+	public int end(int index) {
+		checkIndex(index);
+		return offsets[index * 2 + 1];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Binary searches for the first span ending at or after the given offset.
+	 * Assumes spans were added in order and do not overlap, as produced by a {@link java.util.regex.Matcher}.
+	 *
+	 * @return the index of that span, or {@link #size()} if there is none
+	 */
+	public int searchEnd(int offset) {
+		int low = 0, high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (offsets[middle * 2 + 1] < offset)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+
+		return low;
+	}
+
+	/**
+	 * Binary searches for the first span starting at or after the given offset.
+	 *
+	 * @return the index of that span, or {@link #size()} if there is none
+	 */
+	public int searchStart(int offset) {
+		int low = 0, high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (offsets[middle * 2] < offset)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+
+		return low;
+	}
+
+	/**
+	 * Replaces the spans from <code>fromIndex</code> (inclusive) to <code>toIndex</code> (exclusive) with the given
+	 * ones, and moves every span after them by <code>shift</code>, e.g. to account for an edit of the input.
+	 */
+	public void replace(int fromIndex, int toIndex, MatchOffsets replacement, int shift) {
+		if (fromIndex < 0 || toIndex > size || fromIndex > toIndex)
+			throw new IndexOutOfBoundsException("From: "+ fromIndex +", To: "+ toIndex +", Size: "+ size);
+
+		int tail = size - toIndex;
+		int newSize = fromIndex + replacement.size + tail;
+		if (newSize * 2 > offsets.length)
+			offsets = Arrays.copyOf(offsets, Math.max(newSize * 2, offsets.length * 2));
+
+		System.arraycopy(offsets, toIndex * 2, offsets, (fromIndex + replacement.size) * 2, tail * 2);
+		System.arraycopy(replacement.offsets, 0, offsets, fromIndex * 2, replacement.size * 2);
+		for (int index = (fromIndex + replacement.size) * 2; index < newSize * 2; index++)
+			offsets[index] += shift;
+
+		size = newSize;
+	}
+
+	/**
+	 * Returns the spans intersecting <code>[from, to)</code>, clipped to it and shifted to be relative to
+	 * <code>from</code>, e.g. to display the matches of a large input in a window onto it.
+	 */
+	public MatchOffsets window(int from, int to) {
+		MatchOffsets window = new MatchOffsets();
+		for (int index = searchEnd(from); index < size && offsets[index * 2] < to; index++) {
+			int start = Math.max(from, offsets[index * 2]);
+			int end = Math.min(to, offsets[index * 2 + 1]);
+			window.add(start - from, end - from);
+		}
+
+		return window;
+	}
+
+	public MatchOffsets copy() {
+		MatchOffsets copy = new MatchOffsets(size);
+		System.arraycopy(offsets, 0, copy.offsets, 0, size * 2);
+		copy.size = size;
+		return copy;
+	}
+
+	/**
+	 * @return a copy of the interleaved start/end offsets
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(offsets, size * 2);
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: "+ index +", Size: "+ size);
+	}
+}
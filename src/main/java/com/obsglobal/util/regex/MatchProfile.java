@@ -0,0 +1,197 @@
+package com.obsglobal.util.regex;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Output of a {@link MatchProfiler} pass: the matches, the cost of each search for them and the characters read
+ * in each region of the input.
+ * <p/>
+ * Each call to {@link java.util.regex.Matcher#find()} is an attempt, searching from the end of the previous match
+ * (or the start of the input) to the end of its match. The last attempt finds nothing and searches to the end of
+ * the input; it is counted in {@link #getAttemptCount()} but has no match offsets.
+ */
+public class MatchProfile {
+	/** reads per character at or above which a region is painted at each heat level */
+	public static final int[] HEAT_THRESHOLDS = { 4, 16, 64, 256 };
+
+	private final int inputLength;
+	private final MatchOffsets matchOffsets;
+	private final long[] attemptSteps, attemptNanos;
+	private final int attemptCount;
+	private final int regionShift;
+	private final long[] regionSteps;
+
+	MatchProfile(int inputLength, MatchOffsets matchOffsets, long[] attemptSteps, long[] attemptNanos,
+				 int attemptCount, int regionShift, long[] regionSteps) {
+		this.inputLength = inputLength;
+		this.matchOffsets = matchOffsets;
+		this.attemptSteps = attemptSteps;
+		this.attemptNanos = attemptNanos;
+		this.attemptCount = attemptCount;
+		this.regionShift = regionShift;
+		this.regionSteps = regionSteps;
+	}
+
+	public MatchOffsets getMatchOffsets() {
+		return matchOffsets;
+	}
+
+	/**
+	 * @return the number of find attempts, one more than the matches unless profiling stopped early
+	 */
+	public int getAttemptCount() {
+		return attemptCount;
+	}
+
+	/**
+	 * @return where the given attempt started searching
+	 */
+	public int getSearchStart(int attempt) {
+		if (attempt == 0)
+			return 0;
+
+		int previousStart = matchOffsets.start(attempt - 1), previousEnd = matchOffsets.end(attempt - 1);
+		// like Matcher.find, an empty match moves the next search on by one
+		return previousEnd == previousStart ? previousEnd + 1 : previousEnd;
+	}
+
+	/**
+	 * @return the characters read by the given attempt
+	 */
+	public long getSteps(int attempt) {
+		checkAttempt(attempt);
+		return attemptSteps[attempt];
+	}
+
+	public long getNanos(int attempt) {
+		checkAttempt(attempt);
+		return attemptNanos[attempt];
+	}
+
+	public long getTotalSteps() {
+		long total = 0;
+		for (int attempt = 0; attempt < attemptCount; attempt++)
+			total += attemptSteps[attempt];
+
+		return total;
+	}
+
+	public long getTotalNanos() {
+		long total = 0;
+		for (int attempt = 0; attempt < attemptCount; attempt++)
+			total += attemptNanos[attempt];
+
+		return total;
+	}
+
+	/**
+	 * @return the indexes of up to the given number of attempts, costliest first
+	 */
+	public int[] getCostliestAttempts(int count) {
+		// keeps the costliest seen so far, cheapest on top, earliest first among equals
+		PriorityQueue<Integer> costliest = new PriorityQueue<Integer>(Math.max(1, count), new Comparator<Integer>() {
+			@Override
+			public int compare(Integer first, Integer second) {
+				int bySteps = Long.compare(attemptSteps[first], attemptSteps[second]);
+				return bySteps != 0 ? bySteps : second.compareTo(first);
+			}
+		});
+		for (int attempt = 0; attempt < attemptCount && count > 0; attempt++) {
+			if (costliest.size() < count)
+				costliest.add(attempt);
+			else if (attemptSteps[attempt] > attemptSteps[costliest.peek()]) {
+				costliest.poll();
+				costliest.add(attempt);
+			}
+		}
+
+		int[] attempts = new int[costliest.size()];
+		for (int index = attempts.length - 1; index >= 0; index--)
+			attempts[index] = costliest.poll();
+
+		return attempts;
+	}
+
+	/**
+	 * @return the length of the input regions reads are counted in, a power of two
+	 */
+	public int getRegionLength() {
+		return 1 << regionShift;
+	}
+
+	public int getRegionCount() {
+		return regionSteps.length;
+	}
+
+	/**
+	 * @return the characters read within the given region, by all attempts
+	 */
+	public long getRegionSteps(int region) {
+		return regionSteps[region];
+	}
+
+	/**
+	 * Splits the regions by the reads per character they took into one layer per {@link #HEAT_THRESHOLDS} level,
+	 * each region in the highest level it reaches. Regions below the first threshold are left out.
+	 *
+	 * @return the region spans of each level, coolest first
+	 */
+	public MatchOffsets[] getHeatLayers() {
+		MatchOffsets[] layers = new MatchOffsets[HEAT_THRESHOLDS.length];
+		for (int level = 0; level < layers.length; level++)
+			layers[level] = new MatchOffsets();
+
+		for (int region = 0; region < regionSteps.length; region++) {
+			int start = region << regionShift;
+			int end = (int) Math.min(inputLength, (long) start + getRegionLength());
+			if (end <= start)
+				continue;
+
+			double readsPerCharacter = (double) regionSteps[region] / (end - start);
+			for (int level = layers.length - 1; level >= 0; level--) {
+				if (readsPerCharacter >= HEAT_THRESHOLDS[level]) {
+					layers[level].add(start, end);
+					break;
+				}
+			}
+		}
+
+		return layers;
+	}
+
+	/**
+	 * Writes a row per attempt, then a row per region that was read, with the header
+	 * <code>kind,start,end,match_start,match_end,steps,nanos</code>. Attempts are of kind <code>match</code>,
+	 * spanning their search, or <code>miss</code> for the last one; regions are of kind <code>region</code>.
+	 */
+	public void writeCsv(Writer out) throws IOException {
+		out.write("kind,start,end,match_start,match_end,steps,nanos\n");
+		for (int attempt = 0; attempt < attemptCount; attempt++) {
+			int searchStart = getSearchStart(attempt);
+			if (attempt < matchOffsets.size()) {
+				int start = matchOffsets.start(attempt), end = matchOffsets.end(attempt);
+				out.write("match,"+ searchStart +","+ end +","+ start +","+ end +",");
+			}
+			else
+				out.write("miss,"+ Math.min(searchStart, inputLength) +","+ inputLength +",,,");
+			out.write(attemptSteps[attempt] +","+ attemptNanos[attempt] +"\n");
+		}
+
+		for (int region = 0; region < regionSteps.length; region++) {
+			if (regionSteps[region] == 0)
+				continue;
+
+			int start = region << regionShift;
+			int end = (int) Math.min(inputLength, (long) start + getRegionLength());
+			out.write("region,"+ start +","+ end +",,,"+ regionSteps[region] +",\n");
+		}
+	}
+
+	private void checkAttempt(int attempt) {
+		if (attempt < 0 || attempt >= attemptCount)
+			throw new IndexOutOfBoundsException("Attempt: "+ attempt +", count: "+ attemptCount);
+	}
+}
@@ -0,0 +1,100 @@
+package com.obsglobal.util.regex;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds all matches like {@link RegexUtil#findAllMatchOffsets(Pattern, CharSequence)}, recording what each search
+ * cost: the characters the matcher read, through an instrumented input, and the time it took.
+ * <p/>
+ * Character reads stand in for engine steps, as {@link java.util.regex.Matcher} reads the input at least once for
+ * every node it tries, backtracking included. Reads are also counted per input region, to show where the matcher
+ * spends them. The prefilter is bypassed, so the profile shows the cost of the expression itself.
+ */
+public class MatchProfiler {
+	public static final int DEFAULT_MAX_REGIONS = 4096;
+
+	private final int maxRegions;
+
+	public MatchProfiler() {
+		this(DEFAULT_MAX_REGIONS);
+	}
+
+	/**
+	 * @param maxRegions the most regions reads are counted in; regions are as short as that allows
+	 */
+	public MatchProfiler(int maxRegions) {
+		this.maxRegions = maxRegions;
+	}
+
+	/**
+	 * @param input read through, so an {@link InterruptibleCharSequence} still stops profiling
+	 */
+	public MatchProfile profile(Pattern pattern, CharSequence input) {
+		int length = input.length();
+		int regionShift = 0;
+		while (((long) length >> regionShift) >= maxRegions)
+			++regionShift;
+
+		CountingCharSequence counter = new CountingCharSequence(input, regionShift, (length >> regionShift) + 1);
+		Matcher matcher = pattern.matcher(counter);
+		MatchOffsets matchOffsets = new MatchOffsets();
+		long[] steps = new long[16], nanos = new long[16];
+		int attempts = 0;
+		while (true) {
+			if (attempts == steps.length) {
+				steps = Arrays.copyOf(steps, attempts * 2);
+				nanos = Arrays.copyOf(nanos, attempts * 2);
+			}
+
+			long startSteps = counter.steps, startTime = System.nanoTime();
+			boolean found = matcher.find();
+			nanos[attempts] = System.nanoTime() - startTime;
+			steps[attempts] = counter.steps - startSteps;
+			++attempts;
+			if (!found)
+				break;
+
+			matchOffsets.add(matcher.start(), matcher.end());
+		}
+
+		return new MatchProfile(length, matchOffsets, steps, nanos, attempts, regionShift, counter.regionSteps);
+	}
+
+	private static final class CountingCharSequence implements CharSequence {
+		private final CharSequence delegate;
+		private final int regionShift;
+		final long[] regionSteps;
+		long steps = 0;
+
+		CountingCharSequence(CharSequence delegate, int regionShift, int regions) {
+			this.delegate = delegate;
+			this.regionShift = regionShift;
+			this.regionSteps = new long[regions];
+		}
+
+		@Override
+		public char charAt(int index) {
+			char c = delegate.charAt(index);
+			++steps;
+			++regionSteps[index >> regionShift];
+			return c;
+		}
+
+		@Override
+		public int length() {
+			return delegate.length();
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return delegate.subSequence(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return delegate.toString();
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package com.obsglobal.util.regex;
+
+import java.util.regex.MatchResult;
+
+/**
+ * Callback notified of each match found by {@link RegexUtil#visitMatches(java.util.regex.Pattern, CharSequence, MatchVisitor)}.
+ */
+public interface MatchVisitor {
+	/**
+	 * Visits a single match. The given result is the live matcher and is only valid for the duration of the call,
+	 * use {@link java.util.regex.Matcher#toMatchResult()} semantics if it must be retained.
+	 *
+	 * @param match the current match
+	 * @return <code>true</code> to continue scanning, <code>false</code> to stop
+	 */
+	boolean visitMatch(MatchResult match);
+}
@@ -0,0 +1,164 @@
+package com.obsglobal.util.regex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the matches of a set of patterns in one pass over the input.
+ * <p/>
+ * The {@link RequiredLiterals} of every pattern that cannot match across lines are fed to two
+ * {@link KeywordAutomaton}s, one exact and one ignoring ASCII case, which are stepped together over the input.
+ * A keyword occurrence makes its line a candidate, and only candidate lines are scanned with the pattern, each at
+ * most once. Patterns without a usable literal, or that may span lines, are scanned in full as usual.
+ * Results are identical to {@link RegexUtil#findAllMatchOffsets(Pattern, CharSequence)} per pattern.
+ */
+public class MultiPatternMatcher {
+	/** literals shorter than this are considered too common to be worth prefiltering with */
+	public static final int MIN_KEYWORD_LENGTH = 2;
+
+	/**
+	 * Receives the matches of all patterns, ordered by start offset and then pattern id.
+	 */
+	public interface Visitor {
+		/**
+		 * @param pattern the id of the pattern, its index in the list given to the matcher
+		 * @return <code>false</code> to stop visiting
+		 */
+		boolean visitMatch(int pattern, int start, int end);
+	}
+
+	private final List<Pattern> patterns;
+	private final boolean[] prefiltered;
+	private final KeywordAutomaton exactKeywords = new KeywordAutomaton(false);
+	private final KeywordAutomaton foldedKeywords = new KeywordAutomaton(true);
+	/** the pattern of each keyword, by keyword index, for each automaton */
+	private final List<Integer> exactKeywordPatterns = new ArrayList<Integer>();
+	private final List<Integer> foldedKeywordPatterns = new ArrayList<Integer>();
+
+	public MultiPatternMatcher(List<Pattern> patterns) {
+		this.patterns = Collections.unmodifiableList(new ArrayList<Pattern>(patterns));
+		this.prefiltered = new boolean[patterns.size()];
+		for (int id = 0; id < patterns.size(); id++) {
+			Pattern pattern = patterns.get(id);
+			if (pattern.pattern().contains("\\G") || !ParallelMatcher.isLineBounded(pattern))
+				continue;
+
+			RequiredLiterals literals = RequiredLiterals.of(RegexParser.parse(pattern));
+			if (literals.getMinLength() < MIN_KEYWORD_LENGTH)
+				continue;
+
+			prefiltered[id] = true;
+			for (String literal : literals.getLiterals()) {
+				if (literals.isCaseInsensitive()) {
+					foldedKeywords.add(literal);
+					foldedKeywordPatterns.add(id);
+				}
+				else {
+					exactKeywords.add(literal);
+					exactKeywordPatterns.add(id);
+				}
+			}
+		}
+	}
+
+	public List<Pattern> getPatterns() {
+		return patterns;
+	}
+
+	/**
+	 * @return whether the given pattern is only scanned on lines containing one of its literals
+	 */
+	public boolean isPrefiltered(int pattern) {
+		return prefiltered[pattern];
+	}
+
+	/**
+	 * @return the match offsets of each pattern, indexed by pattern id
+	 */
+	public MatchOffsets[] findAllMatchOffsets(CharSequence input) {
+		MatchOffsets[] offsets = new MatchOffsets[patterns.size()];
+		for (int id = 0; id < offsets.length; id++)
+			offsets[id] = prefiltered[id] ? new MatchOffsets() : RegexUtil.findAllMatchOffsets(patterns.get(id), input);
+
+		if (exactKeywords.getKeywordCount() > 0 || foldedKeywords.getKeywordCount() > 0)
+			scanCandidateLines(input, offsets);
+
+		return offsets;
+	}
+
+	/**
+	 * Visits the matches of all patterns in offset order.
+	 *
+	 * @return the number of matches visited
+	 */
+	public int visitMatches(CharSequence input, Visitor visitor) {
+		MatchOffsets[] offsets = findAllMatchOffsets(input);
+		int[] next = new int[offsets.length];
+		int count = 0;
+		while (true) {
+			int pattern = -1;
+			for (int id = 0; id < offsets.length; id++) {
+				if (next[id] < offsets[id].size()
+						&& (pattern < 0 || offsets[id].start(next[id]) < offsets[pattern].start(next[pattern])))
+					pattern = id;
+			}
+			if (pattern < 0)
+				return count;
+
+			++count;
+			int index = next[pattern]++;
+			if (!visitor.visitMatch(pattern, offsets[pattern].start(index), offsets[pattern].end(index)))
+				return count;
+		}
+	}
+
+	private void scanCandidateLines(CharSequence input, MatchOffsets[] offsets) {
+		Matcher[] matchers = new Matcher[patterns.size()];
+		// the end of the last line scanned for each pattern
+		int[] scannedTo = new int[patterns.size()];
+		int length = input.length();
+		int lineStart = 0;
+		int exactState = KeywordAutomaton.START, foldedState = KeywordAutomaton.START;
+		for (int index = 0; index < length; index++) {
+			char c = input.charAt(index);
+			if (c == '\n') {
+				// keywords never contain a line feed, so none can straddle lines
+				lineStart = index + 1;
+				exactState = KeywordAutomaton.START;
+				foldedState = KeywordAutomaton.START;
+				continue;
+			}
+
+			exactState = exactKeywords.step(exactState, c);
+			for (int keyword : exactKeywords.getKeywords(exactState))
+				scanLine(input, lineStart, index, exactKeywordPatterns.get(keyword), matchers, scannedTo, offsets);
+			foldedState = foldedKeywords.step(foldedState, c);
+			for (int keyword : foldedKeywords.getKeywords(foldedState))
+				scanLine(input, lineStart, index, foldedKeywordPatterns.get(keyword), matchers, scannedTo, offsets);
+		}
+	}
+
+	private void scanLine(CharSequence input, int lineStart, int offset, int pattern, Matcher[] matchers,
+						  int[] scannedTo, MatchOffsets[] offsets) {
+		if (offset < scannedTo[pattern])
+			return;
+
+		int lineEnd = IncrementalMatcher.lineEnd(input, offset);
+		boolean atEnd = lineEnd == input.length();
+		Matcher matcher = matchers[pattern];
+		if (matcher == null) {
+			matcher = patterns.get(pattern).matcher(input);
+			matcher.useTransparentBounds(true);
+			matcher.useAnchoringBounds(false);
+			matchers[pattern] = matcher;
+		}
+
+		matcher.region(lineStart, lineEnd);
+		while (matcher.find() && (matcher.start() < lineEnd || atEnd))
+			offsets[pattern].add(matcher.start(), matcher.end());
+		scannedTo[pattern] = lineEnd;
+	}
+}
@@ -0,0 +1,209 @@
+package com.obsglobal.util.regex;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Document;
+import javax.swing.text.JTextComponent;
+import java.awt.*;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Highlighter that, besides regular highlights, paints {@link MatchOffsets} indexes directly, each layer of
+ * offsets with its own painter.
+ * <p/>
+ * Offset highlights hold no document positions or listeners; on each paint only the spans intersecting the
+ * clip are located (by binary search) and painted, so the cost follows what is visible rather than the
+ * total number of matches. By default any edit to the document clears them, as they no longer line up with
+ * the text; owners that update the offsets themselves can turn that off. Replacing the document always clears them.
+ */
+public class OffsetHighlighter extends DefaultHighlighter {
+	private JTextComponent component;
+	private final List<MatchOffsets> offsetLayers = new ArrayList<MatchOffsets>();
+	private final List<HighlightPainter> offsetPainters = new ArrayList<HighlightPainter>();
+	private boolean clearOnEdit = true;
+
+	private final DocumentListener editListener = new DocumentListener() {
+		@Override
+		public void insertUpdate(DocumentEvent e) {
+			if (clearOnEdit)
+				clearOffsets();
+		}
+
+		@Override
+		public void removeUpdate(DocumentEvent e) {
+			if (clearOnEdit)
+				clearOffsets();
+		}
+
+		@Override
+		public void changedUpdate(DocumentEvent e) {
+		}
+	};
+
+	private final PropertyChangeListener documentListener = new PropertyChangeListener() {
+		@Override
+		public void propertyChange(PropertyChangeEvent e) {
+			if (e.getOldValue() != null)
+				((Document) e.getOldValue()).removeDocumentListener(editListener);
+			if (e.getNewValue() != null)
+				((Document) e.getNewValue()).addDocumentListener(editListener);
+			clearOffsets();
+		}
+	};
+
+	@Override
+	public void install(JTextComponent component) {
+		super.install(component);
+		this.component = component;
+		component.getDocument().addDocumentListener(editListener);
+		component.addPropertyChangeListener("document", documentListener);
+	}
+
+	@Override
+	public void deinstall(JTextComponent component) {
+		component.removePropertyChangeListener("document", documentListener);
+		component.getDocument().removeDocumentListener(editListener);
+		this.component = null;
+		super.deinstall(component);
+	}
+
+	/**
+	 * Replaces all offset highlights with the given ones, which must be sorted and non-overlapping.
+	 */
+	public void setOffsets(MatchOffsets offsets, HighlightPainter painter) {
+		offsetLayers.clear();
+		offsetPainters.clear();
+		addOffsets(offsets, painter);
+	}
+
+	/**
+	 * Adds a layer of offset highlights, which must be sorted and non-overlapping, painted over the previous layers.
+	 */
+	public void addOffsets(MatchOffsets offsets, HighlightPainter painter) {
+		offsetLayers.add(offsets);
+		offsetPainters.add(painter);
+		repaintComponent();
+	}
+
+	public void setClearOnEdit(boolean clearOnEdit) {
+		this.clearOnEdit = clearOnEdit;
+	}
+
+	/**
+	 * @return the offsets of the first layer, empty if there is none
+	 */
+	public MatchOffsets getOffsets() {
+		return offsetLayers.isEmpty() ? new MatchOffsets(1) : offsetLayers.get(0);
+	}
+
+	public MatchOffsets getOffsets(int layer) {
+		return offsetLayers.get(layer);
+	}
+
+	public int getOffsetLayerCount() {
+		return offsetLayers.size();
+	}
+
+	public void clearOffsets() {
+		if (!offsetLayers.isEmpty()) {
+			offsetLayers.clear();
+			offsetPainters.clear();
+			repaintComponent();
+		}
+	}
+
+	@Override
+	public void removeAllHighlights() {
+		super.removeAllHighlights();
+		clearOffsets();
+	}
+
+	@Override
+	public void paint(Graphics g) {
+		super.paint(g);
+		if (offsetLayers.isEmpty() || component == null)
+			return;
+
+		Rectangle clip = g.getClipBounds();
+		if (clip == null)
+			clip = component.getVisibleRect();
+
+		int visibleStart = component.viewToModel2D(new Point(0, clip.y));
+		int visibleEnd = component.viewToModel2D(new Point(component.getWidth(), clip.y + clip.height));
+		if (visibleStart < 0 || visibleEnd < 0)
+			return;
+
+		Rectangle bounds = component.getBounds();
+		Insets insets = component.getInsets();
+		bounds.x = insets.left;
+		bounds.y = insets.top;
+		bounds.width -= insets.left + insets.right;
+		bounds.height -= insets.top + insets.bottom;
+
+		for (int layer = 0; layer < offsetLayers.size(); layer++) {
+			MatchOffsets offsets = offsetLayers.get(layer);
+			HighlightPainter offsetPainter = offsetPainters.get(layer);
+			for (int index = offsets.searchEnd(visibleStart); index < offsets.size(); index++) {
+				int start = offsets.start(index);
+				if (start > visibleEnd)
+					break;
+
+				int end = offsets.end(index);
+				if (end > start)
+					offsetPainter.paint(g, start, end, bounds, component);
+			}
+		}
+	}
+
+	/**
+	 * Returns the regular highlights followed by a detached highlight per offset, layer by layer.
+	 * This materializes every offset, so it is meant for inspection of modest result sets.
+	 */
+	@Override
+	public Highlight[] getHighlights() {
+		List<Highlight> allHighlights = new ArrayList<Highlight>(Arrays.asList(super.getHighlights()));
+		for (int layer = 0; layer < offsetLayers.size(); layer++) {
+			MatchOffsets offsets = offsetLayers.get(layer);
+			for (int index = 0; index < offsets.size(); index++)
+				allHighlights.add(new OffsetHighlight(offsets.start(index), offsets.end(index), offsetPainters.get(layer)));
+		}
+
+		return allHighlights.toArray(new Highlight[allHighlights.size()]);
+	}
+
+	private void repaintComponent() {
+		if (component != null)
+			component.repaint();
+	}
+
+	private static class OffsetHighlight implements Highlight {
+		private final int start, end;
+		private final HighlightPainter painter;
+
+		OffsetHighlight(int start, int end, HighlightPainter painter) {
+			this.start = start;
+			this.end = end;
+			this.painter = painter;
+		}
+
+		@Override
+		public int getStartOffset() {
+			return start;
+		}
+
+		@Override
+		public int getEndOffset() {
+			return end;
+		}
+
+		@Override
+		public HighlightPainter getPainter() {
+			return painter;
+		}
+	}
+}
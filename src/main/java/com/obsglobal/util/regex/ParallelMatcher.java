@@ -0,0 +1,214 @@
+package com.obsglobal.util.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds all matches by splitting large inputs into chunks that are scanned concurrently on a fork-join pool.
+ * <p/>
+ * Chunks end on line boundaries, or, when a maximum match length is given, at fixed offsets with each chunk's
+ * scan allowed to run that many characters past its end. Every chunk matcher sees the whole input through
+ * transparent, non-anchoring bounds, so lookarounds, <code>^</code>, <code>$</code> and <code>\b</code>
+ * evaluate as they would sequentially. Chunk results are merged in offset order, re-scanning sequentially where
+ * a match spills into the next chunk until the two agree again, so the result is identical to
+ * {@link RegexUtil#findAllMatchOffsets(Pattern, CharSequence)}.
+ * <p/>
+ * That holds as long as no match is cut short by a chunk boundary. In line mode this is guaranteed by
+ * requiring that the pattern cannot match a line feed (see {@link #isLineBounded(Pattern)}); in max match
+ * length mode it is the caller's promise. Patterns that a chunk start would change (see
+ * {@link RegexUtil#isRegionSensitive(Pattern)}), line mode patterns that may span lines, and inputs too small to
+ * split are scanned sequentially instead.
+ */
+public class ParallelMatcher {
+	public static final int DEFAULT_CHUNK_LENGTH = 1 << 20;
+
+	private final ForkJoinPool pool;
+	private final int chunkLength;
+	private final int maxMatchLength;
+
+	/**
+	 * Creates a line mode matcher on the common pool.
+	 */
+	public ParallelMatcher() {
+		this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_LENGTH, 0);
+	}
+
+	/**
+	 * @param maxMatchLength the longest match the pattern can produce, or zero to split on line boundaries
+	 */
+	public ParallelMatcher(ForkJoinPool pool, int chunkLength, int maxMatchLength) {
+		if (chunkLength < 1 || maxMatchLength < 0)
+			throw new IllegalArgumentException("Invalid chunk length "+ chunkLength +" or max match length "+ maxMatchLength);
+
+		this.pool = pool;
+		this.chunkLength = chunkLength;
+		this.maxMatchLength = maxMatchLength;
+	}
+
+	/**
+	 * @return <code>true</code> if the given pattern can be matched in chunks by this matcher
+	 */
+	public boolean canSplit(Pattern pattern) {
+		if (RegexUtil.isRegionSensitive(pattern))
+			return false;
+
+		return maxMatchLength > 0 || isLineBounded(pattern);
+	}
+
+	public MatchOffsets findAllMatchOffsets(Pattern pattern, CharSequence input) {
+		if (input.length() < chunkLength * 2L || !canSplit(pattern))
+			return RegexUtil.findAllMatchOffsets(pattern, input);
+
+		// created on this thread, so interrupting the caller stops every chunk
+		CharSequence sequence = new InterruptibleCharSequence(input);
+		int[] boundaries = split(sequence);
+		List<Future<MatchOffsets>> chunkResults = new ArrayList<Future<MatchOffsets>>(boundaries.length - 1);
+		for (int index = 0; index + 1 < boundaries.length; index++)
+			chunkResults.add(pool.submit(createChunkTask(pattern, sequence, boundaries[index], boundaries[index + 1])));
+
+		try {
+			return merge(pattern, sequence, boundaries, chunkResults);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new MatchInterruptedException("Parallel matching was interrupted", false);
+		}
+		catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException)
+				throw (RuntimeException) ex.getCause();
+
+			throw new IllegalStateException(ex.getCause());
+		}
+		finally {
+			for (Future<MatchOffsets> chunkResult : chunkResults)
+				chunkResult.cancel(false);
+		}
+	}
+
+	/**
+	 * Checks whether a pattern can never match a line feed, so that matches cannot span lines. Decided on the
+	 * parsed pattern: a class, escape or dot that can match a line feed, including inside a lookaround, or any
+	 * construct the parser does not model makes it return <code>false</code>.
+	 */
+	public static boolean isLineBounded(Pattern pattern) {
+		return !canMatchLineFeed(RegexParser.parse(pattern));
+	}
+
+	private static boolean canMatchLineFeed(RegexNode node) {
+		switch (node.getType()) {
+			case OPAQUE:
+				return true;
+			case CHARACTER:
+				return node.getCharacters().contains('\n');
+			default:
+				for (RegexNode child : node.getChildren())
+					if (canMatchLineFeed(child))
+						return true;
+
+				return false;
+		}
+	}
+
+	/**
+	 * @return the chunk boundaries, starting with zero and ending with the input length
+	 */
+	protected int[] split(CharSequence input) {
+		int length = input.length();
+		List<Integer> boundaries = new ArrayList<Integer>();
+		boundaries.add(0);
+		int boundary = chunkLength;
+		while (boundary < length) {
+			if (maxMatchLength == 0) {
+				// advance to just past the next line feed
+				while (boundary < length && input.charAt(boundary - 1) != '\n')
+					++boundary;
+				if (boundary == length)
+					break;
+			}
+
+			boundaries.add(boundary);
+			boundary = (int) Math.min((long) boundary + chunkLength, length);
+		}
+		boundaries.add(length);
+
+		int[] splits = new int[boundaries.size()];
+		for (int index = 0; index < splits.length; index++)
+			splits[index] = boundaries.get(index);
+
+		return splits;
+	}
+
+	private Callable<MatchOffsets> createChunkTask(final Pattern pattern, final CharSequence input,
+												   final int chunkStart, final int chunkEnd) {
+		return new Callable<MatchOffsets>() {
+			@Override
+			public MatchOffsets call() throws Exception {
+				MatchOffsets offsets = new MatchOffsets();
+				Matcher matcher = createMatcher(pattern, input);
+				matcher.region(chunkStart, (int) Math.min((long) chunkEnd + maxMatchLength, input.length()));
+				while (matcher.find()) {
+					// matches starting at the chunk end, like empty ones, belong to the next chunk
+					if (matcher.start() >= chunkEnd && chunkEnd < input.length())
+						break;
+
+					offsets.add(matcher.start(), matcher.end());
+				}
+
+				return offsets;
+			}
+		};
+	}
+
+	private MatchOffsets merge(Pattern pattern, CharSequence input, int[] boundaries,
+							   List<Future<MatchOffsets>> chunkResults) throws InterruptedException, ExecutionException {
+		MatchOffsets merged = new MatchOffsets();
+		Matcher resync = null;
+		int lastEnd = 0;
+		for (int chunk = 0; chunk < chunkResults.size(); chunk++) {
+			MatchOffsets offsets = chunkResults.get(chunk).get();
+			int chunkEnd = boundaries[chunk + 1];
+			int accepted = 0;
+			if (lastEnd > boundaries[chunk]) {
+				// the previous match spilled into this chunk, rescan from its end until the results agree
+				if (resync == null)
+					resync = createMatcher(pattern, input);
+
+				resync.region(lastEnd, input.length());
+				accepted = offsets.size();
+				while (resync.find() && (resync.start() < chunkEnd || chunkEnd == input.length())) {
+					int index = offsets.searchEnd(resync.end());
+					// an empty match may share its end with the match before it
+					while (index < offsets.size() && offsets.end(index) == resync.end() && offsets.start(index) < resync.start())
+						++index;
+					if (index < offsets.size() && offsets.start(index) == resync.start() && offsets.end(index) == resync.end()) {
+						accepted = index;
+						break;
+					}
+
+					merged.add(resync.start(), resync.end());
+					lastEnd = resync.end();
+				}
+			}
+
+			for (int index = accepted; index < offsets.size(); index++) {
+				merged.add(offsets.start(index), offsets.end(index));
+				lastEnd = offsets.end(index);
+			}
+		}
+
+		return merged;
+	}
+
+	private static Matcher createMatcher(Pattern pattern, CharSequence input) {
+		Matcher matcher = pattern.matcher(input);
+		matcher.useTransparentBounds(true);
+		matcher.useAnchoringBounds(false);
+		return matcher;
+	}
+}
@@ -0,0 +1,176 @@
+package com.obsglobal.util.regex;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Thread-safe, bounded LRU cache of compiled patterns keyed by expression and flags.
+ * <p/>
+ * Entries are evicted least-recently-used first once either the entry count or the total weight
+ * (the summed length of the cached expressions) exceeds its limit.
+ */
+public class PatternCache {
+	public static final int DEFAULT_MAX_ENTRIES = 128;
+	public static final long DEFAULT_MAX_WEIGHT = 1 << 20;
+
+	private static final PatternCache SHARED_CACHE = new PatternCache();
+
+	private final int maxEntries;
+	private final long maxWeight;
+	private final LinkedHashMap<Key, Pattern> patterns = new LinkedHashMap<Key, Pattern>(16, 0.75f, true);
+	private long weight = 0;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final AtomicLong compileNanos = new AtomicLong();
+
+	public PatternCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WEIGHT);
+	}
+
+	public PatternCache(int maxEntries, long maxWeight) {
+		if (maxEntries < 1 || maxWeight < 1)
+			throw new IllegalArgumentException("Cache limits must be positive: "+ maxEntries +", "+ maxWeight);
+
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * @return the cache shared by {@link RegexUtil#compile(String, int)} and the editor
+	 */
+	public static PatternCache getSharedCache() {
+		return SHARED_CACHE;
+	}
+
+	/**
+	 * Returns the cached pattern for the given expression and flags, compiling it on a miss.
+	 *
+	 * @throws java.util.regex.PatternSyntaxException if the expression is invalid, in which case nothing is cached
+	 */
+	public Pattern compile(String expression, int flags) {
+		Key key = new Key(expression, flags);
+		synchronized (patterns) {
+			Pattern pattern = patterns.get(key);
+			if (pattern != null) {
+				hitCount.incrementAndGet();
+				return pattern;
+			}
+		}
+
+		// compile outside the lock, a concurrent miss on the same key merely compiles twice
+		missCount.incrementAndGet();
+		long startTime = System.nanoTime();
+		//noinspection MagicConstant
+		Pattern pattern = Pattern.compile(expression, flags);
+		compileNanos.addAndGet(System.nanoTime() - startTime);
+
+		synchronized (patterns) {
+			Pattern previous = patterns.put(key, pattern);
+			if (previous == null)
+				weight += key.weight();
+
+			evict();
+		}
+
+		return pattern;
+	}
+
+	public void clear() {
+		synchronized (patterns) {
+			patterns.clear();
+			weight = 0;
+		}
+	}
+
+	public int size() {
+		synchronized (patterns) {
+			return patterns.size();
+		}
+	}
+
+	public long getWeight() {
+		synchronized (patterns) {
+			return weight;
+		}
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * @return the total time spent compiling patterns on cache misses, in nanoseconds
+	 */
+	public long getCompileNanos() {
+		return compileNanos.get();
+	}
+
+	@Override
+	public String toString() {
+		return "PatternCache[size="+ size() +", weight="+ getWeight() +", hits="+ getHitCount()
+				+", misses="+ getMissCount() +", evictions="+ getEvictionCount()
+				+", compileMillis="+ getCompileNanos() / 1000000 +"]";
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<Key, Pattern>> iterator = patterns.entrySet().iterator();
+		// always keep the most recent entry, even if it alone exceeds the weight limit
+		while (patterns.size() > 1 && (patterns.size() > maxEntries || weight > maxWeight)) {
+			Key eldest = iterator.next().getKey();
+			iterator.remove();
+			weight -= eldest.weight();
+			evictionCount.incrementAndGet();
+		}
+	}
+
+	private static final class Key {
+		private final String expression;
+		private final int flags;
+
+		Key(String expression, int flags) {
+			this.expression = expression;
+			this.flags = flags;
+		}
+
+		int weight() {
+			return Math.max(1, expression.length());
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other)
+				return true;
+			if (!(other instanceof Key))
+				return false;
+
+			Key key = (Key) other;
+			return flags == key.flags && expression.equals(key.expression);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * expression.hashCode() + flags;
+		}
+	}
+}
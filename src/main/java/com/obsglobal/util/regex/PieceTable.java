@@ -0,0 +1,453 @@
+package com.obsglobal.util.regex;
+
+import javax.swing.text.Segment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable {@link CharSequence} made of pieces of shared, append-only buffers, where an edit returns a new table
+ * sharing the text of the old one rather than copying it.
+ * <p/>
+ * Buffers holding only Latin-1 characters store them in a <code>byte[]</code>, at one byte per character. Text
+ * inserted in small edits, such as typing, is appended to a buffer shared by the tables derived from one another,
+ * extending the piece it continues. Buffers are only appended to past the text of any piece, so a table can be
+ * read on any thread while newer tables are derived from it, but only one thread may derive them at a time.
+ * <p/>
+ * Reads locate the piece holding an index by binary search, remembering the last piece read, so sequential
+ * scans cost about as much as over a single array. A {@link Builder} assembles a table from runs of others, as a
+ * replacement does, sharing their text too.
+ */
+public final class PieceTable implements CharSequence {
+	private static final Piece NO_PIECE = new Piece(null, 0, 0, 0);
+	public static final PieceTable EMPTY = new PieceTable(new Piece[0], null);
+	static final int APPEND_BUFFER_LENGTH = 8192;
+
+	private final Piece[] pieces;
+	private final int[] starts;	// one more than the pieces, ending with the length
+	private final Buffer appendBuffer;
+	private Piece lastPiece;	// a hint, so racing reads are harmless
+
+	private PieceTable(Piece[] pieces, Buffer appendBuffer) {
+		this.pieces = pieces;
+		this.appendBuffer = appendBuffer;
+		starts = new int[pieces.length + 1];
+		for (int index = 0; index < pieces.length; index++)
+			starts[index + 1] = pieces[index].end;
+		lastPiece = pieces.length > 0 ? pieces[0] : NO_PIECE;
+	}
+
+	/**
+	 * @return a table holding a compact copy of the given text
+	 */
+	public static PieceTable of(CharSequence text) {
+		if (text.length() == 0)
+			return EMPTY;
+
+		return new PieceTable(new Piece[] {new Piece(Buffer.of(text), 0, 0, text.length())}, null);
+	}
+
+	@Override
+	public int length() {
+		return starts[pieces.length];
+	}
+
+	@Override
+	public char charAt(int index) {
+		Piece piece = lastPiece;
+		if (index < piece.start || index >= piece.end) {
+			if (index < 0 || index >= length())
+				throw new IndexOutOfBoundsException("Index: "+ index +", Length: "+ length());
+
+			lastPiece = piece = pieces[findPiece(index)];
+		}
+
+		return piece.latin1 != null ? (char) (piece.latin1[index + piece.shift] & 0xFF) : piece.chars[index + piece.shift];
+	}
+
+	@Override
+	public PieceTable subSequence(int start, int end) {
+		checkRange(start, end);
+		if (start == 0 && end == length())
+			return this;
+
+		return delete(end, length()).delete(0, start);
+	}
+
+	/**
+	 * Copies the characters from <code>start</code> to <code>end</code> into the given array.
+	 */
+	public void getChars(int start, int end, char[] destination, int destinationStart) {
+		checkRange(start, end);
+		for (int index = start == end ? pieces.length : findPiece(start); index < pieces.length && starts[index] < end; index++) {
+			Piece piece = pieces[index];
+			int from = Math.max(start, piece.start), to = Math.min(end, piece.end);
+			piece.buffer.getChars(from + piece.shift, to - from, destination, destinationStart + from - start);
+		}
+	}
+
+	/**
+	 * @return the index of the first occurrence of the character at or after the given index, or -1
+	 */
+	public int indexOf(char c, int from) {
+		for (int index = from >= length() ? pieces.length : findPiece(Math.max(0, from)); index < pieces.length; index++) {
+			Piece piece = pieces[index];
+			int found = piece.buffer.indexOf(c, Math.max(from, piece.start) + piece.shift, piece.end + piece.shift);
+			if (found >= 0)
+				return found - piece.shift;
+		}
+		return -1;
+	}
+
+	@Override
+	public String toString() {
+		char[] chars = new char[length()];
+		getChars(0, chars.length, chars, 0);
+		return new String(chars);
+	}
+
+	/**
+	 * @return the number of pieces, one for text never edited
+	 */
+	public int getPieceCount() {
+		return pieces.length;
+	}
+
+	/**
+	 * @return <code>true</code> if the characters are all held as Latin-1
+	 */
+	public boolean isLatin1() {
+		for (Piece piece : pieces) {
+			if (piece.latin1 == null)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of bytes the characters of the buffers take, including those no longer in this table
+	 */
+	public long getBufferBytes() {
+		Set<Buffer> counted = Collections.newSetFromMap(new IdentityHashMap<Buffer, Boolean>());
+		long bytes = 0;
+		for (Piece piece : pieces) {
+			if (counted.add(piece.buffer))
+				bytes += piece.buffer.getBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return a table with the given text inserted at the given index
+	 */
+	public PieceTable insert(int index, CharSequence text) {
+		checkRange(index, index);
+		int length = text.length();
+		if (length == 0)
+			return this;
+
+		int at = index == length() ? pieces.length : findPiece(index);
+		boolean split = at < pieces.length && starts[at] < index;
+		Buffer buffer = appendBuffer;
+		Piece inserted;
+		if (length >= APPEND_BUFFER_LENGTH / 4)
+			inserted = new Piece(Buffer.of(text), 0, index, index + length);	// in its own, exactly sized buffer
+		else {
+			if (buffer == null || !buffer.canAppend(text, 0, length))
+				buffer = Buffer.forAppending(text, 0, length);
+			int offset = buffer.append(text, 0, length);
+			Piece previous = at > 0 ? pieces[at - 1] : null;
+			if (!split && previous != null && previous.buffer == buffer && previous.end + previous.shift == offset) {
+				// continues the text of the previous piece, as typing does
+				Piece[] extended = Arrays.copyOf(pieces, pieces.length);
+				extended[at - 1] = new Piece(buffer, previous.start + previous.shift, previous.start, previous.end + length);
+				shift(extended, at, length);
+				return new PieceTable(extended, buffer);
+			}
+			inserted = new Piece(buffer, offset, index, index + length);
+		}
+
+		Piece[] newPieces = new Piece[pieces.length + (split ? 2 : 1)];
+		System.arraycopy(pieces, 0, newPieces, 0, at);
+		int next = at;
+		if (split)
+			newPieces[next++] = pieces[at].slice(pieces[at].start, index);
+		newPieces[next++] = inserted;
+		if (split) {
+			newPieces[next++] = pieces[at].slice(index, pieces[at].end).shiftBy(length);
+			++at;
+		}
+		System.arraycopy(pieces, at, newPieces, next, pieces.length - at);
+		shift(newPieces, next, length);
+		return new PieceTable(newPieces, buffer);
+	}
+
+	/**
+	 * @return a table without the characters from <code>start</code> to <code>end</code>
+	 */
+	public PieceTable delete(int start, int end) {
+		checkRange(start, end);
+		if (start == end)
+			return this;
+		if (start == 0 && end == length())
+			return appendBuffer == null ? EMPTY : new PieceTable(new Piece[0], appendBuffer);
+
+		int first = findPiece(start);
+		int last = findPiece(end - 1);
+		boolean head = pieces[first].start < start, tail = end < pieces[last].end;
+		Piece[] newPieces = new Piece[pieces.length - (last - first + 1) + (head ? 1 : 0) + (tail ? 1 : 0)];
+		System.arraycopy(pieces, 0, newPieces, 0, first);
+		int next = first;
+		if (head)
+			newPieces[next++] = pieces[first].slice(pieces[first].start, start);
+		if (tail)
+			newPieces[next++] = pieces[last].slice(end, pieces[last].end).shiftBy(start - end);
+		System.arraycopy(pieces, last + 1, newPieces, next, pieces.length - last - 1);
+		shift(newPieces, next, start - end);
+		return new PieceTable(newPieces, appendBuffer);
+	}
+
+	/**
+	 * Points the segment at the characters from the given index up to the given length or the end of the piece
+	 * holding it, in place when the piece holds a <code>char[]</code> and as a copy otherwise.
+	 */
+	void getRun(int index, int length, Segment segment) {
+		Piece piece = pieces[findPiece(index)];
+		int count = Math.min(length, piece.end - index);
+		if (piece.chars != null) {
+			segment.array = piece.chars;
+			segment.offset = index + piece.shift;
+		}
+		else {
+			segment.array = new char[count];
+			segment.offset = 0;
+			piece.buffer.getChars(index + piece.shift, count, segment.array, 0);
+		}
+		segment.count = count;
+	}
+
+	/**
+	 * @return the piece holding the given index, which must be below the length
+	 */
+	private int findPiece(int index) {
+		int piece = Arrays.binarySearch(starts, 0, pieces.length, index);
+		return piece >= 0 ? piece : -piece - 2;
+	}
+
+	private void checkRange(int start, int end) {
+		if (start < 0 || end > length() || start > end)
+			throw new IndexOutOfBoundsException("Start: "+ start +", End: "+ end +", Length: "+ length());
+	}
+
+	private static void shift(Piece[] pieces, int from, int distance) {
+		for (int index = from; index < pieces.length; index++)
+			pieces[index] = pieces[index].shiftBy(distance);
+	}
+
+	/**
+	 * Appends text to a new table, referring to the buffers of the tables it is appended from rather than copying
+	 * them, so that a replacement costs its replaced text and a piece per match rather than a copy of the input.
+	 * Runs too short to be worth a piece of their own, and text from other sequences, are copied into append
+	 * buffers, extending the piece they continue.
+	 */
+	public static final class Builder implements Appendable {
+		/** a piece takes about as many bytes as a Latin-1 run of this length */
+		static final int SHARED_RUN_LENGTH = 64;
+
+		private final List<Piece> pieces = new ArrayList<Piece>();
+		private Buffer buffer = null;
+		private int length = 0;
+
+		@Override
+		public Builder append(CharSequence text) {
+			return append(text, 0, text.length());
+		}
+
+		@Override
+		public Builder append(CharSequence text, int start, int end) {
+			if (start < 0 || end > text.length() || start > end)
+				throw new IndexOutOfBoundsException("Start: "+ start +", End: "+ end +", Length: "+ text.length());
+
+			if (text instanceof PieceTable && end - start >= SHARED_RUN_LENGTH)
+				appendShared((PieceTable) text, start, end);
+			else if (end - start >= APPEND_BUFFER_LENGTH / 4)
+				addPiece(Buffer.of(text.subSequence(start, end)), 0, end - start);
+			else if (start < end) {
+				if (buffer == null || !buffer.canAppend(text, start, end))
+					buffer = Buffer.forAppending(text, start, end);
+				addPiece(buffer, buffer.append(text, start, end), end - start);
+			}
+			return this;
+		}
+
+		@Override
+		public Builder append(char c) {
+			return append(String.valueOf(c), 0, 1);
+		}
+
+		public int length() {
+			return length;
+		}
+
+		/**
+		 * @return the table of the text appended so far, which later appends leave unchanged
+		 */
+		public PieceTable build() {
+			if (pieces.isEmpty())
+				return EMPTY;
+
+			return new PieceTable(pieces.toArray(new Piece[pieces.size()]), buffer);
+		}
+
+		private void appendShared(PieceTable text, int start, int end) {
+			for (int index = text.findPiece(start); index < text.pieces.length && text.starts[index] < end; index++) {
+				Piece piece = text.pieces[index];
+				int from = Math.max(start, piece.start), to = Math.min(end, piece.end);
+				addPiece(piece.buffer, from + piece.shift, to - from);
+			}
+		}
+
+		private void addPiece(Buffer buffer, int offset, int count) {
+			Piece last = pieces.isEmpty() ? null : pieces.get(pieces.size() - 1);
+			if (last != null && last.buffer == buffer && last.end + last.shift == offset)
+				pieces.set(pieces.size() - 1, new Piece(buffer, last.start + last.shift, last.start, last.end + count));
+			else
+				pieces.add(new Piece(buffer, offset, length, length + count));
+			length += count;
+		}
+	}
+
+	/**
+	 * The characters from <code>start</code> to <code>end</code> of a table, at <code>start + shift</code> in a
+	 * buffer, with the buffer's array at hand for reads.
+	 */
+	private static final class Piece {
+		final Buffer buffer;
+		final byte[] latin1;
+		final char[] chars;
+		final int start, end, shift;
+
+		Piece(Buffer buffer, int offset, int start, int end) {
+			this.buffer = buffer;
+			latin1 = buffer == null ? null : buffer.latin1;
+			chars = buffer == null ? null : buffer.chars;
+			this.start = start;
+			this.end = end;
+			shift = offset - start;
+		}
+
+		/**
+		 * @return the part of this piece from <code>from</code> to <code>to</code>, at the same indexes
+		 */
+		Piece slice(int from, int to) {
+			return new Piece(buffer, from + shift, from, to);
+		}
+
+		Piece shiftBy(int distance) {
+			return new Piece(buffer, start + shift, start + distance, end + distance);
+		}
+	}
+
+	/**
+	 * Characters in either a <code>byte[]</code>, for Latin-1 only, or a <code>char[]</code>.
+	 */
+	private static final class Buffer {
+		final byte[] latin1;
+		final char[] chars;
+		int length;
+
+		private Buffer(byte[] latin1, char[] chars, int length) {
+			this.latin1 = latin1;
+			this.chars = chars;
+			this.length = length;
+		}
+
+		static Buffer of(CharSequence text) {
+			int length = text.length();
+			if (isLatin1(text, 0, length)) {
+				byte[] latin1 = new byte[length];
+				for (int index = 0; index < length; index++)
+					latin1[index] = (byte) text.charAt(index);
+				return new Buffer(latin1, null, length);
+			}
+
+			char[] chars = new char[length];
+			if (text instanceof String)
+				((String) text).getChars(0, length, chars, 0);
+			else {
+				for (int index = 0; index < length; index++)
+					chars[index] = text.charAt(index);
+			}
+			return new Buffer(null, chars, length);
+		}
+
+		static Buffer forAppending(CharSequence text, int start, int end) {
+			return isLatin1(text, start, end) ? new Buffer(new byte[APPEND_BUFFER_LENGTH], null, 0)
+					: new Buffer(null, new char[APPEND_BUFFER_LENGTH], 0);
+		}
+
+		boolean canAppend(CharSequence text, int start, int end) {
+			int capacity = latin1 != null ? latin1.length : chars.length;
+			return length + end - start <= capacity && (chars != null || isLatin1(text, start, end));
+		}
+
+		/**
+		 * @return the offset the characters from <code>start</code> to <code>end</code> were appended at
+		 */
+		int append(CharSequence text, int start, int end) {
+			int offset = length;
+			for (int index = start; index < end; index++) {
+				if (latin1 != null)
+					latin1[offset + index - start] = (byte) text.charAt(index);
+				else
+					chars[offset + index - start] = text.charAt(index);
+			}
+			length += end - start;
+			return offset;
+		}
+
+		void getChars(int offset, int count, char[] destination, int destinationStart) {
+			if (chars != null)
+				System.arraycopy(chars, offset, destination, destinationStart, count);
+			else {
+				for (int index = 0; index < count; index++)
+					destination[destinationStart + index] = (char) (latin1[offset + index] & 0xFF);
+			}
+		}
+
+		int indexOf(char c, int from, int to) {
+			if (latin1 != null) {
+				if (c > 0xFF)
+					return -1;
+
+				byte b = (byte) c;
+				for (int index = from; index < to; index++) {
+					if (latin1[index] == b)
+						return index;
+				}
+			}
+			else {
+				for (int index = from; index < to; index++) {
+					if (chars[index] == c)
+						return index;
+				}
+			}
+			return -1;
+		}
+
+		long getBytes() {
+			return latin1 != null ? latin1.length : 2L * chars.length;
+		}
+
+		private static boolean isLatin1(CharSequence text, int start, int end) {
+			for (int index = start; index < end; index++) {
+				if (text.charAt(index) > 0xFF)
+					return false;
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package com.obsglobal.util.regex;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.UndoableEdit;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Document content held in a {@link PieceTable}, so that the text shown is also the text matched: each edit
+ * replaces the table, and {@link #snapshot()} hands the current one to a background matcher without copying.
+ * <p/>
+ * Like the other contents, it ends with an implied newline that is not part of the document text. Positions
+ * follow edits as those of {@link javax.swing.text.StringContent} do and are dropped once unreferenced; as in
+ * {@link javax.swing.text.GapContent}, positions at the same offset are shared, so a line end and the start of the
+ * next line take one.
+ */
+public class PieceTableContent implements AbstractDocument.Content {
+	private static final char[] IMPLIED_NEWLINE = {'\n'};
+
+	private volatile PieceTable text;
+	private final List<Mark> marks = new ArrayList<Mark>();	// by offset, as edits keep them
+	private final ReferenceQueue<StickyPosition> unusedMarks = new ReferenceQueue<StickyPosition>();
+
+	public PieceTableContent() {
+		this(PieceTable.EMPTY);
+	}
+
+	public PieceTableContent(PieceTable text) {
+		this.text = text;
+	}
+
+	/**
+	 * @return the text as of now, which later edits leave unchanged; the same table until the next edit
+	 */
+	public PieceTable snapshot() {
+		return text;
+	}
+
+	@Override
+	public synchronized Position createPosition(int offset) throws BadLocationException {
+		purgeMarks();
+		int index = findMark(offset);
+		if (index < marks.size() && marks.get(index).offset == offset) {
+			StickyPosition shared = marks.get(index).get();
+			if (shared != null)
+				return shared;
+		}
+
+		StickyPosition position = new StickyPosition();
+		position.mark = new Mark(position, offset);
+		marks.add(index, position.mark);
+		return position;
+	}
+
+	@Override
+	public int length() {
+		return text.length() + 1;
+	}
+
+	@Override
+	public UndoableEdit insertString(int where, String str) throws BadLocationException {
+		if (where < 0 || where > text.length())
+			throw new BadLocationException("Invalid insert", where);
+
+		text = text.insert(where, str);
+		updateMarksForInsert(where, str.length());
+		return null;
+	}
+
+	@Override
+	public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+		if (where < 0 || nitems < 0 || where + nitems > text.length())
+			throw new BadLocationException("Invalid remove", where + nitems);
+
+		text = text.delete(where, where + nitems);
+		updateMarksForRemove(where, nitems);
+		return null;
+	}
+
+	@Override
+	public String getString(int where, int len) throws BadLocationException {
+		Segment segment = new Segment();
+		getChars(where, len, segment);
+		return new String(segment.array, segment.offset, segment.count);
+	}
+
+	@Override
+	public void getChars(int where, int len, Segment txt) throws BadLocationException {
+		PieceTable current = text;
+		if (where < 0 || len < 0 || where + len > current.length() + 1)
+			throw new BadLocationException("Invalid location", where + len);
+
+		if (where == current.length()) {
+			txt.array = IMPLIED_NEWLINE;
+			txt.offset = 0;
+			txt.count = len;
+		}
+		else if (txt.isPartialReturn())
+			current.getRun(where, len, txt);
+		else {
+			char[] chars = new char[len];
+			int textEnd = Math.min(where + len, current.length());
+			current.getChars(where, textEnd, chars, 0);
+			if (textEnd < where + len)
+				chars[len - 1] = '\n';
+			txt.array = chars;
+			txt.offset = 0;
+			txt.count = len;
+		}
+	}
+
+	private synchronized void updateMarksForInsert(int offset, int length) {
+		purgeMarks();
+		// a position at the start stays there
+		for (int index = findMark(offset == 0 ? 1 : offset); index < marks.size(); index++)
+			marks.get(index).offset += length;
+	}
+
+	private synchronized void updateMarksForRemove(int offset, int length) {
+		purgeMarks();
+		int end = offset + length;
+		for (int index = findMark(offset); index < marks.size(); index++) {
+			Mark mark = marks.get(index);
+			mark.offset = mark.offset >= end ? mark.offset - length : offset;
+		}
+	}
+
+	/**
+	 * @return the index of the first mark at or after the given offset
+	 */
+	private int findMark(int offset) {
+		int low = 0, high = marks.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (marks.get(middle).offset < offset)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	private void purgeMarks() {
+		if (unusedMarks.poll() == null)
+			return;
+
+		while (unusedMarks.poll() != null)
+			;
+		List<Mark> used = new ArrayList<Mark>(marks.size());
+		for (Mark mark : marks) {
+			if (mark.get() != null)
+				used.add(mark);
+		}
+		marks.clear();
+		marks.addAll(used);
+	}
+
+	/**
+	 * The offset of a position, dropped once the position is no longer referenced.
+	 */
+	private final class Mark extends WeakReference<StickyPosition> {
+		int offset;
+
+		Mark(StickyPosition position, int offset) {
+			super(position, unusedMarks);
+			this.offset = offset;
+		}
+	}
+
+	private static final class StickyPosition implements Position {
+		Mark mark;
+
+		@Override
+		public int getOffset() {
+			return mark.offset;
+		}
+
+		@Override
+		public String toString() {
+			return Integer.toString(getOffset());
+		}
+	}
+}
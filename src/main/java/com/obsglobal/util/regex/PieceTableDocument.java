@@ -0,0 +1,64 @@
+package com.obsglobal.util.regex;
+
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plain text document over a {@link PieceTableContent}, created with its text.
+ * <p/>
+ * Inserting a large text into a {@link PlainDocument} leaves a <code>char[]</code> copy of it referenced by the
+ * document, which for Latin-1 text is twice the size of the text itself. Creating the document with its text
+ * instead maps the lines straight from the table, so showing another text is done with a new document rather
+ * than by replacing the text of the old one.
+ */
+public class PieceTableDocument extends PlainDocument {
+	/**
+	 * Property holding {@link Boolean#TRUE} once the text needs bidirectional layout, see
+	 * {@link javax.swing.text.AbstractDocument#insertString}.
+	 */
+	private static final String I18N_PROPERTY = "i18n";
+	private static final char FIRST_COMPLEX_CHAR = '\u0590';
+
+	public PieceTableDocument() {
+		this(PieceTable.EMPTY);
+	}
+
+	public PieceTableDocument(PieceTable text) {
+		super(new PieceTableContent(text));
+		if (!text.isLatin1()) {
+			for (int index = 0; index < text.length(); index++) {
+				if (text.charAt(index) >= FIRST_COMPLEX_CHAR) {
+					putProperty(I18N_PROPERTY, Boolean.TRUE);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the text as of now, see {@link PieceTableContent#snapshot()}
+	 */
+	public PieceTable snapshot() {
+		return ((PieceTableContent) getContent()).snapshot();
+	}
+
+	/**
+	 * Maps the lines of the text the document is created with.
+	 */
+	@Override
+	protected AbstractElement createDefaultRoot() {
+		BranchElement root = (BranchElement) createBranchElement(null, null);
+		PieceTable text = snapshot();
+		List<Element> lines = new ArrayList<Element>();
+		int start = 0;
+		for (int end = text.indexOf('\n', 0); end >= 0; end = text.indexOf('\n', start)) {
+			lines.add(createLeafElement(root, null, start, end + 1));
+			start = end + 1;
+		}
+		lines.add(createLeafElement(root, null, start, text.length() + 1));	// up to the implied newline
+		root.replace(0, 0, lines.toArray(new Element[lines.size()]));
+		return root;
+	}
+}
@@ -0,0 +1,449 @@
+package com.obsglobal.util.regex;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+/**
+ * Headless command line front end to {@link RegexUtil}, using the same option names as the editor.
+ * <p/>
+ * It references no AWT or Swing classes, so it starts quickly and runs on machines without a display.
+ * Exits with 0 if anything matched, 1 if nothing did and 2 on errors, like grep.
+ */
+public class RegexCommand {
+	static final int EXIT_MATCH = 0, EXIT_NO_MATCH = 1, EXIT_ERROR = 2;
+	static final String USAGE =
+			"usage: RegexCommand [options] [--] <expression> [file...]\n" +
+			"Reads standard input when no file, or '-', is given.\n" +
+			"  -m, --mode MODE          match (default), count, split or replace\n" +
+			"  -o, --options NAMES      comma separated pattern options: "+ Arrays.toString(RegexUtil.OPTION_NAMES) +"\n" +
+			"  -r, --replacement TEXT   replacement text for replace mode, may reference groups as $n\n" +
+			"  -e, --encoding CHARSET   input and output encoding, default UTF-8, output UTF-8 if it only decodes\n" +
+			"  -n, --offsets            prefix each match with its start:end offsets\n" +
+			"  -p, --parallel           match large inputs on all cores\n" +
+			"      --max-count N        stop after N matches in each input, in match or count mode\n" +
+			"  -f, --follow             keep matching what is appended to a single file, like tail -f\n" +
+			"  -R, --recursive          search every file in the given directories, default the current one,\n" +
+			"                           printing file:line:column: before each match\n" +
+			"      --include GLOBS      with -R, only search files matching these comma separated globs\n" +
+			"      --exclude GLOBS      with -R, skip files and directories matching these globs\n" +
+			"  -t, --timeout SECONDS    abandon matching an input after this long\n" +
+			"      --no-prefilter       run the matcher over the whole input instead of near required literals\n" +
+			"      --metrics            print where the time went to standard error\n" +
+			"  -h, --help               print this message";
+
+	enum Mode { MATCH, COUNT, SPLIT, REPLACE }
+
+	private Mode mode = Mode.MATCH;
+	private int flags = 0;
+	private String expression = null;
+	private String replacement = "";
+	private Charset charset = StandardCharsets.UTF_8;
+	private boolean printOffsets = false, parallel = false, follow = false, recursive = false, prefilter = true,
+			printMetrics = false, help = false;
+	private String includes = "", excludes = "";
+	private long timeoutMillis = 0;
+	private int maxCount = 0;
+	private final List<String> inputNames = new ArrayList<String>();
+
+	public static void main(String[] args) {
+		System.exit(run(args, System.in, System.out, System.err));
+	}
+
+	public static int run(String[] args, InputStream in, PrintStream out, PrintStream err) {
+		RegexCommand command = new RegexCommand();
+		try {
+			command.parse(args);
+		}
+		catch (IllegalArgumentException ex) {
+			err.println("ERROR - "+ ex.getMessage());
+			err.println(USAGE);
+			return EXIT_ERROR;
+		}
+
+		if (command.help) {
+			out.println(USAGE);
+			return EXIT_MATCH;
+		}
+
+		boolean prefilterEnabled = RegexUtil.isPrefilterEnabled();
+		RegexUtil.setPrefilterEnabled(prefilterEnabled && command.prefilter);
+		try {
+			// charsets such as x-JISAutoDetect only decode
+			Charset outputCharset = command.charset.canEncode() ? command.charset : StandardCharsets.UTF_8;
+			Writer writer = new BufferedWriter(new OutputStreamWriter(out, outputCharset));
+			EvaluationRecorder recorder = new EvaluationRecorder();
+			int matches = command.execute(in, writer, recorder);
+			writer.flush();
+			EvaluationMetrics metrics = recorder.finish();
+			if (command.printMetrics)
+				err.println(metrics);
+			return matches > 0 ? EXIT_MATCH : EXIT_NO_MATCH;
+		}
+		catch (UncheckedIOException ex) {
+			err.println("ERROR - "+ ex.getCause().getMessage());
+		}
+		catch (Exception ex) {
+			err.println("ERROR - "+ ex.getMessage());
+		}
+		finally {
+			RegexUtil.setPrefilterEnabled(prefilterEnabled);
+		}
+
+		out.flush();
+		return EXIT_ERROR;
+	}
+
+	void parse(String[] args) {
+		boolean optionsEnded = false;
+		for (int index = 0; index < args.length; index++) {
+			String arg = args[index];
+			if (optionsEnded || !arg.startsWith("-") || arg.equals("-")) {
+				if (expression == null)
+					expression = arg;
+				else
+					inputNames.add(arg);
+			}
+			else if (arg.equals("--"))
+				optionsEnded = true;
+			else if (arg.equals("-m") || arg.equals("--mode")) {
+				String value = value(args, ++index, arg);
+				try {
+					mode = Mode.valueOf(value.toUpperCase(Locale.ENGLISH));
+				}
+				catch (IllegalArgumentException ex) {
+					throw new IllegalArgumentException("Unknown mode: "+ value);
+				}
+			}
+			else if (arg.equals("-o") || arg.equals("--options"))
+				flags |= RegexUtil.parseOptions(value(args, ++index, arg));
+			else if (arg.equals("-r") || arg.equals("--replacement"))
+				replacement = value(args, ++index, arg);
+			else if (arg.equals("-e") || arg.equals("--encoding"))
+				charset = Charset.forName(value(args, ++index, arg));
+			else if (arg.equals("-t") || arg.equals("--timeout"))
+				timeoutMillis = Long.parseLong(value(args, ++index, arg)) * 1000L;
+			else if (arg.equals("-n") || arg.equals("--offsets"))
+				printOffsets = true;
+			else if (arg.equals("-p") || arg.equals("--parallel"))
+				parallel = true;
+			else if (arg.equals("-f") || arg.equals("--follow"))
+				follow = true;
+			else if (arg.equals("-R") || arg.equals("--recursive"))
+				recursive = true;
+			else if (arg.equals("--include"))
+				includes = value(args, ++index, arg);
+			else if (arg.equals("--exclude"))
+				excludes = value(args, ++index, arg);
+			else if (arg.equals("--max-count")) {
+				maxCount = Integer.parseInt(value(args, ++index, arg));
+				if (maxCount < 1)
+					throw new IllegalArgumentException("Maximum match count must be positive: "+ maxCount);
+			}
+			else if (arg.equals("--no-prefilter"))
+				prefilter = false;
+			else if (arg.equals("--metrics"))
+				printMetrics = true;
+			else if (arg.equals("-h") || arg.equals("--help"))
+				help = true;
+			else
+				throw new IllegalArgumentException("Unknown option: "+ arg);
+		}
+
+		if (expression == null && !help)
+			throw new IllegalArgumentException("No expression given");
+		if (inputNames.isEmpty())
+			inputNames.add(recursive ? "." : "-");
+		if (recursive && (mode != Mode.MATCH || follow))
+			throw new IllegalArgumentException("Can only search directories in match mode");
+		if (follow && (mode != Mode.MATCH || inputNames.size() > 1 || inputNames.get(0).equals("-")))
+			throw new IllegalArgumentException("Can only follow a single file in match mode");
+		if (maxCount > 0 && (mode != Mode.MATCH && mode != Mode.COUNT || recursive || follow || parallel))
+			throw new IllegalArgumentException("Can only limit matches of single threaded match or count mode");
+	}
+
+	/**
+	 * @param recorder times compiling, and scanning or replacing including writing the output, but not reading input
+	 * @return the total number of matches
+	 */
+	int execute(InputStream in, Writer out, EvaluationRecorder recorder) throws IOException {
+		recorder.begin(EvaluationMetrics.Phase.COMPILE);
+		Pattern pattern = RegexUtil.compile(expression, flags);
+		recorder.end(EvaluationMetrics.Phase.COMPILE);
+		recorder.setEngineName(parallel ? RegexUtil.BACKTRACKING_ENGINE.getName() +", parallel"
+				: RegexUtil.BACKTRACKING_ENGINE.getName());
+		EvaluationMetrics.Phase phase = mode == Mode.REPLACE ? EvaluationMetrics.Phase.REPLACE : EvaluationMetrics.Phase.SCAN;
+		if (follow) {
+			recorder.begin(phase);
+			try {
+				return followMatches(pattern, new File(inputNames.get(0)), out);
+			}
+			finally {
+				recorder.end(phase);
+			}
+		}
+
+		int matches = 0;
+		if (recursive) {
+			for (String inputName : inputNames) {
+				recorder.begin(phase);
+				DirectoryGrep grep = grepDirectory(pattern, inputName, out);
+				recorder.end(phase);
+				recorder.addCharactersScanned(grep.getBytesScanned());
+				recorder.addMatches(grep.getMatchCount());
+				matches += (int) grep.getMatchCount();
+			}
+
+			return matches;
+		}
+
+		for (String inputName : inputNames) {
+			String prefix = inputNames.size() > 1 ? inputName +":" : "";
+			CharSequence input = readInput(inputName, in);
+			if (timeoutMillis > 0)
+				input = new InterruptibleCharSequence(input, timeoutMillis);
+
+			int inputMatches = matches;
+			recorder.begin(phase);
+			switch (mode) {
+				case COUNT:
+					int count = findAllMatchOffsets(pattern, input).size();
+					out.write(prefix + count +"\n");
+					matches += count;
+					break;
+				case SPLIT:
+					matches += writeSplits(pattern, input, out);
+					break;
+				case REPLACE:
+					matches += RegexUtil.replaceAll(pattern, input, replacement, out).size();
+					break;
+				default:
+					matches += writeMatches(pattern, input, prefix, out);
+			}
+			recorder.end(phase);
+			recorder.addCharactersScanned(input.length());
+			recorder.addMatches(matches - inputMatches);
+		}
+
+		return matches;
+	}
+
+	private MatchOffsets findAllMatchOffsets(Pattern pattern, CharSequence input) {
+		if (maxCount > 0)
+			return RegexUtil.findMatchOffsets(pattern, input, maxCount);
+
+		return parallel ? new ParallelMatcher().findAllMatchOffsets(pattern, input)
+				: RegexUtil.findAllMatchOffsets(pattern, input);
+	}
+
+	private int writeMatches(Pattern pattern, CharSequence input, final String prefix, final Writer out) throws IOException {
+		if (parallel || maxCount > 0) {
+			MatchOffsets offsets = findAllMatchOffsets(pattern, input);
+			for (int index = 0; index < offsets.size(); index++)
+				writeMatch(prefix, input, offsets.start(index), offsets.end(index), out);
+
+			return offsets.size();
+		}
+
+		final CharSequence text = input;
+		try {
+			return RegexUtil.visitMatches(pattern, input, new MatchVisitor() {
+				@Override
+				public boolean visitMatch(MatchResult match) {
+					try {
+						writeMatch(prefix, text, match.start(), match.end(), out);
+					}
+					catch (IOException ex) {
+						throw new UncheckedIOException(ex);
+					}
+					return true;
+				}
+			});
+		}
+		catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+	}
+
+	/**
+	 * Writes the matches in every file under a directory as the files are scanned, so the lines of different
+	 * files may interleave.
+	 */
+	private DirectoryGrep grepDirectory(Pattern pattern, String directory, final Writer out) throws IOException {
+		DirectoryGrep grep = new DirectoryGrep(pattern);
+		grep.setCharset(charset);
+		grep.setIncludes(includes);
+		grep.setExcludes(excludes);
+		try {
+			grep.grep(Paths.get(directory), new DirectoryGrep.Visitor() {
+				@Override
+				public boolean visitHit(DirectoryGrep.Hit hit) {
+					synchronized (out) {
+						try {
+							out.write(hit.getFile() +":"+ hit.getLine() +":"+ hit.getColumn() +":");
+							if (printOffsets)
+								out.write(hit.getStart() +":"+ hit.getEnd() +"\t");
+							out.write(hit.getText());
+							out.write('\n');
+						}
+						catch (IOException ex) {
+							throw new UncheckedIOException(ex);
+						}
+					}
+					return true;
+				}
+			});
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Search was interrupted");
+		}
+		catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+
+		return grep;
+	}
+
+	/**
+	 * Writes the matches in a file as it grows, until the thread is interrupted.
+	 */
+	private int followMatches(Pattern pattern, File file, final Writer out) throws IOException {
+		final int[] matches = new int[1];
+		try {
+			new StreamingMatcher(pattern).follow(file, charset, StreamingMatcher.DEFAULT_POLL_MILLIS,
+					new StreamingMatcher.Visitor() {
+				@Override
+				public boolean visitMatch(long start, long end, MatchResult match) {
+					try {
+						if (printOffsets)
+							out.write(start +":"+ end +"\t");
+						out.write(match.group());
+						out.write('\n');
+						out.flush();
+					}
+					catch (IOException ex) {
+						throw new UncheckedIOException(ex);
+					}
+					++matches[0];
+					return true;
+				}
+			});
+		}
+		catch (InterruptedIOException ex) {
+			// stopped following
+		}
+		catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+
+		return matches[0];
+	}
+
+	private void writeMatch(String prefix, CharSequence input, int start, int end, Writer out) throws IOException {
+		out.write(prefix);
+		if (printOffsets)
+			out.write(start +":"+ end +"\t");
+		out.append(input, start, end).write('\n');
+	}
+
+	/**
+	 * Writes a line per piece, following {@link Pattern#split(CharSequence)}: no leading empty piece for a
+	 * zero-width match at the start, and no trailing empty pieces.
+	 */
+	private int writeSplits(Pattern pattern, final CharSequence input, final Writer out) throws IOException {
+		final int[] state = new int[2];	// next piece start, pending empty pieces
+		int matches;
+		try {
+			matches = RegexUtil.visitMatches(pattern, input, new MatchVisitor() {
+				@Override
+				public boolean visitMatch(MatchResult match) {
+					if (match.end() == 0)
+						return true;
+
+					try {
+						writePiece(input, state, match.start(), out);
+					}
+					catch (IOException ex) {
+						throw new UncheckedIOException(ex);
+					}
+					state[0] = match.end();
+					return true;
+				}
+			});
+		}
+		catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+
+		if (matches == 0)
+			out.append(input).write('\n');
+		else
+			writePiece(input, state, input.length(), out);
+
+		return matches;
+	}
+
+	private static void writePiece(CharSequence input, int[] state, int end, Writer out) throws IOException {
+		if (end == state[0]) {
+			++state[1];
+			return;
+		}
+
+		for (; state[1] > 0; state[1]--)
+			out.write('\n');
+		out.append(input, state[0], end).write('\n');
+	}
+
+	private CharSequence readInput(String inputName, InputStream in) throws IOException {
+		if (inputName.equals("-"))
+			return readFully(in);
+
+		File file = new File(inputName);
+		if (MappedCharSequence.isSupported(charset))
+			return MappedCharSequence.open(file, charset);
+
+		InputStream inputStream = new FileInputStream(file);
+		try {
+			return readFully(inputStream);
+		}
+		finally {
+			inputStream.close();
+		}
+	}
+
+	private CharSequence readFully(InputStream in) throws IOException {
+		Reader reader = new InputStreamReader(in, charset);
+		StringBuilder builder = new StringBuilder();
+		char[] buffer = new char[8192];
+		for (int read = reader.read(buffer); read >= 0; read = reader.read(buffer))
+			builder.append(buffer, 0, read);
+
+		return builder;
+	}
+
+	private static String value(String[] args, int index, String option) {
+		if (index >= args.length)
+			throw new IllegalArgumentException("Missing value for "+ option);
+
+		return args[index];
+	}
+}
@@ -2,11 +2,14 @@ package com.obsglobal.util.regex;
 
 import com.obsglobal.util.ApplicationRunner;
 import com.obsglobal.util.RunnableApplication;
+import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultHighlighter;
 import javax.swing.text.Highlighter;
@@ -14,8 +17,29 @@ import java.awt.*;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.ItemEvent;
+import java.awt.event.ItemListener;
+import java.awt.event.KeyEvent;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
 import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
 
@@ -24,14 +48,68 @@ import java.util.regex.Pattern;
  */
 public class RegexEditor extends JPanel implements RunnableApplication<RegexEditor> {
 
-	private Highlighter highlighter;
-	private Highlighter.HighlightPainter painter;
+	private OffsetHighlighter highlighter;
+	private Highlighter.HighlightPainter painter, currentMatchPainter, vulnerabilityPainter;
+	private Highlighter.HighlightPainter[] heatPainters;
 	private JTextField regexTextField, matchingTextField;
 	private JTextArea inputTextArea;
-	private JLabel statusMessageLabel;
-	private JCheckBox optionBoxes[], replaceMatchToggle;
+	private JLabel statusMessageLabel, engineLabel, complexityLabel;
+	private JCheckBox optionBoxes[], replaceMatchToggle, sideBySideToggle;
+	private JButton keepReplacedButton, undoReplaceButton, redoReplaceButton;
+	private JTextArea previewTextArea;
+	private JScrollPane inputScrollPane, previewScrollPane;
+	private JSplitPane inputSplitPane;
+	private Timer previewTimer;
 
-	private String unmodifiedInputText = null;
+	private JButton cancelButton;
+	private JSpinner timeBudgetSpinner;
+	private Timer progressTimer;
+
+	private JButton previousWindowButton, nextWindowButton;
+	private JComboBox<String> charsetBox;
+	private JToggleButton editButton, followButton;
+	private JCheckBox parallelToggle, liveToggle, profileToggle, pagedToggle;
+	private JSpinner matchLimitSpinner;
+	private JButton nextPageButton;
+	private JButton exportProfileButton;
+	private JToggleButton metricsButton;
+	private JLabel metricsLabel;
+	private GrepResultsPanel grepPanel;
+	private FlagExplorerPanel explorePanel;
+	private RegexOptimizerPanel optimizerPanel;
+	private JButton previousMatchButton, nextMatchButton;
+	private JTextField goToMatchField;
+	private JLabel matchPositionLabel;
+	private MatchMinimap minimap;
+	private Timer liveEvaluationTimer;
+
+	private PieceTableDocument inputDocument;
+	private PieceTableDocument replacedDocument = null;
+	private DocumentListener inputEditListener;
+	private PieceTable unmodifiedInput = null;
+	private final Deque<PieceTable> undoneInputs = new ArrayDeque<PieceTable>();
+	private final Deque<PieceTable> redoneInputs = new ArrayDeque<PieceTable>();
+	private Pattern previewPattern = null;
+	private String previewReplacement = null;
+	private MappedCharSequence mappedInput = null;
+	private int inputWindowStart = 0;
+	private MatchOffsets inputMatchOffsets = null;
+	private MatchOffsets navigatedMatchOffsets = null;
+	private int currentMatchIndex = -1;
+	private LineIndex lineIndex = null;
+	private SwingWorker<LineIndex, Void> lineIndexWorker = null;
+	private MatchOffsets[] inputPatternMatchOffsets = null;
+	private MatchProfile inputMatchProfile = null;
+	private IncrementalMatcher incrementalMatcher = null;
+	private MatchCursor matchCursor = null;
+	private MatchWorker<?> currentEvaluation = null;
+	private FollowWorker currentFollow = null;
+	private EvaluationRecorder nextRecorder = null;
+	private EvaluationKey lastEvaluationKey = null;
+	private SwingWorker<BacktrackingAnalyzer.Report, Void> currentAnalysis = null;
+	private Pattern lastAnalyzedPattern = null;
+	private final ParallelMatcher parallelMatcher = new ParallelMatcher();
+	private final MatchProfiler matchProfiler = new MatchProfiler();
 
 	@Override
 	public String getTitle() {
@@ -45,83 +123,1155 @@ public class RegexEditor extends JPanel implements RunnableApplication<RegexEdit
 	}
 
 	protected void applyRegularExpression() {
+		evaluateRegularExpression();
+		regexTextField.grabFocus();
+	}
+
+	/**
+	 * Restarts the live mode debounce delay, if live mode is on.
+	 */
+	protected void scheduleLiveEvaluation() {
+		if (liveToggle.isSelected())
+			liveEvaluationTimer.restart();
+	}
+
+	/**
+	 * Evaluates as {@link #applyRegularExpression()} does, unless nothing affecting the result
+	 * has changed since the last evaluation.
+	 */
+	protected void applyLiveRegularExpression() {
+		if (!getEvaluationKey().equals(lastEvaluationKey))
+			evaluateRegularExpression();
+	}
+
+	protected void evaluateRegularExpression() {
+		if (isFollowing()) {
+			stopFollowing();
+			updateUnmodifiedInput();	// match what was followed so far
+		}
+		currentInput();
+		lastEvaluationKey = getEvaluationKey();
 		try {
-			//noinspection MagicConstant
-			Pattern pattern = Pattern.compile(getRegularExpressionText(), calculatePatternOptions());
+			EvaluationRecorder recorder = new EvaluationRecorder();
+			recorder.begin(EvaluationMetrics.Phase.COMPILE);
+			Pattern pattern = RegexUtil.compile(getRegularExpressionText(), calculatePatternOptions());
+			recorder.end(EvaluationMetrics.Phase.COMPILE);
+			nextRecorder = recorder;	// picked up by the evaluation started next
+			analyzeBacktracking(pattern);
 			if (replaceMatchToggle.isSelected())
 				replaceMatches(pattern);
 			else
 				highlightMatches(pattern);
 		}
 		catch (Exception ex) {
+			nextRecorder = null;
 			postError("ERROR - Failed to apply regex: ", ex.getMessage());
 		}
+	}
 
-		regexTextField.grabFocus();
+	protected EvaluationKey getEvaluationKey() {
+		return new EvaluationKey(getRegularExpressionText(), calculatePatternOptions(), getInputSequence(),
+				replaceMatchToggle.isSelected() ? getMatchingExpressionText() : null);
 	}
 
-	protected void replaceMatches(Pattern pattern) throws BadLocationException {
+	protected void replaceMatches(final Pattern pattern) {
+		if (sideBySideToggle.isSelected()) {
+			previewReplacements(pattern);
+			return;
+		}
+
 		resetInput();
+		if (mappedInput != null) {
+			postError("ERROR - Replace is only previewed side by side or written to a file on opened files");
+			return;
+		}
+
+		final String replacement = getMatchingExpressionText();
+		startEvaluation(new MatchWorker<ReplaceResult>(getInputSequence()) {
+			@Override
+			protected ReplaceResult evaluate(CharSequence input) {
+				// shares the unreplaced text of the input table rather than copying it
+				PieceTable.Builder builder = new PieceTable.Builder();
+				try {
+					MatchOffsets replacedOffsets = RegexUtil.replaceAll(pattern, input, replacement, builder);
+					matchesFound = replacedOffsets.size();
+					return new ReplaceResult(builder.build(), replacedOffsets);
+				}
+				catch (IOException ex) {
+					// the builder does not throw IOException
+					throw new IllegalStateException(ex);
+				}
+			}
 
-		int matches = 0;
-		String input = getInputText();
-		StringBuilder builder = new StringBuilder();
-		List<int[]> replacedResults = new ArrayList<int[]>();
+			@Override
+			protected EvaluationMetrics.Phase getEvaluationPhase() {
+				return EvaluationMetrics.Phase.REPLACE;
+			}
 
-		String[] splits = pattern.split(input);
-		// append initial non-match
-		builder.append(splits[0]);
+			@Override
+			protected void display(ReplaceResult result) {
+				// showing the text is rendering, the rest is highlighting
+				recorder.end(EvaluationMetrics.Phase.HIGHLIGHT);
+				recorder.begin(EvaluationMetrics.Phase.RENDER);
+				showReplacedText((PieceTable) result.getText());
+				recorder.end(EvaluationMetrics.Phase.RENDER);
+				recorder.begin(EvaluationMetrics.Phase.HIGHLIGHT);
+				postMatches(result.getReplacementCount());
+				postEngine(RegexUtil.BACKTRACKING_ENGINE.getName());
+				recorder.setEngineName(RegexUtil.BACKTRACKING_ENGINE.getName());
 
-		List<MatchResult> matchResults = RegexUtil.findAllMatches(pattern, input);
-		for (MatchResult result : matchResults) {
-			String replacementText = result.group().replaceFirst(pattern.pattern(), getMatchingExpressionText());
-			replacedResults.add(new int[] { builder.length(), builder.length() + replacementText.length() });
+				inputMatchOffsets = result.getReplacedOffsets();
+				highlightInputWindow();
+				updateReplaceButtons();
+			}
+		});
+	}
 
-			builder.append(replacementText);
-			++matches;
-			builder.append(splits[matches]);
+	/**
+	 * Highlights the matches in the input, and shows beside it the replaced text of only the lines in view,
+	 * rendered again as the input scrolls. The input is left as it is, which lets opened files be previewed.
+	 */
+	protected void previewReplacements(Pattern pattern) {
+		highlightMatches(pattern);
+		previewPattern = pattern;
+		previewReplacement = getMatchingExpressionText();
+		if (!previewScrollPane.isVisible()) {
+			previewScrollPane.setVisible(true);
+			inputSplitPane.setDividerLocation(0.5);
 		}
+		renderPreview();
+	}
+
+	protected void hidePreview() {
+		previewPattern = null;
+		previewReplacement = null;
+		previewTimer.stop();
+		previewTextArea.setText("");
+		previewScrollPane.setVisible(false);
+	}
+
+	/**
+	 * Replaces the matches in the lines of the input in view, with the rest of the input around them for
+	 * lookarounds and anchors, into the preview.
+	 */
+	protected void renderPreview() {
+		if (previewPattern == null)
+			return;
 
-		inputTextArea.setText(builder.toString());
-		postMatches(matches);
+		CharSequence input = mappedInput != null ? mappedInput : getShownText();
+		int base = mappedInput != null ? inputWindowStart : 0;
+		Rectangle visible = inputTextArea.getVisibleRect();
+		StringBuilder preview = new StringBuilder();
+		previewTextArea.getHighlighter().removeAllHighlights();
+		try {
+			// -1 before the text area is laid out
+			int start = inputTextArea.getLineStartOffset(
+					inputTextArea.getLineOfOffset(Math.max(0, inputTextArea.viewToModel2D(visible.getLocation()))));
+			int end = inputTextArea.getLineEndOffset(inputTextArea.getLineOfOffset(Math.max(0,
+					inputTextArea.viewToModel2D(new Point(visible.x + visible.width, visible.y + visible.height)))));
+			start = Math.min(base + start, input.length());
+			end = Math.min(base + end, input.length());
+			if (inputMatchOffsets != null) {
+				// from the start of a match running into view, as the whole input is matched
+				int previous = inputMatchOffsets.searchStart(start) - 1;
+				if (previous >= 0 && inputMatchOffsets.end(previous) > start)
+					start = inputMatchOffsets.start(previous);
+			}
 
-		for (int[] replacementPoints : replacedResults)
-			highlighter.addHighlight(replacementPoints[0], replacementPoints[1], painter);
+			MatchOffsets replacedOffsets = RegexUtil.replaceRegion(previewPattern,
+					new InterruptibleCharSequence(input, PREVIEW_TIME_BUDGET_MILLIS), previewReplacement, start, end, preview);
+			previewTextArea.setText(preview.toString());
+			for (int index = 0; index < replacedOffsets.size(); index++)
+				previewTextArea.getHighlighter().addHighlight(replacedOffsets.start(index), replacedOffsets.end(index), painter);
+		}
+		catch (MatchInterruptedException ex) {
+			previewTextArea.setText("The preview exceeded its time budget, try a less ambiguous expression");
+		}
+		catch (Exception ex) {
+			previewTextArea.setText("Failed to preview: "+ ex.getMessage());
+		}
+		previewTextArea.setCaretPosition(0);
+	}
+
+	protected void replaceToFile() {
+		Pattern pattern;
+		try {
+			pattern = RegexUtil.compile(getRegularExpressionText(), calculatePatternOptions());
+		}
+		catch (Exception ex) {
+			postError("ERROR - Failed to apply regex: ", ex.getMessage());
+			return;
+		}
+
+		JFileChooser fileChooser = new JFileChooser();
+		if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION)
+			replaceToFile(pattern, getMatchingExpressionText(), fileChooser.getSelectedFile());
 	}
 
-	protected void highlightMatches(Pattern pattern) throws BadLocationException {
+	/**
+	 * Streams the input with its matches replaced to the given file, in chunks, without keeping the result.
+	 * An opened file is written back in the charset it was opened with, other input as UTF-8.
+	 */
+	protected void replaceToFile(final Pattern pattern, final String replacement, final File file) {
+		CharSequence input = currentInput();
+		final Charset charset = mappedInput != null ? mappedInput.getCharset() : StandardCharsets.UTF_8;
+		startEvaluation(new MatchWorker<Integer>(input) {
+			@Override
+			protected Integer evaluate(CharSequence input) {
+				try {
+					FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+							StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+					try {
+						matchesFound = RegexUtil.replaceAll(pattern, input, replacement, channel, charset);
+						return matchesFound;
+					}
+					finally {
+						channel.close();
+					}
+				}
+				catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}
+
+			@Override
+			protected EvaluationMetrics.Phase getEvaluationPhase() {
+				return EvaluationMetrics.Phase.REPLACE;
+			}
+
+			@Override
+			protected void display(Integer replacements) {
+				statusMessageLabel.setForeground(Color.green.darker());
+				postMessage(replacements, replacements == 1 ? " replacement" : " replacements", " written to ", file.getName());
+			}
+		});
+	}
+
+	/**
+	 * Makes the replaced text shown the input, keeping the input it replaces to undo to.
+	 */
+	protected void keepReplacedText() {
+		if (replacedDocument == null)
+			return;
+
+		cancelEvaluation();
+		pushInput(undoneInputs, getUnmodifiedInput());
+		redoneInputs.clear();
+		PieceTable replaced = replacedDocument.snapshot();
+		setInputDocument(replaced);
+		unmodifiedInput = replaced;
+		highlightInputWindow();	// the replaced spans, now in the input
+		updateReplaceButtons();
+	}
+
+	/**
+	 * Goes back to the input before the last replaced text kept. The inputs are tables sharing their text, so
+	 * each level costs the replaced text rather than a copy of the input.
+	 */
+	protected void undoReplace() {
+		if (!undoneInputs.isEmpty()) {
+			restoreInput(undoneInputs, redoneInputs);
+			postMessage("Undid the last replaced text kept");
+		}
+	}
+
+	protected void redoReplace() {
+		if (!redoneInputs.isEmpty()) {
+			restoreInput(redoneInputs, undoneInputs);
+			postMessage("Kept the replaced text again");
+		}
+	}
+
+	private void restoreInput(Deque<PieceTable> from, Deque<PieceTable> to) {
+		cancelEvaluation();
+		currentInput();
+		pushInput(to, getUnmodifiedInput());
+		PieceTable restored = from.pop();
+		setInputDocument(restored);
+		unmodifiedInput = restored;
+		lastEvaluationKey = null;
 		resetInput();
+	}
 
-		int matches = 0;
-		List<MatchResult> matchResults = RegexUtil.findAllMatches(pattern, getInputText());
-		for (MatchResult result : matchResults) {
-			highlighter.addHighlight(result.start(), result.end(), painter);
-			++matches;
+	private static void pushInput(Deque<PieceTable> inputs, PieceTable input) {
+		inputs.push(input);
+		if (inputs.size() > MAX_UNDO_REPLACE_LEVELS)
+			inputs.removeLast();
+	}
+
+	protected void clearReplaceHistory() {
+		undoneInputs.clear();
+		redoneInputs.clear();
+		updateReplaceButtons();
+	}
+
+	protected void updateReplaceButtons() {
+		keepReplacedButton.setEnabled(replacedDocument != null);
+		undoReplaceButton.setEnabled(!undoneInputs.isEmpty());
+		redoReplaceButton.setEnabled(!redoneInputs.isEmpty());
+	}
+
+	protected void highlightMatches(final Pattern pattern) {
+		if (pagedToggle.isSelected()) {
+			highlightFirstMatches(pattern);
+			return;
+		}
+		resetInput();
+
+		final boolean parallel = parallelToggle.isSelected();
+		final boolean profile = profileToggle.isSelected();
+		final int viewEnd = getViewEnd();
+		startEvaluation(new MatchWorker<MatchOffsets>(getInputSequence()) {
+			private String engineName;
+			private MatchProfile matchProfile;
+
+			@Override
+			protected MatchOffsets evaluate(CharSequence input) {
+				if (profile) {
+					engineName = RegexUtil.BACKTRACKING_ENGINE.getName() +", profiled";
+					matchProfile = matchProfiler.profile(pattern, input);
+					matchesFound = matchProfile.getMatchOffsets().size();
+					return matchProfile.getMatchOffsets();
+				}
+
+				if (parallel) {
+					engineName = RegexUtil.BACKTRACKING_ENGINE.getName() +", parallel";
+					MatchOffsets matchOffsets = parallelMatcher.findAllMatchOffsets(pattern, input);
+					matchesFound = matchOffsets.size();
+					return matchOffsets;
+				}
+
+				RegexEngine engine = RegexUtil.selectEngine(pattern);
+				engineName = engine.getName();
+				final MatchOffsets matchOffsets = new MatchOffsets();
+				engine.visitMatchOffsets(pattern, input, new RegexEngine.Visitor() {
+					private long lastPreview = startTime;
+					private boolean screenful = false;
+
+					@Override
+					public boolean visitMatch(int start, int end) {
+						matchOffsets.add(start, end);
+						matchesFound = matchOffsets.size();
+						// even a linear scan of a large input takes a while, so show the matches in view as they
+						// are found, until they go past its end
+						if (!screenful) {
+							screenful = end >= viewEnd;
+							long now = System.currentTimeMillis();
+							if (screenful || now - lastPreview >= PREVIEW_INTERVAL_MILLIS) {
+								lastPreview = now;
+								publish(matchOffsets.copy());
+							}
+						}
+						return true;
+					}
+				});
+
+				return matchOffsets;
+			}
+
+			@Override
+			protected void displayPreview(MatchOffsets matchOffsets) {
+				inputMatchOffsets = matchOffsets;
+				highlightInputWindow();
+			}
+
+			@Override
+			protected void display(MatchOffsets matchOffsets) {
+				incrementalMatcher = new IncrementalMatcher(pattern);
+				inputMatchOffsets = matchOffsets;
+				inputMatchProfile = matchProfile;
+				highlightInputWindow();
+				postMatches(matchOffsets.size());
+				postEngine(engineName);
+				recorder.setEngineName(engineName);
+				if (matchProfile != null)
+					postProfile(matchProfile);
+			}
+		});
+	}
+
+	/**
+	 * Highlights only the matches up to the match limit, keeping a cursor to find the next page from when asked
+	 * for or when scrolled past the last match.
+	 */
+	protected void highlightFirstMatches(Pattern pattern) {
+		resetInput();
+		matchCursor = new MatchCursor(pattern, getInputSequence());
+		highlightNextMatches();
+	}
+
+	/**
+	 * Finds the next page of matches from where the last one stopped, adding them to those highlighted.
+	 */
+	protected void highlightNextMatches() {
+		final MatchCursor cursor = matchCursor;
+		if (cursor == null || cursor.isExhausted() || isEvaluating())
+			return;
+
+		final int limit = getMatchLimit();
+		nextPageButton.setEnabled(false);
+		startEvaluation(new MatchWorker<MatchOffsets>(cursor.getInput()) {
+			@Override
+			protected MatchOffsets evaluate(CharSequence input) {
+				MatchOffsets page = cursor.next(limit, input);
+				matchesFound = page.size();
+				return page;
+			}
+
+			@Override
+			protected void display(MatchOffsets page) {
+				MatchOffsets offsets = inputMatchOffsets != null ? inputMatchOffsets : new MatchOffsets(page.size());
+				for (int index = 0; index < page.size(); index++)
+					offsets.add(page.start(index), page.end(index));
+				inputMatchOffsets = offsets;
+				highlightInputWindow();
+				postPagedMatches(cursor);
+				String engineName = RegexUtil.BACKTRACKING_ENGINE.getName() +", paged";
+				postEngine(engineName);
+				recorder.setEngineName(engineName);
+			}
+		});
+	}
+
+	/**
+	 * @return the input offset of the end of the text in view
+	 */
+	protected int getViewEnd() {
+		Rectangle view = inputScrollPane.getViewport().getViewRect();
+		int end = inputTextArea.viewToModel2D(new Point(view.x + view.width, view.y + view.height));
+		return inputWindowStart + Math.max(0, end);
+	}
+
+	/**
+	 * Finds the next page of matches once the end of the text in view is past the last match highlighted.
+	 */
+	protected void highlightMatchesInView() {
+		if (matchCursor == null || matchCursor.isExhausted() || isEvaluating())
+			return;
+
+		int viewEnd = getViewEnd();
+		MatchOffsets offsets = inputMatchOffsets;
+		if (offsets == null || offsets.isEmpty() || viewEnd >= offsets.end(offsets.size() - 1))
+			highlightNextMatches();
+	}
+
+	protected int getMatchLimit() {
+		return ((Number) matchLimitSpinner.getValue()).intValue();
+	}
+
+	/**
+	 * @return the cursor of the matches highlighted in paged mode, or <code>null</code> if not paged
+	 */
+	protected MatchCursor getMatchCursor() {
+		return matchCursor;
+	}
+
+	protected void postPagedMatches(MatchCursor cursor) {
+		nextPageButton.setEnabled(!cursor.isExhausted());
+		if (cursor.isExhausted())
+			postMatches(cursor.getMatchCount());
+		else {
+			statusMessageLabel.setForeground(Color.green.darker());
+			postMessage("\u2265", cursor.getMatchCount(), " matches");
 		}
+	}
+
+	/**
+	 * Flags the constructs of the expression that can backtrack catastrophically, and measures their growth on
+	 * attack strings, in the background. Skipped if the pattern was analyzed last.
+	 */
+	protected void analyzeBacktracking(final Pattern pattern) {
+		if (lastAnalyzedPattern != null && lastAnalyzedPattern.pattern().equals(pattern.pattern())
+				&& lastAnalyzedPattern.flags() == pattern.flags())
+			return;
+
+		if (currentAnalysis != null)
+			currentAnalysis.cancel(true);
+		lastAnalyzedPattern = pattern;
+		regexTextField.getHighlighter().removeAllHighlights();
+		complexityLabel.setText("");
+		complexityLabel.setToolTipText(null);
+		currentAnalysis = new SwingWorker<BacktrackingAnalyzer.Report, Void>() {
+			@Override
+			protected BacktrackingAnalyzer.Report doInBackground() throws Exception {
+				return BacktrackingAnalyzer.analyze(pattern, ANALYSIS_BUDGET_MILLIS);
+			}
+
+			@Override
+			protected void done() {
+				if (currentAnalysis != this || isCancelled())
+					return;
 
-		postMatches(matches);
+				currentAnalysis = null;
+				try {
+					postComplexity(get());
+				}
+				catch (Exception ex) {
+					lastAnalyzedPattern = null;
+					complexityLabel.setText("");
+				}
+			}
+		};
+		currentAnalysis.execute();
+	}
+
+	/**
+	 * Shows the worst backtracking complexity of the expression, and highlights the constructs causing it.
+	 */
+	protected void postComplexity(BacktrackingAnalyzer.Report report) {
+		BacktrackingAnalyzer.Complexity complexity = report.getComplexity();
+		complexityLabel.setText("[backtracking: "+ report +"]");
+		complexityLabel.setForeground(complexity == BacktrackingAnalyzer.Complexity.EXPONENTIAL ? Color.red
+				: complexity == BacktrackingAnalyzer.Complexity.POLYNOMIAL ? Color.orange.darker() : Color.darkGray);
+
+		StringBuilder toolTip = new StringBuilder("<html>");
+		List<BacktrackingAnalyzer.Vulnerability> vulnerabilities = report.getVulnerabilities();
+		for (int index = 0; index < vulnerabilities.size(); index++) {
+			BacktrackingAnalyzer.Vulnerability vulnerability = vulnerabilities.get(index);
+			toolTip.append(StringEscapeUtils.escapeHtml4(vulnerability.toString()))
+					.append(", measured ").append(report.getGrowths().get(index))
+					.append("<br>&nbsp;&nbsp;attack: ")
+					.append(StringEscapeUtils.escapeHtml4(StringEscapeUtils.escapeJava(vulnerability.getAttackString(8))))
+					.append("<br>");
+			try {
+				regexTextField.getHighlighter().addHighlight(vulnerability.getStart(), vulnerability.getEnd(), vulnerabilityPainter);
+			}
+			catch (BadLocationException ex) {
+				// the expression was edited since it was analyzed
+			}
+		}
+		complexityLabel.setToolTipText(vulnerabilities.isEmpty() ? "No construct that can backtrack catastrophically"
+				: toolTip.append("</html>").toString());
+	}
+
+	protected void openPatterns() {
+		JFileChooser fileChooser = new JFileChooser();
+		if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+			openPatterns(fileChooser.getSelectedFile());
+	}
+
+	/**
+	 * Loads a pattern list, one expression per line with blank lines ignored, compiles each with the current
+	 * options and highlights the matches of all of them at once.
+	 */
+	protected void openPatterns(File file) {
+		List<Pattern> patterns = new ArrayList<Pattern>();
+		int lineNumber = 0;
+		try {
+			for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+				++lineNumber;
+				if (!StringUtils.isBlank(line))
+					patterns.add(RegexUtil.compile(line, calculatePatternOptions()));
+			}
+		}
+		catch (Exception ex) {
+			postError("ERROR - Failed to load patterns: ", lineNumber > 0 ? "line "+ lineNumber +": " : "", ex.getMessage());
+			return;
+		}
+
+		currentInput();
+		lastEvaluationKey = null;
+		highlightPatterns(patterns);
+	}
+
+	/**
+	 * Highlights the matches of several patterns in a single pass over the input, each pattern in its own color.
+	 */
+	protected void highlightPatterns(final List<Pattern> patterns) {
+		resetInput();
+
+		startEvaluation(new MatchWorker<MatchOffsets[]>(getInputSequence()) {
+			@Override
+			protected MatchOffsets[] evaluate(CharSequence input) {
+				MatchOffsets[] matchOffsets = new MultiPatternMatcher(patterns).findAllMatchOffsets(input);
+				for (MatchOffsets offsets : matchOffsets)
+					matchesFound += offsets.size();
+				return matchOffsets;
+			}
+
+			@Override
+			protected void display(MatchOffsets[] matchOffsets) {
+				inputPatternMatchOffsets = matchOffsets;
+				highlightInputWindow();
+				statusMessageLabel.setForeground(Color.green.darker());
+				postMessage(matchesFound, matchesFound == 1 ? " match" : " matches", " of ",
+						patterns.size(), patterns.size() == 1 ? " pattern" : " patterns");
+			}
+		});
+	}
+
+	/**
+	 * @return a painter in a color distinct from those of nearby pattern ids
+	 */
+	protected Highlighter.HighlightPainter getPatternPainter(int pattern) {
+		// successive golden ratio steps around the hue circle stay well apart
+		float hue = (float) ((pattern * 0.618033988749895) % 1.0);
+		return new DefaultHighlighter.DefaultHighlightPainter(Color.getHSBColor(hue, 0.4f, 1f));
+	}
+
+	/**
+	 * Cancels any running evaluation and starts the given one in the background.
+	 */
+	protected void startEvaluation(MatchWorker<?> worker) {
+		cancelEvaluation();
+		currentEvaluation = worker;
+		cancelButton.setEnabled(true);
+		statusMessageLabel.setForeground(Color.darkGray);
+		postMessage("Evaluating...");
+		progressTimer.restart();
+		worker.execute();
+	}
+
+	protected void cancelEvaluation() {
+		stopFollowing();
+		if (currentEvaluation != null)
+			currentEvaluation.cancel(true);
+	}
+
+	/**
+	 * @return <code>true</code> while an evaluation is running or its results are not yet displayed
+	 */
+	protected boolean isEvaluating() {
+		return currentEvaluation != null;
+	}
+
+	protected void postProgress() {
+		MatchWorker<?> worker = currentEvaluation;
+		if (worker != null && !worker.isDone()) {
+			long elapsedSeconds = (System.currentTimeMillis() - worker.startTime) / 1000;
+			postMessage("Evaluating... ", worker.matchesFound, worker.matchesFound == 1 ? " match" : " matches",
+					" found in ", elapsedSeconds, "s");
+		}
+	}
+
+	protected long getTimeBudgetMillis() {
+		return ((Number) timeBudgetSpinner.getValue()).longValue() * 1000L;
+	}
+
+	protected void openInput() {
+		JFileChooser fileChooser = new JFileChooser();
+		if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+			openInput(fileChooser.getSelectedFile());
+	}
+
+	protected void openInput(File file) {
+		openInput(file, Charset.forName((String) charsetBox.getSelectedItem()));
+	}
+
+	/**
+	 * Memory-maps the given file as the input, decoded in the given single-byte charset. Only a window of it is
+	 * shown in the text area, while matching runs over the whole mapping.
+	 */
+	protected void openInput(File file, Charset charset) {
+		try {
+			cancelEvaluation();
+			MappedCharSequence input = MappedCharSequence.open(file, charset);
+			setMappedInput(input);
+			// only the window shown is checked, so that opening does not read the whole file
+			String decoding = hasHighBytes(input.subSequence(0, getInputWindowEnd()))
+					? ", bytes above 127 read as "+ charset.name() : "";
+			statusMessageLabel.setForeground(Color.darkGray);
+			postMessage("Opened ", file.getName(), " (", input.length(), " characters",
+					input.isTruncated() ? ", truncated" : "", decoding, ")");
+		}
+		catch (Exception ex) {
+			postError("ERROR - Failed to open input: ", ex.getMessage());
+		}
+	}
+
+	/**
+	 * Tells whether the text holds characters other than ASCII, which a file in a charset other than the one it is
+	 * opened in, such as UTF-8, shows wrong.
+	 */
+	protected static boolean hasHighBytes(CharSequence text) {
+		for (int index = 0; index < text.length(); index++) {
+			if (text.charAt(index) > 127)
+				return true;
+		}
+
+		return false;
+	}
+
+	protected void followInput() {
+		JFileChooser fileChooser = new JFileChooser();
+		if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+			followInput(fileChooser.getSelectedFile());
+		else
+			followButton.setSelected(false);
+	}
+
+	/**
+	 * Shows the end of a growing file, such as a log, as it is written, and highlights the matches of the current
+	 * expression in it without reloading. Applying an expression stops following and matches the text shown.
+	 */
+	protected void followInput(File file) {
+		Pattern pattern;
+		try {
+			pattern = RegexUtil.compile(getRegularExpressionText(), calculatePatternOptions());
+		}
+		catch (Exception ex) {
+			followButton.setSelected(false);
+			postError("ERROR - Failed to apply regex: ", ex.getMessage());
+			return;
+		}
+
+		cancelEvaluation();
+		setMappedInput(null);
+		setUnmodifiedInputText("");
+		lastEvaluationKey = null;
+		inputMatchOffsets = new MatchOffsets();
+		highlighter.setOffsets(inputMatchOffsets, painter);
+		followButton.setSelected(true);
+		currentFollow = new FollowWorker(file, pattern);
+		currentFollow.execute();
+		statusMessageLabel.setForeground(Color.darkGray);
+		postMessage("Following ", file.getName());
+	}
+
+	protected void stopFollowing() {
+		if (currentFollow == null)
+			return;
+
+		currentFollow.cancel(true);
+		currentFollow = null;
+		followButton.setSelected(false);
+		statusMessageLabel.setForeground(Color.darkGray);
+		postMessage("Stopped following");
+	}
+
+	protected boolean isFollowing() {
+		return currentFollow != null;
+	}
+
+	protected void grepDirectory() {
+		JFileChooser fileChooser = new JFileChooser();
+		fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+		if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+			grepDirectory(fileChooser.getSelectedFile());
+	}
+
+	/**
+	 * Searches every file under the given directory with the current expression, listing the matches below the
+	 * input as they are found.
+	 */
+	protected void grepDirectory(File directory) {
+		try {
+			Pattern pattern = RegexUtil.compile(getRegularExpressionText(), calculatePatternOptions());
+			grepPanel.setVisible(true);
+			grepPanel.revalidate();
+			grepPanel.search(directory.toPath(), pattern);
+		}
+		catch (Exception ex) {
+			postError("ERROR - Failed to apply regex: ", ex.getMessage());
+		}
+	}
+
+	/**
+	 * Opens the file of a directory search match and selects the match, in the window of the file holding it.
+	 */
+	protected void openHit(DirectoryGrep.Hit hit) {
+		openInput(hit.getFile().toFile());
+		if (mappedInput == null)
+			return;	// failed to open
+
+		moveInputWindow(hit.getStart() / INPUT_WINDOW_LENGTH);
+		int length = inputTextArea.getDocument().getLength();
+		inputTextArea.requestFocusInWindow();
+		inputTextArea.select(Math.min(hit.getStart() - inputWindowStart, length),
+				Math.min(hit.getEnd() - inputWindowStart, length));
+	}
+
+	protected GrepResultsPanel getGrepPanel() {
+		return grepPanel;
+	}
+
+	/**
+	 * Matches the expression under every combination of the options that can change its matches, listing the
+	 * match count, scan time and differences from the options selected of each below the input.
+	 */
+	protected void exploreOptions() {
+		CharSequence input = currentInput();
+		explorePanel.setVisible(true);
+		explorePanel.revalidate();
+		explorePanel.explore(getRegularExpressionText(), calculatePatternOptions(), input,
+				getTimeBudgetMillis());
+	}
+
+	protected FlagExplorerPanel getExplorePanel() {
+		return explorePanel;
+	}
+
+	/**
+	 * Looks for rewrites of the expression that cannot change its matches, checks them on the input and generated
+	 * samples and measures them against the expression, listing them below the input.
+	 */
+	protected void optimizeExpression() {
+		CharSequence input = currentInput();
+		optimizerPanel.setVisible(true);
+		optimizerPanel.revalidate();
+		optimizerPanel.optimize(getRegularExpressionText(), calculatePatternOptions(), input,
+				OPTIMIZE_BUDGET_MILLIS);
+	}
+
+	/**
+	 * Replaces the expression with a rewrite of it and applies it.
+	 */
+	protected void applyRewrite(String expression) {
+		regexTextField.setText(expression);
+		applyRegularExpression();
+	}
+
+	protected RegexOptimizerPanel getOptimizerPanel() {
+		return optimizerPanel;
+	}
+
+	protected void setMappedInput(MappedCharSequence input) {
+		mappedInput = input;
+		lineIndex = null;
+		if (lineIndexWorker != null)
+			lineIndexWorker.cancel(true);
+		lineIndexWorker = null;
+		inputWindowStart = 0;
+		inputMatchOffsets = null;
+		inputPatternMatchOffsets = null;
+		editButton.setSelected(false);
+		editButton.setEnabled(input == null);
+		inputTextArea.setEditable(false);
+		unmodifiedInput = null;
+		setInputDocument(input != null ? getInputWindow() : PieceTable.EMPTY);
+		clearReplaceHistory();
+		resetInput();
+	}
+
+	/**
+	 * Moves the window shown onto an opened file by the given number of windows, keeping the current matches.
+	 */
+	protected void moveInputWindow(int windows) {
+		if (mappedInput == null)
+			return;
+
+		long start = inputWindowStart + (long) windows * INPUT_WINDOW_LENGTH;
+		inputWindowStart = (int) Math.max(0, Math.min(start, mappedInput.length() - 1L));
+		highlighter.removeAllHighlights();
+		setInputDocument(getInputWindow());
+		highlightInputWindow();
+		updateInputWindowButtons();
+	}
+
+	protected void highlightInputWindow() {
+		if (inputPatternMatchOffsets != null) {
+			highlighter.clearOffsets();
+			for (int pattern = 0; pattern < inputPatternMatchOffsets.length; pattern++) {
+				MatchOffsets offsets = inputPatternMatchOffsets[pattern];
+				highlighter.addOffsets(mappedInput == null ? offsets
+						: offsets.window(inputWindowStart, getInputWindowEnd()), getPatternPainter(pattern));
+			}
+		}
+		if (inputMatchOffsets == null) {
+			updateNavigation();
+			return;
+		}
+
+		if (mappedInput == null)
+			highlighter.setOffsets(inputMatchOffsets, painter);
+		else
+			highlighter.setOffsets(inputMatchOffsets.window(inputWindowStart, getInputWindowEnd()), painter);
+		if (inputMatchProfile != null) {
+			MatchOffsets[] heatLayers = inputMatchProfile.getHeatLayers();
+			for (int level = 0; level < heatLayers.length; level++) {
+				highlighter.addOffsets(mappedInput == null ? heatLayers[level]
+						: heatLayers[level].window(inputWindowStart, getInputWindowEnd()), heatPainters[level]);
+			}
+		}
+		int current = getCurrentMatchIndex();
+		if (current >= 0) {
+			MatchOffsets currentMatch = new MatchOffsets(1);
+			currentMatch.add(inputMatchOffsets.start(current), inputMatchOffsets.end(current));
+			highlighter.addOffsets(mappedInput == null ? currentMatch
+					: currentMatch.window(inputWindowStart, getInputWindowEnd()), currentMatchPainter);
+		}
+		updateNavigation();
+	}
+
+	/**
+	 * @return the index of the match last gone to, or -1 if there is none or the matches changed since
+	 */
+	protected int getCurrentMatchIndex() {
+		if (inputMatchOffsets == null || navigatedMatchOffsets != inputMatchOffsets
+				|| currentMatchIndex >= inputMatchOffsets.size())
+			return -1;
+
+		return currentMatchIndex;
+	}
+
+	/**
+	 * Shows and marks the match with the given index, wrapping around at either end, moving the window onto an
+	 * opened file if needed.
+	 */
+	protected void goToMatch(int index) {
+		MatchOffsets offsets = inputMatchOffsets;
+		if (offsets == null || offsets.isEmpty())
+			return;
+
+		currentMatchIndex = (index % offsets.size() + offsets.size()) % offsets.size();
+		navigatedMatchOffsets = offsets;
+		int start = offsets.start(currentMatchIndex);
+		if (mappedInput != null && (start < inputWindowStart || start >= getInputWindowEnd()))
+			moveInputWindow(start / INPUT_WINDOW_LENGTH - inputWindowStart / INPUT_WINDOW_LENGTH);
+		else
+			highlightInputWindow();
+		inputTextArea.setCaretPosition(Math.min(start - inputWindowStart, inputTextArea.getDocument().getLength()));
+	}
+
+	/**
+	 * Goes to the match after the current one or, if there is none, the first at or after the caret.
+	 */
+	protected void goToNextMatch() {
+		int current = getCurrentMatchIndex();
+		if (current >= 0)
+			goToMatch(current + 1);
+		else if (inputMatchOffsets != null)
+			goToMatch(inputMatchOffsets.searchStart(inputWindowStart + inputTextArea.getCaretPosition()));
+	}
+
+	/**
+	 * Goes to the match before the current one or, if there is none, the last before the caret.
+	 */
+	protected void goToPreviousMatch() {
+		int current = getCurrentMatchIndex();
+		if (current >= 0)
+			goToMatch(current - 1);
+		else if (inputMatchOffsets != null)
+			goToMatch(inputMatchOffsets.searchStart(inputWindowStart + inputTextArea.getCaretPosition()) - 1);
+	}
+
+	/**
+	 * Goes to the match starting nearest the given offset into the input.
+	 */
+	protected void goToOffset(int offset) {
+		MatchOffsets offsets = inputMatchOffsets;
+		if (offsets == null || offsets.isEmpty())
+			return;
+
+		int index = Math.min(offsets.searchStart(offset), offsets.size() - 1);
+		if (index > 0 && offset - offsets.start(index - 1) < Math.abs(offsets.start(index) - offset))
+			--index;
+		goToMatch(index);
+	}
+
+	/**
+	 * Updates the match position shown and the minimap with the current matches.
+	 */
+	protected void updateNavigation() {
+		MatchOffsets offsets = inputMatchOffsets;
+		int size = offsets == null ? 0 : offsets.size();
+		int current = getCurrentMatchIndex();
+		previousMatchButton.setEnabled(size > 0);
+		nextMatchButton.setEnabled(size > 0);
+		goToMatchField.setEnabled(size > 0);
+		if (current < 0)
+			matchPositionLabel.setText("");
+		else {
+			LineIndex lines = getLineIndex();
+			int start = offsets.start(current);
+			matchPositionLabel.setText("Match "+ (current + 1) +" of "+ size + (lines == null ? ", indexing lines..."
+					: ", line "+ lines.getLine(start) +", column "+ lines.getColumn(start)));
+		}
+		minimap.setMatches(offsets, mappedInput != null ? mappedInput.length() : inputTextArea.getDocument().getLength(),
+				current, inputWindowStart, mappedInput != null ? getInputWindowEnd() : -1);
+	}
+
+	/**
+	 * @return the line index of the opened file or the text shown, built on first use, or <code>null</code> while
+	 * an opened file is being indexed in the background
+	 */
+	protected LineIndex getLineIndex() {
+		if (lineIndex != null || mappedInput == null) {
+			if (lineIndex == null)
+				lineIndex = LineIndex.of(getShownText());
+			return lineIndex;
+		}
+
+		if (lineIndexWorker == null) {
+			final MappedCharSequence input = mappedInput;
+			lineIndexWorker = new SwingWorker<LineIndex, Void>() {
+				@Override
+				protected LineIndex doInBackground() throws Exception {
+					return LineIndex.of(new InterruptibleCharSequence(input));
+				}
+
+				@Override
+				protected void done() {
+					if (lineIndexWorker != this)
+						return;	// another input was opened
+
+					lineIndexWorker = null;
+					try {
+						lineIndex = get();
+						updateNavigation();
+					}
+					catch (Exception ex) {
+						postError("ERROR - Failed to index lines: ", ex.getMessage());
+					}
+				}
+			};
+			lineIndexWorker.execute();
+		}
+		return null;
+	}
+
+	/**
+	 * @return a compact copy of the part of the opened file shown
+	 */
+	protected PieceTable getInputWindow() {
+		return PieceTable.of(mappedInput.subSequence(inputWindowStart, getInputWindowEnd()));
+	}
+
+	protected int getInputWindowEnd() {
+		return (int) Math.min((long) inputWindowStart + INPUT_WINDOW_LENGTH, mappedInput.length());
+	}
+
+	protected void updateInputWindowButtons() {
+		previousWindowButton.setEnabled(mappedInput != null && inputWindowStart > 0);
+		nextWindowButton.setEnabled(mappedInput != null && getInputWindowEnd() < mappedInput.length());
 	}
 
 	protected void editInput(JToggleButton editButton) {
+		cancelEvaluation();
 		inputTextArea.setEditable(editButton.isSelected());
 		if (!editButton.isSelected())
-			setUnmodifiedInputText(inputTextArea.getText());
+			updateUnmodifiedInput();
 	}
 
 	protected void pasteInput() {
 		try {
-			setUnmodifiedInputText(StringUtils.defaultString((String)
-					Toolkit.getDefaultToolkit().getSystemClipboard().getData(DataFlavor.stringFlavor), ""));
-			inputTextArea.setText(getUnmodifiedInputText());
+			cancelEvaluation();
+			String text = StringUtils.defaultString((String)
+					Toolkit.getDefaultToolkit().getSystemClipboard().getData(DataFlavor.stringFlavor), "");
+			if (mappedInput != null)
+				setMappedInput(null);
+			setUnmodifiedInputText(text);
 		}
 		catch (Exception ex) {
 			postError("ERROR - Failed to paste input: ", ex.getMessage());
 		}
 	}
 
+	/**
+	 * Brings the current matches in line with an edit of the input text, rescanning only the edited lines
+	 * where the pattern allows it.
+	 */
+	protected void updateEditedMatches(int editOffset, int removedLength, int insertedLength) {
+		if (!inputTextArea.isEditable())
+			return;	// programmatic change
+
+		if (inputMatchOffsets == null || incrementalMatcher == null || !incrementalMatcher.isIncremental()) {
+			highlighter.clearOffsets();
+			inputMatchOffsets = null;
+			inputPatternMatchOffsets = null;
+			matchCursor = null;
+			nextPageButton.setEnabled(false);
+			updateNavigation();
+			statusMessageLabel.setForeground(Color.darkGray);
+			postMessage("Input edited, apply to match again");
+			return;
+		}
+
+		try {
+			CharSequence input = new InterruptibleCharSequence(getShownText(), getTimeBudgetMillis());
+			incrementalMatcher.update(inputMatchOffsets, input, editOffset, removedLength, insertedLength);
+			highlighter.setOffsets(inputMatchOffsets, painter);
+			postMatches(inputMatchOffsets.size());
+		}
+		catch (MatchInterruptedException ex) {
+			highlighter.clearOffsets();
+			inputMatchOffsets = null;
+			postError("TIMEOUT - Failed to update matches: ", ex.getMessage());
+		}
+		updateNavigation();
+	}
+
 	protected void resetInput() {
 		highlighter.removeAllHighlights();
-		inputTextArea.setText(getUnmodifiedInputText());
+		inputMatchOffsets = null;
+		inputPatternMatchOffsets = null;
+		inputMatchProfile = null;
+		exportProfileButton.setEnabled(false);
+		statusMessageLabel.setToolTipText(null);
+		incrementalMatcher = null;
+		matchCursor = null;
+		nextPageButton.setEnabled(false);
+		engineLabel.setText("");
+		// the input document is kept as it is, only the replaced text is swapped out
+		showInputDocument();
+		hidePreview();
+
+		updateInputWindowButtons();
+		updateReplaceButtons();
+		updateNavigation();
+	}
+
+	/**
+	 * Shows the given text as the input, in a new document rather than by replacing the text of the old one,
+	 * which would go through every line twice.
+	 */
+	protected void setInputDocument(PieceTable text) {
+		if (inputDocument != null)
+			inputDocument.removeDocumentListener(inputEditListener);
+		inputDocument = new PieceTableDocument(text);
+		inputDocument.addDocumentListener(inputEditListener);
+		replacedDocument = null;
+		if (mappedInput == null)
+			lineIndex = null;
+		inputTextArea.setDocument(inputDocument);
+	}
+
+	/**
+	 * Shows the text replacing the matches in place of the input, which is left as it is.
+	 */
+	protected void showReplacedText(PieceTable text) {
+		replacedDocument = new PieceTableDocument(text);
+		replacedDocument.addDocumentListener(inputEditListener);
+		lineIndex = null;
+		inputTextArea.setDocument(replacedDocument);
+	}
+
+	/**
+	 * Shows the input in place of any replaced text.
+	 */
+	protected void showInputDocument() {
+		if (replacedDocument == null)
+			return;
+
+		replacedDocument.removeDocumentListener(inputEditListener);
+		replacedDocument = null;
+		lineIndex = null;
+		inputTextArea.setDocument(inputDocument);
+	}
+
+	/**
+	 * @return the text shown, the input or the text replacing its matches, as of now
+	 */
+	protected PieceTable getShownText() {
+		return (replacedDocument != null ? replacedDocument : inputDocument).snapshot();
+	}
+
+	/**
+	 * Takes the text shown, with any edits, as the input, without copying it.
+	 */
+	/**
+	 * @return the input to match, including edits in progress
+	 */
+	private CharSequence currentInput() {
+		if (inputTextArea.isEditable())
+			updateUnmodifiedInput();
+		return getInputSequence();
+	}
+
+	protected void updateUnmodifiedInput() {
+		if (replacedDocument != null)
+			keepReplacedText();	// the replaced text, as edited
+		unmodifiedInput = inputDocument.snapshot();
 	}
 
 	protected void postMatches(int tally) {
@@ -140,6 +1290,82 @@ public class RegexEditor extends JPanel implements RunnableApplication<RegexEdit
 		statusMessageLabel.setText(StringUtils.join(messageParts));
 	}
 
+	/**
+	 * Shows the cost of a profiled evaluation, with the costliest searches in the tooltip.
+	 */
+	protected void postProfile(MatchProfile profile) {
+		MatchOffsets matchOffsets = profile.getMatchOffsets();
+		int[] costliest = profile.getCostliestAttempts(COSTLIEST_ATTEMPT_COUNT);
+		StringBuilder toolTip = new StringBuilder("<html>Costliest searches:");
+		for (int attempt : costliest) {
+			toolTip.append("<br>").append(profile.getSearchStart(attempt)).append('-')
+					.append(attempt < matchOffsets.size() ? matchOffsets.end(attempt) : "end")
+					.append(attempt < matchOffsets.size() ? ", matched "+ matchOffsets.start(attempt) : ", no match")
+					.append(": ").append(profile.getSteps(attempt)).append(" reads, ")
+					.append(profile.getNanos(attempt) / 1000).append(" \u00b5s");
+		}
+
+		postMessage(matchOffsets.size(), matchOffsets.size() == 1 ? " match, " : " matches, ",
+				profile.getTotalSteps(), " reads in ", profile.getTotalNanos() / 1000000, " ms",
+				costliest.length == 0 ? "" : ", costliest search "+ profile.getSteps(costliest[0]) +" reads");
+		statusMessageLabel.setToolTipText(toolTip.append("</html>").toString());
+		exportProfileButton.setEnabled(true);
+	}
+
+	protected void exportProfile() {
+		JFileChooser fileChooser = new JFileChooser();
+		fileChooser.setSelectedFile(new File("profile.csv"));
+		if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION)
+			exportProfile(fileChooser.getSelectedFile());
+	}
+
+	/**
+	 * Writes the last profile as CSV, see {@link MatchProfile#writeCsv(Writer)}.
+	 */
+	protected void exportProfile(File file) {
+		if (inputMatchProfile == null)
+			return;
+
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+			try {
+				inputMatchProfile.writeCsv(writer);
+			}
+			finally {
+				writer.close();
+			}
+		}
+		catch (IOException ex) {
+			postError("ERROR - Failed to export profile: ", ex.getMessage());
+		}
+	}
+
+	/**
+	 * Shows where the time of the last evaluation went, in the metrics panel.
+	 */
+	protected void postMetrics(EvaluationMetrics metrics) {
+		StringBuilder text = new StringBuilder("<html><table cellpadding=2><tr>");
+		for (EvaluationMetrics.Phase phase : EvaluationMetrics.Phase.values())
+			text.append("<th>").append(StringUtils.capitalize(phase.getName())).append("</th>");
+		text.append("<th>Characters</th><th>Matches</th><th>Matches/s</th><th>Allocated</th></tr><tr>");
+		for (EvaluationMetrics.Phase phase : EvaluationMetrics.Phase.values())
+			text.append(String.format(Locale.ENGLISH, "<td>%.1f ms</td>", metrics.getNanos(phase) / 1e6));
+		text.append("<td>").append(metrics.getCharactersScanned()).append("</td><td>").append(metrics.getMatchCount())
+				.append("</td><td>").append(Math.round(metrics.getMatchesPerSecond())).append("</td><td>")
+				.append(metrics.getAllocatedBytes() < 0 ? "n/a"
+						: String.format(Locale.ENGLISH, "%.1f MB", metrics.getAllocatedBytes() / 1e6))
+				.append("</td></tr></table></html>");
+		metricsLabel.setText(text.toString());
+		metricsLabel.setToolTipText(metrics.toString());
+	}
+
+	/**
+	 * Shows which engine found the matches.
+	 */
+	protected void postEngine(String engineName) {
+		engineLabel.setText("["+ engineName +"]");
+	}
+
 	protected void initialize() {
 		setLayout(new BorderLayout(5, 5));
 
@@ -147,9 +1373,15 @@ public class RegexEditor extends JPanel implements RunnableApplication<RegexEdit
 
 		JPanel labelPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 5));
 		statusMessageLabel = new JLabel("0 Matches");
+		statusMessageLabel.setName("label-status");
+		engineLabel = new JLabel("");
+		engineLabel.setName("label-engine");
+		engineLabel.setToolTipText("The engine that found the matches, a linear-time automaton where the expression allows");
+		complexityLabel = new JLabel("");
+		complexityLabel.setName("label-complexity");
 		labelPanel.add(new JLabel("Target Text:"));
 		labelPanel.add(Box.createHorizontalStrut(10));
-		final JToggleButton editButton = new JToggleButton("Edit", false);
+		editButton = new JToggleButton("Edit", false);
 		editButton.setName("button-edit");
 		editButton.addActionListener(new ActionListener() {
 			@Override
@@ -165,30 +1397,356 @@ public class RegexEditor extends JPanel implements RunnableApplication<RegexEdit
 				pasteInput();
 			}
 		});
+		JButton openButton = new JButton("Open...");
+		openButton.setName("button-open");
+		openButton.setToolTipText("Memory-map a file as the input, for inputs too large to paste");
+		openButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				openInput();
+			}
+		});
+		List<String> charsetNames = new ArrayList<String>();
+		for (Charset charset : Charset.availableCharsets().values()) {
+			if (MappedCharSequence.isSupported(charset))
+				charsetNames.add(charset.name());
+		}
+		charsetBox = new JComboBox<String>(charsetNames.toArray(new String[charsetNames.size()]));
+		charsetBox.setName("combo-charset");
+		charsetBox.setToolTipText("The charset files are opened in, single-byte only; "+
+				"ASCII text in UTF-8 files matches the same opened as ISO-8859-1");
+		charsetBox.setSelectedItem(StandardCharsets.ISO_8859_1.name());
+		followButton = new JToggleButton("Follow...", false);
+		followButton.setName("button-follow");
+		followButton.setToolTipText("Show the end of a growing file, such as a log, and highlight new matches as it is written");
+		followButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (followButton.isSelected())
+					followInput();
+				else
+					stopFollowing();
+			}
+		});
+		JButton grepButton = new JButton("Grep...");
+		grepButton.setName("button-grep");
+		grepButton.setToolTipText("Search every file in a directory tree with the expression");
+		grepButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				grepDirectory();
+			}
+		});
+		JButton patternsButton = new JButton("Patterns...");
+		patternsButton.setName("button-patterns");
+		patternsButton.setToolTipText("Highlight the matches of a list of expressions, one per line, in a single pass");
+		patternsButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				openPatterns();
+			}
+		});
+		previousWindowButton = new JButton("<");
+		previousWindowButton.setName("button-previousWindow");
+		previousWindowButton.setToolTipText("Show the previous part of the opened file");
+		previousWindowButton.setEnabled(false);
+		previousWindowButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				moveInputWindow(-1);
+			}
+		});
+		nextWindowButton = new JButton(">");
+		nextWindowButton.setName("button-nextWindow");
+		nextWindowButton.setToolTipText("Show the next part of the opened file");
+		nextWindowButton.setEnabled(false);
+		nextWindowButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				moveInputWindow(1);
+			}
+		});
+		cancelButton = new JButton("Cancel");
+		cancelButton.setName("button-cancel");
+		cancelButton.setEnabled(false);
+		cancelButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				cancelEvaluation();
+			}
+		});
+		parallelToggle = new JCheckBox("Parallel");
+		parallelToggle.setName("checkbox-parallel");
+		parallelToggle.setToolTipText("Match large inputs in line-aligned chunks on all cores, "+
+				"expressions that may span lines are still matched sequentially");
+		profileToggle = new JCheckBox("Profile");
+		profileToggle.setName("checkbox-profile");
+		profileToggle.setToolTipText("Count the characters the matcher reads for each match, "+
+				"and shade the regions it reads most");
+		exportProfileButton = new JButton("Export...");
+		exportProfileButton.setName("button-exportProfile");
+		exportProfileButton.setToolTipText("Save the per-match costs of the last profiled evaluation as CSV");
+		exportProfileButton.setEnabled(false);
+		exportProfileButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				exportProfile();
+			}
+		});
+		pagedToggle = new JCheckBox("Paged");
+		pagedToggle.setName("checkbox-paged");
+		pagedToggle.setToolTipText("Stop after the match limit, finding more on request or when scrolled past the last match");
+		pagedToggle.addItemListener(new ItemListener() {
+			@Override
+			public void itemStateChanged(ItemEvent e) {
+				lastEvaluationKey = null;	// not part of the key, but changes what is found
+				scheduleLiveEvaluation();
+			}
+		});
+		matchLimitSpinner = new JSpinner(new SpinnerNumberModel(DEFAULT_MATCH_LIMIT, 1, Integer.MAX_VALUE, 100));
+		matchLimitSpinner.setName("spinner-matchLimit");
+		matchLimitSpinner.setToolTipText("The number of matches a page of the paged mode finds");
+		nextPageButton = new JButton("More");
+		nextPageButton.setName("button-nextPage");
+		nextPageButton.setToolTipText("Find the next page of matches");
+		nextPageButton.setEnabled(false);
+		nextPageButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				highlightNextMatches();
+			}
+		});
+		metricsLabel = new JLabel("No evaluation yet");
+		metricsLabel.setName("label-metrics");
+		final JPanel metricsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+		metricsPanel.add(metricsLabel);
+		metricsPanel.setVisible(false);
+		metricsButton = new JToggleButton("Metrics", false);
+		metricsButton.setName("button-metrics");
+		metricsButton.setToolTipText("Show where the time of the last evaluation went");
+		metricsButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				metricsPanel.setVisible(metricsButton.isSelected());
+				metricsPanel.revalidate();
+			}
+		});
+		timeBudgetSpinner = new JSpinner(new SpinnerNumberModel(DEFAULT_TIME_BUDGET_SECONDS, 1, 3600, 1));
+		timeBudgetSpinner.setName("spinner-timeBudget");
+		timeBudgetSpinner.setToolTipText("Evaluations running longer than this many seconds are abandoned");
+		liveEvaluationTimer = new Timer(LIVE_EVALUATION_DELAY_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				applyLiveRegularExpression();
+			}
+		});
+		liveEvaluationTimer.setRepeats(false);
+		progressTimer = new Timer(250, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				postProgress();
+			}
+		});
 		labelPanel.add(editButton);
 		labelPanel.add(Box.createHorizontalStrut(25));
 		labelPanel.add(pasteButton);
+		labelPanel.add(openButton);
+		labelPanel.add(charsetBox);
+		labelPanel.add(previousWindowButton);
+		labelPanel.add(nextWindowButton);
+		labelPanel.add(followButton);
+		labelPanel.add(patternsButton);
+		labelPanel.add(grepButton);
+		labelPanel.add(Box.createHorizontalStrut(25));
+		labelPanel.add(parallelToggle);
+		labelPanel.add(profileToggle);
+		labelPanel.add(exportProfileButton);
+		labelPanel.add(pagedToggle);
+		labelPanel.add(matchLimitSpinner);
+		labelPanel.add(nextPageButton);
+		labelPanel.add(new JLabel("Time Limit (s):"));
+		labelPanel.add(timeBudgetSpinner);
+		labelPanel.add(cancelButton);
 		labelPanel.add(Box.createHorizontalStrut(50));
 		labelPanel.add(statusMessageLabel);
+		labelPanel.add(engineLabel);
+		labelPanel.add(complexityLabel);
+		labelPanel.add(metricsButton);
 		
 		Box inputBox = Box.createVerticalBox();
-		highlighter = new DefaultHighlighter();
+		highlighter = new OffsetHighlighter();
 		painter = new DefaultHighlighter.DefaultHighlightPainter(Color.green);
-		inputTextArea = new JTextArea("", 25, 100);
+		currentMatchPainter = new DefaultHighlighter.DefaultHighlightPainter(Color.orange);
+		heatPainters = new Highlighter.HighlightPainter[MatchProfile.HEAT_THRESHOLDS.length];
+		for (int level = 0; level < heatPainters.length; level++) {
+			// translucent, from yellow for the coolest level to red for the hottest, over the match highlights
+			heatPainters[level] = new DefaultHighlighter.DefaultHighlightPainter(
+					new Color(255, 200 - 200 * level / (heatPainters.length - 1), 0, 60 + 20 * level));
+		}
+		inputDocument = new PieceTableDocument();
+		inputTextArea = new JTextArea(inputDocument, null, 25, 100);
+		highlighter.setClearOnEdit(false);
 		inputTextArea.setHighlighter(highlighter);
+		inputEditListener = new DocumentListener() {
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				if (mappedInput == null)
+					lineIndex = null;
+				updateEditedMatches(e.getOffset(), 0, e.getLength());
+				previewTimer.restart();
+			}
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				if (mappedInput == null)
+					lineIndex = null;
+				updateEditedMatches(e.getOffset(), e.getLength(), 0);
+				previewTimer.restart();
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+			}
+		};
+		inputDocument.addDocumentListener(inputEditListener);
 		inputTextArea.setEditable(false);
 		inputTextArea.setName("textArea-input");
-		inputBox.add(new JScrollPane(inputTextArea));
+		minimap = new MatchMinimap(this);
+		minimap.setName("minimap");
+		previewTextArea = new JTextArea(25, 50);
+		previewTextArea.setEditable(false);
+		previewTextArea.setName("textArea-preview");
+		previewTextArea.setToolTipText("The lines of the input in view, with their matches replaced");
+		previewScrollPane = new JScrollPane(previewTextArea, JScrollPane.VERTICAL_SCROLLBAR_NEVER,
+				JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+		previewScrollPane.setVisible(false);
+		inputScrollPane = new JScrollPane(inputTextArea);
+		previewTimer = new Timer(PREVIEW_DELAY_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				renderPreview();
+			}
+		});
+		previewTimer.setRepeats(false);
+		inputScrollPane.getViewport().addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent e) {
+				if (previewPattern != null)
+					previewTimer.restart();
+				highlightMatchesInView();
+			}
+		});
+		inputSplitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, inputScrollPane, previewScrollPane);
+		inputSplitPane.setResizeWeight(0.5);
+		inputSplitPane.setBorder(null);
+		JPanel inputPanel = new JPanel(new BorderLayout(2, 0));
+		inputPanel.add(inputSplitPane, BorderLayout.CENTER);
+		inputPanel.add(minimap, BorderLayout.EAST);
+		inputBox.add(inputPanel);
 
 		Box centerBox = Box.createVerticalBox();
 		centerBox.add(labelPanel);
+		centerBox.add(createNavigationPanel());
+		centerBox.add(metricsPanel);
 		centerBox.add(inputBox);
+		grepPanel = new GrepResultsPanel(this);
+		grepPanel.setVisible(false);
+		centerBox.add(grepPanel);
+		explorePanel = new FlagExplorerPanel(this);
+		explorePanel.setVisible(false);
+		centerBox.add(explorePanel);
+		optimizerPanel = new RegexOptimizerPanel(this);
+		optimizerPanel.setVisible(false);
+		centerBox.add(optimizerPanel);
 		centerBox.setBorder(BorderFactory.createCompoundBorder(
 				BorderFactory.createEmptyBorder(5, 10, 10, 10),
 				BorderFactory.createLineBorder(Color.lightGray, 1)));
 		add(centerBox, BorderLayout.CENTER);
 	}
 
+	protected JPanel createNavigationPanel() {
+		JPanel navigationPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+		previousMatchButton = new JButton("Previous");
+		previousMatchButton.setName("button-previousMatch");
+		previousMatchButton.setToolTipText("Go to the previous match (Shift+F3)");
+		previousMatchButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				goToPreviousMatch();
+			}
+		});
+		nextMatchButton = new JButton("Next");
+		nextMatchButton.setName("button-nextMatch");
+		nextMatchButton.setToolTipText("Go to the next match (F3)");
+		nextMatchButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				goToNextMatch();
+			}
+		});
+		goToMatchField = new JTextField("", 6);
+		goToMatchField.setName("textField-goToMatch");
+		goToMatchField.setToolTipText("Go to the match with this number");
+		goToMatchField.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				try {
+					goToMatch(Integer.parseInt(goToMatchField.getText().trim()) - 1);
+				}
+				catch (NumberFormatException ex) {
+					postError("ERROR - Not a match number: ", goToMatchField.getText());
+				}
+			}
+		});
+		matchPositionLabel = new JLabel("");
+		matchPositionLabel.setName("label-matchPosition");
+		registerKeyboardAction(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				goToNextMatch();
+			}
+		}, KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
+		registerKeyboardAction(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				goToPreviousMatch();
+			}
+		}, KeyStroke.getKeyStroke(KeyEvent.VK_F3, KeyEvent.SHIFT_DOWN_MASK), JComponent.WHEN_IN_FOCUSED_WINDOW);
+
+		navigationPanel.add(previousMatchButton);
+		navigationPanel.add(nextMatchButton);
+		navigationPanel.add(new JLabel("Go to:"));
+		navigationPanel.add(goToMatchField);
+		navigationPanel.add(matchPositionLabel);
+		return navigationPanel;
+	}
+
+	private final LiveEvaluationListener liveEvaluationListener = new LiveEvaluationListener();
+
+	/**
+	 * Schedules a live evaluation whenever the expression, replacement or options change.
+	 */
+	private class LiveEvaluationListener implements DocumentListener, ItemListener {
+		@Override
+		public void insertUpdate(DocumentEvent e) {
+			scheduleLiveEvaluation();
+		}
+
+		@Override
+		public void removeUpdate(DocumentEvent e) {
+			scheduleLiveEvaluation();
+		}
+
+		@Override
+		public void changedUpdate(DocumentEvent e) {
+		}
+
+		@Override
+		public void itemStateChanged(ItemEvent e) {
+			scheduleLiveEvaluation();
+		}
+	}
+
 	protected JPanel createPatternOptionsPanel() {
 		optionBoxes = new JCheckBox[OPTIONS_LENGTH];
 		JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 5));
@@ -196,6 +1754,7 @@ public class RegexEditor extends JPanel implements RunnableApplication<RegexEdit
 			optionBoxes[index] = new JCheckBox(OPTION_DESCRIPTIONS[index], false);
 			optionBoxes[index].setToolTipText(OPTION_TOOLTIPS[index]);
 			optionBoxes[index].setName("checkbox-"+ OPTION_DESCRIPTIONS[index]);
+			optionBoxes[index].addItemListener(liveEvaluationListener);
 			panel.add(optionBoxes[index]);
 		}
 
@@ -204,6 +1763,14 @@ public class RegexEditor extends JPanel implements RunnableApplication<RegexEdit
 		return panel;
 	}
 
+	/**
+	 * Selects the options set in the given flags, and clears the others.
+	 */
+	protected void selectPatternOptions(int flags) {
+		for (int index = 0; index < OPTIONS_LENGTH; index++)
+			optionBoxes[index].setSelected((flags & OPTIONS[index]) != 0);
+	}
+
 	protected int calculatePatternOptions() {
 		int options = 0;
 		for (int index = 0; index < OPTIONS_LENGTH; index++)
@@ -230,6 +1797,8 @@ public class RegexEditor extends JPanel implements RunnableApplication<RegexEdit
 		constraints.gridwidth = 4;
 		constraints.insets = new Insets(5, 5, 5, 5);
 		regexTextField.setName("textField-regex");
+		vulnerabilityPainter = new DefaultHighlighter.DefaultHighlightPainter(Color.pink);
+		regexTextField.getDocument().addDocumentListener(liveEvaluationListener);
 		headerPanel.add(regexTextField, constraints);
 		// apply button
 		JButton applyButton = new JButton("Apply");
@@ -245,7 +1814,13 @@ public class RegexEditor extends JPanel implements RunnableApplication<RegexEdit
 		constraints.gridwidth = 1;
 		constraints.insets = new Insets(5, 5, 5, 5);
 		applyButton.setName("button-apply");
-		headerPanel.add(wrap(applyButton), constraints);
+		JPanel applyPanel = wrap(applyButton);
+		liveToggle = new JCheckBox("Live");
+		liveToggle.setName("checkbox-live");
+		liveToggle.setToolTipText("Re-evaluate while typing");
+		liveToggle.addItemListener(liveEvaluationListener);
+		applyPanel.add(liveToggle);
+		headerPanel.add(applyPanel, constraints);
 
 		// options label
 		constraints.gridx = 0;
@@ -258,12 +1833,35 @@ public class RegexEditor extends JPanel implements RunnableApplication<RegexEdit
 		constraints.gridwidth = 4;
 		constraints.insets = new Insets(5, 5, 5, 5);
 		headerPanel.add(createPatternOptionsPanel(), constraints);
-		// filler
+		// explore button
+		JButton exploreButton = new JButton("Explore...");
+		exploreButton.setName("button-exploreOptions");
+		exploreButton.setToolTipText("Match under every combination of the options that can change the matches, "+
+				"comparing their matches and scan times");
+		exploreButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				exploreOptions();
+			}
+		});
 		constraints.gridx = 5;
 		constraints.gridy = 1;
 		constraints.gridwidth = 1;
 		constraints.insets = new Insets(5, 5, 5, 5);
-		headerPanel.add(Box.createVerticalBox(), constraints);
+		JPanel optionsButtonPanel = wrap(exploreButton);
+		// optimize button
+		JButton optimizeButton = new JButton("Optimize...");
+		optimizeButton.setName("button-optimize");
+		optimizeButton.setToolTipText("Suggest rewrites of the expression that find the same matches, "+
+				"with their measured speedups");
+		optimizeButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				optimizeExpression();
+			}
+		});
+		optionsButtonPanel.add(optimizeButton);
+		headerPanel.add(optionsButtonPanel, constraints);
 
 		// match label
 		constraints.gridx = 0;
@@ -278,6 +1876,7 @@ public class RegexEditor extends JPanel implements RunnableApplication<RegexEdit
 		constraints.insets = new Insets(5, 5, 5, 5);
 		matchingTextField.setEnabled(false);
 		matchingTextField.setName("textField-matching");
+		matchingTextField.getDocument().addDocumentListener(liveEvaluationListener);
 		headerPanel.add(matchingTextField, constraints);
 		// filler
 		replaceMatchToggle = new JCheckBox("Replace");
@@ -292,7 +1891,14 @@ public class RegexEditor extends JPanel implements RunnableApplication<RegexEdit
 				matchingTextField.setEnabled(((JCheckBox) e.getSource()).isSelected());
 			}
 		});
+		replaceMatchToggle.addItemListener(liveEvaluationListener);
 		headerPanel.add(replaceMatchToggle, constraints);
+		// replace controls
+		constraints.gridx = 1;
+		constraints.gridy = 3;
+		constraints.gridwidth = 4;
+		constraints.insets = new Insets(0, 5, 5, 5);
+		headerPanel.add(createReplacePanel(), constraints);
 
 		headerPanel.setBorder(BorderFactory.createCompoundBorder(
 				BorderFactory.createEmptyBorder(10, 10, 5, 10),
@@ -300,21 +1906,322 @@ public class RegexEditor extends JPanel implements RunnableApplication<RegexEdit
 		return headerPanel;
 	}
 
+	protected JPanel createReplacePanel() {
+		JPanel replacePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+		sideBySideToggle = new JCheckBox("Side by Side");
+		sideBySideToggle.setName("checkbox-sideBySide");
+		sideBySideToggle.setToolTipText("Preview the replaced text of the lines in view beside the input, "+
+				"leaving the input as it is, also for opened files");
+		sideBySideToggle.addItemListener(new ItemListener() {
+			@Override
+			public void itemStateChanged(ItemEvent e) {
+				lastEvaluationKey = null;	// not part of the key, but changes what is shown
+				scheduleLiveEvaluation();
+			}
+		});
+		keepReplacedButton = new JButton("Keep");
+		keepReplacedButton.setName("button-keepReplaced");
+		keepReplacedButton.setToolTipText("Make the replaced text the input, so that the next replace applies to it");
+		keepReplacedButton.setEnabled(false);
+		keepReplacedButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				keepReplacedText();
+			}
+		});
+		undoReplaceButton = new JButton("Undo");
+		undoReplaceButton.setName("button-undoReplace");
+		undoReplaceButton.setToolTipText("Go back to the input before the last replaced text kept");
+		undoReplaceButton.setEnabled(false);
+		undoReplaceButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				undoReplace();
+			}
+		});
+		redoReplaceButton = new JButton("Redo");
+		redoReplaceButton.setName("button-redoReplace");
+		redoReplaceButton.setToolTipText("Keep the replaced text undone again");
+		redoReplaceButton.setEnabled(false);
+		redoReplaceButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				redoReplace();
+			}
+		});
+		JButton replaceToFileButton = new JButton("Replace to File...");
+		replaceToFileButton.setName("button-replaceToFile");
+		replaceToFileButton.setToolTipText("Write the whole input with its matches replaced to a file, "+
+				"streamed rather than kept in memory");
+		replaceToFileButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				replaceToFile();
+			}
+		});
+
+		replacePanel.add(sideBySideToggle);
+		replacePanel.add(keepReplacedButton);
+		replacePanel.add(undoReplaceButton);
+		replacePanel.add(redoReplaceButton);
+		replacePanel.add(replaceToFileButton);
+		return replacePanel;
+	}
+
 	private JPanel wrap(JComponent component) {
 		JPanel outerPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 5));
 		outerPanel.add(component);
 		return outerPanel;
 	}
 
-	static int[] OPTIONS = {
-			Pattern.UNIX_LINES, Pattern.CASE_INSENSITIVE, Pattern.COMMENTS, Pattern.MULTILINE,
-			Pattern.LITERAL, Pattern.DOTALL, Pattern.UNICODE_CASE, Pattern.CANON_EQ
-	};
+	/**
+	 * Evaluates a compiled pattern against the input off the Event Dispatch Thread, then displays the result on it.
+	 * The input is wrapped so that cancellation or exceeding the time budget stops even a runaway matcher.
+	 */
+	protected abstract class MatchWorker<T> extends SwingWorker<T, MatchOffsets> {
+		private final CharSequence input;
+		private final long timeBudgetMillis;
+		protected final long startTime = System.currentTimeMillis();
+		protected volatile int matchesFound = 0;
+		/** times the evaluation, from compiling the expression if the editor did just before */
+		protected final EvaluationRecorder recorder;
+
+		protected MatchWorker(CharSequence input) {
+			this.input = input;
+			this.timeBudgetMillis = getTimeBudgetMillis();
+			this.recorder = nextRecorder != null ? nextRecorder : new EvaluationRecorder();
+			nextRecorder = null;
+		}
+
+		@Override
+		protected T doInBackground() throws Exception {
+			recorder.begin(getEvaluationPhase());
+			try {
+				return evaluate(new InterruptibleCharSequence(input, timeBudgetMillis));
+			}
+			finally {
+				recorder.end(getEvaluationPhase());
+			}
+		}
+
+		@Override
+		protected void process(List<MatchOffsets> previews) {
+			if (currentEvaluation == this && !isDone())
+				displayPreview(previews.get(previews.size() - 1));
+		}
+
+		@Override
+		protected void done() {
+			if (currentEvaluation != this)
+				return;	// superseded by a newer evaluation
+
+			progressTimer.stop();
+			cancelButton.setEnabled(false);
+			try {
+				if (isCancelled()) {
+					lastEvaluationKey = null;
+					postError("CANCELLED - Evaluation stopped after ", matchesFound, " matches");
+				}
+				else {
+					T result = get();
+					recorder.addCharactersScanned(input.length());
+					recorder.addMatches(matchesFound);
+					recorder.begin(EvaluationMetrics.Phase.HIGHLIGHT);
+					display(result);
+					recorder.end(EvaluationMetrics.Phase.HIGHLIGHT);
+					finishRecording();
+				}
+			}
+			catch (ExecutionException ex) {
+				lastEvaluationKey = null;
+				Throwable cause = ex.getCause();
+				if (cause instanceof MatchInterruptedException && ((MatchInterruptedException) cause).isTimedOut())
+					postError("TIMEOUT - Evaluation exceeded ", timeBudgetMillis / 1000, "s, try a less ambiguous expression");
+				else
+					postError("ERROR - Failed to apply regex: ", cause.getMessage());
+			}
+			catch (Exception ex) {
+				lastEvaluationKey = null;
+				postError("ERROR - Failed to apply regex: ", ex.getMessage());
+			}
+			finally {
+				currentEvaluation = null;
+			}
+		}
+
+		/**
+		 * Runs in the background.
+		 */
+		protected abstract T evaluate(CharSequence input);
+
+		protected EvaluationMetrics.Phase getEvaluationPhase() {
+			return EvaluationMetrics.Phase.SCAN;
+		}
+
+		/**
+		 * Times rendering until the layout and painting queued by {@link #display} have run, then posts the metrics.
+		 */
+		private void finishRecording() {
+			recorder.begin(EvaluationMetrics.Phase.RENDER);
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					recorder.end(EvaluationMetrics.Phase.RENDER);
+					postMetrics(recorder.finish());
+				}
+			});
+		}
+
+		/**
+		 * Runs on the Event Dispatch Thread once evaluation completes.
+		 */
+		protected abstract void display(T result) throws BadLocationException;
+
+		/**
+		 * Runs on the Event Dispatch Thread with partial results published while evaluation continues.
+		 */
+		protected void displayPreview(MatchOffsets partialResult) {
+		}
+	}
+
+	/**
+	 * Tails a file off the Event Dispatch Thread, publishing the text read and the offsets of the matches in it,
+	 * which the text area receives in that order. The text area keeps only the last {@link #FOLLOW_MAX_LENGTH}
+	 * characters or so.
+	 */
+	protected class FollowWorker extends SwingWorker<Long, Object> {
+		private final File file;
+		private final Pattern pattern;
+		private long trimmedLength = 0;
+		private long matchCount = 0;
+
+		protected FollowWorker(File file, Pattern pattern) {
+			this.file = file;
+			this.pattern = pattern;
+		}
+
+		@Override
+		protected Long doInBackground() throws Exception {
+			Reader reader = new FilterReader(StreamingMatcher.openFollowingReader(file, StandardCharsets.UTF_8,
+					StreamingMatcher.DEFAULT_POLL_MILLIS)) {
+				@Override
+				public int read(char[] buffer, int offset, int length) throws IOException {
+					int read = super.read(buffer, offset, length);
+					if (read > 0)
+						publish(new String(buffer, offset, read));
+					return read;
+				}
+			};
+			try {
+				return new StreamingMatcher(pattern).match(reader, new StreamingMatcher.Visitor() {
+					@Override
+					public boolean visitMatch(long start, long end, MatchResult match) {
+						publish(new long[] {start, end});
+						return !isCancelled();
+					}
+				});
+			}
+			finally {
+				reader.close();
+			}
+		}
+
+		@Override
+		protected void process(List<Object> chunks) {
+			if (currentFollow != this)
+				return;
+
+			for (Object chunk : chunks) {
+				if (chunk instanceof String)
+					inputTextArea.append((String) chunk);
+				else {
+					long[] match = (long[]) chunk;
+					++matchCount;
+					if (match[0] >= trimmedLength)
+						inputMatchOffsets.add((int) (match[0] - trimmedLength), (int) (match[1] - trimmedLength));
+				}
+			}
+
+			int excess = inputTextArea.getDocument().getLength() - FOLLOW_MAX_LENGTH;
+			if (excess > 0) {
+				int trim = excess + FOLLOW_MAX_LENGTH / 4;	// well below the limit, so that trimming is rare
+				inputTextArea.replaceRange("", 0, trim);
+				inputMatchOffsets = inputMatchOffsets.window(trim, Integer.MAX_VALUE);
+				trimmedLength += trim;
+			}
+			highlighter.setOffsets(inputMatchOffsets, painter);
+			updateNavigation();
+			inputTextArea.setCaretPosition(inputTextArea.getDocument().getLength());
+			statusMessageLabel.setForeground(Color.green.darker());
+			postMessage("Following ", file.getName(), ": ", matchCount, matchCount == 1 ? " match" : " matches");
+		}
+
+		@Override
+		protected void done() {
+			if (currentFollow != this)
+				return;	// stopped
+
+			currentFollow = null;
+			followButton.setSelected(false);
+			try {
+				get();
+			}
+			catch (ExecutionException ex) {
+				postError("ERROR - Failed to follow input: ", ex.getCause().getMessage());
+			}
+			catch (Exception ex) {
+				postError("ERROR - Failed to follow input: ", ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Everything that determines the result of an evaluation; the input is compared by identity.
+	 */
+	protected static final class EvaluationKey {
+		private final String expression;
+		private final int flags;
+		private final CharSequence input;
+		private final String replacement;
+
+		EvaluationKey(String expression, int flags, CharSequence input, String replacement) {
+			this.expression = expression;
+			this.flags = flags;
+			this.input = input;
+			this.replacement = replacement;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof EvaluationKey))
+				return false;
+
+			EvaluationKey key = (EvaluationKey) other;
+			return expression.equals(key.expression) && flags == key.flags && input == key.input
+					&& StringUtils.equals(replacement, key.replacement);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * expression.hashCode() + flags;
+		}
+	}
+
+	static final int DEFAULT_TIME_BUDGET_SECONDS = 10;
+	static final int INPUT_WINDOW_LENGTH = 1 << 20;
+	static final int FOLLOW_MAX_LENGTH = INPUT_WINDOW_LENGTH;
+	static final long PREVIEW_INTERVAL_MILLIS = 100;
+	static final int DEFAULT_MATCH_LIMIT = 1000;
+	static final int LIVE_EVALUATION_DELAY_MILLIS = 300;
+	static final int PREVIEW_DELAY_MILLIS = 50;
+	static final long PREVIEW_TIME_BUDGET_MILLIS = 500;
+	static final int MAX_UNDO_REPLACE_LEVELS = 32;
+	static final long ANALYSIS_BUDGET_MILLIS = 1000;
+	static final long OPTIMIZE_BUDGET_MILLIS = 3000;
+	static final int COSTLIEST_ATTEMPT_COUNT = 10;
+	static int[] OPTIONS = RegexUtil.OPTIONS;
 	static final int OPTIONS_LENGTH = OPTIONS.length;
-	static String[] OPTION_DESCRIPTIONS = {
-			"UNIX_LINES", "CASE_INSENSITIVE", "COMMENTS", "MULTILINE",
-			"LITERAL", "DOTALL", "UNICODE_CASE", "CANON_EQ"
-	};
+	static String[] OPTION_DESCRIPTIONS = RegexUtil.OPTION_NAMES;
 	static String[] OPTION_TOOLTIPS = {
 			"In this mode, only the '\\n' line terminator is recognized in the behavior of ., ^, and $.\n" +
 			"Unix lines mode can also be enabled via the embedded flag expression (?d).",
@@ -335,20 +2242,39 @@ public class RegexEditor extends JPanel implements RunnableApplication<RegexEdit
 			"There is no embedded flag character for enabling canonical equivalence."
 	};
 
-	protected String getInputText() {
-		if (unmodifiedInputText == null)
-			unmodifiedInputText = StringUtils.defaultString(inputTextArea.getText(), "");
+	/**
+	 * @return the opened file if there is one, otherwise the input text
+	 */
+	protected CharSequence getInputSequence() {
+		return mappedInput != null ? mappedInput : getUnmodifiedInput();
+	}
 
-		return unmodifiedInputText;
+	/**
+	 * @return the input text as last applied, sharing its characters with the input document
+	 */
+	protected PieceTable getUnmodifiedInput() {
+		if (unmodifiedInput == null)
+			unmodifiedInput = inputDocument.snapshot();
+
+		return unmodifiedInput;
+	}
+
+	protected String getInputText() {
+		return getUnmodifiedInput().toString();
 	}
 
-	
 	protected String getUnmodifiedInputText() {
-		return unmodifiedInputText;
+		return unmodifiedInput == null ? null : unmodifiedInput.toString();
 	}
 
+	/**
+	 * Shows the given text as the input, in place of any replaced text.
+	 */
 	protected void setUnmodifiedInputText(String unmodifiedInput) {
-		unmodifiedInputText = unmodifiedInput;
+		setInputDocument(PieceTable.of(unmodifiedInput));
+		this.unmodifiedInput = inputDocument.snapshot();
+		clearReplaceHistory();
+		resetInput();
 	}
 
 	protected String getRegularExpressionText() {
@@ -360,6 +2286,7 @@ public class RegexEditor extends JPanel implements RunnableApplication<RegexEdit
 	}
 
 	public static void main(String[] args) {
+		RegexMetrics.getSharedMetrics().registerMBean();
 		ApplicationRunner.runApplication(new RegexEditor());
 	}
 }
@@ -0,0 +1,43 @@
+package com.obsglobal.util.regex;
+
+import java.util.regex.Pattern;
+
+/**
+ * A way of finding the matches of a {@link Pattern}. Every engine finds exactly the matches
+ * {@link java.util.regex.Matcher#find()} would, for the patterns it supports.
+ */
+public interface RegexEngine {
+	/**
+	 * Callback notified of the offsets of each match, in order.
+	 */
+	interface Visitor {
+		/**
+		 * @return <code>false</code> to stop matching
+		 */
+		boolean visitMatch(int start, int end);
+	}
+
+	/**
+	 * @return a short name to show which engine ran
+	 */
+	String getName();
+
+	/**
+	 * @return whether this engine can match the given pattern
+	 */
+	boolean supports(Pattern pattern);
+
+	/**
+	 * @throws UnsupportedOperationException if the pattern is not supported
+	 */
+	MatchOffsets findAllMatchOffsets(Pattern pattern, CharSequence input);
+
+	/**
+	 * Passes the offsets of each match to the given visitor as it is found, until the input is exhausted or the
+	 * visitor returns <code>false</code>.
+	 *
+	 * @return the number of matches visited
+	 * @throws UnsupportedOperationException if the pattern is not supported
+	 */
+	int visitMatchOffsets(Pattern pattern, CharSequence input, Visitor visitor);
+}
@@ -0,0 +1,191 @@
+package com.obsglobal.util.regex;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Thread-safe record of recent {@link EvaluationMetrics}, with totals since the last reset, for headless callers
+ * and, once {@link #registerMBean() registered}, JMX clients.
+ */
+public class RegexMetrics implements RegexMetricsMBean {
+	public static final String OBJECT_NAME = "com.obsglobal.util.regex:type=RegexMetrics";
+	public static final int DEFAULT_HISTORY_SIZE = 64;
+
+	private static final RegexMetrics SHARED_METRICS = new RegexMetrics();
+
+	private final int historySize;
+	private final Deque<EvaluationMetrics> history = new ArrayDeque<EvaluationMetrics>();
+	private long evaluationCount = 0;
+	private long totalNanos = 0;
+	private long totalCharactersScanned = 0;
+	private long totalMatchCount = 0;
+
+	public RegexMetrics() {
+		this(DEFAULT_HISTORY_SIZE);
+	}
+
+	public RegexMetrics(int historySize) {
+		if (historySize < 1)
+			throw new IllegalArgumentException("History size must be positive: "+ historySize);
+
+		this.historySize = historySize;
+	}
+
+	/**
+	 * @return the metrics {@link EvaluationRecorder#finish()} publishes to
+	 */
+	public static RegexMetrics getSharedMetrics() {
+		return SHARED_METRICS;
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server as {@link #OBJECT_NAME}.
+	 *
+	 * @return <code>false</code> if they could not be, because other metrics are already registered or JMX
+	 * is unavailable
+	 */
+	public boolean registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+				return false;
+
+			server.registerMBean(this, name);
+			return true;
+		}
+		catch (JMException ex) {
+			return false;
+		}
+	}
+
+	public synchronized void record(EvaluationMetrics metrics) {
+		history.addLast(metrics);
+		if (history.size() > historySize)
+			history.removeFirst();
+
+		++evaluationCount;
+		totalNanos += metrics.getTotalNanos();
+		totalCharactersScanned += metrics.getCharactersScanned();
+		totalMatchCount += metrics.getMatchCount();
+	}
+
+	/**
+	 * @return the metrics of the last evaluation, or <code>null</code> if there was none since the last reset
+	 */
+	public synchronized EvaluationMetrics getLastMetrics() {
+		return history.peekLast();
+	}
+
+	/**
+	 * @return the most recent evaluations, oldest first
+	 */
+	public synchronized List<EvaluationMetrics> getHistory() {
+		return new ArrayList<EvaluationMetrics>(history);
+	}
+
+	@Override
+	public synchronized long getEvaluationCount() {
+		return evaluationCount;
+	}
+
+	@Override
+	public String getLastEngineName() {
+		EvaluationMetrics last = getLastMetrics();
+		return last == null ? null : last.getEngineName();
+	}
+
+	@Override
+	public double getLastCompileMillis() {
+		return getLastMillis(EvaluationMetrics.Phase.COMPILE);
+	}
+
+	@Override
+	public double getLastScanMillis() {
+		return getLastMillis(EvaluationMetrics.Phase.SCAN);
+	}
+
+	@Override
+	public double getLastReplaceMillis() {
+		return getLastMillis(EvaluationMetrics.Phase.REPLACE);
+	}
+
+	@Override
+	public double getLastHighlightMillis() {
+		return getLastMillis(EvaluationMetrics.Phase.HIGHLIGHT);
+	}
+
+	@Override
+	public double getLastRenderMillis() {
+		return getLastMillis(EvaluationMetrics.Phase.RENDER);
+	}
+
+	@Override
+	public long getLastCharactersScanned() {
+		EvaluationMetrics last = getLastMetrics();
+		return last == null ? 0 : last.getCharactersScanned();
+	}
+
+	@Override
+	public long getLastMatchCount() {
+		EvaluationMetrics last = getLastMetrics();
+		return last == null ? 0 : last.getMatchCount();
+	}
+
+	@Override
+	public double getLastMatchesPerSecond() {
+		EvaluationMetrics last = getLastMetrics();
+		return last == null ? 0 : last.getMatchesPerSecond();
+	}
+
+	@Override
+	public long getLastAllocatedBytes() {
+		EvaluationMetrics last = getLastMetrics();
+		return last == null ? 0 : last.getAllocatedBytes();
+	}
+
+	@Override
+	public synchronized double getTotalMillis() {
+		return totalNanos / 1e6;
+	}
+
+	@Override
+	public synchronized long getTotalCharactersScanned() {
+		return totalCharactersScanned;
+	}
+
+	@Override
+	public synchronized long getTotalMatchCount() {
+		return totalMatchCount;
+	}
+
+	@Override
+	public long getPatternCacheHitCount() {
+		return PatternCache.getSharedCache().getHitCount();
+	}
+
+	@Override
+	public long getPatternCacheMissCount() {
+		return PatternCache.getSharedCache().getMissCount();
+	}
+
+	@Override
+	public synchronized void reset() {
+		history.clear();
+		evaluationCount = 0;
+		totalNanos = 0;
+		totalCharactersScanned = 0;
+		totalMatchCount = 0;
+	}
+
+	private double getLastMillis(EvaluationMetrics.Phase phase) {
+		EvaluationMetrics last = getLastMetrics();
+		return last == null ? 0 : last.getNanos(phase) / 1e6;
+	}
+}
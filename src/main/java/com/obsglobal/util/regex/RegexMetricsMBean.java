@@ -0,0 +1,40 @@
+package com.obsglobal.util.regex;
+
+/**
+ * JMX view of the {@link RegexMetrics}: the last evaluation, totals since the last reset and the pattern cache.
+ */
+public interface RegexMetricsMBean {
+	long getEvaluationCount();
+
+	String getLastEngineName();
+
+	double getLastCompileMillis();
+
+	double getLastScanMillis();
+
+	double getLastReplaceMillis();
+
+	double getLastHighlightMillis();
+
+	double getLastRenderMillis();
+
+	long getLastCharactersScanned();
+
+	long getLastMatchCount();
+
+	double getLastMatchesPerSecond();
+
+	long getLastAllocatedBytes();
+
+	double getTotalMillis();
+
+	long getTotalCharactersScanned();
+
+	long getTotalMatchCount();
+
+	long getPatternCacheHitCount();
+
+	long getPatternCacheMissCount();
+
+	void reset();
+}
@@ -0,0 +1,239 @@
+package com.obsglobal.util.regex;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Node of the syntax tree built by {@link RegexParser}. Literal characters, character classes and the dot are all
+ * {@link Type#CHARACTER} nodes holding the {@link CodePointSet} they match, with case folding already applied.
+ */
+public final class RegexNode {
+	public enum Type {
+		/** matches the empty string */
+		EMPTY,
+		/** matches one code point of {@link RegexNode#getCharacters()} */
+		CHARACTER,
+		/** zero-width {@link Assertion} */
+		ASSERTION,
+		/** capturing ({@link RegexNode#getGroup()} &gt; 0) or non-capturing group */
+		GROUP,
+		/** lookahead or lookbehind, see {@link RegexNode#isBehind()} and {@link RegexNode#isNegative()} */
+		LOOKAROUND,
+		/** independent group <code>(?&gt;X)</code> */
+		ATOMIC,
+		CONCATENATION,
+		ALTERNATION,
+		/** repetition of its only child, between {@link RegexNode#getMin()} and {@link RegexNode#getMax()} times */
+		REPEAT,
+		/** backreference to {@link RegexNode#getGroup()} */
+		BACKREFERENCE,
+		/** construct that is valid but not modelled, such as <code>\X</code> or nested quantifiers */
+		OPAQUE
+	}
+
+	public enum Assertion {
+		/** <code>\A</code>, or <code>^</code> without {@link java.util.regex.Pattern#MULTILINE} */
+		BEGIN_INPUT,
+		/** <code>^</code> in {@link java.util.regex.Pattern#MULTILINE} mode */
+		BEGIN_LINE,
+		/** <code>\z</code> */
+		END_INPUT,
+		/** <code>\Z</code>, or <code>$</code> without {@link java.util.regex.Pattern#MULTILINE} */
+		END_INPUT_OR_TERMINATOR,
+		/** <code>$</code> in {@link java.util.regex.Pattern#MULTILINE} mode */
+		END_LINE,
+		WORD_BOUNDARY,
+		NOT_WORD_BOUNDARY,
+		/** <code>\G</code> */
+		PREVIOUS_MATCH_END
+	}
+
+	public enum Quantifier { GREEDY, LAZY, POSSESSIVE }
+
+	/** {@link #getMax()} of unbounded repetitions */
+	public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+	private final Type type;
+	private final List<RegexNode> children;
+	private final int start, end, flags;
+	private CodePointSet characters;
+	private Assertion assertion;
+	private Quantifier quantifier;
+	private int min, max, group;
+	private boolean behind, negative;
+
+	private RegexNode(Type type, List<RegexNode> children, int start, int end, int flags) {
+		this.type = type;
+		this.children = Collections.unmodifiableList(children);
+		this.start = start;
+		this.end = end;
+		this.flags = flags;
+	}
+
+	static RegexNode empty(int start, int end, int flags) {
+		return new RegexNode(Type.EMPTY, Collections.<RegexNode>emptyList(), start, end, flags);
+	}
+
+	static RegexNode character(CodePointSet characters, int start, int end, int flags) {
+		RegexNode node = new RegexNode(Type.CHARACTER, Collections.<RegexNode>emptyList(), start, end, flags);
+		node.characters = characters;
+		return node;
+	}
+
+	static RegexNode assertion(Assertion assertion, int start, int end, int flags) {
+		RegexNode node = new RegexNode(Type.ASSERTION, Collections.<RegexNode>emptyList(), start, end, flags);
+		node.assertion = assertion;
+		return node;
+	}
+
+	static RegexNode group(RegexNode child, int group, int start, int end, int flags) {
+		RegexNode node = new RegexNode(Type.GROUP, Collections.singletonList(child), start, end, flags);
+		node.group = group;
+		return node;
+	}
+
+	static RegexNode lookaround(RegexNode child, boolean behind, boolean negative, int start, int end, int flags) {
+		RegexNode node = new RegexNode(Type.LOOKAROUND, Collections.singletonList(child), start, end, flags);
+		node.behind = behind;
+		node.negative = negative;
+		return node;
+	}
+
+	static RegexNode atomic(RegexNode child, int start, int end, int flags) {
+		return new RegexNode(Type.ATOMIC, Collections.singletonList(child), start, end, flags);
+	}
+
+	static RegexNode concatenation(List<RegexNode> children, int start, int end, int flags) {
+		return new RegexNode(Type.CONCATENATION, children, start, end, flags);
+	}
+
+	static RegexNode alternation(List<RegexNode> children, int start, int end, int flags) {
+		return new RegexNode(Type.ALTERNATION, children, start, end, flags);
+	}
+
+	static RegexNode repeat(RegexNode child, int min, int max, Quantifier quantifier, int start, int end, int flags) {
+		RegexNode node = new RegexNode(Type.REPEAT, Collections.singletonList(child), start, end, flags);
+		node.min = min;
+		node.max = max;
+		node.quantifier = quantifier;
+		return node;
+	}
+
+	static RegexNode backreference(int group, int start, int end, int flags) {
+		RegexNode node = new RegexNode(Type.BACKREFERENCE, Collections.<RegexNode>emptyList(), start, end, flags);
+		node.group = group;
+		return node;
+	}
+
+	static RegexNode opaque(int start, int end, int flags) {
+		return new RegexNode(Type.OPAQUE, Collections.<RegexNode>emptyList(), start, end, flags);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public List<RegexNode> getChildren() {
+		return children;
+	}
+
+	public RegexNode getChild() {
+		return children.get(0);
+	}
+
+	/**
+	 * @return the offset of this node in the expression
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * @return the offset just past this node in the expression
+	 */
+	public int getEnd() {
+		return end;
+	}
+
+	/**
+	 * @return the {@link java.util.regex.Pattern} flags in effect for this node
+	 */
+	public int getFlags() {
+		return flags;
+	}
+
+	public CodePointSet getCharacters() {
+		return characters;
+	}
+
+	public Assertion getAssertion() {
+		return assertion;
+	}
+
+	public Quantifier getQuantifier() {
+		return quantifier;
+	}
+
+	public int getMin() {
+		return min;
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	public int getGroup() {
+		return group;
+	}
+
+	public boolean isBehind() {
+		return behind;
+	}
+
+	public boolean isNegative() {
+		return negative;
+	}
+
+	/**
+	 * @return whether this node or any of its descendants is of the given type
+	 */
+	public boolean contains(Type other) {
+		if (type == other)
+			return true;
+		for (RegexNode child : children)
+			if (child.contains(other))
+				return true;
+
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(type.name());
+		switch (type) {
+			case CHARACTER:
+				builder.append(characters);
+				break;
+			case ASSERTION:
+				builder.append('(').append(assertion).append(')');
+				break;
+			case REPEAT:
+				builder.append('{').append(min).append(',').append(max == UNBOUNDED ? "" : String.valueOf(max))
+						.append('}').append(quantifier == Quantifier.GREEDY ? "" : quantifier.name());
+				break;
+			case GROUP:
+			case BACKREFERENCE:
+				builder.append('#').append(group);
+				break;
+			case LOOKAROUND:
+				builder.append(behind ? "<" : ">").append(negative ? "!" : "=");
+				break;
+			default:
+				break;
+		}
+		if (!children.isEmpty())
+			builder.append(children);
+
+		return builder.toString();
+	}
+}
@@ -0,0 +1,900 @@
+package com.obsglobal.util.regex;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Proposes rewrites of an expression that find the same matches with less backtracking, checks each for
+ * equivalence and measures its speed against the original.
+ * <p/>
+ * Rewrites are read off the {@link RegexParser} tree, and only where they cannot change the matches:
+ * <ul>
+ * <li>a greedy repeat of a single character class made possessive, as in <code>\d+,</code> to <code>\d++,</code>,
+ * when nothing that can follow it starts with a character it repeats, or nothing follows it at all;</li>
+ * <li>an alternation of plain strings made an atomic group, when its alternatives start with different
+ * characters so that at most one of them matches at any offset;</li>
+ * <li>the leading characters alternatives have in common factored out, as in <code>abc|abd</code> to
+ * <code>ab(?:c|d)</code>;</li>
+ * <li>a lazy repeat followed by a last character replaced by a possessive class excluding it, as in
+ * <code>".*?"</code> to <code>"[^"\n...]*+"</code>;</li>
+ * <li>an expression starting with <code>.*</code> anchored at line starts, so that a line without a match is
+ * scanned once rather than from each of its offsets.</li>
+ * </ul>
+ * Each rewrite is compiled with the flags of the original and its matches and groups are compared with those of
+ * the original on the input and on samples generated from the tree. Equivalent rewrites are then scanned over the
+ * input in alternating rounds with the original, through {@link RegexUtil#findAllMatchOffsets}, to measure the
+ * speedup.
+ */
+public class RegexOptimizer {
+	/** samples generated from the expression, besides the input, that rewrites must match alike */
+	public static final int SAMPLE_COUNT = 300;
+	/** the original and the rewrite are each scanned this many times in turn */
+	private static final int ROUNDS = 4;
+	private static final long SEED = 42;
+	private static final String SAMPLE_CHARACTERS = "aA0 _-.,\"'<>\n";
+	private static final Pattern INLINE_FLAGS = Pattern.compile("\\(\\?[idmsuxU-]");
+
+	public enum Kind {
+		POSSESSIVE("possessive quantifier"),
+		ATOMIC_GROUP("atomic group"),
+		COMMON_PREFIX("common prefix factored out"),
+		NEGATED_CLASS("negated class instead of lazy repeat"),
+		LINE_ANCHOR("anchored at line starts"),
+		/** the other rewrites that do not overlap, applied together */
+		COMBINED("rewrites combined");
+
+		private final String description;
+
+		Kind(String description) {
+			this.description = description;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+	}
+
+	public enum Verdict {
+		/** same matches and groups on the input and on every sample */
+		EQUIVALENT,
+		/** same matches and groups on every sample, while matching the input timed out */
+		UNVERIFIED,
+		DIFFERENT
+	}
+
+	/**
+	 * An edit of the expression, replacing a span of it.
+	 */
+	public static final class Rewrite {
+		private final Kind kind;
+		private final int start, end;
+		private final String replacement, expression;
+
+		Rewrite(Kind kind, int start, int end, String replacement, String expression) {
+			this.kind = kind;
+			this.start = start;
+			this.end = end;
+			this.replacement = replacement;
+			this.expression = expression;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		/**
+		 * @return the offset in the original expression where the edit starts
+		 */
+		public int getStart() {
+			return start;
+		}
+
+		/**
+		 * @return the offset in the original expression where the edit ends
+		 */
+		public int getEnd() {
+			return end;
+		}
+
+		/**
+		 * @return the text replacing the span
+		 */
+		public String getReplacement() {
+			return replacement;
+		}
+
+		/**
+		 * @return the rewritten expression
+		 */
+		public String getExpression() {
+			return expression;
+		}
+
+		@Override
+		public String toString() {
+			return kind.getDescription() +": "+ expression;
+		}
+	}
+
+	/**
+	 * A rewrite with how it compared with the original.
+	 */
+	public static final class Suggestion {
+		private final Rewrite rewrite;
+		private final Verdict verdict;
+		private final String difference;
+		private final int sampleCount;
+		private final long originalNanos, rewrittenNanos;
+		private final boolean originalTimedOut, rewrittenTimedOut;
+
+		Suggestion(Rewrite rewrite, Verdict verdict, String difference, int sampleCount, long originalNanos,
+				   long rewrittenNanos, boolean originalTimedOut, boolean rewrittenTimedOut) {
+			this.rewrite = rewrite;
+			this.verdict = verdict;
+			this.difference = difference;
+			this.sampleCount = sampleCount;
+			this.originalNanos = originalNanos;
+			this.rewrittenNanos = rewrittenNanos;
+			this.originalTimedOut = originalTimedOut;
+			this.rewrittenTimedOut = rewrittenTimedOut;
+		}
+
+		public Rewrite getRewrite() {
+			return rewrite;
+		}
+
+		public Verdict getVerdict() {
+			return verdict;
+		}
+
+		/**
+		 * @return the first difference found, or why the input could not be compared, or <code>null</code>
+		 */
+		public String getDifference() {
+			return difference;
+		}
+
+		/**
+		 * @return the number of samples compared, besides the input
+		 */
+		public int getSampleCount() {
+			return sampleCount;
+		}
+
+		/**
+		 * @return the mean time the original took to scan the input, or the time until it timed out; 0 if not measured
+		 */
+		public long getOriginalNanos() {
+			return originalNanos;
+		}
+
+		/**
+		 * @return the mean time the rewrite took to scan the input, or the time until it timed out; 0 if not measured
+		 */
+		public long getRewrittenNanos() {
+			return rewrittenNanos;
+		}
+
+		public boolean isOriginalTimedOut() {
+			return originalTimedOut;
+		}
+
+		public boolean isRewrittenTimedOut() {
+			return rewrittenTimedOut;
+		}
+
+		/**
+		 * @return how many times faster the rewrite scanned the input, a lower bound if the original timed out, or
+		 * {@link Double#NaN} if it was not measured or timed out itself
+		 */
+		public double getSpeedup() {
+			return rewrittenNanos <= 0 || originalNanos <= 0 || rewrittenTimedOut ? Double.NaN
+					: (double) originalNanos / rewrittenNanos;
+		}
+
+		@Override
+		public String toString() {
+			return rewrite +" ("+ (verdict == Verdict.DIFFERENT ? "differs: "+ difference
+					: String.format("%s%.2fx", originalTimedOut ? ">" : "", getSpeedup())) +")";
+		}
+	}
+
+	public interface Visitor {
+		/**
+		 * Called as each rewrite is compared and measured.
+		 *
+		 * @return <code>false</code> to stop
+		 */
+		boolean visitSuggestion(Suggestion suggestion);
+	}
+
+	private final String expression;
+	private final int flags;
+	private final RegexNode root;
+	private final List<Rewrite> rewrites = new ArrayList<Rewrite>();
+
+	private RegexOptimizer(String expression, int flags) {
+		this.expression = expression;
+		this.flags = flags;
+		this.root = RegexParser.parse(expression, flags);
+	}
+
+	/**
+	 * @return the rewrites of the expression, each applied alone, that cannot change its matches
+	 * @throws PatternSyntaxException if the expression is malformed
+	 */
+	public static List<Rewrite> findRewrites(String expression, int flags) {
+		RegexUtil.compile(expression, flags);
+		RegexOptimizer optimizer = new RegexOptimizer(expression, flags);
+		// quotes are parsed into plain characters, which would not mean the same outside of them
+		if ((flags & Pattern.LITERAL) != 0 || expression.contains("\\Q") || optimizer.root.getType() == RegexNode.Type.OPAQUE)
+			return optimizer.rewrites;
+
+		optimizer.inspect(optimizer.root, CodePointSet.ALL, true, null);
+		optimizer.inspectLeadingRepeat();
+		optimizer.combineRewrites();
+		return optimizer.rewrites;
+	}
+
+	/**
+	 * Finds the rewrites of the expression, compares each with the original on the input and generated samples,
+	 * and measures the equivalent ones, sharing the time budget between them.
+	 *
+	 * @return the suggestions, in the order the rewrites were found
+	 * @throws PatternSyntaxException if the expression is malformed
+	 * @throws MatchInterruptedException if the calling thread is interrupted
+	 */
+	public static List<Suggestion> suggest(String expression, int flags, CharSequence input, long budgetMillis,
+										   Visitor visitor) {
+		List<Rewrite> rewrites = findRewrites(expression, flags);
+		List<Suggestion> suggestions = new ArrayList<Suggestion>();
+		if (rewrites.isEmpty())
+			return suggestions;
+
+		Pattern original = RegexUtil.compile(expression, flags);
+		List<String> samples = generateSamples(RegexParser.parse(expression, flags), SAMPLE_COUNT, SEED);
+		long deadline = System.nanoTime() + budgetMillis * 1000000L;
+		for (int index = 0; index < rewrites.size(); index++) {
+			long sliceMillis = Math.max(1, (deadline - System.nanoTime()) / 1000000L / (rewrites.size() - index));
+			Suggestion suggestion = compare(original, rewrites.get(index), flags, input, samples, sliceMillis);
+			suggestions.add(suggestion);
+			if (!visitor.visitSuggestion(suggestion))
+				break;
+		}
+
+		return suggestions;
+	}
+
+	/**
+	 * Checks the rewrite on as many samples as a quarter of the time given allows and on the input within half of
+	 * it, then scans the input with the original and the rewrite in turn for the rest.
+	 */
+	private static Suggestion compare(Pattern original, Rewrite rewrite, int flags, CharSequence input,
+									  List<String> samples, long millis) {
+		Pattern rewritten = RegexUtil.compile(rewrite.getExpression(), flags);
+		long start = System.nanoTime(), samplesEnd = start + millis * 250000L;
+		int compared = 0;
+		for (String sample : samples) {
+			long remainingMillis = (samplesEnd - System.nanoTime()) / 1000000L;
+			if (remainingMillis <= 0)
+				break;
+
+			String difference;
+			try {
+				difference = findDifference(original, rewritten, new InterruptibleCharSequence(sample, remainingMillis));
+			}
+			catch (MatchInterruptedException ex) {
+				if (!ex.isTimedOut())
+					throw ex;
+				break;	// backtracks too much to compare, likely on the original
+			}
+			if (difference != null)
+				return new Suggestion(rewrite, Verdict.DIFFERENT, "on \""+ StringEscapeUtils.escapeJava(sample) +"\": "+ difference,
+						compared, 0, 0, false, false);
+			++compared;
+		}
+
+		Verdict verdict = Verdict.EQUIVALENT;
+		String difference = null;
+		long inputMillis = Math.max(1, millis / 2 - (System.nanoTime() - start) / 1000000L);
+		try {
+			difference = findDifference(original, rewritten, new InterruptibleCharSequence(input, inputMillis));
+			if (difference != null)
+				return new Suggestion(rewrite, Verdict.DIFFERENT, "on the input: "+ difference, compared, 0, 0, false, false);
+		}
+		catch (MatchInterruptedException ex) {
+			if (!ex.isTimedOut())
+				throw ex;
+			verdict = Verdict.UNVERIFIED;
+			difference = "matching the input timed out";
+		}
+		catch (StackOverflowError ex) {
+			verdict = Verdict.UNVERIFIED;
+			difference = "matching the input overflowed the stack";
+		}
+
+		Measurement originalTime = new Measurement(), rewrittenTime = new Measurement();
+		long benchmarkMillis = Math.max(1, millis - (System.nanoTime() - start) / 1000000L);
+		long roundMillis = Math.max(1, benchmarkMillis / (2 * (ROUNDS + 1)));
+		// the first round warms the matchers up and is not counted
+		for (int round = 0; round <= ROUNDS; round++) {
+			if (round == 1) {
+				originalTime.reset();
+				rewrittenTime.reset();
+			}
+			originalTime.measure(original, input, roundMillis, benchmarkMillis / 2);
+			rewrittenTime.measure(rewritten, input, roundMillis, benchmarkMillis / 2);
+		}
+
+		return new Suggestion(rewrite, verdict, difference, compared, originalTime.getMeanNanos(),
+				rewrittenTime.getMeanNanos(), originalTime.timedOut, rewrittenTime.timedOut);
+	}
+
+	/**
+	 * @return how the matches or groups of the second pattern first differ from those of the first, or
+	 * <code>null</code> if they are the same
+	 */
+	static String findDifference(Pattern first, Pattern second, CharSequence input) {
+		Matcher expected = first.matcher(input), actual = second.matcher(input);
+		if (expected.groupCount() != actual.groupCount())
+			return "has "+ actual.groupCount() +" groups instead of "+ expected.groupCount();
+
+		while (true) {
+			boolean found = expected.find();
+			if (actual.find() != found)
+				return found ? "misses the match at "+ expected.start() : "adds a match at "+ actual.start();
+			if (!found)
+				return null;
+
+			for (int group = 0; group <= expected.groupCount(); group++) {
+				if (expected.start(group) != actual.start(group) || expected.end(group) != actual.end(group))
+					return (group == 0 ? "match" : "group "+ group +" of the match") +" at "+ expected.start()
+							+" spans "+ actual.start(group) +"-"+ actual.end(group) +" instead of "
+							+ expected.start(group) +"-"+ expected.end(group);
+			}
+		}
+	}
+
+	/**
+	 * @return short strings built from examples of the nodes of the tree and of characters in and out of its classes,
+	 * the examples first
+	 */
+	static List<String> generateSamples(RegexNode root, int count, long seed) {
+		List<String> fragments = new ArrayList<String>(), characters = new ArrayList<String>();
+		collectExamples(root, fragments, characters);
+		for (int index = 0; index < SAMPLE_CHARACTERS.length(); index++)
+			addDistinct(characters, SAMPLE_CHARACTERS.substring(index, index + 1));
+
+		List<String> samples = new ArrayList<String>(count);
+		for (String fragment : fragments) {
+			if (samples.size() < count)
+				samples.add(fragment);
+		}
+		Random random = new Random(seed);
+		while (samples.size() < count) {
+			StringBuilder sample = new StringBuilder();
+			for (int piece = 0, pieces = 1 + random.nextInt(6); piece < pieces; piece++) {
+				if (!fragments.isEmpty() && random.nextBoolean()) {
+					String fragment = fragments.get(random.nextInt(fragments.size()));
+					for (int times = 1 + random.nextInt(3); times > 0; times--)
+						sample.append(fragment);
+				}
+				else {
+					for (int length = 1 + random.nextInt(3); length > 0; length--)
+						sample.append(characters.get(random.nextInt(characters.size())));
+				}
+			}
+			samples.add(sample.toString());
+		}
+
+		return samples;
+	}
+
+	private static void collectExamples(RegexNode node, List<String> fragments, List<String> characters) {
+		if (node.getType() == RegexNode.Type.CHARACTER) {
+			CodePointSet set = node.getCharacters();
+			if (!set.isEmpty()) {
+				addDistinct(characters, pick(set));
+				addDistinct(characters, new String(Character.toChars(set.rangeEnd(set.rangeCount() - 1))));
+			}
+			if (!set.complement().isEmpty())
+				addDistinct(characters, pick(set.complement()));
+		}
+
+		String example = BacktrackingAnalyzer.example(node, true);
+		if (!example.isEmpty()) {
+			addDistinct(fragments, example);
+			if (node.getType() == RegexNode.Type.REPEAT && node.getMax() > 1)
+				addDistinct(fragments, example + BacktrackingAnalyzer.example(node.getChild(), true));
+		}
+
+		for (RegexNode child : node.getChildren())
+			collectExamples(child, fragments, characters);
+	}
+
+	private static String pick(CodePointSet set) {
+		for (int index = 0; index < SAMPLE_CHARACTERS.length(); index++) {
+			char c = SAMPLE_CHARACTERS.charAt(index);
+			if (set.contains(c))
+				return String.valueOf(c);
+		}
+
+		return new String(Character.toChars(set.rangeStart(0)));
+	}
+
+	private static void addDistinct(List<String> strings, String string) {
+		if (!strings.contains(string))
+			strings.add(string);
+	}
+
+	/**
+	 * Looks for rewrites in the node and below.
+	 *
+	 * @param follow the characters the rest of the expression may start with where it matches after the node,
+	 * or <code>null</code> if unknown
+	 * @param last whether nothing follows the node, so the first way it matches is kept
+	 * @param lastCharacter the only node following it, itself followed by nothing, or <code>null</code>
+	 */
+	private void inspect(RegexNode node, CodePointSet follow, boolean last, RegexNode lastCharacter) {
+		switch (node.getType()) {
+			case CONCATENATION:
+				List<RegexNode> items = node.getChildren();
+				CodePointSet itemFollow = follow;
+				for (int index = items.size() - 1; index >= 0; index--) {
+					boolean lastItem = index == items.size() - 1;
+					RegexNode next = lastItem ? null : items.get(index + 1);
+					RegexNode nextCharacter = lastItem ? lastCharacter
+							: last && index == items.size() - 2 && next.getType() == RegexNode.Type.CHARACTER ? next : null;
+					inspect(items.get(index), itemFollow, last && lastItem, nextCharacter);
+					itemFollow = itemFollow == null ? null : firstCharacters(items.get(index), itemFollow);
+				}
+				break;
+			case ALTERNATION:
+				inspectAlternation(node);
+				for (RegexNode alternative : node.getChildren())
+					inspect(alternative, follow, last, lastCharacter);
+				break;
+			case GROUP:
+				inspectGroup(node, last);
+				inspect(node.getChild(), follow, last, lastCharacter);
+				break;
+			case ATOMIC:
+				// the first way the group matches is kept, whatever follows
+				inspect(node.getChild(), CodePointSet.ALL, true, null);
+				break;
+			case LOOKAROUND:
+				if (!node.isBehind())
+					inspect(node.getChild(), CodePointSet.ALL, true, null);
+				break;
+			case REPEAT:
+				inspectRepeat(node, follow, last, lastCharacter);
+				// what follows an iteration is another one or what follows the repeat
+				CodePointSet iterationFollow = follow == null ? null : firstCharacters(node.getChild(), follow);
+				inspect(node.getChild(), iterationFollow == null ? null : iterationFollow.union(follow), false, null);
+				break;
+			default:
+				break;
+		}
+	}
+
+	private void inspectRepeat(RegexNode repeat, CodePointSet follow, boolean last, RegexNode lastCharacter) {
+		CodePointSet body = getCharacters(repeat.getChild());
+		if (body == null || repeat.getMax() == repeat.getMin())
+			return;
+
+		// giving back characters of the body only helps when what follows can start with one of them
+		if (repeat.getQuantifier() == RegexNode.Quantifier.GREEDY && (last || (follow != null && body.intersect(follow).isEmpty())))
+			addRewrite(Kind.POSSESSIVE, repeat.getEnd(), repeat.getEnd(), "+");
+
+		// a lazy repeat stops at the first of the characters after it, which a class excluding them finds directly
+		if (repeat.getQuantifier() == RegexNode.Quantifier.LAZY && lastCharacter != null && repeat.getMin() == 0
+				&& repeat.getMax() == RegexNode.UNBOUNDED) {
+			CodePointSet remaining = body.subtract(lastCharacter.getCharacters());
+			if (!remaining.isEmpty())
+				addRewrite(Kind.NEGATED_CLASS, repeat.getStart(), repeat.getEnd(), toClass(remaining) +"*+");
+		}
+	}
+
+	/**
+	 * Makes a non-capturing group around plain strings starting with different characters atomic.
+	 */
+	private void inspectGroup(RegexNode group, boolean last) {
+		RegexNode alternation = group.getChild();
+		if (group.getGroup() != 0 || last || alternation.getType() != RegexNode.Type.ALTERNATION
+				|| !isWritten(alternation) || !expression.startsWith("(?:", group.getStart()))
+			return;
+
+		CodePointSet seen = CodePointSet.EMPTY;
+		for (RegexNode alternative : alternation.getChildren()) {
+			List<RegexNode> items = getItems(alternative);
+			if (items.isEmpty())
+				return;
+			for (RegexNode item : items) {
+				if (item.getType() != RegexNode.Type.CHARACTER)
+					return;
+			}
+			CodePointSet first = items.get(0).getCharacters();
+			if (!seen.intersect(first).isEmpty())
+				return;
+			seen = seen.union(first);
+		}
+
+		addRewrite(Kind.ATOMIC_GROUP, group.getStart(), group.getStart() + 3, "(?>");
+	}
+
+	/**
+	 * Factors the leading characters out of each run of alternatives sharing them.
+	 */
+	private void inspectAlternation(RegexNode alternation) {
+		// inline flags would only apply to the part of the alternatives moved into a group
+		if (!isWritten(alternation) || INLINE_FLAGS.matcher(source(alternation)).find())
+			return;
+
+		List<RegexNode> alternatives = alternation.getChildren();
+		StringBuilder rewritten = new StringBuilder();
+		boolean factored = false;
+		for (int first = 0; first < alternatives.size(); ) {
+			int shared = 0, end = first + 1;
+			for (; end < alternatives.size(); end++) {
+				int common = countCommonItems(alternatives.get(first), alternatives.get(end));
+				if (common == 0)
+					break;
+				shared = shared == 0 ? common : Math.min(shared, common);
+			}
+
+			if (first > 0)
+				rewritten.append('|');
+			if (shared == 0) {
+				rewritten.append(source(alternatives.get(first)));
+				++first;
+				continue;
+			}
+
+			RegexNode firstAlternative = alternatives.get(first);
+			rewritten.append(expression, firstAlternative.getStart(), getItems(firstAlternative).get(shared - 1).getEnd()).append("(?:");
+			for (int index = first; index < end; index++) {
+				RegexNode alternative = alternatives.get(index);
+				if (index > first)
+					rewritten.append('|');
+				rewritten.append(expression, getItems(alternative).get(shared - 1).getEnd(), alternative.getEnd());
+			}
+			rewritten.append(')');
+			factored = true;
+			first = end;
+		}
+
+		if (factored)
+			addRewrite(Kind.COMMON_PREFIX, alternation.getStart(), alternation.getEnd(), rewritten.toString());
+	}
+
+	/**
+	 * @return the number of leading characters two alternatives share, written alike
+	 */
+	private int countCommonItems(RegexNode first, RegexNode second) {
+		List<RegexNode> firstItems = getItems(first), secondItems = getItems(second);
+		int common = 0;
+		while (common < firstItems.size() && common < secondItems.size()) {
+			RegexNode item = firstItems.get(common), other = secondItems.get(common);
+			if (item.getType() != RegexNode.Type.CHARACTER || other.getType() != RegexNode.Type.CHARACTER
+					|| item.getFlags() != other.getFlags() || item.getStart() >= item.getEnd()
+					|| !source(item).equals(source(other)))
+				break;
+			++common;
+		}
+
+		return common;
+	}
+
+	/**
+	 * Anchors an expression starting with <code>.*</code> at line starts: a match starting later on a line is also
+	 * found from its start, and the match found from there ends after any other on the line.
+	 */
+	private void inspectLeadingRepeat() {
+		if (root.getType() != RegexNode.Type.CONCATENATION || expression.contains("\\G"))
+			return;
+
+		List<RegexNode> items = root.getChildren();
+		RegexNode repeat = items.get(0);
+		if (repeat.getType() != RegexNode.Type.REPEAT || repeat.getQuantifier() != RegexNode.Quantifier.GREEDY
+				|| repeat.getMin() > 1 || repeat.getMax() != RegexNode.UNBOUNDED
+				|| repeat.getChild().getType() != RegexNode.Type.CHARACTER || !source(repeat.getChild()).equals(".")
+				|| (repeat.getFlags() & Pattern.DOTALL) != 0)
+			return;
+
+		// the rest must match within the line, and not be empty at its end where the anchor does not match
+		CodePointSet lineCharacters = repeat.getChild().getCharacters();
+		boolean empty = true;
+		for (RegexNode item : items.subList(1, items.size())) {
+			if (!isWithinLine(item, lineCharacters))
+				return;
+			empty &= matchesEmpty(item);
+		}
+		if (!empty)
+			addRewrite(Kind.LINE_ANCHOR, repeat.getStart(), repeat.getStart(), "(?m:^)");
+	}
+
+	/**
+	 * Applies the rewrites that do not overlap together, from the first, which is checked like any other rewrite.
+	 */
+	private void combineRewrites() {
+		List<Rewrite> combined = new ArrayList<Rewrite>();
+		for (Rewrite rewrite : rewrites) {
+			boolean overlaps = false;
+			for (Rewrite other : combined)
+				overlaps |= rewrite.getStart() <= other.getEnd() && other.getStart() <= rewrite.getEnd();
+			if (!overlaps)
+				combined.add(rewrite);
+		}
+		if (combined.size() < 2)
+			return;
+
+		Collections.sort(combined, new Comparator<Rewrite>() {
+			@Override
+			public int compare(Rewrite first, Rewrite second) {
+				return first.getStart() - second.getStart();
+			}
+		});
+		StringBuilder replacement = new StringBuilder();
+		int start = combined.get(0).getStart(), end = start;
+		for (Rewrite rewrite : combined) {
+			replacement.append(expression, end, rewrite.getStart()).append(rewrite.getReplacement());
+			end = rewrite.getEnd();
+		}
+		addRewrite(Kind.COMBINED, start, end, replacement.toString());
+	}
+
+	private void addRewrite(Kind kind, int start, int end, String replacement) {
+		String rewritten = expression.substring(0, start) + replacement + expression.substring(end);
+		try {
+			RegexUtil.compile(rewritten, flags);
+		}
+		catch (PatternSyntaxException ex) {
+			return;
+		}
+
+		for (Rewrite rewrite : rewrites) {
+			if (rewrite.getExpression().equals(rewritten))
+				return;
+		}
+		rewrites.add(new Rewrite(kind, start, end, replacement, rewritten));
+	}
+
+	/**
+	 * @return the characters the node may start with where it matches followed by something starting with one of
+	 * the given ones, too many rather than too few, or <code>null</code> if unknown
+	 */
+	private static CodePointSet firstCharacters(RegexNode node, CodePointSet follow) {
+		switch (node.getType()) {
+			case EMPTY:
+			case LOOKAROUND:
+				return follow;
+			case CHARACTER:
+				return node.getCharacters();
+			case ASSERTION:
+				switch (node.getAssertion()) {
+					case END_INPUT:
+						return CodePointSet.EMPTY;
+					case END_INPUT_OR_TERMINATOR:
+					case END_LINE:
+						return RegexParser.LINE_TERMINATORS;
+					default:
+						return follow;
+				}
+			case GROUP:
+			case ATOMIC:
+				return firstCharacters(node.getChild(), follow);
+			case CONCATENATION:
+				CodePointSet first = follow;
+				for (int index = node.getChildren().size() - 1; index >= 0 && first != null; index--)
+					first = firstCharacters(node.getChildren().get(index), first);
+				return first;
+			case ALTERNATION:
+				CodePointSet union = CodePointSet.EMPTY;
+				for (RegexNode alternative : node.getChildren()) {
+					CodePointSet alternativeFirst = firstCharacters(alternative, follow);
+					if (alternativeFirst == null)
+						return null;
+					union = union.union(alternativeFirst);
+				}
+				return union;
+			case REPEAT:
+				if (node.getMax() == 0)
+					return follow;
+				CodePointSet childFirst = firstCharacters(node.getChild(), follow);
+				if (childFirst == null || follow == null)
+					return node.getMin() > 0 ? childFirst : null;
+				return node.getMin() > 0 ? childFirst : childFirst.union(follow);
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * @return whether the node only ever reads the given characters
+	 */
+	private static boolean isWithinLine(RegexNode node, CodePointSet lineCharacters) {
+		if (node.getType() == RegexNode.Type.OPAQUE)
+			return false;
+		if (node.getType() == RegexNode.Type.CHARACTER)
+			return node.getCharacters().subtract(lineCharacters).isEmpty();
+
+		for (RegexNode child : node.getChildren()) {
+			if (!isWithinLine(child, lineCharacters))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return whether the node may match the empty string, yes if unsure
+	 */
+	private static boolean matchesEmpty(RegexNode node) {
+		switch (node.getType()) {
+			case CHARACTER:
+				return false;
+			case GROUP:
+			case ATOMIC:
+				return matchesEmpty(node.getChild());
+			case CONCATENATION:
+				for (RegexNode child : node.getChildren()) {
+					if (!matchesEmpty(child))
+						return false;
+				}
+				return true;
+			case ALTERNATION:
+				for (RegexNode child : node.getChildren()) {
+					if (matchesEmpty(child))
+						return true;
+				}
+				return false;
+			case REPEAT:
+				return node.getMin() == 0 || matchesEmpty(node.getChild());
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * @return the characters of a single character class, possibly in a non-capturing group, or <code>null</code>
+	 */
+	private static CodePointSet getCharacters(RegexNode node) {
+		while (node.getType() == RegexNode.Type.GROUP && node.getGroup() == 0)
+			node = node.getChild();
+
+		return node.getType() == RegexNode.Type.CHARACTER ? node.getCharacters() : null;
+	}
+
+	private static List<RegexNode> getItems(RegexNode alternative) {
+		switch (alternative.getType()) {
+			case CONCATENATION:
+				return alternative.getChildren();
+			case EMPTY:
+				return Collections.emptyList();
+			default:
+				return Collections.singletonList(alternative);
+		}
+	}
+
+	/**
+	 * @return whether the alternatives are written out, rather than those of an escape like <code>\R</code>
+	 */
+	private static boolean isWritten(RegexNode alternation) {
+		List<RegexNode> alternatives = alternation.getChildren();
+		for (int index = 1; index < alternatives.size(); index++) {
+			if (alternatives.get(index).getStart() <= alternatives.get(index - 1).getEnd())
+				return false;
+		}
+
+		return true;
+	}
+
+	private String source(RegexNode node) {
+		return expression.substring(node.getStart(), node.getEnd());
+	}
+
+	/**
+	 * @return a class of the given characters, negated if that is shorter, safe in comments mode too
+	 */
+	static String toClass(CodePointSet characters) {
+		String positive = "["+ toRanges(characters) +"]";
+		CodePointSet complement = characters.complement();
+		String negative = "[^"+ toRanges(complement) +"]";
+		return negative.length() < positive.length() && !complement.isEmpty() ? negative : positive;
+	}
+
+	private static String toRanges(CodePointSet characters) {
+		StringBuilder ranges = new StringBuilder();
+		for (int index = 0; index < characters.rangeCount(); index++) {
+			appendClassCharacter(ranges, characters.rangeStart(index));
+			if (characters.rangeEnd(index) > characters.rangeStart(index)) {
+				if (characters.rangeEnd(index) > characters.rangeStart(index) + 1)
+					ranges.append('-');
+				appendClassCharacter(ranges, characters.rangeEnd(index));
+			}
+		}
+
+		return ranges.toString();
+	}
+
+	private static void appendClassCharacter(StringBuilder builder, int codePoint) {
+		if (codePoint == '\n')
+			builder.append("\\n");
+		else if (codePoint == '\r')
+			builder.append("\\r");
+		else if (codePoint == '\t')
+			builder.append("\\t");
+		else if (codePoint > ' ' && codePoint < 0x7F && "[]-\\^&#".indexOf(codePoint) < 0)
+			builder.append((char) codePoint);
+		else if (codePoint > ' ' && codePoint < 0x7F)
+			builder.append('\\').append((char) codePoint);
+		else
+			builder.append(String.format("\\x{%X}", codePoint));
+	}
+
+	/**
+	 * Scan times of one pattern, accumulated over rounds.
+	 */
+	private static final class Measurement {
+		long nanos = 0;
+		int scans = 0;
+		boolean timedOut = false;
+
+		/**
+		 * Scans the input repeatedly for the given time, at least once, unless an earlier scan timed out.
+		 *
+		 * @param timeoutMillis the time after which a single scan is abandoned
+		 */
+		void measure(Pattern pattern, CharSequence input, long millis, long timeoutMillis) {
+			if (timedOut)
+				return;
+
+			long start = System.nanoTime(), end = start + millis * 1000000L, now;
+			do {
+				long scanStart = System.nanoTime();
+				try {
+					RegexUtil.findAllMatchOffsets(pattern, new InterruptibleCharSequence(input, Math.max(1, timeoutMillis)));
+				}
+				catch (MatchInterruptedException ex) {
+					if (!ex.isTimedOut())
+						throw ex;
+					timedOut = true;
+					nanos = System.nanoTime() - scanStart;
+					scans = 1;
+					return;
+				}
+				catch (StackOverflowError ex) {
+					timedOut = true;
+					nanos = System.nanoTime() - scanStart;
+					scans = 1;
+					return;
+				}
+				now = System.nanoTime();
+				nanos += now - scanStart;
+				++scans;
+			} while (now - end < 0);
+		}
+
+		/**
+		 * Forgets the scans so far, unless one timed out.
+		 */
+		void reset() {
+			if (!timedOut) {
+				nanos = 0;
+				scans = 0;
+			}
+		}
+
+		long getMeanNanos() {
+			return scans == 0 ? 0 : nanos / scans;
+		}
+	}
+}
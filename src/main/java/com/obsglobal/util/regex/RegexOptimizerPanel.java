@@ -0,0 +1,325 @@
+package com.obsglobal.util.regex;
+
+import javax.swing.*;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs a {@link RegexOptimizer} for the editor and lists each rewrite of the expression as it is checked and
+ * measured. Applying a rewrite, with the Apply button or by double-clicking it, puts it into the expression field.
+ */
+public class RegexOptimizerPanel extends JPanel {
+	private final RegexEditor editor;
+	private final SuggestionTableModel model = new SuggestionTableModel();
+	private final JTable table;
+	private final JLabel statusLabel;
+	private final JButton cancelButton, applyButton;
+	private OptimizeWorker currentOptimization = null;
+
+	public RegexOptimizerPanel(RegexEditor editor) {
+		super(new BorderLayout(5, 5));
+		this.editor = editor;
+
+		JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 5));
+		applyButton = new JButton("Apply");
+		applyButton.setName("button-applySuggestion");
+		applyButton.setToolTipText("Replace the expression with the selected rewrite");
+		applyButton.setEnabled(false);
+		applyButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				applySelected();
+			}
+		});
+		cancelButton = new JButton("Cancel");
+		cancelButton.setName("button-cancelOptimize");
+		cancelButton.setEnabled(false);
+		cancelButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				cancel();
+			}
+		});
+		JButton hideButton = new JButton("Hide");
+		hideButton.setName("button-hideOptimize");
+		hideButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				cancel();
+				setVisible(false);
+				getParent().revalidate();
+			}
+		});
+		statusLabel = new JLabel("");
+		statusLabel.setName("label-optimizeStatus");
+		controlPanel.add(applyButton);
+		controlPanel.add(cancelButton);
+		controlPanel.add(hideButton);
+		controlPanel.add(Box.createHorizontalStrut(25));
+		controlPanel.add(statusLabel);
+
+		table = new JTable(model);
+		table.setName("table-optimize");
+		table.setAutoCreateRowSorter(true);
+		table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		table.setToolTipText("Double-click a rewrite to apply it");
+		table.getColumnModel().getColumn(0).setPreferredWidth(200);
+		table.getColumnModel().getColumn(1).setPreferredWidth(300);
+		table.getColumnModel().getColumn(5).setPreferredWidth(300);
+		table.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
+			@Override
+			public void valueChanged(ListSelectionEvent e) {
+				RegexOptimizer.Suggestion suggestion = getSelectedSuggestion();
+				applyButton.setEnabled(suggestion != null && suggestion.getVerdict() != RegexOptimizer.Verdict.DIFFERENT);
+			}
+		});
+		table.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if (e.getClickCount() == 2)
+					applySelected();
+			}
+		});
+		JScrollPane scrollPane = new JScrollPane(table);
+		scrollPane.setPreferredSize(new Dimension(800, 200));
+
+		add(controlPanel, BorderLayout.NORTH);
+		add(scrollPane, BorderLayout.CENTER);
+	}
+
+	/**
+	 * Cancels any running optimization and starts checking and measuring the rewrites of the given expression in
+	 * the background.
+	 */
+	public void optimize(String expression, int flags, CharSequence input, long budgetMillis) {
+		cancel();
+		model.clear();
+		currentOptimization = new OptimizeWorker(expression, flags, input, budgetMillis);
+		cancelButton.setEnabled(true);
+		statusLabel.setForeground(Color.darkGray);
+		statusLabel.setText("Checking and measuring rewrites for up to "+ budgetMillis / 1000.0 +" s...");
+		currentOptimization.execute();
+	}
+
+	public void cancel() {
+		if (currentOptimization != null)
+			currentOptimization.cancel(true);
+	}
+
+	/**
+	 * @return <code>true</code> while an optimization is running or its last suggestions are not yet listed
+	 */
+	public boolean isOptimizing() {
+		return currentOptimization != null;
+	}
+
+	/**
+	 * @return the suggestions listed, in the order the rewrites were found
+	 */
+	public List<RegexOptimizer.Suggestion> getSuggestions() {
+		return new ArrayList<RegexOptimizer.Suggestion>(model.suggestions);
+	}
+
+	/**
+	 * Applies the selected rewrite unless it was found to differ, and clears the list, which is about the
+	 * expression it replaced.
+	 */
+	protected void applySelected() {
+		RegexOptimizer.Suggestion suggestion = getSelectedSuggestion();
+		if (suggestion == null || suggestion.getVerdict() == RegexOptimizer.Verdict.DIFFERENT)
+			return;
+
+		cancel();
+		model.clear();
+		applyButton.setEnabled(false);
+		statusLabel.setForeground(Color.darkGray);
+		statusLabel.setText("Applied "+ suggestion.getRewrite().getKind().getDescription());
+		editor.applyRewrite(suggestion.getRewrite().getExpression());
+	}
+
+	private RegexOptimizer.Suggestion getSelectedSuggestion() {
+		int row = table.getSelectedRow();
+		return row < 0 ? null : model.suggestions.get(table.convertRowIndexToModel(row));
+	}
+
+	private class OptimizeWorker extends SwingWorker<List<RegexOptimizer.Suggestion>, RegexOptimizer.Suggestion> {
+		private final String expression;
+		private final int flags;
+		private final CharSequence input;
+		private final long budgetMillis;
+
+		OptimizeWorker(String expression, int flags, CharSequence input, long budgetMillis) {
+			this.expression = expression;
+			this.flags = flags;
+			this.input = input;
+			this.budgetMillis = budgetMillis;
+		}
+
+		@Override
+		protected List<RegexOptimizer.Suggestion> doInBackground() throws Exception {
+			return RegexOptimizer.suggest(expression, flags, input, budgetMillis, new RegexOptimizer.Visitor() {
+				@Override
+				public boolean visitSuggestion(RegexOptimizer.Suggestion suggestion) {
+					publish(suggestion);
+					return !isCancelled();
+				}
+			});
+		}
+
+		@Override
+		protected void process(List<RegexOptimizer.Suggestion> suggestions) {
+			if (currentOptimization == this)
+				model.addSuggestions(suggestions);
+		}
+
+		@Override
+		protected void done() {
+			if (currentOptimization != this)
+				return;	// superseded by a newer optimization
+
+			currentOptimization = null;
+			cancelButton.setEnabled(false);
+			try {
+				List<RegexOptimizer.Suggestion> suggestions = get();
+				model.setSuggestions(suggestions);
+				statusLabel.setForeground(Color.green.darker());
+				statusLabel.setText(describe(suggestions));
+			}
+			catch (CancellationException ex) {
+				statusLabel.setForeground(Color.red);
+				statusLabel.setText("CANCELLED - Checked "+ model.getRowCount() +" rewrites");
+			}
+			catch (ExecutionException ex) {
+				statusLabel.setForeground(Color.red);
+				statusLabel.setText("ERROR - Failed to optimize: "+ ex.getCause().getMessage().split("\n")[0]);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * @return the number of rewrites found and equivalent, and the fastest
+		 */
+		String describe(List<RegexOptimizer.Suggestion> suggestions) {
+			if (suggestions.isEmpty())
+				return "No rewrite found that cannot change the matches";
+
+			RegexOptimizer.Suggestion fastest = null;
+			int equivalent = 0;
+			for (RegexOptimizer.Suggestion suggestion : suggestions) {
+				if (suggestion.getVerdict() == RegexOptimizer.Verdict.DIFFERENT)
+					continue;
+				++equivalent;
+				if (!Double.isNaN(suggestion.getSpeedup())
+						&& (fastest == null || suggestion.getSpeedup() > fastest.getSpeedup()))
+					fastest = suggestion;
+			}
+
+			String description = suggestions.size() +" rewrites, "+ equivalent +" equivalent";
+			if (fastest != null)
+				description += String.format(", fastest %s %s", fastest.getRewrite().getKind().getDescription(),
+						formatSpeedup(fastest));
+			return description;
+		}
+	}
+
+	static String formatSpeedup(RegexOptimizer.Suggestion suggestion) {
+		return Double.isNaN(suggestion.getSpeedup()) ? "n/a"
+				: String.format("%s%.2fx", suggestion.isOriginalTimedOut() ? ">" : "", suggestion.getSpeedup());
+	}
+
+	private static class SuggestionTableModel extends AbstractTableModel {
+		private static final String[] COLUMN_NAMES = { "Rewrite", "Expression", "Original (ms)", "Rewritten (ms)",
+				"Speedup", "Equivalence" };
+
+		private final List<RegexOptimizer.Suggestion> suggestions = new ArrayList<RegexOptimizer.Suggestion>();
+
+		void addSuggestions(List<RegexOptimizer.Suggestion> newSuggestions) {
+			int firstRow = suggestions.size();
+			suggestions.addAll(newSuggestions);
+			if (suggestions.size() > firstRow)
+				fireTableRowsInserted(firstRow, suggestions.size() - 1);
+		}
+
+		void setSuggestions(List<RegexOptimizer.Suggestion> finalSuggestions) {
+			suggestions.clear();
+			suggestions.addAll(finalSuggestions);
+			fireTableDataChanged();
+		}
+
+		void clear() {
+			suggestions.clear();
+			fireTableDataChanged();
+		}
+
+		@Override
+		public int getRowCount() {
+			return suggestions.size();
+		}
+
+		@Override
+		public int getColumnCount() {
+			return COLUMN_NAMES.length;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return COLUMN_NAMES[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int column) {
+			switch (column) {
+				case 2:
+				case 3:
+				case 4:
+					return Double.class;
+				default:
+					return String.class;
+			}
+		}
+
+		@Override
+		public Object getValueAt(int row, int column) {
+			RegexOptimizer.Suggestion suggestion = suggestions.get(row);
+			switch (column) {
+				case 0:
+					return suggestion.getRewrite().getKind().getDescription();
+				case 1:
+					return suggestion.getRewrite().getExpression();
+				case 2:
+					return toMillis(suggestion.getOriginalNanos());
+				case 3:
+					return toMillis(suggestion.getRewrittenNanos());
+				case 4:
+					double speedup = suggestion.getSpeedup();
+					return Double.isNaN(speedup) ? null : Math.round(speedup * 100) / 100.0;
+				default:
+					String lowerBound = suggestion.isOriginalTimedOut() ? "; the original timed out, so at least as fast" : "";
+					switch (suggestion.getVerdict()) {
+						case EQUIVALENT:
+							return "same on the input and "+ suggestion.getSampleCount() +" samples"+ lowerBound;
+						case UNVERIFIED:
+							return "same on "+ suggestion.getSampleCount() +" samples, "+ suggestion.getDifference() + lowerBound;
+						default:
+							return "differs "+ suggestion.getDifference();
+					}
+			}
+		}
+
+		private static Double toMillis(long nanos) {
+			return nanos <= 0 ? null : Math.round(nanos / 1e4) / 100.0;
+		}
+	}
+}
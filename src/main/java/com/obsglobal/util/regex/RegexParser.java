@@ -0,0 +1,880 @@
+package com.obsglobal.util.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Parses {@link Pattern} expressions into a {@link RegexNode} tree for analysis.
+ * <p/>
+ * The parser follows {@link Pattern}'s syntax and flag semantics, including inline flags, comments mode,
+ * quoting and character class intersections. Predefined and property classes are resolved by asking
+ * {@link Pattern} itself which code points they match, so flags like {@link Pattern#UNICODE_CHARACTER_CLASS}
+ * are honoured exactly. Constructs whose behaviour is not modelled become {@link RegexNode.Type#OPAQUE} nodes;
+ * {@link Pattern#CANON_EQ} and {@link Pattern}'s quirks around stacked quantifiers turn the whole tree opaque.
+ * Expressions should be validated by {@link Pattern#compile(String, int)} first.
+ */
+public final class RegexParser {
+	private static final Map<String, CodePointSet> ESCAPE_CLASSES = new ConcurrentHashMap<String, CodePointSet>();
+	private static final Map<String, CodePointSet> FOLDED_CASES = new ConcurrentHashMap<String, CodePointSet>();
+	private static final int CLASS_FLAGS = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.UNICODE_CHARACTER_CLASS;
+	static final CodePointSet LINE_TERMINATORS = CodePointSet.ranges('\n', '\n', '\r', '\r', 0x85, 0x85, 0x2028, 0x2029);
+
+	private final String expression;
+	private int position, flags, groupCount, depth;
+	private boolean flagsAfterContent;
+	private CodePointSet escapeClass;
+	private final Map<String, Integer> groupNames = new HashMap<String, Integer>();
+
+	private RegexParser(String expression, int flags) {
+		this.expression = expression;
+		this.flags = flags;
+	}
+
+	/**
+	 * @throws PatternSyntaxException if the expression is malformed
+	 */
+	public static RegexNode parse(String expression, int flags) {
+		return parse(expression, flags, false);
+	}
+
+	/**
+	 * Parses a compiled pattern.
+	 * <p/>
+	 * Since Java 9 {@link Pattern#flags()} also includes flags set inline outside of any group, so the flags the
+	 * pattern was compiled with are only certain when such inline flags lead the expression. Otherwise the tree is
+	 * opaque.
+	 */
+	public static RegexNode parse(Pattern pattern) {
+		return parse(pattern.pattern(), pattern.flags(), true);
+	}
+
+	private static RegexNode parse(String expression, int flags, boolean reportedFlags) {
+		if ((flags & Pattern.UNICODE_CHARACTER_CLASS) != 0)
+			flags |= Pattern.UNICODE_CASE;
+		if ((flags & Pattern.CANON_EQ) != 0)
+			return RegexNode.opaque(0, expression.length(), flags);
+
+		RegexParser parser = new RegexParser(expression, flags);
+		try {
+			if ((flags & Pattern.LITERAL) != 0)
+				return parser.parseLiteral();
+
+			RegexNode root = parser.parseExpression();
+			return reportedFlags && parser.flagsAfterContent ? RegexNode.opaque(0, expression.length(), flags) : root;
+		}
+		catch (UnsupportedSyntaxException e) {
+			return RegexNode.opaque(0, expression.length(), flags);
+		}
+	}
+
+	/**
+	 * @return the code points matched by a single-character expression, such as <code>\p{Lu}</code>,
+	 * under the given flags
+	 */
+	public static CodePointSet evaluateClass(String classExpression, int flags) {
+		final int classFlags = flags & CLASS_FLAGS;
+		String key = classFlags +":"+ classExpression;
+		CodePointSet characters = ESCAPE_CLASSES.get(key);
+		if (characters == null) {
+			final char[] buffer = new char[2];
+			final int[] length = new int[1];
+			CharSequence candidate = new CharSequence() {
+				@Override
+				public int length() {
+					return length[0];
+				}
+
+				@Override
+				public char charAt(int index) {
+					return buffer[index];
+				}
+
+				@Override
+				public CharSequence subSequence(int start, int end) {
+					return new String(buffer, start, end - start);
+				}
+
+				@Override
+				public String toString() {
+					return new String(buffer, 0, length[0]);
+				}
+			};
+
+			Matcher matcher = Pattern.compile(classExpression, classFlags).matcher("");
+			int[] ranges = new int[16];
+			int count = 0;
+			for (int codePoint = 0; codePoint <= Character.MAX_CODE_POINT; codePoint++) {
+				length[0] = Character.toChars(codePoint, buffer, 0);
+				if (!matcher.reset(candidate).matches())
+					continue;
+
+				if (count > 0 && ranges[count - 1] == codePoint - 1)
+					ranges[count - 1] = codePoint;
+				else {
+					if (count == ranges.length)
+						ranges = Arrays.copyOf(ranges, count * 2);
+					ranges[count++] = codePoint;
+					ranges[count++] = codePoint;
+				}
+			}
+
+			characters = CodePointSet.ranges(Arrays.copyOf(ranges, count));
+			ESCAPE_CLASSES.put(key, characters);
+		}
+
+		return characters;
+	}
+
+	/**
+	 * @return the code points matched by the given code point under the case folding flags
+	 */
+	public static CodePointSet foldCase(int codePoint, int flags) {
+		return foldCase(codePoint, codePoint, flags);
+	}
+
+	/**
+	 * @return the code points matched by the given inclusive range under the case folding flags
+	 */
+	public static CodePointSet foldCase(int first, int last, int flags) {
+		CodePointSet range = CodePointSet.range(first, last);
+		if ((flags & Pattern.CASE_INSENSITIVE) == 0)
+			return range;
+		if ((flags & Pattern.UNICODE_CASE) == 0)
+			return range.union(range.intersect(CodePointSet.range(0, 0x7F)).foldAsciiCase());
+
+		String key = "fold:"+ first +"-"+ last;
+		CodePointSet folded = FOLDED_CASES.get(key);
+		if (folded != null)
+			return folded;
+
+		int[] ranges = new int[16];
+		int count = 0;
+		for (int codePoint = 0; codePoint <= Character.MAX_CODE_POINT; codePoint++) {
+			int upper = Character.toUpperCase(codePoint);
+			int lower = Character.toLowerCase(upper);
+			boolean matches = first == last
+					? codePoint == first || lower == Character.toLowerCase(Character.toUpperCase(first))
+					: inRange(first, codePoint, last) || inRange(first, upper, last) || inRange(first, lower, last);
+			if (!matches)
+				continue;
+
+			if (count > 0 && ranges[count - 1] == codePoint - 1)
+				ranges[count - 1] = codePoint;
+			else {
+				if (count == ranges.length)
+					ranges = Arrays.copyOf(ranges, count * 2);
+				ranges[count++] = codePoint;
+				ranges[count++] = codePoint;
+			}
+		}
+
+		folded = CodePointSet.ranges(Arrays.copyOf(ranges, count));
+		FOLDED_CASES.put(key, folded);
+		return folded;
+	}
+
+	private static boolean inRange(int first, int codePoint, int last) {
+		return first <= codePoint && codePoint <= last;
+	}
+
+	private RegexNode parseLiteral() {
+		List<RegexNode> characters = new ArrayList<RegexNode>();
+		while (position < expression.length()) {
+			int start = position;
+			int codePoint = read();
+			characters.add(RegexNode.character(foldCase(codePoint, flags), start, position, flags));
+		}
+
+		return concatenation(characters, 0, flags);
+	}
+
+	private RegexNode parseExpression() {
+		RegexNode root = parseAlternation();
+		if (position < expression.length())
+			throw error("Unmatched closing ')'");
+
+		return root;
+	}
+
+	private RegexNode parseAlternation() {
+		int start = position;
+		int startFlags = flags;
+		List<RegexNode> alternatives = new ArrayList<RegexNode>();
+		++depth;
+		alternatives.add(parseSequence());
+		while (peek() == '|') {
+			++position;
+			alternatives.add(parseSequence());
+		}
+		--depth;
+
+		return alternatives.size() == 1 ? alternatives.get(0)
+				: RegexNode.alternation(alternatives, start, position, startFlags);
+	}
+
+	private RegexNode parseSequence() {
+		int start = position;
+		List<RegexNode> items = new ArrayList<RegexNode>();
+		boolean quantified = false;
+		while (true) {
+			int codePoint = peek();
+			if (codePoint < 0 || codePoint == '|' || codePoint == ')')
+				break;
+
+			if (codePoint == '*' || codePoint == '+' || codePoint == '?' || codePoint == '{') {
+				if (items.isEmpty())
+					throw error("Dangling meta character '"+ (char) codePoint +"'");
+				if (quantified)
+					throw new UnsupportedSyntaxException();
+
+				RegexNode atom = items.remove(items.size() - 1);
+				items.add(parseQuantifier(atom));
+				quantified = true;
+				continue;
+			}
+
+			int size = items.size();
+			parseAtom(items);
+			if (items.size() > size)
+				quantified = false;
+		}
+
+		return concatenation(items, start, flags);
+	}
+
+	private RegexNode concatenation(List<RegexNode> items, int start, int flags) {
+		if (items.isEmpty())
+			return RegexNode.empty(start, position, flags);
+
+		return items.size() == 1 ? items.get(0) : RegexNode.concatenation(items, start, position, flags);
+	}
+
+	private RegexNode parseQuantifier(RegexNode atom) {
+		int min, max;
+		int codePoint = expression.charAt(position++);
+		if (codePoint == '*') {
+			min = 0;
+			max = RegexNode.UNBOUNDED;
+		}
+		else if (codePoint == '+') {
+			min = 1;
+			max = RegexNode.UNBOUNDED;
+		}
+		else if (codePoint == '?') {
+			min = 0;
+			max = 1;
+		}
+		else {
+			min = parseNumber();
+			max = min;
+			if (position < expression.length() && expression.charAt(position) == ',') {
+				++position;
+				max = position < expression.length() && expression.charAt(position) == '}'
+						? RegexNode.UNBOUNDED : parseNumber();
+			}
+			if (position >= expression.length() || expression.charAt(position) != '}')
+				throw error("Unclosed counted closure");
+			++position;
+			if (max < min)
+				throw error("Illegal repetition range");
+		}
+
+		RegexNode.Quantifier quantifier = RegexNode.Quantifier.GREEDY;
+		int suffix = peek();
+		if (suffix == '?') {
+			quantifier = RegexNode.Quantifier.LAZY;
+			++position;
+		}
+		else if (suffix == '+') {
+			quantifier = RegexNode.Quantifier.POSSESSIVE;
+			++position;
+		}
+
+		return RegexNode.repeat(atom, min, max, quantifier, atom.getStart(), position, atom.getFlags());
+	}
+
+	private int parseNumber() {
+		int start = position;
+		long number = 0;
+		while (position < expression.length() && isDigit(expression.charAt(position))) {
+			number = number * 10 + expression.charAt(position++) - '0';
+			if (number > Integer.MAX_VALUE)
+				throw error("Illegal repetition");
+		}
+		if (position == start)
+			throw error("Illegal repetition");
+
+		return (int) number;
+	}
+
+	/**
+	 * Parses the next atom into the given items, adding none for flag groups and empty quotes or several for quotes.
+	 */
+	private void parseAtom(List<RegexNode> items) {
+		int start = position;
+		int codePoint = next();
+		switch (codePoint) {
+			case '(':
+				RegexNode group = parseGroup(start);
+				if (group != null)
+					items.add(group);
+				break;
+			case '[':
+				items.add(RegexNode.character(parseClass(), start, position, flags));
+				break;
+			case '.':
+				CodePointSet any = has(Pattern.DOTALL) ? CodePointSet.ALL
+						: has(Pattern.UNIX_LINES) ? CodePointSet.of('\n').complement() : LINE_TERMINATORS.complement();
+				items.add(RegexNode.character(any, start, position, flags));
+				break;
+			case '^':
+				items.add(RegexNode.assertion(has(Pattern.MULTILINE)
+						? RegexNode.Assertion.BEGIN_LINE : RegexNode.Assertion.BEGIN_INPUT, start, position, flags));
+				break;
+			case '$':
+				items.add(RegexNode.assertion(has(Pattern.MULTILINE)
+						? RegexNode.Assertion.END_LINE : RegexNode.Assertion.END_INPUT_OR_TERMINATOR, start, position, flags));
+				break;
+			case '\\':
+				parseEscape(start, items);
+				break;
+			default:
+				items.add(RegexNode.character(foldCase(codePoint, flags), start, position, flags));
+				break;
+		}
+	}
+
+	private void parseEscape(int start, List<RegexNode> items) {
+		if (position >= expression.length())
+			throw error("Unexpected internal error");
+
+		int codePoint = expression.codePointAt(position);
+		switch (codePoint) {
+			case 'Q':
+				++position;
+				int end = expression.indexOf("\\E", position);
+				if (end < 0)
+					end = expression.length();
+				while (position < end) {
+					int quoteStart = position;
+					items.add(RegexNode.character(foldCase(read(), flags), quoteStart, position, flags));
+				}
+				position = Math.min(expression.length(), end + 2);
+				return;
+			case 'A':
+			case 'z':
+			case 'Z':
+			case 'b':
+			case 'B':
+			case 'G':
+				++position;
+				if (codePoint == 'b' && expression.startsWith("{g}", position)) {
+					position += 3;
+					items.add(RegexNode.opaque(start, position, flags));
+					return;
+				}
+				items.add(RegexNode.assertion(assertion(codePoint), start, position, flags));
+				return;
+			case 'R':
+				++position;
+				List<RegexNode> alternatives = new ArrayList<RegexNode>();
+				alternatives.add(RegexNode.concatenation(Arrays.asList(
+						RegexNode.character(CodePointSet.of('\r'), start, position, flags),
+						RegexNode.character(CodePointSet.of('\n'), start, position, flags)), start, position, flags));
+				alternatives.add(RegexNode.character(CodePointSet.range('\n', '\r').union(LINE_TERMINATORS), start, position, flags));
+				items.add(RegexNode.alternation(alternatives, start, position, flags));
+				return;
+			case 'X':
+				++position;
+				items.add(RegexNode.opaque(start, position, flags));
+				return;
+			case 'k':
+				++position;
+				String name = parseGroupName();
+				Integer group = groupNames.get(name);
+				if (group == null)
+					throw error("named capturing group <"+ name +"> does not exist");
+				items.add(RegexNode.backreference(group, start, position, flags));
+				return;
+			default:
+				break;
+		}
+
+		if (codePoint >= '1' && codePoint <= '9') {
+			++position;
+			int group = codePoint - '0';
+			while (position < expression.length() && isDigit(expression.charAt(position))) {
+				int longer = group * 10 + expression.charAt(position) - '0';
+				if (longer > groupCount)
+					break;
+				group = longer;
+				++position;
+			}
+			items.add(RegexNode.backreference(group, start, position, flags));
+			return;
+		}
+
+		items.add(RegexNode.character(parseCharacterEscape(start), start, position, flags));
+	}
+
+	private static RegexNode.Assertion assertion(int escape) {
+		switch (escape) {
+			case 'A':
+				return RegexNode.Assertion.BEGIN_INPUT;
+			case 'z':
+				return RegexNode.Assertion.END_INPUT;
+			case 'Z':
+				return RegexNode.Assertion.END_INPUT_OR_TERMINATOR;
+			case 'b':
+				return RegexNode.Assertion.WORD_BOUNDARY;
+			case 'B':
+				return RegexNode.Assertion.NOT_WORD_BOUNDARY;
+			default:
+				return RegexNode.Assertion.PREVIOUS_MATCH_END;
+		}
+	}
+
+	/**
+	 * Parses an escape, past its backslash, that matches a single code point of a set, both inside and outside classes.
+	 */
+	private CodePointSet parseCharacterEscape(int start) {
+		int codePoint = parseEscapedCodePoint(start);
+		return codePoint < 0 ? escapeClass : foldCase(codePoint, flags);
+	}
+
+	/**
+	 * Parses an escape, past its backslash, returning the code point it stands for before case folding, or -1 for
+	 * a class escape like <code>\w</code>, leaving its code points in {@link #escapeClass}.
+	 */
+	private int parseEscapedCodePoint(int start) {
+		escapeClass = null;
+		int codePoint = read();
+		switch (codePoint) {
+			case 't':
+				return '\t';
+			case 'n':
+				return '\n';
+			case 'r':
+				return '\r';
+			case 'f':
+				return '\f';
+			case 'a':
+				return 0x07;
+			case 'e':
+				return 0x1B;
+			case 'c':
+				return read() ^ 64;
+			case '0':
+				return parseOctal();
+			case 'x':
+				return parseHexadecimal();
+			case 'u':
+				return parseUnicode();
+			case 'd':
+			case 'D':
+			case 's':
+			case 'S':
+			case 'w':
+			case 'W':
+			case 'h':
+			case 'H':
+			case 'v':
+			case 'V':
+				escapeClass = evaluateClass(expression.substring(start, position), flags);
+				return -1;
+			case 'p':
+			case 'P':
+			case 'N':
+				if (position < expression.length() && expression.charAt(position) == '{') {
+					int close = expression.indexOf('}', position);
+					if (close < 0)
+						throw error("Unclosed character family");
+					position = close + 1;
+				}
+				else if (codePoint != 'N')
+					read();
+				escapeClass = evaluateClass(expression.substring(start, position), flags);
+				return -1;
+			default:
+				if (isAsciiLetter(codePoint) || isDigit(codePoint))
+					throw error("Illegal/unsupported escape sequence");
+				return codePoint;
+		}
+	}
+
+	private int parseOctal() {
+		int value = 0, digits = 0;
+		while (position < expression.length() && digits < 3) {
+			int digit = expression.charAt(position) - '0';
+			if (digit < 0 || digit > 7 || (digits == 2 && value > 037))
+				break;
+			value = value * 8 + digit;
+			++digits;
+			++position;
+		}
+		if (digits == 0)
+			throw error("Illegal octal escape sequence");
+
+		return value;
+	}
+
+	private int parseHexadecimal() {
+		if (position < expression.length() && expression.charAt(position) == '{') {
+			int close = expression.indexOf('}', position);
+			if (close < 0)
+				throw error("Unclosed hexadecimal escape sequence");
+			int value = parseHexadecimal(position + 1, close);
+			position = close + 1;
+			return value;
+		}
+
+		int value = parseHexadecimal(position, position + 2);
+		position += 2;
+		return value;
+	}
+
+	private int parseUnicode() {
+		int value = parseHexadecimal(position, position + 4);
+		position += 4;
+		if (Character.isHighSurrogate((char) value) && expression.startsWith("\\u", position)) {
+			try {
+				int low = parseHexadecimal(position + 2, position + 6);
+				if (Character.isLowSurrogate((char) low)) {
+					position += 6;
+					return Character.toCodePoint((char) value, (char) low);
+				}
+			}
+			catch (PatternSyntaxException e) {
+				// not a low surrogate escape, leave it to the next atom
+			}
+		}
+
+		return value;
+	}
+
+	private int parseHexadecimal(int from, int to) {
+		if (to > expression.length() || to <= from)
+			throw error("Illegal hexadecimal escape sequence");
+
+		long value = 0;
+		for (int index = from; index < to; index++) {
+			int digit = Character.digit(expression.charAt(index), 16);
+			if (digit < 0 || expression.charAt(index) > 0x7F)
+				throw error("Illegal hexadecimal escape sequence");
+			value = value * 16 + digit;
+			if (value > Character.MAX_CODE_POINT)
+				throw error("Hexadecimal codepoint is too big");
+		}
+
+		return (int) value;
+	}
+
+	/**
+	 * Parses a group past its opening parenthesis, returning <code>null</code> for a flags-only group.
+	 */
+	private RegexNode parseGroup(int start) {
+		int savedFlags = flags;
+		RegexNode group;
+		if (expression.startsWith("?", position)) {
+			++position;
+			int kind = position < expression.length() ? expression.charAt(position) : -1;
+			if (kind == ':') {
+				++position;
+				group = RegexNode.group(parseAlternation(), 0, start, -1, savedFlags);
+			}
+			else if (kind == '=' || kind == '!') {
+				++position;
+				group = RegexNode.lookaround(parseAlternation(), false, kind == '!', start, -1, savedFlags);
+			}
+			else if (kind == '>') {
+				++position;
+				group = RegexNode.atomic(parseAlternation(), start, -1, savedFlags);
+			}
+			else if (kind == '<' && (expression.startsWith("<=", position) || expression.startsWith("<!", position))) {
+				boolean negative = expression.charAt(position + 1) == '!';
+				position += 2;
+				group = RegexNode.lookaround(parseAlternation(), true, negative, start, -1, savedFlags);
+			}
+			else if (kind == '<') {
+				String name = parseGroupName();
+				if (groupNames.containsKey(name))
+					throw error("Named capturing group <"+ name +"> is already defined");
+				int number = ++groupCount;
+				groupNames.put(name, number);
+				group = RegexNode.group(parseAlternation(), number, start, -1, savedFlags);
+			}
+			else {
+				boolean scoped = parseInlineFlags();
+				if (!scoped) {
+					if (depth == 1 && !expression.substring(0, start).matches("(?:\\(\\?[idmsuxU-]*\\))*"))
+						flagsAfterContent = true;
+					return null;
+				}
+				group = RegexNode.group(parseAlternation(), 0, start, -1, savedFlags);
+			}
+		}
+		else
+			group = RegexNode.group(parseAlternation(), ++groupCount, start, -1, savedFlags);
+
+		if (position >= expression.length() || expression.charAt(position) != ')')
+			throw error("Unclosed group");
+		++position;
+		flags = savedFlags;
+
+		return withEnd(group, position);
+	}
+
+	private static RegexNode withEnd(RegexNode group, int end) {
+		switch (group.getType()) {
+			case LOOKAROUND:
+				return RegexNode.lookaround(group.getChild(), group.isBehind(), group.isNegative(),
+						group.getStart(), end, group.getFlags());
+			case ATOMIC:
+				return RegexNode.atomic(group.getChild(), group.getStart(), end, group.getFlags());
+			default:
+				return RegexNode.group(group.getChild(), group.getGroup(), group.getStart(), end, group.getFlags());
+		}
+	}
+
+	/**
+	 * Parses inline flags like <code>i-s</code> and returns whether they are followed by a colon, scoping
+	 * them to a group; otherwise they apply to the rest of the enclosing group.
+	 */
+	private boolean parseInlineFlags() {
+		boolean negate = false;
+		while (position < expression.length()) {
+			char flag = expression.charAt(position++);
+			int mask;
+			switch (flag) {
+				case 'i':
+					mask = Pattern.CASE_INSENSITIVE;
+					break;
+				case 'm':
+					mask = Pattern.MULTILINE;
+					break;
+				case 's':
+					mask = Pattern.DOTALL;
+					break;
+				case 'd':
+					mask = Pattern.UNIX_LINES;
+					break;
+				case 'u':
+					mask = Pattern.UNICODE_CASE;
+					break;
+				case 'x':
+					mask = Pattern.COMMENTS;
+					break;
+				case 'U':
+					mask = Pattern.UNICODE_CHARACTER_CLASS | (negate ? 0 : Pattern.UNICODE_CASE);
+					break;
+				case 'c':
+					throw new UnsupportedSyntaxException();
+				case '-':
+					negate = true;
+					continue;
+				case ':':
+					return true;
+				case ')':
+					// the caller expects to consume the closing parenthesis of a scoped group only
+					return false;
+				default:
+					throw error("Unknown inline modifier");
+			}
+
+			flags = negate ? flags & ~mask : flags | mask;
+		}
+
+		throw error("Unknown inline modifier");
+	}
+
+	private String parseGroupName() {
+		if (position >= expression.length() || expression.charAt(position) != '<')
+			throw error("\\k is not followed by '<' for named capturing group");
+		int close = expression.indexOf('>', position);
+		if (close < 0)
+			throw error("named capturing group is missing trailing '>'");
+
+		String name = expression.substring(position + 1, close);
+		position = close + 1;
+		return name;
+	}
+
+	/**
+	 * Parses a character class past its opening bracket.
+	 */
+	private CodePointSet parseClass() {
+		boolean negated = false;
+		if (position < expression.length() && expression.charAt(position) == '^') {
+			negated = true;
+			++position;
+		}
+
+		CodePointSet intersection = null;
+		CodePointSet operand = null;
+		boolean first = true;
+		while (true) {
+			int codePoint = peek();
+			if (codePoint < 0)
+				throw error("Unclosed character class");
+
+			if (codePoint == ']' && !first) {
+				++position;
+				break;
+			}
+
+			if (codePoint == '&' && expression.startsWith("&&", position)) {
+				position += 2;
+				if (position < expression.length() && expression.charAt(position) == '&')
+					throw new UnsupportedSyntaxException();
+				if (operand != null)
+					intersection = intersection == null ? operand : intersection.intersect(operand);
+				operand = null;
+				first = false;
+				continue;
+			}
+
+			CodePointSet item;
+			if (codePoint == '[') {
+				++position;
+				item = parseClass();
+			}
+			else {
+				int itemStart = position;
+				int low = parseClassCharacter();
+				item = low < 0 ? escapeClass : null;
+				if (item == null && peek() == '-') {
+					int dash = position;
+					++position;
+					int next = peek();
+					if (next == ']' || next == '[' || next < 0 || (next == '&' && expression.startsWith("&&", position)))
+						position = dash;
+					else {
+						int high = parseClassCharacter();
+						if (high < 0 || high < low)
+							throw error("Illegal character range");
+						item = foldCase(low, high, flags);
+					}
+				}
+				if (item == null)
+					item = foldCase(low, flags);
+				if (position == itemStart)
+					throw error("Unclosed character class");
+			}
+
+			operand = operand == null ? item : operand.union(item);
+			first = false;
+		}
+
+		CodePointSet characters = operand;
+		if (intersection != null)
+			characters = operand == null ? intersection : intersection.intersect(operand);
+		if (characters == null)
+			characters = CodePointSet.EMPTY;
+
+		return negated ? characters.complement() : characters;
+	}
+
+	/**
+	 * Parses a class member that is a single code point, returning it, or a quote or class escape, returning -1
+	 * and leaving its code points in {@link #escapeClass}.
+	 */
+	private int parseClassCharacter() {
+		escapeClass = null;
+		int start = position;
+		int codePoint = next();
+		if (codePoint != '\\')
+			return codePoint;
+
+		if (expression.startsWith("Q", position)) {
+			// a quote inside a class contributes its characters as members
+			++position;
+			int end = expression.indexOf("\\E", position);
+			if (end < 0)
+				end = expression.length();
+			CodePointSet quoted = CodePointSet.EMPTY;
+			while (position < end)
+				quoted = quoted.union(foldCase(read(), flags));
+			position = Math.min(expression.length(), end + 2);
+			escapeClass = quoted;
+			return -1;
+		}
+
+		return parseEscapedCodePoint(start);
+	}
+
+	private int peek() {
+		if (has(Pattern.COMMENTS))
+			skipComments();
+
+		return position < expression.length() ? expression.codePointAt(position) : -1;
+	}
+
+	private void skipComments() {
+		while (position < expression.length()) {
+			char c = expression.charAt(position);
+			if (c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r')
+				++position;
+			else if (c == '#') {
+				while (position < expression.length() && !isLineSeparator(expression.charAt(position)))
+					++position;
+			}
+			else
+				break;
+		}
+	}
+
+	private boolean isLineSeparator(char c) {
+		return has(Pattern.UNIX_LINES) ? c == '\n' : LINE_TERMINATORS.contains(c);
+	}
+
+	/**
+	 * @return the next code point, past any whitespace and comments in comments mode
+	 */
+	private int next() {
+		if (has(Pattern.COMMENTS))
+			skipComments();
+
+		return read();
+	}
+
+	/**
+	 * @return the next code point, taken literally
+	 */
+	private int read() {
+		if (position >= expression.length())
+			throw error("Unexpected end of expression");
+
+		int codePoint = expression.codePointAt(position);
+		position += Character.charCount(codePoint);
+		return codePoint;
+	}
+
+	private boolean has(int flag) {
+		return (flags & flag) != 0;
+	}
+
+	private static boolean isDigit(int codePoint) {
+		return codePoint >= '0' && codePoint <= '9';
+	}
+
+	private static boolean isAsciiLetter(int codePoint) {
+		return (codePoint >= 'a' && codePoint <= 'z') || (codePoint >= 'A' && codePoint <= 'Z');
+	}
+
+	private PatternSyntaxException error(String description) {
+		return new PatternSyntaxException(description, expression, position);
+	}
+
+	/**
+	 * Thrown for valid syntax whose semantics are not modelled.
+	 */
+	private static class UnsupportedSyntaxException extends RuntimeException {
+	}
+}
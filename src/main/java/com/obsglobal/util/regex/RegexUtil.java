@@ -1,31 +1,335 @@
 package com.obsglobal.util.regex;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Regex utilities.
  */
 public class RegexUtil {
+	/**
+	 * The {@link Pattern} flags offered as options, kept free of Swing so headless callers can share them.
+	 */
+	static final int[] OPTIONS = {
+			Pattern.UNIX_LINES, Pattern.CASE_INSENSITIVE, Pattern.COMMENTS, Pattern.MULTILINE,
+			Pattern.LITERAL, Pattern.DOTALL, Pattern.UNICODE_CASE, Pattern.CANON_EQ
+	};
+	static final String[] OPTION_NAMES = {
+			"UNIX_LINES", "CASE_INSENSITIVE", "COMMENTS", "MULTILINE",
+			"LITERAL", "DOTALL", "UNICODE_CASE", "CANON_EQ"
+	};
+
+	/**
+	 * Engines shared by every caller, both are thread safe.
+	 */
+	public static final RegexEngine BACKTRACKING_ENGINE = new BacktrackingEngine();
+	public static final RegexEngine AUTOMATON_ENGINE = new AutomatonEngine();
+
+	/**
+	 * Longest run of unreplaced text a replacement appends at once, so that a writer never holds a copy of a
+	 * long stretch without matches.
+	 */
+	static final int COPY_CHUNK_LENGTH = 1 << 16;
+
+	private static volatile boolean prefilterEnabled = !Boolean.getBoolean("com.obsglobal.util.regex.noPrefilter");
+
 	private RegexUtil() throws InstantiationException {
 		throw new InstantiationException("RegexUtil");
 	}
 
+	/**
+	 * Converts option names, separated by commas or whitespace, to {@link Pattern} flags.
+	 *
+	 * @throws IllegalArgumentException if a name is not one of the option names
+	 */
+	public static int parseOptions(String optionNames) {
+		int flags = 0;
+		for (String optionName : optionNames.trim().split("[,\\s]+")) {
+			if (optionName.isEmpty())
+				continue;
+
+			int index = Arrays.asList(OPTION_NAMES).indexOf(optionName.toUpperCase(Locale.ENGLISH));
+			if (index < 0)
+				throw new IllegalArgumentException("Unknown option: "+ optionName);
+
+			flags |= OPTIONS[index];
+		}
+
+		return flags;
+	}
+
+	/**
+	 * @return the names of the options set in the given flags, separated by commas, the reverse of
+	 * {@link #parseOptions(String)}
+	 */
+	public static String formatOptions(int flags) {
+		StringBuilder optionNames = new StringBuilder();
+		for (int index = 0; index < OPTIONS.length; index++) {
+			if ((flags & OPTIONS[index]) != 0)
+				optionNames.append(optionNames.length() > 0 ? "," : "").append(OPTION_NAMES[index]);
+		}
+
+		return optionNames.toString();
+	}
+
+	/**
+	 * Compiles the given expression through the shared {@link PatternCache}.
+	 */
+	public static Pattern compile(String expression, int flags) {
+		return PatternCache.getSharedCache().compile(expression, flags);
+	}
+
+	/**
+	 * @return the linear-time {@link #AUTOMATON_ENGINE} if it supports the pattern, otherwise the
+	 * {@link #BACKTRACKING_ENGINE}
+	 */
+	public static RegexEngine selectEngine(Pattern pattern) {
+		return AUTOMATON_ENGINE.supports(pattern) ? AUTOMATON_ENGINE : BACKTRACKING_ENGINE;
+	}
+
+	/**
+	 * @return whether a search starting inside the input may find other matches than {@link Matcher#find()} from
+	 * its start, even through transparent bounds: <code>\G</code> matches at a region start, and <code>\X</code>
+	 * and <code>\b{g}</code> take it for a grapheme cluster boundary
+	 */
+	public static boolean isRegionSensitive(Pattern pattern) {
+		String expression = pattern.pattern();
+		return expression.contains("\\G") || expression.contains("\\X") || expression.contains("\\b{g}");
+	}
+
+	/**
+	 * @return whether scans skip ahead to the literals every match must contain, see {@link LiteralPrefilter}
+	 */
+	public static boolean isPrefilterEnabled() {
+		return prefilterEnabled;
+	}
+
+	/**
+	 * Turns the literal prefilter on or off for every scan, e.g. to confirm it does not change any result.
+	 * It starts off when the <code>com.obsglobal.util.regex.noPrefilter</code> system property is true.
+	 */
+	public static void setPrefilterEnabled(boolean enabled) {
+		prefilterEnabled = enabled;
+	}
+
+	/**
+	 * @return the prefilter for the given pattern, or <code>null</code> if it has none or prefiltering is off
+	 */
+	static LiteralPrefilter getPrefilter(Pattern pattern) {
+		return prefilterEnabled ? LiteralPrefilter.of(pattern) : null;
+	}
+
 	public static List<MatchResult> findAllMatches(Pattern pattern, String input) {
-		List<MatchResult> matchResults = new ArrayList<MatchResult>();
+		final List<MatchResult> matchResults = new ArrayList<MatchResult>();
+		visitMatches(pattern, input, new MatchVisitor() {
+			@Override
+			public boolean visitMatch(MatchResult match) {
+				matchResults.add(((Matcher) match).toMatchResult());
+				return true;
+			}
+		});
+
+		return matchResults;
+	}
+
+	/**
+	 * @return the first match, or <code>null</code> if there is none; use a {@link MatchCursor} to go on from it
+	 */
+	public static MatchResult findFirstMatch(Pattern pattern, String input) {
+		return new MatchCursor(pattern, input).nextMatch();
+	}
+
+	/**
+	 * Finds at most the given number of matches, recording only their start and end offsets.
+	 */
+	public static MatchOffsets findMatchOffsets(Pattern pattern, CharSequence input, int limit) {
+		return new MatchCursor(pattern, input).next(limit);
+	}
+
+	/**
+	 * Finds all matches, recording only their start and end offsets.
+	 */
+	public static MatchOffsets findAllMatchOffsets(Pattern pattern, CharSequence input) {
+		final MatchOffsets offsets = new MatchOffsets();
+		LiteralPrefilter prefilter = getPrefilter(pattern);
+		if (prefilter != null && prefilter.isPureLiteral()) {
+			int length = prefilter.getLiteralLength();
+			for (int index = prefilter.indexOf(input, 0); index >= 0; index = prefilter.indexOf(input, index + length))
+				offsets.add(index, index + length);
+			return offsets;
+		}
+
+		visitMatches(pattern, input, new MatchVisitor() {
+			@Override
+			public boolean visitMatch(MatchResult match) {
+				offsets.add(match.start(), match.end());
+				return true;
+			}
+		});
+
+		return offsets;
+	}
+
+	/**
+	 * Passes each match to the given visitor without copying it, until the input is exhausted
+	 * or the visitor returns <code>false</code>.
+	 *
+	 * @return the number of matches visited
+	 */
+	public static int visitMatches(Pattern pattern, CharSequence input, MatchVisitor visitor) {
+		LiteralPrefilter prefilter = getPrefilter(pattern);
+		if (prefilter != null)
+			return prefilter.visitMatches(pattern, input, visitor);
+
 		Matcher matcher = pattern.matcher(input);
+		int visited = 0;
 		while (matcher.find()) {
-			matchResults.add(matcher.toMatchResult());
+			++visited;
+			if (!visitor.visitMatch(matcher))
+				break;
 		}
 
-		return matchResults;
+		return visited;
 	}
 
-	public static MatchResult findFirstMatch(Pattern pattern, String input) {
+	/**
+	 * Lazily streams the matches in the given input. Each element is a detached {@link MatchResult}, so every match
+	 * allocates one along with a copy of its group offsets; callers counting or locating many matches should use
+	 * {@link #visitMatches} or {@link #findAllMatchOffsets} instead.
+	 */
+	public static Stream<MatchResult> streamMatches(Pattern pattern, CharSequence input) {
+		final Matcher matcher = pattern.matcher(input);
+		Spliterator<MatchResult> spliterator = new Spliterators.AbstractSpliterator<MatchResult>(
+				Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+			@Override
+			public boolean tryAdvance(Consumer<? super MatchResult> action) {
+				if (!matcher.find())
+					return false;
+
+				action.accept(matcher.toMatchResult());
+				return true;
+			}
+		};
+
+		return StreamSupport.stream(spliterator, false);
+	}
+
+	/**
+	 * Replaces every match in a single pass, using {@link Matcher#appendReplacement} semantics for the replacement
+	 * (so <code>$n</code> group references and lookarounds are evaluated in the context of the full input).
+	 */
+	public static ReplaceResult replaceAll(Pattern pattern, CharSequence input, String replacement) {
+		StringBuilder builder = new StringBuilder(input.length());
+		try {
+			MatchOffsets replacedOffsets = replaceAll(pattern, input, replacement, builder);
+			return new ReplaceResult(builder.toString(), replacedOffsets);
+		}
+		catch (IOException ex) {
+			// StringBuilder does not throw IOException
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Replaces every match in a single pass, writing the rewritten text to the given output as it goes,
+	 * e.g. a {@link java.io.Writer} for results too large to keep in memory, or a {@link PieceTable.Builder} to
+	 * share the unreplaced text of a {@link PieceTable} input. The text between matches is appended straight from
+	 * the input, in chunks of at most {@link #COPY_CHUNK_LENGTH} characters.
+	 *
+	 * @return the replaced spans, as offsets into the written output
+	 */
+	public static MatchOffsets replaceAll(Pattern pattern, CharSequence input, String replacement, Appendable output)
+			throws IOException {
+		MatchOffsets replacedOffsets = new MatchOffsets();
+		replaceAll(pattern, input, replacement, 0, input.length(), output, replacedOffsets);
+		return replacedOffsets;
+	}
+
+	/**
+	 * Replaces every match in a single pass, encoding the rewritten text to the given channel in chunks, so that
+	 * neither the result nor the replaced spans are kept. Characters the charset cannot encode are replaced, as
+	 * {@link String#getBytes(Charset)} does; the channel is left open.
+	 *
+	 * @return the number of replacements
+	 */
+	public static int replaceAll(Pattern pattern, CharSequence input, String replacement, WritableByteChannel output,
+			Charset charset) throws IOException {
+		CharsetEncoder encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		Writer writer = Channels.newWriter(output, encoder, COPY_CHUNK_LENGTH);
+		int replacements = replaceAll(pattern, input, replacement, 0, input.length(), writer, null);
+		writer.flush();
+		return replacements;
+	}
+
+	/**
+	 * Replaces the matches starting from <code>start</code> up to <code>end</code> as {@link #replaceAll} would
+	 * from a match boundary, with the rest of the input visible to lookarounds and boundaries, e.g. to preview a
+	 * few lines of a large input. A match starting before <code>end</code> is replaced whole.
+	 *
+	 * @return the replaced spans, as offsets into the written output
+	 */
+	public static MatchOffsets replaceRegion(Pattern pattern, CharSequence input, String replacement, int start, int end,
+			Appendable output) throws IOException {
+		if (start < 0 || end > input.length() || start > end)
+			throw new IndexOutOfBoundsException("Start: "+ start +", End: "+ end +", Length: "+ input.length());
+
+		MatchOffsets replacedOffsets = new MatchOffsets();
+		replaceAll(pattern, input, replacement, start, end, output, replacedOffsets);
+		return replacedOffsets;
+	}
+
+	private static int replaceAll(Pattern pattern, CharSequence input, String replacement, int start, int end,
+			Appendable output, MatchOffsets replacedOffsets) throws IOException {
+		// copies the unreplaced text from what the matcher reads, e.g. the table under an interruptible wrapper
+		CharSequence text = input instanceof InterruptibleCharSequence ? ((InterruptibleCharSequence) input).getDelegate() : input;
+		ReplacementTemplate template = new ReplacementTemplate(replacement);
+		// reused between matches, holds the expanded replacement
+		StringBuilder expanded = new StringBuilder();
 		Matcher matcher = pattern.matcher(input);
-		return matcher.find() ? matcher.toMatchResult() : null;
+		if (start > 0) {
+			matcher.region(start, input.length());
+			matcher.useTransparentBounds(true);
+			matcher.useAnchoringBounds(false);
+		}
+		int position = 0, lastEnd = start, replacements = 0;
+		while (matcher.find() && (matcher.start() < end || end == input.length())) {
+			expanded.setLength(0);
+			template.expand(matcher, expanded);
+			appendChunked(text, lastEnd, matcher.start(), output);
+			output.append(expanded);
+			position += matcher.start() - lastEnd;
+			if (replacedOffsets != null)
+				replacedOffsets.add(position, position + expanded.length());
+			position += expanded.length();
+			lastEnd = matcher.end();
+			++replacements;
+		}
+
+		appendChunked(text, lastEnd, Math.max(lastEnd, end), output);
+		return replacements;
+	}
+
+	private static void appendChunked(CharSequence text, int start, int end, Appendable output) throws IOException {
+		for (int chunk = start; chunk < end; chunk += COPY_CHUNK_LENGTH)
+			output.append(text, chunk, Math.min(end, chunk + COPY_CHUNK_LENGTH));
 	}
 }
@@ -0,0 +1,32 @@
+package com.obsglobal.util.regex;
+
+/**
+ * Output of a replacement pass: the rewritten text and the spans in it that were produced by replacements.
+ */
+public class ReplaceResult {
+	private final CharSequence text;
+	private final MatchOffsets replacedOffsets;
+
+	public ReplaceResult(CharSequence text, MatchOffsets replacedOffsets) {
+		this.text = text;
+		this.replacedOffsets = replacedOffsets;
+	}
+
+	/**
+	 * @return the rewritten text, a {@link String} or a {@link PieceTable} sharing the text of the input
+	 */
+	public CharSequence getText() {
+		return text;
+	}
+
+	/**
+	 * @return the replaced spans, as offsets into {@link #getText()}
+	 */
+	public MatchOffsets getReplacedOffsets() {
+		return replacedOffsets;
+	}
+
+	public int getReplacementCount() {
+		return replacedOffsets.size();
+	}
+}
@@ -0,0 +1,121 @@
+package com.obsglobal.util.regex;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * Replacement string with {@link Matcher#appendReplacement} semantics, parsed once rather than at every match.
+ * <p/>
+ * <code>appendReplacement</code> also copies the text preceding each match, which the output must then take from
+ * its buffer; expanding only the replacement lets the caller copy that text straight from the input, in chunks
+ * or by reference. Like the matcher, it reports a malformed replacement at the first match.
+ */
+public final class ReplacementTemplate {
+	private final String replacement;
+	private List<Object> parts = null;	// literal Strings, group numbers and GroupNames
+	private int groupCount = -1;
+
+	public ReplacementTemplate(String replacement) {
+		if (replacement == null)
+			throw new NullPointerException("replacement");
+
+		this.replacement = replacement;
+	}
+
+	/**
+	 * Appends the replacement for the current match of the given matcher.
+	 */
+	public void expand(Matcher matcher, Appendable output) throws IOException {
+		if (parts == null || groupCount != matcher.groupCount())
+			parse(matcher.groupCount());
+
+		for (Object part : parts) {
+			if (part instanceof String)
+				output.append((String) part);
+			else {
+				String group = part instanceof Integer ? matcher.group((Integer) part) : matcher.group(((GroupName) part).name);
+				if (group != null)
+					output.append(group);
+			}
+		}
+	}
+
+	/**
+	 * Splits the replacement as {@link Matcher#appendReplacement} reads it, a group number taking as many digits
+	 * as keep it a group of the pattern.
+	 */
+	private void parse(int groupCount) {
+		List<Object> parsed = new ArrayList<Object>();
+		StringBuilder literal = new StringBuilder();
+		int cursor = 0;
+		while (cursor < replacement.length()) {
+			char c = replacement.charAt(cursor++);
+			if (c == '\\') {
+				if (cursor == replacement.length())
+					throw new IllegalArgumentException("character to be escaped is missing");
+				literal.append(replacement.charAt(cursor++));
+			}
+			else if (c == '$') {
+				if (cursor == replacement.length())
+					throw new IllegalArgumentException("Illegal group reference: group index is missing");
+
+				Object reference;
+				if (replacement.charAt(cursor) == '{') {
+					int nameStart = ++cursor;
+					while (cursor < replacement.length() && isAsciiLetterOrDigit(replacement.charAt(cursor)))
+						cursor++;
+					if (cursor == nameStart)
+						throw new IllegalArgumentException("named capturing group has 0 length name");
+					if (cursor == replacement.length() || replacement.charAt(cursor) != '}')
+						throw new IllegalArgumentException("named capturing group is missing trailing '}'");
+					String name = replacement.substring(nameStart, cursor++);
+					if (Character.isDigit(name.charAt(0)))
+						throw new IllegalArgumentException("capturing group name {"+ name +"} starts with digit character");
+					reference = new GroupName(name);
+				}
+				else {
+					int group = replacement.charAt(cursor++) - '0';
+					if (group < 0 || group > 9)
+						throw new IllegalArgumentException("Illegal group reference");
+					while (cursor < replacement.length()) {
+						int digit = replacement.charAt(cursor) - '0';
+						if (digit < 0 || digit > 9 || group * 10 + digit > groupCount)
+							break;
+						group = group * 10 + digit;
+						cursor++;
+					}
+					if (group > groupCount)
+						throw new IndexOutOfBoundsException("No group "+ group);
+					reference = group;
+				}
+
+				if (literal.length() > 0) {
+					parsed.add(literal.toString());
+					literal.setLength(0);
+				}
+				parsed.add(reference);
+			}
+			else
+				literal.append(c);
+		}
+		if (literal.length() > 0)
+			parsed.add(literal.toString());
+
+		this.parts = parsed;
+		this.groupCount = groupCount;
+	}
+
+	private static boolean isAsciiLetterOrDigit(char c) {
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9';
+	}
+
+	private static final class GroupName {
+		final String name;
+
+		GroupName(String name) {
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,298 @@
+package com.obsglobal.util.regex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A set of literals, one of which occurs in every match of an expression, as found by {@link #of(RegexNode)}.
+ * <p/>
+ * Literals are gathered bottom-up: small character classes and concatenations expand to the exact strings they
+ * match, alternations union them and repetitions keep their child's. Of the candidates the one with the longest
+ * shortest literal wins. When ASCII case folding was involved the literals are lower case and must be compared
+ * ignoring ASCII case.
+ */
+public final class RequiredLiterals {
+	/** the most literals expanded for a node */
+	public static final int MAX_LITERALS = 64;
+	/** the largest character class expanded into literals */
+	public static final int MAX_CLASS_SIZE = 8;
+
+	private static final RequiredLiterals NONE = new RequiredLiterals(Collections.<String>emptySet(), false, false);
+
+	private final List<String> literals;
+	private final boolean caseInsensitive, exact;
+
+	private RequiredLiterals(Set<String> literals, boolean caseInsensitive, boolean exact) {
+		this.literals = Collections.unmodifiableList(new ArrayList<String>(literals));
+		this.caseInsensitive = caseInsensitive;
+		this.exact = exact;
+	}
+
+	public static RequiredLiterals of(RegexNode root) {
+		Info info = analyze(root);
+		if (info.exact != null && minLength(info.exact) > 0)
+			return new RequiredLiterals(info.exact, info.exactFolded, true);
+		if (info.required != null)
+			return new RequiredLiterals(info.required, info.requiredFolded, false);
+
+		return NONE;
+	}
+
+	/**
+	 * @return the literals, empty if nothing is required
+	 */
+	public List<String> getLiterals() {
+		return literals;
+	}
+
+	public boolean isEmpty() {
+		return literals.isEmpty();
+	}
+
+	/**
+	 * @return whether the literals must be compared ignoring ASCII case
+	 */
+	public boolean isCaseInsensitive() {
+		return caseInsensitive;
+	}
+
+	/**
+	 * @return whether every match is one of the literals, ignoring ASCII case if {@link #isCaseInsensitive()}
+	 */
+	public boolean isExact() {
+		return exact;
+	}
+
+	/**
+	 * @return the length of the shortest literal, 0 if nothing is required
+	 */
+	public int getMinLength() {
+		return minLength(literals);
+	}
+
+	@Override
+	public String toString() {
+		return (exact ? "exact" : "required") + (caseInsensitive ? "(?i)" : "") + literals;
+	}
+
+	private static Info analyze(RegexNode node) {
+		switch (node.getType()) {
+			case EMPTY:
+			case ASSERTION:
+			case LOOKAROUND:
+				return Info.exact(Collections.singleton(""), false);
+			case CHARACTER:
+				return analyzeCharacter(node.getCharacters());
+			case GROUP:
+			case ATOMIC:
+				return analyze(node.getChild());
+			case CONCATENATION:
+				return analyzeConcatenation(node.getChildren());
+			case ALTERNATION:
+				return analyzeAlternation(node.getChildren());
+			case REPEAT:
+				return analyzeRepeat(node);
+			default:
+				return new Info();
+		}
+	}
+
+	private static Info analyzeCharacter(CodePointSet characters) {
+		if (characters.isEmpty() || characters.size() > MAX_CLASS_SIZE)
+			return new Info();
+
+		boolean folded = false;
+		CodePointSet letters = characters.intersect(CodePointSet.ranges('A', 'Z', 'a', 'z'));
+		if (!letters.isEmpty() && letters.foldAsciiCase().equals(letters))
+			folded = true;
+
+		Set<String> literals = new LinkedHashSet<String>();
+		for (int range = 0; range < characters.rangeCount(); range++) {
+			for (int codePoint = characters.rangeStart(range); codePoint <= characters.rangeEnd(range); codePoint++)
+				literals.add(new String(Character.toChars(codePoint)));
+		}
+
+		return Info.exact(folded ? fold(literals) : literals, folded);
+	}
+
+	private static Info analyzeConcatenation(List<RegexNode> children) {
+		Info info = new Info();
+		Set<String> run = Collections.singleton("");
+		boolean runFolded = false, complete = true;
+		for (RegexNode child : children) {
+			Info childInfo = analyze(child);
+			info.offer(childInfo.required, childInfo.requiredFolded);
+			if (childInfo.exact == null) {
+				info.offer(run, runFolded);
+				run = Collections.singleton("");
+				runFolded = false;
+				complete = false;
+				continue;
+			}
+
+			Set<String> product = product(run, runFolded, childInfo.exact, childInfo.exactFolded);
+			if (product == null) {
+				info.offer(run, runFolded);
+				run = childInfo.exact;
+				runFolded = childInfo.exactFolded;
+				complete = false;
+			}
+			else {
+				run = product;
+				runFolded |= childInfo.exactFolded;
+			}
+		}
+
+		if (complete) {
+			info.exact = run;
+			info.exactFolded = runFolded;
+		}
+		info.offer(run, runFolded);
+		return info;
+	}
+
+	private static Info analyzeAlternation(List<RegexNode> children) {
+		Set<String> exact = new LinkedHashSet<String>(), required = new LinkedHashSet<String>();
+		boolean exactFolded = false, requiredFolded = false;
+		for (RegexNode child : children) {
+			Info childInfo = analyze(child);
+			if (exact != null && childInfo.exact != null) {
+				exact.addAll(childInfo.exact);
+				exactFolded |= childInfo.exactFolded;
+				if (exact.size() > MAX_LITERALS)
+					exact = null;
+			}
+			else
+				exact = null;
+
+			Set<String> childRequired = childInfo.exact != null ? childInfo.exact : childInfo.required;
+			if (required != null && childRequired != null) {
+				required.addAll(childRequired);
+				requiredFolded |= childInfo.exact != null ? childInfo.exactFolded : childInfo.requiredFolded;
+				if (required.size() > MAX_LITERALS)
+					required = null;
+			}
+			else
+				required = null;
+		}
+
+		Info info = new Info();
+		if (exact != null) {
+			info.exact = exactFolded ? fold(exact) : exact;
+			info.exactFolded = exactFolded;
+		}
+		if (required != null)
+			info.offer(requiredFolded ? fold(required) : required, requiredFolded);
+
+		return info;
+	}
+
+	private static Info analyzeRepeat(RegexNode node) {
+		if (node.getMax() == 0)
+			return Info.exact(Collections.singleton(""), false);
+
+		Info childInfo = analyze(node.getChild());
+		Info info = new Info();
+		if (node.getMin() == 0)
+			return info;
+
+		if (childInfo.exact != null) {
+			info.offer(childInfo.exact, childInfo.exactFolded);
+			if (node.getMin() == node.getMax() && node.getMin() <= MAX_LITERALS) {
+				Set<String> product = Collections.singleton("");
+				for (int count = 0; count < node.getMin() && product != null; count++)
+					product = product(product, childInfo.exactFolded, childInfo.exact, childInfo.exactFolded);
+				if (product != null) {
+					info.exact = product;
+					info.exactFolded = childInfo.exactFolded;
+					info.offer(product, childInfo.exactFolded);
+				}
+			}
+		}
+		info.offer(childInfo.required, childInfo.requiredFolded);
+		return info;
+	}
+
+	/**
+	 * @return every concatenation of a left and a right literal, or <code>null</code> if there are too many
+	 */
+	private static Set<String> product(Set<String> left, boolean leftFolded, Set<String> right, boolean rightFolded) {
+		if ((long) left.size() * right.size() > MAX_LITERALS)
+			return null;
+
+		Set<String> product = new LinkedHashSet<String>();
+		for (String prefix : left) {
+			for (String suffix : right)
+				product.add(prefix + suffix);
+		}
+
+		return leftFolded || rightFolded ? fold(product) : product;
+	}
+
+	private static Set<String> fold(Set<String> literals) {
+		Set<String> folded = new LinkedHashSet<String>();
+		for (String literal : literals)
+			folded.add(toLowerAscii(literal));
+
+		return folded;
+	}
+
+	static String toLowerAscii(String literal) {
+		char[] characters = literal.toCharArray();
+		for (int index = 0; index < characters.length; index++) {
+			if (characters[index] >= 'A' && characters[index] <= 'Z')
+				characters[index] += 'a' - 'A';
+		}
+
+		return new String(characters);
+	}
+
+	private static int minLength(Iterable<String> literals) {
+		int minLength = Integer.MAX_VALUE;
+		for (String literal : literals)
+			minLength = Math.min(minLength, literal.length());
+
+		return minLength == Integer.MAX_VALUE ? 0 : minLength;
+	}
+
+	/**
+	 * What is known about the strings a node matches.
+	 */
+	private static class Info {
+		/** every string matched, or <code>null</code> if unknown */
+		Set<String> exact;
+		/** literals one of which occurs in every match, or <code>null</code> if none */
+		Set<String> required;
+		boolean exactFolded, requiredFolded;
+
+		static Info exact(Set<String> exact, boolean folded) {
+			Info info = new Info();
+			info.exact = exact;
+			info.exactFolded = folded;
+			info.required = exact;
+			info.requiredFolded = folded;
+			return info;
+		}
+
+		/**
+		 * Keeps the given literals as the required ones if their shortest is longer than the current ones'.
+		 */
+		void offer(Set<String> literals, boolean folded) {
+			if (literals == null || literals.isEmpty())
+				return;
+
+			int length = minLength(literals);
+			if (length == 0)
+				return;
+
+			int currentLength = required == null ? 0 : minLength(required);
+			if (length > currentLength || (length == currentLength && literals.size() < required.size())) {
+				required = literals;
+				requiredFolded = folded;
+			}
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package com.obsglobal.util.regex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the matches of a pattern in a stream, holding only a window of it in memory, and reports each with its
+ * absolute offsets as soon as more input cannot change it.
+ * <p/>
+ * A match is reported once the matcher did not need the end of the window to find it, or the window extends the
+ * maximum match length past its start, or the stream ended. Text more than that length before the next search
+ * is dropped, but kept for lookbehinds and boundaries. The matches are those of {@link Matcher#find()} over the
+ * whole stream, provided no match, lookahead or lookbehind spans more than the maximum match length.
+ * <p/>
+ * Each search starts a region at its offset in the window, so patterns a region start changes (see
+ * {@link RegexUtil#isRegionSensitive(Pattern)}) may report more matches: <code>\b{g}</code> and <code>\X</code>
+ * take every search start for a grapheme cluster boundary, and <code>\G</code> matches there.
+ */
+public class StreamingMatcher {
+	public static final int DEFAULT_MAX_MATCH_LENGTH = 1 << 16;
+	public static final long DEFAULT_POLL_MILLIS = 500;
+	static final int CHUNK_SIZE = 8192;
+
+	public interface Visitor {
+		/**
+		 * @param match the groups of the match; its offsets are relative to the window, not the stream
+		 * @return <code>false</code> to stop matching
+		 */
+		boolean visitMatch(long start, long end, MatchResult match);
+	}
+
+	private final Pattern pattern;
+	private final int maxMatchLength;
+
+	public StreamingMatcher(Pattern pattern) {
+		this(pattern, DEFAULT_MAX_MATCH_LENGTH);
+	}
+
+	/**
+	 * @param maxMatchLength the most characters a match, with its lookarounds, may span
+	 */
+	public StreamingMatcher(Pattern pattern, int maxMatchLength) {
+		if (maxMatchLength < 1)
+			throw new IllegalArgumentException("Maximum match length must be positive: "+ maxMatchLength);
+
+		this.pattern = pattern;
+		this.maxMatchLength = maxMatchLength;
+	}
+
+	public int getMaxMatchLength() {
+		return maxMatchLength;
+	}
+
+	/**
+	 * Reads the stream to its end, or until the visitor stops, without closing it.
+	 *
+	 * @return the number of matches visited
+	 */
+	public long match(Reader reader, Visitor visitor) throws IOException {
+		StringBuilder window = new StringBuilder();
+		char[] chunk = new char[CHUNK_SIZE];
+		Matcher matcher = pattern.matcher(window);
+		matcher.useTransparentBounds(true);
+		matcher.useAnchoringBounds(false);
+		long windowStart = 0, matches = 0;
+		int searchFrom = 0;
+		boolean ended = false;
+		while (true) {
+			while (searchFrom <= window.length()) {
+				matcher.reset(window);
+				matcher.region(searchFrom, window.length());
+				if (!matcher.find()) {
+					// a match starting a maximum length before the end would have been found in full
+					searchFrom = ended || !matcher.hitEnd() ? window.length() + 1
+							: Math.max(searchFrom, window.length() - maxMatchLength);
+					break;
+				}
+
+				int start = matcher.start(), end = matcher.end();
+				boolean decided = ended || !matcher.hitEnd()
+						|| (!matcher.requireEnd() && (long) start + maxMatchLength <= window.length());
+				// an earlier start may have needed the end, so search again from where this search started
+				if (!decided)
+					break;
+
+				++matches;
+				if (!visitor.visitMatch(windowStart + start, windowStart + end, matcher))
+					return matches;
+				// like Matcher.find, an empty match moves the next search on by one
+				searchFrom = end == start ? end + 1 : end;
+			}
+
+			if (ended)
+				return matches;
+
+			// keep a maximum length of context for lookbehinds, dropping at least half the window to copy little
+			int drop = Math.min(searchFrom, window.length()) - maxMatchLength;
+			if (drop > 0 && drop >= window.length() / 2) {
+				window.delete(0, drop);
+				windowStart += drop;
+				searchFrom -= drop;
+			}
+
+			int read = reader.read(chunk);
+			if (read < 0)
+				ended = true;
+			else
+				window.append(chunk, 0, read);
+		}
+	}
+
+	public long match(InputStream in, Charset charset, Visitor visitor) throws IOException {
+		return match(new InputStreamReader(in, charset), visitor);
+	}
+
+	public long match(ReadableByteChannel channel, Charset charset, Visitor visitor) throws IOException {
+		return match(Channels.newReader(channel, charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE), -1), visitor);
+	}
+
+	/**
+	 * Matches a growing file, like <code>tail -f</code>, until the visitor stops or the thread is interrupted.
+	 *
+	 * @return the number of matches visited, if the visitor stopped
+	 * @throws InterruptedIOException if the thread was interrupted
+	 */
+	public long follow(File file, Charset charset, long pollMillis, Visitor visitor) throws IOException {
+		Reader reader = openFollowingReader(file, charset, pollMillis);
+		try {
+			return match(reader, visitor);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Opens a reader that, at the end of the file, waits for it to grow instead of ending. A file that shrinks,
+	 * e.g. when truncated in place by log rotation, is read again from its start.
+	 * Reads throw {@link InterruptedIOException} once the thread is interrupted.
+	 */
+	public static Reader openFollowingReader(File file, Charset charset, long pollMillis) throws IOException {
+		return new InputStreamReader(new FollowingInputStream(file, pollMillis), charset);
+	}
+
+	private static final class FollowingInputStream extends InputStream {
+		private final RandomAccessFile file;
+		private final long pollMillis;
+
+		FollowingInputStream(File file, long pollMillis) throws IOException {
+			this.file = new RandomAccessFile(file, "r");
+			this.pollMillis = pollMillis;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+
+			while (true) {
+				int read = file.read(b, off, len);
+				if (read > 0)
+					return read;
+
+				if (file.length() < file.getFilePointer())
+					file.seek(0);
+				try {
+					Thread.sleep(pollMillis);
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Stopped following");
+				}
+			}
+		}
+
+		/**
+		 * Lets a decoding reader return what it has rather than wait for more.
+		 */
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(Integer.MAX_VALUE, Math.max(0, file.length() - file.getFilePointer()));
+		}
+
+		@Override
+		public void close() throws IOException {
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link AutomatonEngine}.
+ */
+public class AutomatonEngineTest {
+	private static final String[] EXPRESSIONS = {
+			"abc", "a|ab|abc", "(a|ab)(c|bcd)(d*)", "a*?b", "a{2,3}", "(?:ab){1,2}?", "x*", "\\bab\\b", "\\Bb",
+			"^a", "(?m)^a|b$", "c$", "\\z|\\Z", "(?i)AB[c-d]", "(?s).+", ".+?$", "[^ab]+", "\\w+\\s\\w+", "\\R",
+			"(?d)a$", "\\p{L}+", "(?U)\\w\\b", "\\x{1F600}", "[\\x{1F600}-\\x{1F64F}]+", "\\uDE00|a"
+	};
+	private static final String[] PARTS = {
+			"a", "b", "c", "d", "ab", " ", "\n", "\r", "\r\n", " ", "A", "B", "1", "_", "\u00e9", "\u0301",
+			"\ud83d\ude00", "\ud83d", "\ude00"
+	};
+
+	@Test
+	public void testMatchesPattern() throws Exception {
+		Random random = new Random(7);
+		for (String expression : EXPRESSIONS) {
+			Pattern pattern = Pattern.compile(expression);
+			assertTrue(expression, RegexUtil.AUTOMATON_ENGINE.supports(pattern));
+			for (int attempt = 0; attempt < 50; attempt++) {
+				String input = createInput(random, random.nextInt(20));
+				assertMatchesPattern(RegexUtil.AUTOMATON_ENGINE, pattern, input);
+			}
+		}
+	}
+
+	@Test
+	public void testUnsupported() throws Exception {
+		for (String expression : new String[] { "(a)\\1", "a(?=b)", "(?<!a)b", "(?>a|ab)c", "a++", "\\Ga", "(a*)*b", "\\X" }) {
+			Pattern pattern = Pattern.compile(expression);
+			assertFalse(expression, RegexUtil.AUTOMATON_ENGINE.supports(pattern));
+			assertSame(RegexUtil.BACKTRACKING_ENGINE, RegexUtil.selectEngine(pattern));
+		}
+
+		assertSame(RegexUtil.AUTOMATON_ENGINE, RegexUtil.selectEngine(Pattern.compile("a+b")));
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testUnsupportedMatch() throws Exception {
+		RegexUtil.AUTOMATON_ENGINE.findAllMatchOffsets(Pattern.compile("(a)\\1"), "aa");
+	}
+
+	@Test
+	public void testVisitMatchOffsets() throws Exception {
+		for (RegexEngine engine : new RegexEngine[] { RegexUtil.AUTOMATON_ENGINE, RegexUtil.BACKTRACKING_ENGINE }) {
+			final MatchOffsets offsets = new MatchOffsets();
+			int visited = engine.visitMatchOffsets(Pattern.compile("a+b"), "ab xaab aaab", new RegexEngine.Visitor() {
+				@Override
+				public boolean visitMatch(int start, int end) {
+					offsets.add(start, end);
+					return offsets.size() < 2;
+				}
+			});
+			assertEquals(engine.getName(), 2, visited);
+			assertArrayEquals(engine.getName(), new int[] { 0, 2, 4, 7 }, offsets.toArray());
+		}
+	}
+
+	@Test(timeout=10000)
+	public void testNoCatastrophicBacktracking() throws Exception {
+		char[] input = new char[100000];
+		Arrays.fill(input, 'x');
+		MatchOffsets offsets = RegexUtil.AUTOMATON_ENGINE.findAllMatchOffsets(Pattern.compile("(x+x+)+y"), new String(input));
+		assertEquals(0, offsets.size());
+	}
+
+	@Test
+	public void testSmallStateCache() throws Exception {
+		AutomatonEngine engine = new AutomatonEngine(4);
+		Random random = new Random(11);
+		for (String expression : new String[] { "(a|b)*a(a|b)(a|b)(a|b)", "\\w+\\s+\\w+$", "(?i)ab|ba|c+d" }) {
+			Pattern pattern = Pattern.compile(expression);
+			for (int attempt = 0; attempt < 20; attempt++)
+				assertMatchesPattern(engine, pattern, createInput(random, 200));
+		}
+	}
+
+	@Test
+	public void testInlineFlagsAfterContent() throws Exception {
+		// Pattern.flags() reports MULTILINE either way, so only Pattern knows which ^ is which
+		Pattern pattern = Pattern.compile("^(?m)^a");
+		assertFalse(RegexUtil.AUTOMATON_ENGINE.supports(pattern));
+		assertTrue(RegexUtil.AUTOMATON_ENGINE.supports(Pattern.compile("(?m)^a")));
+	}
+
+	private static void assertMatchesPattern(RegexEngine engine, Pattern pattern, String input) {
+		MatchOffsets expected = RegexUtil.findAllMatchOffsets(pattern, input);
+		MatchOffsets actual = engine.findAllMatchOffsets(pattern, input);
+		assertArrayEquals(pattern.pattern(), expected.toArray(), actual.toArray());
+	}
+
+	private static String createInput(Random random, int parts) {
+		StringBuilder input = new StringBuilder();
+		for (int index = 0; index < parts; index++)
+			input.append(PARTS[random.nextInt(PARTS.length)]);
+
+		return input.toString();
+	}
+}
@@ -0,0 +1,119 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link BacktrackingAnalyzer}.
+ */
+public class BacktrackingAnalyzerTest {
+
+	@Test
+	public void testNestedQuantifier() throws Exception {
+		List<BacktrackingAnalyzer.Vulnerability> vulnerabilities = find("^x(a+)+b");
+		assertEquals(1, vulnerabilities.size());
+		BacktrackingAnalyzer.Vulnerability vulnerability = vulnerabilities.get(0);
+		assertEquals(BacktrackingAnalyzer.Complexity.EXPONENTIAL, vulnerability.getComplexity());
+		assertEquals(2, vulnerability.getStart());
+		assertEquals(7, vulnerability.getEnd());
+		assertEquals("nested quantifier", vulnerability.getDescription());
+		assertEquals("x", vulnerability.getPrefix());
+		assertFalse(Pattern.compile("^x(a+)+b").matcher(vulnerability.getAttackString(10)).find());
+		assertTrue(vulnerability.getAttackString(10).startsWith("xaaaaaaaaaa"));
+
+		assertEquals(BacktrackingAnalyzer.Complexity.EXPONENTIAL, find("(\\w+\\s?)*$").get(0).getComplexity());
+		assertEquals(BacktrackingAnalyzer.Complexity.EXPONENTIAL, find("(x+x+)+y").get(0).getComplexity());
+	}
+
+	@Test
+	public void testOverlappingAlternatives() throws Exception {
+		for (String expression : new String[] { "(a|a)*b", "(\\w|\\d)+$", "(a|aa)*c", "(?:a|b|ab)*c" }) {
+			List<BacktrackingAnalyzer.Vulnerability> vulnerabilities = find(expression);
+			assertEquals(expression, 1, vulnerabilities.size());
+			assertEquals(expression, BacktrackingAnalyzer.Complexity.EXPONENTIAL, vulnerabilities.get(0).getComplexity());
+		}
+	}
+
+	@Test
+	public void testPolynomial() throws Exception {
+		BacktrackingAnalyzer.Vulnerability vulnerability = find("=\\d+\\d*x").get(0);
+		assertEquals(BacktrackingAnalyzer.Complexity.POLYNOMIAL, vulnerability.getComplexity());
+		assertEquals(2, vulnerability.getDegree());
+		assertEquals(1, vulnerability.getStart());
+		assertEquals(7, vulnerability.getEnd());
+		assertEquals("=", vulnerability.getPrefix());
+
+		assertEquals(3, find("\\s*\\s*-?\\s*$").get(0).getDegree());
+
+		vulnerability = find("(.*a){12}").get(0);
+		assertEquals(BacktrackingAnalyzer.Complexity.POLYNOMIAL, vulnerability.getComplexity());
+		assertEquals(12, vulnerability.getDegree());
+	}
+
+	@Test
+	public void testSafe() throws Exception {
+		for (String expression : new String[] { "^a+b", "x(ab|cd)*e", "^[a-z]+@\\d+", "^(a+)++b", "^(?>a|a)*b",
+				"\\b\\d+-\\d+", "(a{2}){3}", "a+" })
+			assertTrue(expression, find(expression).isEmpty());
+	}
+
+	@Test
+	public void testAnalyze() throws Exception {
+		BacktrackingAnalyzer.Report report = BacktrackingAnalyzer.analyze(Pattern.compile("\\d+\\d+x"), 5000);
+		assertEquals(1, report.getGrowths().size());
+		BacktrackingAnalyzer.Growth growth = report.getGrowths().get(0);
+		assertEquals(BacktrackingAnalyzer.Complexity.POLYNOMIAL, growth.getComplexity());
+		// the search tries every start, adding a degree to the two repeats
+		assertEquals(3, growth.getDegree());
+		assertEquals("O(n^3)", report.toString());
+
+		report = BacktrackingAnalyzer.analyze(Pattern.compile("^a+b"), 5000);
+		assertTrue(report.getVulnerabilities().isEmpty());
+		assertEquals("linear", report.toString());
+	}
+
+	@Test
+	public void testLeadingRepeat() throws Exception {
+		for (String expression : new String[] { "\\s+$", "a+b", "[\\s\u200c]+$", "\\s++$" }) {
+			Pattern pattern = Pattern.compile(expression);
+			List<BacktrackingAnalyzer.Vulnerability> vulnerabilities = BacktrackingAnalyzer.findVulnerabilities(pattern);
+			assertEquals(expression, 1, vulnerabilities.size());
+			BacktrackingAnalyzer.Vulnerability vulnerability = vulnerabilities.get(0);
+			assertEquals(expression, BacktrackingAnalyzer.Complexity.POLYNOMIAL, vulnerability.getComplexity());
+			assertEquals(expression, "leading repeat retried at every start", vulnerability.getDescription());
+			assertEquals(expression, 0, vulnerability.getStart());
+			assertFalse(expression, pattern.matcher(vulnerability.getAttackString(10)).find());
+		}
+
+		// find() retrying every start makes it quadratic, not the repeat itself
+		BacktrackingAnalyzer.Report report = BacktrackingAnalyzer.analyze(Pattern.compile("\\s+$"), 5000);
+		assertEquals(BacktrackingAnalyzer.Complexity.POLYNOMIAL, report.getGrowths().get(0).getComplexity());
+		assertEquals(2, report.getGrowths().get(0).getDegree());
+		assertEquals("O(n^2)", report.toString());
+		assertEquals("O(n^2)", BacktrackingAnalyzer.analyze(Pattern.compile("a+b"), 5000).toString());
+	}
+
+	@Test
+	public void testClassify() throws Exception {
+		int[] lengths = { 10, 20, 40, 80 };
+		assertEquals(BacktrackingAnalyzer.Complexity.LINEAR,
+				BacktrackingAnalyzer.classify(lengths, new long[] { 15, 25, 45, 85 }, false).getComplexity());
+
+		BacktrackingAnalyzer.Growth growth = BacktrackingAnalyzer.classify(lengths, new long[] { 100, 400, 1600, 6400 }, true);
+		assertEquals(BacktrackingAnalyzer.Complexity.POLYNOMIAL, growth.getComplexity());
+		assertEquals(2, growth.getDegree());
+
+		assertEquals(BacktrackingAnalyzer.Complexity.EXPONENTIAL,
+				BacktrackingAnalyzer.classify(lengths, new long[] { 1L << 5, 1L << 10, 1L << 20, 1L << 40 }, true).getComplexity());
+		assertEquals(BacktrackingAnalyzer.Complexity.EXPONENTIAL,
+				BacktrackingAnalyzer.classify(new int[] { 4 }, new long[] { 16 }, true).getComplexity());
+	}
+
+	private static List<BacktrackingAnalyzer.Vulnerability> find(String expression) {
+		return BacktrackingAnalyzer.findVulnerabilities(Pattern.compile(expression));
+	}
+}
@@ -0,0 +1,107 @@
+package com.obsglobal.util.regex;
+
+import java.util.Random;
+
+/**
+ * Generated inputs for {@link RegexBenchmark}, the same for a given length, density and seed.
+ * <p/>
+ * Each corpus is made of records, lines here, a fraction of which carry its hit word; the density sets that fraction,
+ * and so how many matches the patterns looking for it find.
+ */
+enum BenchmarkCorpus {
+	/** application log lines, failures carrying a timeout and a mail address */
+	LOG("timeout") {
+		@Override
+		void appendRecord(StringBuilder out, Random random, int record, boolean hit) {
+			out.append("2026-01-").append(10 + random.nextInt(20)).append('T')
+					.append(10 + random.nextInt(14)).append(':').append(10 + random.nextInt(50)).append(':')
+					.append(10 + random.nextInt(50)).append('.').append(100 + random.nextInt(900));
+			if (hit) {
+				out.append(" ERROR [").append(pick(random, SERVICES)).append("] request ").append(record)
+						.append(" failed after ").append(random.nextInt(5000)).append("ms timeout, notified ")
+						.append(pick(random, USERS)).append(random.nextInt(100)).append("@example.com\n");
+			}
+			else {
+				out.append(random.nextBoolean() ? " INFO [" : " DEBUG [").append(pick(random, SERVICES))
+						.append("] request ").append(record).append(' ').append(pick(random, ACTIONS)).append(" in ")
+						.append(random.nextInt(200)).append("ms\n");
+			}
+		}
+	},
+	/** comma separated rows, some names quoted, failed rows with an error status */
+	CSV("error") {
+		@Override
+		void appendRecord(StringBuilder out, Random random, int record, boolean hit) {
+			String name = pick(random, USERS);
+			out.append(record).append(',');
+			if (random.nextInt(4) == 0)
+				out.append('"').append(name).append(", ").append(pick(random, CITIES)).append('"');
+			else
+				out.append(name);
+			out.append(',').append(pick(random, CITIES)).append(',').append(random.nextInt(100000) / 100.0)
+					.append(',').append(hit ? "error" : random.nextBoolean() ? "ok" : "pending").append('\n');
+		}
+	},
+	/**
+	 * mixed script prose, with hits in precomposed and decomposed forms for {@link java.util.regex.Pattern#CANON_EQ}
+	 * and in cases that only {@link java.util.regex.Pattern#UNICODE_CASE} folds
+	 */
+	UNICODE("café") {
+		@Override
+		void appendRecord(StringBuilder out, Random random, int record, boolean hit) {
+			for (int word = 0, words = 4 + random.nextInt(8); word < words; word++)
+				out.append(pick(random, WORDS)).append(' ');
+			if (hit) {
+				switch (record % 4) {
+					case 0: out.append("café "); break;
+					case 1: out.append("cafe\u0301 "); break;
+					case 2: out.append("CAFÉ straße "); break;
+					default: out.append("Straße ÜBER café ");
+				}
+			}
+			out.append(pick(random, WORDS)).append(".\n");
+		}
+	};
+
+	private static final String[] SERVICES = { "auth", "billing", "search", "gateway", "mailer" };
+	private static final String[] ACTIONS = { "served", "cached", "queued", "redirected" };
+	private static final String[] USERS = { "alice", "bob", "carol", "dave", "erin", "frank" };
+	private static final String[] CITIES = { "Oslo", "Lyon", "Porto", "Graz", "Turku" };
+	private static final String[] WORDS = {
+			"naïve", "été", "grüße", "καλημέρα",
+			"привет", "日本語", "😀", "İstanbul",
+			"ﬁne", "señor", "Ångström", "the", "and", "of"
+	};
+
+	private final String hitWord;
+
+	BenchmarkCorpus(String hitWord) {
+		this.hitWord = hitWord;
+	}
+
+	/**
+	 * @return the word only hit records contain, in the unicode corpus sometimes in another case or decomposed
+	 */
+	String getHitWord() {
+		return hitWord;
+	}
+
+	/**
+	 * @param density the fraction of records with a hit, from 0 to 1
+	 * @return whole records, at least the given number of characters
+	 */
+	String generate(int length, double density, long seed) {
+		Random random = new Random(seed);
+		StringBuilder out = new StringBuilder(length + 256);
+		for (int record = 0; out.length() < length; record++)
+			appendRecord(out, random, record, random.nextDouble() < density);
+
+		return out.toString();
+	}
+
+	abstract void appendRecord(StringBuilder out, Random random, int record, boolean hit);
+
+	private static String pick(Random random, String[] values) {
+		return values[random.nextInt(values.length)];
+	}
+}
@@ -0,0 +1,57 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link CodePointSet}.
+ */
+public class CodePointSetTest {
+	@Test
+	public void testUnionMergesAdjacentRanges() throws Exception {
+		CodePointSet set = CodePointSet.range('a', 'c').union(CodePointSet.range('d', 'f')).union(CodePointSet.of('x'));
+		assertEquals(2, set.rangeCount());
+		assertEquals(CodePointSet.ranges('a', 'f', 'x', 'x'), set);
+		assertEquals(7, set.size());
+		assertTrue(set.contains('e'));
+		assertFalse(set.contains('g'));
+		assertTrue(set.contains('x'));
+	}
+
+	@Test
+	public void testUnsortedRanges() throws Exception {
+		assertEquals(CodePointSet.ranges('a', 'z'), CodePointSet.ranges('m', 'z', 'a', 'n', 'c', 'd'));
+	}
+
+	@Test
+	public void testComplement() throws Exception {
+		CodePointSet set = CodePointSet.ranges(0, 9, 'a', 'a');
+		CodePointSet complement = set.complement();
+		assertFalse(complement.contains(0));
+		assertTrue(complement.contains(10));
+		assertFalse(complement.contains('a'));
+		assertTrue(complement.contains(Character.MAX_CODE_POINT));
+		assertEquals(set, complement.complement());
+		assertEquals(CodePointSet.ALL, CodePointSet.EMPTY.complement());
+	}
+
+	@Test
+	public void testIntersectAndSubtract() throws Exception {
+		CodePointSet letters = CodePointSet.range('a', 'z');
+		assertEquals(CodePointSet.range('m', 'z'), letters.intersect(CodePointSet.range('m', 0x7F)));
+		assertEquals(CodePointSet.ranges('a', 'd', 'f', 'z'), letters.subtract(CodePointSet.of('e')));
+		assertTrue(letters.intersect(CodePointSet.of('A')).isEmpty());
+	}
+
+	@Test
+	public void testFoldAsciiCase() throws Exception {
+		assertEquals(CodePointSet.ranges('A', 'C', 'a', 'c', '1', '1'), CodePointSet.ranges('a', 'c', '1', '1').foldAsciiCase());
+		assertEquals(CodePointSet.of(0xE9), CodePointSet.of(0xE9).foldAsciiCase());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testIllegalRange() throws Exception {
+		CodePointSet.range('z', 'a');
+	}
+}
@@ -0,0 +1,163 @@
+package com.obsglobal.util.regex;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link DirectoryGrep}.
+ */
+public class DirectoryGrepTest {
+	private Path root;
+
+	@Before
+	public void createTree() throws Exception {
+		root = Files.createTempDirectory("grep");
+		write("app.log", "boot ok\n  ERROR 1 disk\nok\n");
+		write("archive/old.log", "ERROR 2\n");
+		write("archive/notes.txt", "no ERROR 3 here\n");
+		write(".git/objects.log", "ERROR 4\n");
+		byte[] binary = "\0\0ERROR 5\n".getBytes(StandardCharsets.ISO_8859_1);
+		Files.write(root.resolve("archive/data.bin"), binary);
+
+		StringBuilder large = new StringBuilder();
+		while (large.length() < DirectoryGrep.MAP_THRESHOLD)
+			large.append("line ok\n");
+		large.append("ERROR 6\n");
+		write("large.log", large.toString());
+	}
+
+	@After
+	public void deleteTree() throws Exception {
+		List<Path> paths = new ArrayList<Path>();
+		collect(root.toFile(), paths);
+		Collections.reverse(paths);
+		for (Path path : paths)
+			Files.delete(path);
+	}
+
+	@Test
+	public void testGrep() throws Exception {
+		for (int threads = 1; threads <= 4; threads += 3) {
+			DirectoryGrep grep = new DirectoryGrep(Pattern.compile("ERROR \\d"), threads);
+			List<String> hits = grep(grep);
+			assertEquals(5, grep.grep(root, collect(new ArrayList<String>())));
+			assertEquals("[.git/objects.log:1:1:ERROR 4, app.log:2:3:ERROR 1, archive/notes.txt:1:4:ERROR 3, "+
+					"archive/old.log:1:1:ERROR 2, large.log:131073:1:ERROR 6]", hits.toString());
+			assertEquals(5, grep.getFilesScanned());
+			assertEquals(1, grep.getFilesSkipped());	// data.bin
+			assertTrue(grep.getBytesScanned() > DirectoryGrep.MAP_THRESHOLD);
+		}
+	}
+
+	@Test
+	public void testDecodeOnlyCharset() throws Exception {
+		DirectoryGrep grep = new DirectoryGrep(Pattern.compile("ERROR \\d"), 2);
+		grep.setCharset(Charset.forName("x-JISAutoDetect"));
+		assertEquals(5, grep(grep).size());
+		assertEquals(5, grep.getFilesScanned());
+	}
+
+	@Test
+	public void testIncludesAndExcludes() throws Exception {
+		DirectoryGrep grep = new DirectoryGrep(Pattern.compile("ERROR \\d"));
+		grep.setIncludes("*.log, *.bin");
+		grep.setExcludes(".git,large.*");
+		assertEquals("[app.log:2:3:ERROR 1, archive/old.log:1:1:ERROR 2]", grep(grep).toString());
+
+		grep.setIncludes("archive/*");
+		grep.setExcludes("");
+		assertEquals("[archive/notes.txt:1:4:ERROR 3, archive/old.log:1:1:ERROR 2]", grep(grep).toString());
+	}
+
+	@Test
+	public void testStop() throws Exception {
+		DirectoryGrep grep = new DirectoryGrep(Pattern.compile("ERROR \\d"), 1);
+		final List<DirectoryGrep.Hit> hits = new ArrayList<DirectoryGrep.Hit>();
+		grep.grep(root, new DirectoryGrep.Visitor() {
+			@Override
+			public boolean visitHit(DirectoryGrep.Hit hit) {
+				hits.add(hit);
+				return false;
+			}
+		});
+		assertEquals(1, hits.size());
+		assertEquals(1, grep.getMatchCount());
+		assertTrue(grep.getFilesScanned() < 5);
+	}
+
+	@Test
+	public void testInterrupt() throws Exception {
+		DirectoryGrep grep = new DirectoryGrep(Pattern.compile("(.*a){25}(?=$)"), 2);
+		write("slow.txt", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaab");
+		final Thread caller = Thread.currentThread();
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(200);
+				}
+				catch (InterruptedException ex) {
+					return;
+				}
+				caller.interrupt();
+			}
+		}.start();
+		long start = System.currentTimeMillis();
+		try {
+			grep.grep(root, collect(new ArrayList<String>()));
+			fail("Expected an interruption");
+		}
+		catch (InterruptedException ex) {
+			assertTrue(System.currentTimeMillis() - start < 5000);
+		}
+	}
+
+	private List<String> grep(DirectoryGrep grep) throws Exception {
+		List<String> hits = new ArrayList<String>();
+		grep.grep(root, collect(hits));
+		Collections.sort(hits);
+		return hits;
+	}
+
+	private DirectoryGrep.Visitor collect(final List<String> hits) {
+		return new DirectoryGrep.Visitor() {
+			@Override
+			public boolean visitHit(DirectoryGrep.Hit hit) {
+				synchronized (hits) {
+					hits.add(root.relativize(hit.getFile()).toString().replace(File.separatorChar, '/')
+							+":"+ hit.getLine() +":"+ hit.getColumn() +":"+ hit.getText());
+				}
+				return true;
+			}
+		};
+	}
+
+	private void write(String name, String content) throws IOException {
+		Path path = root.resolve(name);
+		Files.createDirectories(path.getParent());
+		Files.write(path, content.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private static void collect(File file, List<Path> paths) {
+		paths.add(file.toPath());
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children)
+				collect(child, paths);
+		}
+	}
+}
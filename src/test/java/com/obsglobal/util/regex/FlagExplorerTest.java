@@ -0,0 +1,131 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link FlagExplorer}.
+ */
+public class FlagExplorerTest {
+	private static final String INPUT = "abc\nABC\r\nabc";
+
+	@Test
+	public void testRelevantOptions() throws Exception {
+		assertEquals(Pattern.CASE_INSENSITIVE, FlagExplorer.getRelevantOptions("abc", INPUT));
+		assertEquals(Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.CANON_EQ,
+				FlagExplorer.getRelevantOptions("abc", "café"));
+		assertEquals(Pattern.LITERAL | Pattern.CANON_EQ, FlagExplorer.getRelevantOptions("[1-3]", INPUT));
+		assertEquals(0, FlagExplorer.getRelevantOptions("123", INPUT));
+		assertEquals(Pattern.UNIX_LINES | Pattern.MULTILINE | Pattern.LITERAL,
+				FlagExplorer.getRelevantOptions("^$", INPUT));
+		assertEquals(Pattern.UNIX_LINES | Pattern.LITERAL | Pattern.DOTALL, FlagExplorer.getRelevantOptions("1.", INPUT));
+		assertEquals(Pattern.COMMENTS | Pattern.LITERAL, FlagExplorer.getRelevantOptions("1 2", INPUT));
+		assertEquals(Pattern.UNIX_LINES | Pattern.CASE_INSENSITIVE | Pattern.LITERAL | Pattern.CANON_EQ,
+				FlagExplorer.getRelevantOptions("1\\Z", INPUT));
+		assertTrue(new FlagExplorer("a\\Z", 0).getCombinations("a\r").contains(Pattern.UNIX_LINES));
+	}
+
+	@Test
+	public void testCombinations() throws Exception {
+		List<Integer> combinations = new FlagExplorer("ab.", Pattern.MULTILINE).getCombinations(INPUT);
+		// the given flags first, an irrelevant option kept as given
+		assertEquals(16, combinations.size());
+		assertEquals(Pattern.MULTILINE, (int) combinations.get(0));
+		assertEquals(new HashSet<Integer>(combinations).size(), combinations.size());
+		for (int combination : combinations)
+			assertTrue((combination & Pattern.MULTILINE) != 0);
+
+		assertEquals(FlagExplorer.MAX_COMBINATIONS, new FlagExplorer("^(?:é. #x)", 0).getCombinations(INPUT).size());
+	}
+
+	@Test
+	public void testExplore() throws Exception {
+		final List<FlagExplorer.Result> visited = Collections.synchronizedList(new ArrayList<FlagExplorer.Result>());
+		List<FlagExplorer.Result> results = new FlagExplorer("abc$", 0, 3).explore(INPUT, new FlagExplorer.Visitor() {
+			@Override
+			public boolean visitResult(FlagExplorer.Result result) {
+				visited.add(result);
+				return true;
+			}
+		});
+
+		assertEquals(16, results.size());
+		assertEquals(results.size(), visited.size());
+		for (FlagExplorer.Result result : results) {
+			Pattern pattern = Pattern.compile("abc$", result.getFlags());
+			assertEquals(result.toString(), RegexUtil.findAllMatchOffsets(pattern, INPUT).size(), result.getMatchCount());
+		}
+
+		FlagExplorer.Result given = results.get(0);
+		assertEquals(0, given.getFlags());
+		assertEquals(1, given.getMatchCount());
+		assertTrue(given.isSameAsGiven());
+		FlagExplorer.Result multiline = find(results, Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);
+		assertEquals(3, multiline.getMatchCount());
+		assertEquals(2, multiline.getAdded());
+		assertEquals(0, multiline.getRemoved());
+		// CRLF ends a line, unless only LF does
+		assertEquals(2, find(results, Pattern.MULTILINE | Pattern.CASE_INSENSITIVE | Pattern.UNIX_LINES).getMatchCount());
+		FlagExplorer.Result caseInsensitive = find(results, Pattern.CASE_INSENSITIVE);
+		assertTrue(caseInsensitive.isSameAsGiven());
+		assertEquals(given.getDigest(), caseInsensitive.getDigest());
+	}
+
+	@Test
+	public void testCountCommon() throws Exception {
+		MatchOffsets first = new MatchOffsets(), second = new MatchOffsets();
+		first.add(0, 3);
+		first.add(5, 6);
+		first.add(8, 9);
+		second.add(0, 3);
+		second.add(5, 7);
+		second.add(8, 9);
+		second.add(10, 11);
+		assertEquals(2, FlagExplorer.countCommon(first, second));
+		assertEquals(2, FlagExplorer.countCommon(second, first));
+	}
+
+	@Test
+	public void testFailedCombinations() throws Exception {
+		List<FlagExplorer.Result> results = new FlagExplorer("a{2", 0).explore(INPUT, new FlagExplorer.Visitor() {
+			@Override
+			public boolean visitResult(FlagExplorer.Result result) {
+				return true;
+			}
+		});
+
+		assertNotNull(results.get(0).getError());
+		FlagExplorer.Result literal = find(results, Pattern.LITERAL);
+		assertNull(literal.getError());
+		assertEquals(0, literal.getMatchCount());
+		assertEquals(-1, literal.getAdded());
+	}
+
+	@Test
+	public void testStop() throws Exception {
+		List<FlagExplorer.Result> results = new FlagExplorer("abc$", 0, 1).explore(INPUT, new FlagExplorer.Visitor() {
+			@Override
+			public boolean visitResult(FlagExplorer.Result result) {
+				return false;
+			}
+		});
+
+		assertEquals(1, results.size());
+	}
+
+	private static FlagExplorer.Result find(List<FlagExplorer.Result> results, int flags) {
+		for (FlagExplorer.Result result : results) {
+			if (result.getFlags() == flags)
+				return result;
+		}
+
+		throw new AssertionError("No result for "+ RegexUtil.formatOptions(flags));
+	}
+}
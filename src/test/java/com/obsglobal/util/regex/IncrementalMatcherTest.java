@@ -0,0 +1,91 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link IncrementalMatcher}.
+ */
+public class IncrementalMatcherTest {
+	private static final String[] EXPRESSIONS = {
+			"abc", "\\w+", "a*", "(?m)^\\w+$", "(?m)^", "\\b\\d{2}\\b", "(?<=x)y", "\\d+$", "\\s+", "(?s)a.*?b"
+	};
+
+	@Test
+	public void testRandomEditsMatchFullScan() throws Exception {
+		Random random = new Random(7);
+		String alphabet = "abcxyz 0123\n";
+		for (String expression : EXPRESSIONS) {
+			Pattern pattern = Pattern.compile(expression);
+			IncrementalMatcher incrementalMatcher = new IncrementalMatcher(pattern);
+			StringBuilder input = new StringBuilder(randomText(random, alphabet, 2000));
+			MatchOffsets offsets = RegexUtil.findAllMatchOffsets(pattern, input);
+
+			for (int edit = 0; edit < 200; edit++) {
+				int offset = random.nextInt(input.length() + 1);
+				int removed = Math.min(random.nextInt(4), input.length() - offset);
+				String inserted = randomText(random, alphabet, random.nextInt(4));
+				input.replace(offset, offset + removed, inserted);
+
+				int rescanned = incrementalMatcher.update(offsets, input, offset, removed, inserted.length());
+				assertArrayEquals(expression +" edit "+ edit, RegexUtil.findAllMatchOffsets(pattern, input).toArray(),
+						offsets.toArray());
+				if (incrementalMatcher.isIncremental())
+					assertTrue(rescanned < input.length() || input.length() < 200);
+			}
+		}
+	}
+
+	@Test
+	public void testIncrementalOnlyWhenLineBounded() throws Exception {
+		assertTrue(new IncrementalMatcher(Pattern.compile("ERROR \\[(\\w+)\\]")).isIncremental());
+		assertFalse(new IncrementalMatcher(Pattern.compile("\\s+")).isIncremental());
+		assertFalse(new IncrementalMatcher(Pattern.compile("\\Gabc")).isIncremental());
+	}
+
+	@Test
+	public void testRangeCoveringLineFeed() throws Exception {
+		StringBuilder builder = new StringBuilder();
+		for (int line = 0; line < 5000; line++)
+			builder.append("xxxxa\nb");
+		Pattern pattern = Pattern.compile("a[\\t-\\r]b");
+		IncrementalMatcher incrementalMatcher = new IncrementalMatcher(pattern);
+		assertFalse(incrementalMatcher.isIncremental());
+		MatchOffsets offsets = RegexUtil.findAllMatchOffsets(pattern, builder);
+		assertEquals(5000, offsets.size());
+
+		builder.insert(100, "a\nb");
+		incrementalMatcher.update(offsets, builder, 100, 0, 3);
+		assertEquals(5001, offsets.size());
+		assertArrayEquals(RegexUtil.findAllMatchOffsets(pattern, builder).toArray(), offsets.toArray());
+	}
+
+	@Test
+	public void testUpdateFromDocument() throws Exception {
+		PieceTableDocument document = new PieceTableDocument();
+		document.insertString(0, "abc\nfoo abc\nbar\n", null);
+		Pattern pattern = Pattern.compile("abc");
+		MatchOffsets offsets = RegexUtil.findAllMatchOffsets(pattern, document.snapshot());
+		assertArrayEquals(new int[] { 0, 3, 8, 11 }, offsets.toArray());
+
+		document.insertString(12, "xabcx", null);
+		new IncrementalMatcher(pattern).update(offsets, document.snapshot(), 12, 0, 5);
+		assertArrayEquals(new int[] { 0, 3, 8, 11, 13, 16 }, offsets.toArray());
+
+		document.remove(0, 4);
+		new IncrementalMatcher(pattern).update(offsets, document.snapshot(), 0, 4, 0);
+		assertArrayEquals(new int[] { 4, 7, 9, 12 }, offsets.toArray());
+	}
+
+	private static String randomText(Random random, String alphabet, int length) {
+		StringBuilder builder = new StringBuilder();
+		for (int index = 0; index < length; index++)
+			builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+
+		return builder.toString();
+	}
+}
@@ -0,0 +1,66 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link InterruptibleCharSequence}.
+ */
+public class InterruptibleCharSequenceTest {
+	private static final Pattern CATASTROPHIC = Pattern.compile("(.*a){25}$");
+	private static final String ATTACK = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaab";
+
+	@Test
+	public void testDelegates() throws Exception {
+		CharSequence input = new InterruptibleCharSequence(RegexUtilTest.INPUT);
+		assertEquals(RegexUtilTest.INPUT.length(), input.length());
+		assertEquals(RegexUtilTest.INPUT, input.toString());
+		assertEquals("foo", input.subSequence(6, 9).toString());
+		assertEquals(4, RegexUtil.findAllMatchOffsets(Pattern.compile("abc"), input).size());
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		long startTime = System.currentTimeMillis();
+		try {
+			RegexUtil.findAllMatchOffsets(CATASTROPHIC, new InterruptibleCharSequence(ATTACK, 100));
+			fail("Catastrophic pattern completed");
+		}
+		catch (MatchInterruptedException ex) {
+			assertTrue(ex.isTimedOut());
+		}
+		assertTrue(System.currentTimeMillis() - startTime < 5000);
+	}
+
+	@Test
+	public void testInterrupt() throws Exception {
+		final MatchInterruptedException[] caught = new MatchInterruptedException[1];
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					RegexUtil.findAllMatchOffsets(CATASTROPHIC, new InterruptibleCharSequence(ATTACK));
+				}
+				catch (MatchInterruptedException ex) {
+					caught[0] = ex;
+				}
+			}
+		});
+		thread.start();
+		Thread.sleep(50);
+		thread.interrupt();
+		thread.join(5000);
+
+		assertFalse(thread.isAlive());
+		assertNotNull(caught[0]);
+		assertFalse(caught[0].isTimedOut());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testNullDelegate() throws Exception {
+		new InterruptibleCharSequence(null);
+	}
+}
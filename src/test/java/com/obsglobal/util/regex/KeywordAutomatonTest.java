@@ -0,0 +1,95 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link KeywordAutomaton}.
+ */
+public class KeywordAutomatonTest {
+	@Test
+	public void testOverlappingKeywords() throws Exception {
+		KeywordAutomaton automaton = new KeywordAutomaton(false);
+		automaton.add("he");
+		automaton.add("she");
+		automaton.add("his");
+		automaton.add("hers");
+
+		assertEquals("[1:1-4, 0:2-4, 3:2-6]", occurrences(automaton, "ushers"));
+		assertEquals("[2:0-3]", occurrences(automaton, "his"));
+		assertEquals("[]", occurrences(automaton, "HERS"));
+	}
+
+	@Test
+	public void testCaseInsensitive() throws Exception {
+		KeywordAutomaton automaton = new KeywordAutomaton(true);
+		automaton.add("Error");
+		automaton.add("été");
+
+		assertEquals("[0:4-9, 0:10-15]", occurrences(automaton, "an: ERROR error"));
+		assertEquals("[1:0-3]", occurrences(automaton, "éTé ÉTÉ"));
+	}
+
+	@Test
+	public void testStopsWhenVisitorDeclines() throws Exception {
+		KeywordAutomaton automaton = new KeywordAutomaton(false);
+		automaton.add("a");
+		int count = automaton.visitKeywords("aaaa", 0, 4, new KeywordAutomaton.Visitor() {
+			@Override
+			public boolean visitKeyword(int keyword, int start, int end) {
+				return start < 1;
+			}
+		});
+		assertEquals(2, count);
+	}
+
+	@Test
+	public void testMatchesNaiveSearch() throws Exception {
+		String[] keywords = { "ab", "bab", "abab", "b", "ba", "aaa" };
+		KeywordAutomaton automaton = new KeywordAutomaton(false);
+		for (String keyword : keywords)
+			automaton.add(keyword);
+
+		java.util.Random random = new java.util.Random(42);
+		StringBuilder input = new StringBuilder();
+		for (int index = 0; index < 2000; index++)
+			input.append(random.nextBoolean() ? 'a' : 'b');
+
+		int expected = 0;
+		for (String keyword : keywords) {
+			for (int index = input.indexOf(keyword); index >= 0; index = input.indexOf(keyword, index + 1))
+				++expected;
+		}
+		assertEquals(expected, automaton.visitKeywords(input, 0, input.length(), new KeywordAutomaton.Visitor() {
+			@Override
+			public boolean visitKeyword(int keyword, int start, int end) {
+				return true;
+			}
+		}));
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testAddAfterSearch() throws Exception {
+		KeywordAutomaton automaton = new KeywordAutomaton(false);
+		automaton.add("a");
+		automaton.step(KeywordAutomaton.START, 'a');
+		automaton.add("b");
+	}
+
+	private static String occurrences(KeywordAutomaton automaton, String input) {
+		final List<String> occurrences = new ArrayList<String>();
+		automaton.visitKeywords(input, 0, input.length(), new KeywordAutomaton.Visitor() {
+			@Override
+			public boolean visitKeyword(int keyword, int start, int end) {
+				occurrences.add(keyword +":"+ start +"-"+ end);
+				return true;
+			}
+		});
+
+		return occurrences.toString();
+	}
+}
@@ -0,0 +1,72 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link LineIndex}.
+ */
+public class LineIndexTest {
+	private static final String INPUT = "abc\nde\n\nfghi";
+
+	@Test
+	public void testLineAndColumn() throws Exception {
+		LineIndex lines = LineIndex.of(INPUT);
+		assertEquals(4, lines.getLineCount());
+		assertEquals(12, lines.getLength());
+		assertEquals(1, lines.getLine(0));
+		assertEquals(1, lines.getLine(3));
+		assertEquals(4, lines.getColumn(3));
+		assertEquals(2, lines.getLine(4));
+		assertEquals(1, lines.getColumn(4));
+		assertEquals(3, lines.getLine(7));
+		assertEquals(4, lines.getLine(12));
+		assertEquals(5, lines.getColumn(12));
+		assertEquals(8, lines.getLineStart(4));
+	}
+
+	@Test
+	public void testCharSequence() throws Exception {
+		LineIndex lines = LineIndex.of(new StringBuilder(INPUT));
+		LineIndex expected = LineIndex.of(INPUT);
+		assertEquals(expected.getLineCount(), lines.getLineCount());
+		for (int offset = 0; offset <= INPUT.length(); offset++) {
+			assertEquals(expected.getLine(offset), lines.getLine(offset));
+			assertEquals(expected.getColumn(offset), lines.getColumn(offset));
+		}
+	}
+
+	@Test
+	public void testTrailingNewLine() throws Exception {
+		LineIndex lines = LineIndex.of("a\r\nb\n");
+		assertEquals(3, lines.getLineCount());
+		assertEquals(2, lines.getColumn(1));	// the \r
+		assertEquals(2, lines.getLine(3));
+		assertEquals(3, lines.getLine(5));
+		assertEquals(1, LineIndex.of("").getLineCount());
+	}
+
+	@Test
+	public void testManyLines() throws Exception {
+		StringBuilder input = new StringBuilder();
+		for (int line = 0; line < 1000; line++)
+			input.append("line ").append(line).append('\n');
+
+		LineIndex lines = LineIndex.of(input.toString());
+		assertEquals(1001, lines.getLineCount());
+		int offset = input.indexOf("line 500");
+		assertEquals(501, lines.getLine(offset));
+		assertEquals(offset, lines.getLineStart(501));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testOffsetOutOfBounds() throws Exception {
+		LineIndex.of(INPUT).getLine(13);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testLineOutOfBounds() throws Exception {
+		LineIndex.of(INPUT).getLineStart(5);
+	}
+}
@@ -0,0 +1,105 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link LiteralPrefilter}.
+ */
+public class LiteralPrefilterTest {
+	private static final String[] EXPRESSIONS = {
+			"ERROR \\[(\\w+)\\]", "\\d+ms timeout", "\\w+@example\\.com", "(?i)warn.*disk", "failed|timeout",
+			"(?<=\\[)svc\\d+", "\\bab\\w*", "(?m)ok$", "[a-z]{0,3}ab(?=c)", "x?\\x{1F600}ab", "(?s)ab.{0,5}cd"
+	};
+	private static final String[] PARTS = {
+			"ERROR [svc", "] failed", "ok", "\n", " ", "12ms timeout", "ab", "cd", "WARN", "disk", "x", "😀",
+			"\ud83d", "a@example.com", "["
+	};
+
+	@Test
+	public void testMatchesUnfiltered() throws Exception {
+		Random random = new Random(3);
+		for (String expression : EXPRESSIONS) {
+			Pattern pattern = Pattern.compile(expression);
+			assertNotNull(expression, LiteralPrefilter.of(pattern));
+			for (int attempt = 0; attempt < 50; attempt++) {
+				StringBuilder input = new StringBuilder();
+				for (int index = random.nextInt(60); index > 0; index--)
+					input.append(PARTS[random.nextInt(PARTS.length)]);
+
+				assertMatchesUnfiltered(pattern, input);
+			}
+		}
+	}
+
+	@Test
+	public void testLiteral() throws Exception {
+		LiteralPrefilter prefilter = LiteralPrefilter.of(Pattern.compile("a.b", Pattern.LITERAL));
+		assertTrue(prefilter.isPureLiteral());
+		assertEquals(3, prefilter.getLiteralLength());
+		assertEquals(4, prefilter.indexOf(new StringBuilder("axb a.b"), 0));
+		assertEquals(-1, prefilter.indexOf("axb a.b", 5));
+
+		prefilter = LiteralPrefilter.of(Pattern.compile("a.b", Pattern.LITERAL | Pattern.CASE_INSENSITIVE));
+		assertFalse(prefilter.isPureLiteral());
+		assertEquals(4, prefilter.indexOf(new StringBuilder("axb A.B"), 0));
+		assertMatchesUnfiltered(Pattern.compile("a.b", Pattern.LITERAL | Pattern.CASE_INSENSITIVE), "A.B a.b axb");
+	}
+
+	@Test
+	public void testNoPrefilter() throws Exception {
+		// no literal, too short a literal, \G, a leading literal Pattern finds itself, no length or line bound
+		for (String expression : new String[] { "\\w+", "a\\d", "\\Gab", "ERROR \\w+", "(?s)ab.*cd" })
+			assertNull(expression, LiteralPrefilter.of(Pattern.compile(expression)));
+	}
+
+	@Test
+	public void testMaxLength() throws Exception {
+		assertEquals(4, getMaxLength("ab(c|de)"));
+		assertEquals(2, getMaxLength("\\x{1F600}(?=x+)\\b"));
+		assertEquals(6, getMaxLength("(?:ab){1,3}"));
+		assertEquals(RegexNode.UNBOUNDED, getMaxLength("ab+"));
+		assertEquals(RegexNode.UNBOUNDED, getMaxLength("(a)\\1"));
+
+		assertEquals(RegexNode.UNBOUNDED, LiteralPrefilter.of(Pattern.compile("ab.*")).getMaxLength());
+		assertEquals(RegexNode.UNBOUNDED, LiteralPrefilter.of(Pattern.compile("ab.{0,2000}")).getMaxLength());
+		// . may match a surrogate pair
+		assertEquals(6, LiteralPrefilter.of(Pattern.compile("ab.{0,2}")).getMaxLength());
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		Pattern pattern = Pattern.compile("\\w+ab");
+		assertNotNull(RegexUtil.getPrefilter(pattern));
+		RegexUtil.setPrefilterEnabled(false);
+		try {
+			assertNull(RegexUtil.getPrefilter(pattern));
+			assertEquals(2, RegexUtil.findAllMatchOffsets(pattern, "xab yab").size());
+		}
+		finally {
+			RegexUtil.setPrefilterEnabled(true);
+		}
+	}
+
+	private static int getMaxLength(String expression) {
+		return LiteralPrefilter.getMaxLength(RegexParser.parse(expression, 0));
+	}
+
+	private static void assertMatchesUnfiltered(Pattern pattern, CharSequence input) {
+		MatchOffsets expected = new MatchOffsets();
+		Matcher matcher = pattern.matcher(input);
+		while (matcher.find())
+			expected.add(matcher.start(), matcher.end());
+
+		assertArrayEquals(pattern.pattern(), expected.toArray(), RegexUtil.findAllMatchOffsets(pattern, input).toArray());
+		if (RegexUtil.AUTOMATON_ENGINE.supports(pattern)) {
+			assertArrayEquals(pattern.pattern(), expected.toArray(),
+					RegexUtil.AUTOMATON_ENGINE.findAllMatchOffsets(pattern, input).toArray());
+		}
+	}
+}
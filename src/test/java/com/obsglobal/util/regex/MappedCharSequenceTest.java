@@ -0,0 +1,79 @@
+package com.obsglobal.util.regex;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link MappedCharSequence}.
+ */
+public class MappedCharSequenceTest {
+	private File file;
+
+	@Before
+	public void createFile() throws Exception {
+		file = File.createTempFile("mapped", ".txt");
+		FileOutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(RegexUtilTest.INPUT.getBytes(StandardCharsets.ISO_8859_1));
+			outputStream.write(new byte[] { (byte) 0xE9 });	// e acute
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+
+	@After
+	public void deleteFile() throws Exception {
+		assertTrue(file.delete() || !file.exists());
+	}
+
+	@Test
+	public void testMatchMappedFile() throws Exception {
+		MappedCharSequence input = MappedCharSequence.open(file);
+		assertEquals(RegexUtilTest.INPUT.length() + 1, input.length());
+		assertEquals(input.length(), input.getFileLength());
+		assertFalse(input.isTruncated());
+		assertEquals('é', input.charAt(input.length() - 1));
+		assertEquals(RegexUtilTest.INPUT + "é", input.toString());
+
+		MatchOffsets offsets = RegexUtil.findAllMatchOffsets(Pattern.compile("foo|bar"), input);
+		assertArrayEquals(new int[] { 6, 9, 15, 18, 24, 27, 33, 36 }, offsets.toArray());
+	}
+
+	@Test
+	public void testSubSequence() throws Exception {
+		CharSequence input = MappedCharSequence.open(file).subSequence(6, 18);
+		assertEquals("fooabcDEFbar", input.toString());
+		assertEquals("abc", input.subSequence(3, 6).toString());
+		assertEquals('D', input.charAt(6));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testBadIndex() throws Exception {
+		MappedCharSequence.open(file).subSequence(0, 3).charAt(3);
+	}
+
+	@Test
+	public void testCharset() throws Exception {
+		MappedCharSequence input = MappedCharSequence.open(file, Charset.forName("ISO-8859-7"));
+		assertEquals('ι', input.charAt(input.length() - 1));
+		assertEquals("ISO-8859-7", input.getCharset().name());
+		assertTrue(MappedCharSequence.isSupported(StandardCharsets.US_ASCII));
+		assertFalse(MappedCharSequence.isSupported(StandardCharsets.UTF_8));
+		assertFalse(MappedCharSequence.isSupported(Charset.forName("x-JISAutoDetect")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMultiByteCharset() throws Exception {
+		MappedCharSequence.open(file, StandardCharsets.UTF_16);
+	}
+}
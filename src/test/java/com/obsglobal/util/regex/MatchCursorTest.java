@@ -0,0 +1,118 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link MatchCursor}.
+ */
+public class MatchCursorTest {
+	private static final String[] EXPRESSIONS = {
+			"abc", "(?i)abc", "x*", "\\b", "(?<=foo)abc", "^|bar$", "\\w*bc", "ERROR \\[(\\w+)\\]", "(?m)^\\w"
+	};
+	private static final String INPUT = RegexUtilTest.INPUT +" ERROR [svc1] x\nabc ERROR [svc2]\n😀";
+
+	@Test
+	public void testPagesMatchFullScan() throws Exception {
+		for (String expression : EXPRESSIONS) {
+			for (int flags : new int[] { 0, Pattern.LITERAL }) {
+				Pattern pattern = Pattern.compile(expression, flags);
+				MatchOffsets expected = new MatchOffsets();
+				Matcher matcher = pattern.matcher(INPUT);
+				while (matcher.find())
+					expected.add(matcher.start(), matcher.end());
+
+				for (int limit = 1; limit <= 4; limit++) {
+					assertPagesMatch(pattern, INPUT, limit, expected);
+					RegexUtil.setPrefilterEnabled(false);
+					try {
+						assertPagesMatch(pattern, INPUT, limit, expected);
+					}
+					finally {
+						RegexUtil.setPrefilterEnabled(true);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testGraphemeBoundaries() throws Exception {
+		String input = "e\u0301x\r\nab\r\n\uD83D\uDC4D\uD83C\uDFFD";
+		for (String expression : new String[] { "\\b{g}", "\\X", "\\Gx?" }) {
+			Pattern pattern = Pattern.compile(expression);
+			for (int limit = 1; limit <= 3; limit++)
+				assertPagesMatch(pattern, input, limit, RegexUtil.findAllMatchOffsets(pattern, input));
+		}
+	}
+
+	@Test
+	public void testLimit() throws Exception {
+		MatchCursor cursor = new MatchCursor(Pattern.compile("abc"), RegexUtilTest.INPUT);
+		MatchOffsets page = cursor.next(3);
+		assertArrayEquals(new int[] { 0, 3, 9, 12, 18, 21 }, page.toArray());
+		assertFalse(cursor.isExhausted());
+		assertEquals(21, cursor.getPosition());
+
+		page = cursor.next(3);
+		assertArrayEquals(new int[] { 27, 30 }, page.toArray());
+		assertTrue(cursor.isExhausted());
+		assertEquals(4, cursor.getMatchCount());
+		assertTrue(cursor.next(3).isEmpty());
+	}
+
+	@Test
+	public void testNextMatch() throws Exception {
+		MatchCursor cursor = new MatchCursor(Pattern.compile("ERROR \\[(\\w+)\\]"), INPUT);
+		MatchResult match = cursor.nextMatch();
+		assertEquals("svc1", match.group(1));
+		assertEquals("svc2", cursor.nextMatch().group(1));
+		assertNull(cursor.nextMatch());
+	}
+
+	@Test
+	public void testInterruptedPageResumes() throws Exception {
+		final StringBuilder text = new StringBuilder();
+		for (int index = 0; index < 10000; index++)
+			text.append("abc ");
+		MatchCursor cursor = new MatchCursor(Pattern.compile("\\w+"), text);
+		cursor.next(2);
+		Thread.currentThread().interrupt();
+		try {
+			cursor.next(10000, new InterruptibleCharSequence(text));
+			fail("Not interrupted");
+		}
+		catch (MatchInterruptedException ex) {
+			assertTrue(Thread.interrupted());
+		}
+
+		assertEquals(2, cursor.getMatchCount());
+		assertEquals(7, cursor.getPosition());
+		assertArrayEquals(new int[] { 8, 11 }, cursor.next(1, new InterruptibleCharSequence(text)).toArray());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOtherInput() throws Exception {
+		new MatchCursor(Pattern.compile("abc"), "abc").next(1, "abcd");
+	}
+
+	private static void assertPagesMatch(Pattern pattern, String input, int limit, MatchOffsets expected) {
+		MatchCursor cursor = new MatchCursor(pattern, input);
+		MatchOffsets actual = new MatchOffsets();
+		// alternate views, as a worker thread per page would
+		for (boolean wrapped = false; !cursor.isExhausted(); wrapped = !wrapped) {
+			MatchOffsets page = cursor.next(limit, wrapped ? new InterruptibleCharSequence(input) : input);
+			assertTrue(pattern.pattern(), page.size() <= limit);
+			for (int index = 0; index < page.size(); index++)
+				actual.add(page.start(index), page.end(index));
+		}
+
+		assertArrayEquals(pattern +" by "+ limit, expected.toArray(), actual.toArray());
+		assertEquals(expected.size(), cursor.getMatchCount());
+	}
+}
@@ -0,0 +1,74 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link MatchOffsets}.
+ */
+public class MatchOffsetsTest {
+	@Test
+	public void testAddBeyondCapacity() throws Exception {
+		MatchOffsets offsets = new MatchOffsets(1);
+		assertTrue(offsets.isEmpty());
+		for (int index = 0; index < 100; index++)
+			offsets.add(index * 10, index * 10 + 3);
+
+		assertEquals(100, offsets.size());
+		assertEquals(990, offsets.start(99));
+		assertEquals(993, offsets.end(99));
+		assertEquals(200, offsets.toArray().length);
+
+		offsets.clear();
+		assertTrue(offsets.isEmpty());
+	}
+
+	@Test
+	public void testSearchEnd() throws Exception {
+		MatchOffsets offsets = RegexUtil.findAllMatchOffsets(Pattern.compile("abc"), RegexUtilTest.INPUT);
+		// 0-3, 9-12, 18-21, 27-30
+		assertEquals(0, offsets.searchEnd(0));
+		assertEquals(0, offsets.searchEnd(3));
+		assertEquals(1, offsets.searchEnd(4));
+		assertEquals(1, offsets.searchEnd(10));
+		assertEquals(3, offsets.searchEnd(30));
+		assertEquals(4, offsets.searchEnd(31));
+		assertEquals(0, new MatchOffsets().searchEnd(5));
+	}
+
+	@Test
+	public void testWindow() throws Exception {
+		MatchOffsets offsets = RegexUtil.findAllMatchOffsets(Pattern.compile("abc"), RegexUtilTest.INPUT);
+		// 0-3, 9-12, 18-21, 27-30
+		assertArrayEquals(new int[] { 0, 2, 8, 11, 17, 20 }, offsets.window(10, 30).toArray());
+		assertArrayEquals(new int[] { 0, 3 }, offsets.window(18, 21).toArray());
+		assertTrue(offsets.window(13, 17).isEmpty());
+	}
+
+	@Test
+	public void testReplace() throws Exception {
+		MatchOffsets offsets = RegexUtil.findAllMatchOffsets(Pattern.compile("abc"), RegexUtilTest.INPUT);
+		assertEquals(2, offsets.searchStart(10));
+		assertEquals(4, offsets.searchStart(28));
+
+		MatchOffsets replacement = new MatchOffsets();
+		replacement.add(10, 11);
+		replacement.add(12, 13);
+		replacement.add(14, 15);
+		offsets.replace(1, 2, replacement, 5);
+		assertArrayEquals(new int[] { 0, 3, 10, 11, 12, 13, 14, 15, 23, 26, 32, 35 }, offsets.toArray());
+
+		offsets.replace(0, offsets.size(), new MatchOffsets(), 0);
+		assertTrue(offsets.isEmpty());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testBadIndex() throws Exception {
+		MatchOffsets offsets = new MatchOffsets();
+		offsets.add(0, 1);
+		offsets.start(1);
+	}
+}
@@ -0,0 +1,90 @@
+package com.obsglobal.util.regex;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link MatchProfiler} and {@link MatchProfile}.
+ */
+public class MatchProfilerTest {
+
+	@Test
+	public void testMatches() throws Exception {
+		Pattern pattern = Pattern.compile("\\d+|x*");
+		String input = "ab12 c345 x";
+		MatchProfile profile = new MatchProfiler().profile(pattern, input);
+		assertArrayEquals(RegexUtil.findAllMatchOffsets(pattern, input).toArray(), profile.getMatchOffsets().toArray());
+		assertEquals(profile.getMatchOffsets().size() + 1, profile.getAttemptCount());
+		assertEquals(0, profile.getSearchStart(0));
+		// the first match is empty, at 0, so the next search starts at 1
+		assertEquals(1, profile.getSearchStart(1));
+		assertTrue(profile.getTotalSteps() >= input.length());
+		assertTrue(profile.getTotalNanos() > 0);
+
+		long regionTotal = 0;
+		for (int region = 0; region < profile.getRegionCount(); region++)
+			regionTotal += profile.getRegionSteps(region);
+		assertEquals(profile.getTotalSteps(), regionTotal);
+	}
+
+	@Test
+	public void testCostliestAttempts() throws Exception {
+		// the search for the second match backtracks over the run of a's
+		String input = "c "+ StringUtils.repeat('a', 20) +"b c";
+		MatchProfile profile = new MatchProfiler().profile(Pattern.compile("(a|aa)*c"), input);
+		assertEquals(3, profile.getAttemptCount());
+		int[] costliest = profile.getCostliestAttempts(2);
+		assertEquals(2, costliest.length);
+		assertEquals(1, costliest[0]);
+		assertTrue(profile.getSteps(costliest[0]) >= profile.getSteps(costliest[1]));
+		assertEquals(3, profile.getCostliestAttempts(10).length);
+		assertEquals(0, profile.getCostliestAttempts(0).length);
+	}
+
+	@Test
+	public void testHeatLayers() throws Exception {
+		String input = StringUtils.repeat('x', 100) + StringUtils.repeat('a', 20) + StringUtils.repeat('x', 100);
+		MatchProfile profile = new MatchProfiler(16).profile(Pattern.compile("a*a*c"), input);
+		assertEquals(16, profile.getRegionLength());
+		assertEquals(14, profile.getRegionCount());
+
+		MatchOffsets[] layers = profile.getHeatLayers();
+		assertEquals(MatchProfile.HEAT_THRESHOLDS.length, layers.length);
+		// only the run of a's, from 100 to 120, gets hot
+		int hotRegions = 0;
+		for (MatchOffsets layer : layers) {
+			for (int index = 0; index < layer.size(); index++) {
+				assertTrue(layer.end(index) > 100);
+				assertTrue(layer.start(index) < 120);
+				++hotRegions;
+			}
+		}
+		assertEquals(2, hotRegions);
+	}
+
+	@Test
+	public void testWriteCsv() throws Exception {
+		MatchProfile profile = new MatchProfiler().profile(Pattern.compile("b+"), "abba b");
+		StringWriter writer = new StringWriter();
+		profile.writeCsv(writer);
+		String[] rows = writer.toString().split("\n");
+		assertEquals("kind,start,end,match_start,match_end,steps,nanos", rows[0]);
+		assertTrue(rows[1], rows[1].startsWith("match,0,3,1,3,"));
+		assertTrue(rows[2], rows[2].startsWith("match,3,6,5,6,"));
+		assertTrue(rows[3], rows[3].startsWith("miss,6,6,,,"));
+		// regions are single characters for short inputs
+		assertTrue(rows[4], rows[4].startsWith("region,0,1,,,"));
+		assertEquals(4 + 6, rows.length);
+	}
+
+	@Test(expected = MatchInterruptedException.class)
+	public void testInterrupt() throws Exception {
+		InterruptibleCharSequence input = new InterruptibleCharSequence(StringUtils.repeat('a', 40) +"b", 100);
+		new MatchProfiler().profile(Pattern.compile("(.*a){25}(?=$)"), input);
+	}
+}
@@ -0,0 +1,90 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link MultiPatternMatcher}.
+ */
+public class MultiPatternMatcherTest {
+	private static final String[] WORDS = {
+			"ERROR", "error", "WARN", "INFO", "timeout", "user=", "id=42", "[main]", "42", "Connection", "reset", " ", " ", "\t"
+	};
+
+	@Test
+	public void testMatchesSequentialScans() throws Exception {
+		List<Pattern> patterns = Arrays.asList(
+				Pattern.compile("ERROR \\[(\\w+)\\]"),
+				Pattern.compile("timeout"),
+				Pattern.compile("fatal|error", Pattern.CASE_INSENSITIVE),
+				Pattern.compile("user=\\S*"),
+				Pattern.compile("\\d+"),
+				Pattern.compile("(?m)^INFO.*$"),
+				Pattern.compile("Connection\\s+reset"),
+				Pattern.compile("id=4\\d|\\[main\\]"),
+				Pattern.compile("[main]", Pattern.LITERAL),
+				Pattern.compile("WARN$"),
+				Pattern.compile("(?<=\\s)reset\\b"));
+		MultiPatternMatcher matcher = new MultiPatternMatcher(patterns);
+		assertTrue(matcher.isPrefiltered(0));
+		assertTrue(matcher.isPrefiltered(2));
+		assertFalse(matcher.isPrefiltered(4));
+		assertFalse(matcher.isPrefiltered(6));
+
+		Random random = new Random(7);
+		for (int round = 0; round < 20; round++) {
+			String input = randomInput(random, 500);
+			MatchOffsets[] offsets = matcher.findAllMatchOffsets(input);
+			for (int id = 0; id < patterns.size(); id++) {
+				MatchOffsets expected = RegexUtil.findAllMatchOffsets(patterns.get(id), input);
+				assertArrayEquals(patterns.get(id).pattern(), expected.toArray(), offsets[id].toArray());
+			}
+		}
+	}
+
+	@Test
+	public void testVisitsInOffsetOrder() throws Exception {
+		MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList(
+				Pattern.compile("bar"), Pattern.compile("foo"), Pattern.compile("o+")));
+		final List<String> matches = new ArrayList<String>();
+		int count = matcher.visitMatches("foo bar\nbar foo", new MultiPatternMatcher.Visitor() {
+			@Override
+			public boolean visitMatch(int pattern, int start, int end) {
+				matches.add(pattern +":"+ start +"-"+ end);
+				return true;
+			}
+		});
+
+		assertEquals(6, count);
+		assertEquals("[1:0-3, 2:1-3, 0:4-7, 0:8-11, 1:12-15, 2:13-15]", matches.toString());
+	}
+
+	@Test
+	public void testRangeCoveringLineFeed() throws Exception {
+		Pattern pattern = Pattern.compile("ab[\\t-\\r]cd");
+		MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList(pattern, Pattern.compile("yy")));
+		assertFalse(matcher.isPrefiltered(0));
+		String input = "xx ab\ncd yy ab cd";
+		MatchOffsets[] offsets = matcher.findAllMatchOffsets(input);
+		assertArrayEquals(new int[] { 3, 8 }, offsets[0].toArray());
+		assertArrayEquals(RegexUtil.findAllMatchOffsets(pattern, input).toArray(), offsets[0].toArray());
+	}
+
+	private static String randomInput(Random random, int wordCount) {
+		StringBuilder input = new StringBuilder();
+		for (int index = 0; index < wordCount; index++) {
+			input.append(WORDS[random.nextInt(WORDS.length)]);
+			if (random.nextInt(8) == 0)
+				input.append(random.nextBoolean() ? "\n" : "\r\n");
+		}
+
+		return input.toString();
+	}
+}
@@ -0,0 +1,131 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.swing.*;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.PlainDocument;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link OffsetHighlighter}.
+ */
+public class OffsetHighlighterTest {
+	private static final int LINE_COUNT = 10000;
+
+	private JTextArea textArea;
+	private OffsetHighlighter highlighter;
+	private int paintCount;
+	private final Highlighter.HighlightPainter countingPainter = new DefaultHighlighter.DefaultHighlightPainter(Color.green) {
+		@Override
+		public void paint(Graphics g, int offs0, int offs1, Shape bounds, JTextComponent c) {
+			++paintCount;
+			super.paint(g, offs0, offs1, bounds, c);
+		}
+	};
+
+	@Before
+	public void createTextArea() throws Exception {
+		StringBuilder text = new StringBuilder();
+		for (int line = 0; line < LINE_COUNT; line++)
+			text.append("foo abc bar abc\n");
+
+		textArea = new JTextArea(text.toString());
+		highlighter = new OffsetHighlighter();
+		textArea.setHighlighter(highlighter);
+		textArea.setSize(textArea.getPreferredSize());
+		paintCount = 0;
+	}
+
+	@Test
+	public void testPaintsOnlyVisibleOffsets() throws Exception {
+		MatchOffsets offsets = RegexUtil.findAllMatchOffsets(Pattern.compile("abc"), textArea.getText());
+		assertEquals(LINE_COUNT * 2, offsets.size());
+		highlighter.setOffsets(offsets, countingPainter);
+
+		BufferedImage image = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		graphics.setClip(0, 0, 400, 200);
+		highlighter.paint(graphics);
+		graphics.dispose();
+
+		assertTrue("painted "+ paintCount, paintCount > 0);
+		assertTrue("painted "+ paintCount, paintCount < 100);
+	}
+
+	@Test
+	public void testHighlightsAndRemoval() throws Exception {
+		MatchOffsets offsets = new MatchOffsets();
+		offsets.add(4, 7);
+		offsets.add(12, 15);
+		highlighter.setOffsets(offsets, countingPainter);
+		highlighter.addHighlight(0, 3, countingPainter);
+
+		Highlighter.Highlight[] highlights = highlighter.getHighlights();
+		assertEquals(3, highlights.length);
+		assertEquals(0, highlights[0].getStartOffset());
+		assertEquals(4, highlights[1].getStartOffset());
+		assertEquals(7, highlights[1].getEndOffset());
+		assertEquals(12, highlights[2].getStartOffset());
+		assertSame(countingPainter, highlights[2].getPainter());
+
+		highlighter.removeAllHighlights();
+		assertEquals(0, highlighter.getHighlights().length);
+	}
+
+	@Test
+	public void testEditClearsOffsets() throws Exception {
+		MatchOffsets offsets = new MatchOffsets();
+		offsets.add(4, 7);
+		highlighter.setOffsets(offsets, countingPainter);
+		assertEquals(1, highlighter.getHighlights().length);
+
+		textArea.insert("x", 0);
+		assertTrue(highlighter.getOffsets().isEmpty());
+		assertEquals(0, highlighter.getHighlights().length);
+	}
+
+	@Test
+	public void testOffsetLayers() throws Exception {
+		Highlighter.HighlightPainter otherPainter = new DefaultHighlighter.DefaultHighlightPainter(Color.pink);
+		highlighter.setOffsets(RegexUtil.findAllMatchOffsets(Pattern.compile("abc"), textArea.getText()), countingPainter);
+		highlighter.addOffsets(RegexUtil.findAllMatchOffsets(Pattern.compile("foo"), textArea.getText()), otherPainter);
+		assertEquals(2, highlighter.getOffsetLayerCount());
+		assertEquals(LINE_COUNT * 2, highlighter.getOffsets().size());
+		assertEquals(LINE_COUNT, highlighter.getOffsets(1).size());
+
+		Highlighter.Highlight[] highlights = highlighter.getHighlights();
+		assertEquals(LINE_COUNT * 3, highlights.length);
+		assertSame(otherPainter, highlights[highlights.length - 1].getPainter());
+
+		BufferedImage image = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		graphics.setClip(0, 0, 400, 200);
+		highlighter.paint(graphics);
+		graphics.dispose();
+		assertTrue("painted "+ paintCount, paintCount > 0 && paintCount < 100);
+
+		highlighter.clearOffsets();
+		assertEquals(0, highlighter.getOffsetLayerCount());
+	}
+
+	@Test
+	public void testReplacingDocumentClearsOffsets() throws Exception {
+		highlighter.setClearOnEdit(false);
+		highlighter.setOffsets(RegexUtil.findAllMatchOffsets(Pattern.compile("abc"), textArea.getText()), countingPainter);
+		textArea.setDocument(new PlainDocument());
+		assertEquals(0, highlighter.getOffsetLayerCount());
+
+		highlighter.setClearOnEdit(true);
+		highlighter.setOffsets(new MatchOffsets(), countingPainter);
+		textArea.setText("abc");
+		assertEquals(0, highlighter.getOffsetLayerCount());
+	}
+}
@@ -0,0 +1,119 @@
+package com.obsglobal.util.regex;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link ParallelMatcher}.
+ */
+public class ParallelMatcherTest {
+	private static final String[] LINE_BOUNDED = {
+			"abc", "\\w+", "a*", "(?m)^\\w+$", "(?m)^", "\\b\\d{2}\\b", "(?<=x)y", "y(?=z)", "(\\w)\\1", "x|", "\\d+$"
+	};
+	private static String input;
+
+	@BeforeClass
+	public static void createInput() throws Exception {
+		Random random = new Random(42);
+		String alphabet = "abcxyz 0123\n";
+		StringBuilder builder = new StringBuilder();
+		for (int index = 0; index < 20000; index++)
+			builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+
+		input = builder.toString();
+	}
+
+	@Test
+	public void testLineModeMatchesSequential() throws Exception {
+		ParallelMatcher parallelMatcher = new ParallelMatcher(ForkJoinPool.commonPool(), 100, 0);
+		for (String expression : LINE_BOUNDED) {
+			Pattern pattern = Pattern.compile(expression);
+			assertTrue(expression, parallelMatcher.canSplit(pattern));
+			assertArrayEquals(expression, RegexUtil.findAllMatchOffsets(pattern, input).toArray(),
+					parallelMatcher.findAllMatchOffsets(pattern, input).toArray());
+		}
+	}
+
+	@Test
+	public void testMaxMatchLengthModeMatchesSequential() throws Exception {
+		ParallelMatcher parallelMatcher = new ParallelMatcher(ForkJoinPool.commonPool(), 64, 8);
+		for (String expression : new String[] { "[a-c]{1,8}", "\\s+", "\\n\\w", "a*", "(?s).{8}", "[^x]{3}" }) {
+			Pattern pattern = Pattern.compile(expression);
+			assertTrue(expression, parallelMatcher.canSplit(pattern));
+			assertArrayEquals(expression, RegexUtil.findAllMatchOffsets(pattern, input).toArray(),
+					parallelMatcher.findAllMatchOffsets(pattern, input).toArray());
+		}
+	}
+
+	@Test
+	public void testSpillingMatchesResynchronize() throws Exception {
+		// max match length is understated on purpose, matches longer than a chunk force rescans
+		ParallelMatcher parallelMatcher = new ParallelMatcher(ForkJoinPool.commonPool(), 50, 200);
+		Pattern pattern = Pattern.compile("[^\\n]{30,120}");
+		assertArrayEquals(RegexUtil.findAllMatchOffsets(pattern, input).toArray(),
+				parallelMatcher.findAllMatchOffsets(pattern, input).toArray());
+	}
+
+	@Test
+	public void testFallsBackToSequential() throws Exception {
+		ParallelMatcher parallelMatcher = new ParallelMatcher(ForkJoinPool.commonPool(), 100, 0);
+		for (String expression : new String[] { "\\s+", "[^a]+", "(?s)a.*?b", "\\Gabc", "a\\nb", "[\\t-\\r]", "\\x0A" }) {
+			Pattern pattern = Pattern.compile(expression);
+			assertFalse(expression, parallelMatcher.canSplit(pattern));
+			assertArrayEquals(expression, RegexUtil.findAllMatchOffsets(pattern, input).toArray(),
+					parallelMatcher.findAllMatchOffsets(pattern, input).toArray());
+		}
+		assertFalse(ParallelMatcher.isLineBounded(Pattern.compile("a.b", Pattern.DOTALL)));
+		assertTrue(ParallelMatcher.isLineBounded(Pattern.compile("a.b")));
+		assertTrue(ParallelMatcher.isLineBounded(Pattern.compile("[a", Pattern.LITERAL)));
+		assertTrue(ParallelMatcher.isLineBounded(Pattern.compile("\\p{Alpha}+[^\\n]\\x41")));
+		assertFalse(ParallelMatcher.isLineBounded(Pattern.compile("[\t-~]")));
+		assertFalse(ParallelMatcher.isLineBounded(Pattern.compile("a(?=[\\t-\\r])")));
+	}
+
+	@Test
+	public void testGraphemeBoundariesScanSequentially() throws Exception {
+		StringBuilder builder = new StringBuilder();
+		for (int index = 0; index < 500; index++)
+			builder.append("e\u0301x\r\n");
+		String graphemes = builder.toString();
+		ParallelMatcher parallelMatcher = new ParallelMatcher(ForkJoinPool.commonPool(), 63, 8);
+		for (String expression : new String[] { "\\b{g}", "\\X", "x\\X" }) {
+			Pattern pattern = Pattern.compile(expression);
+			assertFalse(expression, parallelMatcher.canSplit(pattern));
+			assertArrayEquals(expression, RegexUtil.findAllMatchOffsets(pattern, graphemes).toArray(),
+					parallelMatcher.findAllMatchOffsets(pattern, graphemes).toArray());
+		}
+	}
+
+	@Test
+	public void testRangeCoveringLineFeed() throws Exception {
+		StringBuilder builder = new StringBuilder();
+		for (int line = 0; line < 5000; line++)
+			builder.append("xxxxa\nb");
+		String lines = builder.toString();
+		Pattern pattern = Pattern.compile("a[\\t-\\r]b");
+		ParallelMatcher parallelMatcher = new ParallelMatcher(ForkJoinPool.commonPool(), 1000, 0);
+		assertFalse(parallelMatcher.canSplit(pattern));
+		MatchOffsets offsets = parallelMatcher.findAllMatchOffsets(pattern, lines);
+		assertEquals(5000, offsets.size());
+		assertArrayEquals(RegexUtil.findAllMatchOffsets(pattern, lines).toArray(), offsets.toArray());
+	}
+
+	@Test
+	public void testSplitOnLines() throws Exception {
+		ParallelMatcher parallelMatcher = new ParallelMatcher(ForkJoinPool.commonPool(), 4, 0);
+		assertArrayEquals(new int[] { 0, 6, 12, 14 }, parallelMatcher.split("abcde\nfghij\nkl"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadChunkLength() throws Exception {
+		new ParallelMatcher(ForkJoinPool.commonPool(), 0, 0);
+	}
+}
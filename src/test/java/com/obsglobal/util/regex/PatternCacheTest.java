@@ -0,0 +1,79 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link PatternCache}.
+ */
+public class PatternCacheTest {
+	@Test
+	public void testHitsAndMisses() throws Exception {
+		PatternCache cache = new PatternCache();
+		Pattern pattern = cache.compile("abc", 0);
+		assertSame(pattern, cache.compile("abc", 0));
+		assertNotSame(pattern, cache.compile("abc", Pattern.CASE_INSENSITIVE));
+		assertEquals(Pattern.CASE_INSENSITIVE, cache.compile("abc", Pattern.CASE_INSENSITIVE).flags());
+
+		assertEquals(2, cache.size());
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(6, cache.getWeight());
+		assertTrue(cache.getCompileNanos() > 0);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() throws Exception {
+		PatternCache cache = new PatternCache(2, 100);
+		Pattern a = cache.compile("a", 0);
+		cache.compile("b", 0);
+		assertSame(a, cache.compile("a", 0));	// b is now eldest
+		cache.compile("c", 0);
+
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertSame(a, cache.compile("a", 0));
+		long misses = cache.getMissCount();
+		cache.compile("b", 0);
+		assertEquals(misses + 1, cache.getMissCount());
+	}
+
+	@Test
+	public void testWeightEviction() throws Exception {
+		PatternCache cache = new PatternCache(10, 8);
+		cache.compile("abcd", 0);
+		cache.compile("efgh", 0);
+		assertEquals(2, cache.size());
+		cache.compile("ijkl", 0);
+		assertEquals(2, cache.size());
+		assertEquals(8, cache.getWeight());
+
+		cache.compile("this expression is heavier than the limit", 0);
+		assertEquals(1, cache.size());
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+	}
+
+	@Test
+	public void testBadPatternNotCached() throws Exception {
+		PatternCache cache = new PatternCache();
+		try {
+			cache.compile(")))bad pattern))", 0);
+			fail("Compiled bad pattern");
+		}
+		catch (PatternSyntaxException ex) {
+			assertNotNull(ex);
+		}
+		assertEquals(0, cache.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadLimits() throws Exception {
+		new PatternCache(0, 10);
+	}
+}
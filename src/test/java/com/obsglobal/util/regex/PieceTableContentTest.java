@@ -0,0 +1,76 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link PieceTableContent}.
+ */
+public class PieceTableContentTest {
+	@Test
+	public void testDocument() throws Exception {
+		PieceTableContent content = new PieceTableContent();
+		PlainDocument document = new PlainDocument(content);
+		document.insertString(0, "abc\ndef\nghi", null);
+		assertEquals(11, document.getLength());
+		assertEquals(3, document.getDefaultRootElement().getElementCount());
+		Element line = document.getDefaultRootElement().getElement(1);
+		assertEquals(4, line.getStartOffset());
+		assertEquals(8, line.getEndOffset());
+
+		document.insertString(5, "xx\n", null);
+		document.remove(0, 4);
+		assertEquals("dxx\nef\nghi", document.getText(0, document.getLength()));
+		assertEquals(3, document.getDefaultRootElement().getElementCount());
+		assertEquals("dxx\nef\nghi", content.snapshot().toString());
+	}
+
+	@Test
+	public void testSnapshot() throws Exception {
+		PieceTableContent content = new PieceTableContent(PieceTable.of("abc"));
+		PieceTable before = content.snapshot();
+		assertSame(before, content.snapshot());
+
+		content.insertString(1, "x");
+		assertEquals("abc", before.toString());
+		assertEquals("axbc", content.snapshot().toString());
+		assertEquals(5, content.length());	// with the implied newline
+		assertEquals("xbc\n", content.getString(1, 4));
+	}
+
+	@Test
+	public void testPositions() throws Exception {
+		PieceTableContent content = new PieceTableContent(PieceTable.of("abcdef"));
+		Position start = content.createPosition(0);
+		Position middle = content.createPosition(3);
+		Position end = content.createPosition(6);
+		content.insertString(0, "xx");
+		assertEquals(0, start.getOffset());
+		assertEquals(5, middle.getOffset());
+		assertEquals(8, end.getOffset());
+
+		content.remove(4, 2);
+		assertEquals(4, middle.getOffset());
+		assertEquals(6, end.getOffset());
+	}
+
+	@Test
+	public void testPartialReturn() throws Exception {
+		PieceTableContent content = new PieceTableContent(PieceTable.of("abc"));
+		content.insertString(3, "€€");
+		Segment segment = new Segment();
+		segment.setPartialReturn(true);
+		content.getChars(1, 5, segment);
+		assertEquals("bc", segment.toString());
+		content.getChars(3, 3, segment);
+		assertEquals("€€", segment.toString());
+		content.getChars(5, 1, segment);
+		assertEquals("\n", segment.toString());
+	}
+}
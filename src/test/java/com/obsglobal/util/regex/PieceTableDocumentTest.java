@@ -0,0 +1,51 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link PieceTableDocument}.
+ */
+public class PieceTableDocumentTest {
+	@Test
+	public void testLinesAsInserted() throws Exception {
+		String[] texts = {"", "abc", "abc\n", "\n\nabc\nde\n\nf", "a\r\nb\r\n"};
+		for (String text : texts) {
+			PlainDocument inserted = new PlainDocument();
+			inserted.insertString(0, text, null);
+			PieceTableDocument created = new PieceTableDocument(PieceTable.of(text));
+			assertEquals(text, created.getText(0, created.getLength()));
+
+			Element expected = inserted.getDefaultRootElement();
+			Element actual = created.getDefaultRootElement();
+			assertEquals(text, expected.getElementCount(), actual.getElementCount());
+			for (int line = 0; line < expected.getElementCount(); line++) {
+				assertEquals(text, expected.getElement(line).getStartOffset(), actual.getElement(line).getStartOffset());
+				assertEquals(text, expected.getElement(line).getEndOffset(), actual.getElement(line).getEndOffset());
+			}
+		}
+	}
+
+	@Test
+	public void testEdits() throws Exception {
+		PieceTable text = PieceTable.of("abc\ndef\nghi");
+		PieceTableDocument document = new PieceTableDocument(text);
+		document.insertString(5, "xx\n", null);
+		document.remove(0, 4);
+		assertEquals("dxx\nef\nghi", document.getText(0, document.getLength()));
+		assertEquals(3, document.getDefaultRootElement().getElementCount());
+		assertEquals(4, document.getDefaultRootElement().getElement(1).getStartOffset());
+		assertEquals("dxx\nef\nghi", document.snapshot().toString());
+		assertEquals("abc\ndef\nghi", text.toString());
+	}
+
+	@Test
+	public void testComplexText() throws Exception {
+		assertFalse(Boolean.TRUE.equals(new PieceTableDocument(PieceTable.of("café naïve")).getProperty("i18n")));
+		assertEquals(Boolean.TRUE, new PieceTableDocument(PieceTable.of("abc אב")).getProperty("i18n"));
+	}
+}
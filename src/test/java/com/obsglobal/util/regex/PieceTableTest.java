@@ -0,0 +1,144 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link PieceTable}.
+ */
+public class PieceTableTest {
+	@Test
+	public void testLatin1Compaction() throws Exception {
+		PieceTable latin1 = PieceTable.of("café abc");
+		assertEquals("café abc", latin1.toString());
+		assertEquals(8, latin1.getBufferBytes());
+
+		PieceTable wide = PieceTable.of("€ abc");
+		assertEquals('€', wide.charAt(0));
+		assertEquals(10, wide.getBufferBytes());
+	}
+
+	@Test
+	public void testEditsShareText() throws Exception {
+		PieceTable original = PieceTable.of(RegexUtilTest.INPUT);
+		PieceTable edited = original.insert(3, "XYZ").delete(0, 1);
+		assertEquals(RegexUtilTest.INPUT, original.toString());
+		assertEquals(RegexUtilTest.INPUT.substring(1, 3) +"XYZ"+ RegexUtilTest.INPUT.substring(3), edited.toString());
+		assertEquals(3, edited.getPieceCount());
+		assertSame(original, original.subSequence(0, original.length()));
+		assertTrue(edited.getBufferBytes() < 2L * RegexUtilTest.INPUT.length() + PieceTable.APPEND_BUFFER_LENGTH);
+	}
+
+	@Test
+	public void testTypingExtendsPiece() throws Exception {
+		PieceTable table = PieceTable.of("ab");
+		for (char c = 'c'; c <= 'z'; c++)
+			table = table.insert(table.length(), String.valueOf(c));
+
+		assertEquals("abcdefghijklmnopqrstuvwxyz", table.toString());
+		assertEquals(2, table.getPieceCount());
+
+		table = table.insert(1, "€").insert(2, "€");	// not Latin-1, so in another buffer
+		assertEquals("a€€bcdefghijklmnopqrstuvwxyz", table.toString());
+		assertEquals(4, table.getPieceCount());
+	}
+
+	@Test
+	public void testMatchesAsString() throws Exception {
+		PieceTable table = PieceTable.of(RegexUtilTest.INPUT).insert(10, "abc").delete(20, 25);
+		String text = table.toString();
+		Pattern pattern = Pattern.compile("abc|\\s+");
+		assertArrayEquals(RegexUtil.findAllMatchOffsets(pattern, text).toArray(),
+				RegexUtil.findAllMatchOffsets(pattern, table).toArray());
+	}
+
+	@Test
+	public void testRandomEdits() throws Exception {
+		Random random = new Random(7);
+		for (int round = 0; round < 20; round++) {
+			StringBuilder expected = new StringBuilder("0123456789");
+			PieceTable table = PieceTable.of(expected);
+			PieceTable[] earlier = new PieceTable[50];
+			String[] earlierText = new String[earlier.length];
+			for (int edit = 0; edit < earlier.length; edit++) {
+				earlier[edit] = table;
+				earlierText[edit] = expected.toString();
+				int start = random.nextInt(expected.length() + 1);
+				if (random.nextBoolean() && start < expected.length()) {
+					int end = start + 1 + random.nextInt(Math.min(20, expected.length() - start));
+					expected.delete(start, end);
+					table = table.delete(start, end);
+				}
+				else {
+					StringBuilder inserted = new StringBuilder();
+					for (int length = random.nextInt(random.nextInt(10) == 0 ? 5000 : 8) + 1; length > 0; length--)
+						inserted.append((char) (random.nextInt(20) == 0 ? 0x400 + random.nextInt(50) : 'a' + random.nextInt(26)));
+					expected.insert(start, inserted);
+					table = table.insert(start, inserted);
+				}
+
+				assertEquals(expected.toString(), table.toString());
+				for (int index = 0; index < expected.length(); index += 1 + random.nextInt(7))
+					assertEquals(expected.charAt(index), table.charAt(index));
+				int from = random.nextInt(expected.length() + 1), to = from + random.nextInt(expected.length() - from + 1);
+				assertEquals(expected.substring(from, to), table.subSequence(from, to).toString());
+			}
+
+			for (int edit = 0; edit < earlier.length; edit++)
+				assertEquals(earlierText[edit], earlier[edit].toString());
+		}
+	}
+
+	@Test
+	public void testBuilderSharesText() throws Exception {
+		StringBuilder text = new StringBuilder();
+		for (int line = 0; line < 1000; line++)
+			text.append("line ").append(line).append(" of the input\n");
+		PieceTable input = PieceTable.of(text);
+		PieceTable.Builder builder = new PieceTable.Builder();
+		builder.append(input, 0, 5000).append("~").append(input, 5000, 5010).append(input, 5010, text.length());
+		PieceTable built = builder.build();
+		assertEquals(text.substring(0, 5000) +"~"+ text.substring(5000), built.toString());
+		assertEquals(text.length() + 1, builder.length());
+		// the short run is copied after the replacement, the rest shares the input, contiguous runs in one piece
+		assertEquals(3, built.getPieceCount());
+		assertEquals(input.getBufferBytes() + PieceTable.APPEND_BUFFER_LENGTH, built.getBufferBytes());
+
+		builder.append('x');
+		assertEquals(text.length() + 1, built.length());
+		assertEquals(text.length() + 2, builder.build().length());
+		assertSame(PieceTable.EMPTY, new PieceTable.Builder().build());
+	}
+
+	@Test
+	public void testBuilderCopiesOtherText() throws Exception {
+		PieceTable.Builder builder = new PieceTable.Builder();
+		StringBuilder expected = new StringBuilder();
+		Random random = new Random(11);
+		for (int append = 0; append < 200; append++) {
+			StringBuilder appended = new StringBuilder();
+			for (int length = random.nextInt(random.nextInt(10) == 0 ? 5000 : 30); length > 0; length--)
+				appended.append((char) (random.nextInt(20) == 0 ? 0x400 + random.nextInt(50) : 'a' + random.nextInt(26)));
+			int start = random.nextInt(appended.length() + 1);
+			builder.append(appended, start, appended.length());
+			expected.append(appended, start, appended.length());
+		}
+		PieceTable built = builder.build();
+		assertEquals(expected.toString(), built.toString());
+		assertEquals(expected.toString(), built.insert(10, "abc").delete(10, 13).toString());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testCharAtOutOfBounds() throws Exception {
+		PieceTable.of("abc").insert(3, "d").charAt(4);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testDeleteOutOfBounds() throws Exception {
+		PieceTable.of("abc").delete(2, 4);
+	}
+}
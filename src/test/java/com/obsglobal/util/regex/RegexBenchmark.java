@@ -0,0 +1,500 @@
+package com.obsglobal.util.regex;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+/**
+ * Micro benchmark of the {@link RegexUtil} scans and of the editor's highlight and replace, over generated
+ * {@link BenchmarkCorpus} inputs, to judge engine changes on numbers and catch performance regressions.
+ * <p/>
+ * Every combination of operation, corpus, hit density, pattern, pattern size and options is a benchmark, named like
+ * <code>findAllMatches/log/keywords-16/CASE_INSENSITIVE/0.2</code>. Each is warmed up, then timed over several
+ * iterations that repeat the operation for a fixed time. The score is the mean time per operation with its standard
+ * deviation across iterations, plus the bytes the thread allocated per operation where the JVM reports them.
+ * Results can be written as CSV and compared with the CSV of an earlier run.
+ * <p/>
+ * Exits with 0, 1 if the baseline comparison found regressions and 2 on errors.
+ */
+public class RegexBenchmark {
+	static final int EXIT_OK = 0, EXIT_REGRESSION = 1, EXIT_ERROR = 2;
+	static final String USAGE =
+			"usage: RegexBenchmark [options]\n" +
+			"  -f, --filter REGEX       run only the benchmarks whose name contains a match\n" +
+			"  -l, --length CHARS       corpus length, default 1000000\n" +
+			"  -d, --densities LIST     comma separated fractions of corpus records with a hit, default 0.01,0.2\n" +
+			"  -s, --sizes LIST         comma separated keyword counts of the keyword patterns, default 1,16\n" +
+			"  -w, --warmup N           warmup iterations, default 1\n" +
+			"  -i, --iterations N       measured iterations, default 3\n" +
+			"  -t, --time MILLIS        time per iteration, default 200\n" +
+			"  -o, --output FILE        write the results as CSV\n" +
+			"  -b, --baseline FILE      compare the results with the CSV of an earlier run\n" +
+			"      --threshold PERCENT  slowdown reported as a regression, default 10\n" +
+			"      --no-prefilter       run the matcher over the whole input instead of near required literals\n" +
+			"      --list               print the benchmark names without running them\n" +
+			"  -h, --help               print this message";
+	static final String CSV_HEADER = "benchmark,us_per_op,error_us,bytes_per_op,result";
+	static final String REPLACEMENT = "<$0>";
+	static final long SEED = 42;
+
+	enum Operation {
+		FIND_ALL_MATCHES("findAllMatches") {
+			@Override
+			long run(Pattern pattern, String input) {
+				return RegexUtil.findAllMatches(pattern, input).size();
+			}
+		},
+		FIND_FIRST_MATCH("findFirstMatch") {
+			@Override
+			long run(Pattern pattern, String input) {
+				MatchResult match = RegexUtil.findFirstMatch(pattern, input);
+				return match == null ? -1 : match.start();
+			}
+		},
+		FIND_ALL_MATCH_OFFSETS("findAllMatchOffsets") {
+			@Override
+			long run(Pattern pattern, String input) {
+				return RegexUtil.findAllMatchOffsets(pattern, input).size();
+			}
+		},
+		/** the editor's Apply, on the engine it selects */
+		HIGHLIGHT("highlight") {
+			@Override
+			long run(Pattern pattern, String input) {
+				return RegexUtil.selectEngine(pattern).findAllMatchOffsets(pattern, input).size();
+			}
+		},
+		/** the editor's Apply with Replace selected */
+		REPLACE_ALL("replaceAll") {
+			@Override
+			long run(Pattern pattern, String input) {
+				return RegexUtil.replaceAll(pattern, input, REPLACEMENT).getText().length();
+			}
+		};
+
+		private final String name;
+
+		Operation(String name) {
+			this.name = name;
+		}
+
+		String getName() {
+			return name;
+		}
+
+		/**
+		 * @return a number depending on the whole result, so it cannot be optimized away and runs can be checked
+		 * to compute the same
+		 */
+		abstract long run(Pattern pattern, String input);
+	}
+
+	/**
+	 * An expression, on one corpus or all, with the options it is measured with.
+	 */
+	static final class PatternCase {
+		final String name;
+		final BenchmarkCorpus corpus;
+		final String expression;
+		final int[] flags;
+
+		/**
+		 * @param expression <code>null</code> for an alternation of the corpus hit word and absent words,
+		 * as many as each pattern size
+		 */
+		PatternCase(String name, BenchmarkCorpus corpus, String expression, int... flags) {
+			this.name = name;
+			this.corpus = corpus;
+			this.expression = expression;
+			this.flags = flags;
+		}
+
+		boolean isSized() {
+			return expression == null;
+		}
+	}
+
+	static final PatternCase[] PATTERNS = {
+			new PatternCase("keywords", null, null, 0, Pattern.CASE_INSENSITIVE, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE),
+			new PatternCase("latency", BenchmarkCorpus.LOG, "\\d+ms timeout", 0),
+			new PatternCase("address", BenchmarkCorpus.LOG, "[\\w.]+@example\\.com", 0),
+			new PatternCase("errorLine", BenchmarkCorpus.LOG, "^.*ERROR.*$", Pattern.MULTILINE),
+			new PatternCase("fields", BenchmarkCorpus.CSV, "^([^,\\n]*),([^,\\n]*),", Pattern.MULTILINE),
+			new PatternCase("quoted", BenchmarkCorpus.CSV, "\"[^\"]*\"", 0),
+			// a character, not an escape, as CANON_EQ does not apply to escapes
+			new PatternCase("canonical", BenchmarkCorpus.UNICODE, "caf\u00e9", 0, Pattern.CANON_EQ),
+			new PatternCase("folded", BenchmarkCorpus.UNICODE, "stra\u00dfe|\u00fcber",
+					Pattern.CASE_INSENSITIVE, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE),
+			new PatternCase("letters", BenchmarkCorpus.UNICODE, "\\p{L}+", 0)
+	};
+
+	/**
+	 * One benchmark, with its input generated when first needed.
+	 */
+	static final class Case {
+		final String name;
+		final Operation operation;
+		final Pattern pattern;
+		final BenchmarkCorpus corpus;
+		final double density;
+
+		Case(String name, Operation operation, Pattern pattern, BenchmarkCorpus corpus, double density) {
+			this.name = name;
+			this.operation = operation;
+			this.pattern = pattern;
+			this.corpus = corpus;
+			this.density = density;
+		}
+	}
+
+	/**
+	 * The score of one benchmark, as written to and read from the CSV.
+	 */
+	static final class Result {
+		final String name;
+		final double micros, error;
+		/** -1 where the JVM does not report allocations */
+		final long bytes;
+		final long result;
+
+		Result(String name, double micros, double error, long bytes, long result) {
+			this.name = name;
+			this.micros = micros;
+			this.error = error;
+			this.bytes = bytes;
+			this.result = result;
+		}
+
+		String toCsv() {
+			return String.format(Locale.ENGLISH, "%s,%.3f,%.3f,%d,%d", name, micros, error, bytes, result);
+		}
+
+		static Result parse(String line) {
+			String[] fields = line.split(",");
+			if (fields.length != 5)
+				throw new IllegalArgumentException("Not a benchmark result: "+ line);
+
+			return new Result(fields[0], Double.parseDouble(fields[1]), Double.parseDouble(fields[2]),
+					Long.parseLong(fields[3]), Long.parseLong(fields[4]));
+		}
+	}
+
+	/** keeps every operation result alive */
+	static volatile long sink;
+
+	private Pattern filter = null;
+	private int length = 1000000;
+	private double[] densities = { 0.01, 0.2 };
+	private int[] sizes = { 1, 16 };
+	private int warmupIterations = 1, iterations = 3;
+	private long iterationMillis = 200;
+	private File output = null, baseline = null;
+	private double thresholdPercent = 10;
+	private boolean prefilter = true, list = false, help = false;
+
+	public static void main(String[] args) {
+		System.exit(run(args, System.out, System.err));
+	}
+
+	public static int run(String[] args, PrintStream out, PrintStream err) {
+		RegexBenchmark benchmark = new RegexBenchmark();
+		try {
+			benchmark.parse(args);
+		}
+		catch (IllegalArgumentException ex) {
+			err.println("ERROR - "+ ex.getMessage());
+			err.println(USAGE);
+			return EXIT_ERROR;
+		}
+
+		if (benchmark.help) {
+			out.println(USAGE);
+			return EXIT_OK;
+		}
+
+		boolean prefilterEnabled = RegexUtil.isPrefilterEnabled();
+		RegexUtil.setPrefilterEnabled(prefilterEnabled && benchmark.prefilter);
+		try {
+			return benchmark.execute(out);
+		}
+		catch (Exception ex) {
+			err.println("ERROR - "+ ex.getMessage());
+			return EXIT_ERROR;
+		}
+		finally {
+			RegexUtil.setPrefilterEnabled(prefilterEnabled);
+		}
+	}
+
+	void parse(String[] args) {
+		for (int index = 0; index < args.length; index++) {
+			String arg = args[index];
+			try {
+				if (arg.equals("-f") || arg.equals("--filter")) {
+					String value = value(args, ++index, arg);
+					filter = value.isEmpty() ? null : Pattern.compile(value);
+				}
+				else if (arg.equals("-l") || arg.equals("--length"))
+					length = Integer.parseInt(value(args, ++index, arg));
+				else if (arg.equals("-d") || arg.equals("--densities")) {
+					String[] values = value(args, ++index, arg).split(",");
+					densities = new double[values.length];
+					for (int value = 0; value < values.length; value++)
+						densities[value] = Double.parseDouble(values[value].trim());
+				}
+				else if (arg.equals("-s") || arg.equals("--sizes")) {
+					String[] values = value(args, ++index, arg).split(",");
+					sizes = new int[values.length];
+					for (int value = 0; value < values.length; value++)
+						sizes[value] = Integer.parseInt(values[value].trim());
+				}
+				else if (arg.equals("-w") || arg.equals("--warmup"))
+					warmupIterations = Integer.parseInt(value(args, ++index, arg));
+				else if (arg.equals("-i") || arg.equals("--iterations"))
+					iterations = Integer.parseInt(value(args, ++index, arg));
+				else if (arg.equals("-t") || arg.equals("--time"))
+					iterationMillis = Long.parseLong(value(args, ++index, arg));
+				else if (arg.equals("-o") || arg.equals("--output"))
+					output = file(value(args, ++index, arg));
+				else if (arg.equals("-b") || arg.equals("--baseline"))
+					baseline = file(value(args, ++index, arg));
+				else if (arg.equals("--threshold"))
+					thresholdPercent = Double.parseDouble(value(args, ++index, arg));
+				else if (arg.equals("--no-prefilter"))
+					prefilter = false;
+				else if (arg.equals("--list"))
+					list = true;
+				else if (arg.equals("-h") || arg.equals("--help"))
+					help = true;
+				else
+					throw new IllegalArgumentException("Unknown option: "+ arg);
+			}
+			catch (NumberFormatException ex) {
+				throw new IllegalArgumentException("Not a number for "+ arg +": "+ args[index]);
+			}
+		}
+
+		if (iterations < 1 || warmupIterations < 0 || iterationMillis < 1 || length < 1)
+			throw new IllegalArgumentException("Iterations, time and length must be positive");
+	}
+
+	int execute(PrintStream out) throws IOException {
+		Map<String, Result> baselineResults = baseline == null ? null : readResults(baseline);
+		List<Case> cases = createCases();
+		if (list) {
+			for (Case benchmarkCase : cases)
+				out.println(benchmarkCase.name);
+			return EXIT_OK;
+		}
+
+		out.println(String.format(Locale.ENGLISH, "%-64s %12s %10s %12s %10s", "benchmark", "us/op", "error", "B/op", "result"));
+		List<Result> results = new ArrayList<Result>();
+		Map<String, String> inputs = new HashMap<String, String>();
+		for (Case benchmarkCase : cases) {
+			String inputKey = benchmarkCase.corpus +"/"+ benchmarkCase.density;
+			String input = inputs.get(inputKey);
+			if (input == null) {
+				input = benchmarkCase.corpus.generate(length, benchmarkCase.density, SEED);
+				inputs.put(inputKey, input);
+			}
+
+			Result result = measure(benchmarkCase, input);
+			results.add(result);
+			out.println(String.format(Locale.ENGLISH, "%-64s %12.1f %10.1f %12s %10d", result.name, result.micros,
+					result.error, result.bytes < 0 ? "n/a" : String.valueOf(result.bytes), result.result));
+		}
+
+		if (output != null)
+			writeResults(results, output);
+
+		if (baselineResults == null)
+			return EXIT_OK;
+
+		out.println();
+		return compare(baselineResults, results, thresholdPercent, out) > 0 ? EXIT_REGRESSION : EXIT_OK;
+	}
+
+	List<Case> createCases() {
+		List<Case> cases = new ArrayList<Case>();
+		for (BenchmarkCorpus corpus : BenchmarkCorpus.values()) {
+			for (double density : densities) {
+				for (PatternCase patternCase : PATTERNS) {
+					if (patternCase.corpus != null && patternCase.corpus != corpus)
+						continue;
+
+					for (int size : patternCase.isSized() ? sizes : new int[] { 0 }) {
+						String expression = patternCase.isSized() ? createKeywords(corpus, size) : patternCase.expression;
+						String patternName = patternCase.isSized() ? patternCase.name +"-"+ size : patternCase.name;
+						for (int flags : patternCase.flags) {
+							String options = flags == 0 ? "NONE" : RegexUtil.formatOptions(flags).replace(',', '+');
+							for (Operation operation : Operation.values()) {
+								String name = operation.getName() +"/"+ corpus.name().toLowerCase(Locale.ENGLISH) +"/"+
+										patternName +"/"+ options +"/"+ density;
+								if (filter == null || filter.matcher(name).find())
+									cases.add(new Case(name, operation, Pattern.compile(expression, flags), corpus, density));
+							}
+						}
+					}
+				}
+			}
+		}
+
+		return cases;
+	}
+
+	/**
+	 * @return an alternation of the corpus hit word and random words that do not occur in it
+	 */
+	static String createKeywords(BenchmarkCorpus corpus, int size) {
+		Random random = new Random(size);
+		StringBuilder keywords = new StringBuilder(corpus.getHitWord());
+		for (int keyword = 1; keyword < size; keyword++) {
+			keywords.append('|');
+			for (int letter = 0, letters = 5 + random.nextInt(5); letter < letters; letter++)
+				keywords.append((char) ('a' + random.nextInt(26)));
+		}
+
+		return keywords.toString();
+	}
+
+	Result measure(Case benchmarkCase, String input) {
+		for (int iteration = 0; iteration < warmupIterations; iteration++)
+			runIteration(benchmarkCase, input, null);
+
+		double[] micros = new double[iterations];
+		long operations = 0, bytes = 0;
+		for (int iteration = 0; iteration < iterations; iteration++) {
+			long[] counts = new long[2];
+			micros[iteration] = runIteration(benchmarkCase, input, counts);
+			operations += counts[0];
+			bytes = counts[1] < 0 || bytes < 0 ? -1 : bytes + counts[1];
+		}
+
+		double mean = 0;
+		for (double score : micros)
+			mean += score / iterations;
+		double variance = 0;
+		for (double score : micros)
+			variance += (score - mean) * (score - mean) / Math.max(1, iterations - 1);
+
+		return new Result(benchmarkCase.name, mean, Math.sqrt(variance), bytes < 0 ? -1 : bytes / operations,
+				benchmarkCase.operation.run(benchmarkCase.pattern, input));
+	}
+
+	/**
+	 * Repeats the operation for the iteration time.
+	 *
+	 * @param counts receives the number of operations and the bytes they allocated, or -1, if not <code>null</code>
+	 * @return the mean microseconds per operation
+	 */
+	private double runIteration(Case benchmarkCase, String input, long[] counts) {
+		long startBytes = EvaluationRecorder.getAllocatedBytes(), start = System.nanoTime(), end = start + iterationMillis * 1000000L;
+		long operations = 0, result = 0, now;
+		do {
+			result += benchmarkCase.operation.run(benchmarkCase.pattern, input);
+			++operations;
+			now = System.nanoTime();
+		} while (now - end < 0);
+
+		long endBytes = EvaluationRecorder.getAllocatedBytes();
+		sink += result;
+		if (counts != null) {
+			counts[0] = operations;
+			counts[1] = startBytes < 0 ? -1 : endBytes - startBytes;
+		}
+
+		return (now - start) / 1000.0 / operations;
+	}
+
+	/**
+	 * Prints each result next to its baseline. A benchmark regressed if it slowed down by more than the threshold
+	 * and by more than the errors of both runs.
+	 *
+	 * @return the number of regressions
+	 */
+	static int compare(Map<String, Result> baselineResults, List<Result> results, double thresholdPercent, PrintStream out) {
+		out.println(String.format(Locale.ENGLISH, "%-64s %12s %12s %8s", "benchmark", "baseline", "us/op", "change"));
+		int regressions = 0;
+		for (Result result : results) {
+			Result base = baselineResults.get(result.name);
+			if (base == null) {
+				out.println(String.format(Locale.ENGLISH, "%-64s %12s %12.1f %8s", result.name, "", result.micros, "new"));
+				continue;
+			}
+
+			double change = (result.micros - base.micros) * 100 / base.micros;
+			boolean significant = Math.abs(result.micros - base.micros) > result.error + base.error;
+			String verdict = "";
+			if (result.result != base.result)
+				verdict = "  RESULT DIFFERS";
+			else if (significant && change > thresholdPercent) {
+				verdict = "  REGRESSION";
+				++regressions;
+			}
+			else if (significant && change < -thresholdPercent)
+				verdict = "  improved";
+			out.println(String.format(Locale.ENGLISH, "%-64s %12.1f %12.1f %+7.1f%%%s", result.name, base.micros,
+					result.micros, change, verdict));
+		}
+
+		out.println(regressions +" of "+ results.size() +" benchmarks regressed by more than "+ thresholdPercent +"%");
+		return regressions;
+	}
+
+	static Map<String, Result> readResults(File file) throws IOException {
+		Map<String, Result> results = new LinkedHashMap<String, Result>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		try {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (!line.isEmpty() && !line.equals(CSV_HEADER)) {
+					Result result = Result.parse(line);
+					results.put(result.name, result);
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+
+		return results;
+	}
+
+	static void writeResults(List<Result> results, File file) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+		try {
+			writer.write(CSV_HEADER +"\n");
+			for (Result result : results)
+				writer.write(result.toCsv() +"\n");
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	private static File file(String name) {
+		return name.isEmpty() ? null : new File(name);
+	}
+
+	private static String value(String[] args, int index, String option) {
+		if (index >= args.length)
+			throw new IllegalArgumentException("Missing value for "+ option);
+
+		return args[index];
+	}
+}
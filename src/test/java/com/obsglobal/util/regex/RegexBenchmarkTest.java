@@ -0,0 +1,134 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link RegexBenchmark} and {@link BenchmarkCorpus}.
+ */
+public class RegexBenchmarkTest {
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+	private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+	@Test
+	public void testCorpus() throws Exception {
+		for (BenchmarkCorpus corpus : BenchmarkCorpus.values()) {
+			String input = corpus.generate(10000, 0.5, 1);
+			assertTrue(input.length() >= 10000);
+			assertTrue(input.endsWith("\n"));
+			assertEquals(input, corpus.generate(10000, 0.5, 1));
+			assertFalse(corpus.generate(10000, 0, 1).contains(corpus.getHitWord()));
+		}
+
+		String log = BenchmarkCorpus.LOG.generate(10000, 1, 1);
+		assertEquals(log.split("\n").length, RegexUtil.findAllMatchOffsets(Pattern.compile("timeout"), log).size());
+
+		// decomposed hits only match canonically, and upper case ones only with unicode case folding
+		String unicode = BenchmarkCorpus.UNICODE.generate(10000, 1, 1);
+		int hits = RegexUtil.findAllMatchOffsets(Pattern.compile("café"), unicode).size();
+		assertTrue(RegexUtil.findAllMatchOffsets(Pattern.compile("café", Pattern.CANON_EQ), unicode).size() > hits);
+		assertTrue(RegexUtil.findAllMatchOffsets(Pattern.compile("café",
+				Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE), unicode).size() > hits);
+	}
+
+	@Test
+	public void testCreateKeywords() throws Exception {
+		assertEquals("error", RegexBenchmark.createKeywords(BenchmarkCorpus.CSV, 1));
+		String keywords = RegexBenchmark.createKeywords(BenchmarkCorpus.CSV, 8);
+		assertEquals(keywords, RegexBenchmark.createKeywords(BenchmarkCorpus.CSV, 8));
+		assertTrue(keywords, keywords.matches("error(\\|[a-z]{5,9}){7}"));
+	}
+
+	@Test
+	public void testList() throws Exception {
+		assertEquals(RegexBenchmark.EXIT_OK, run("--list", "-f", "/log/keywords-\\d+/NONE/", "-s", "1,4", "-d", "0.5"));
+		List<String> names = Arrays.asList(output().split("\n"));
+		assertEquals(2 * RegexBenchmark.Operation.values().length, names.size());
+		assertTrue(names.contains("findAllMatches/log/keywords-1/NONE/0.5"));
+		assertTrue(names.contains("replaceAll/log/keywords-4/NONE/0.5"));
+
+		out.reset();
+		assertEquals(RegexBenchmark.EXIT_OK, run("--list", "-f", "canonical/CANON_EQ"));
+		assertTrue(output().startsWith("findAllMatches/unicode/canonical/CANON_EQ/0.01\n"));
+	}
+
+	@Test
+	public void testRunAndCompare() throws Exception {
+		File output = File.createTempFile("benchmark", ".csv");
+		output.deleteOnExit();
+		assertEquals(RegexBenchmark.EXIT_OK, run("-f", "^findAllMatchOffsets/log/latency/", "-l", "5000",
+				"-d", "1", "-w", "1", "-i", "3", "-t", "20", "-o", output.getPath()));
+		assertTrue(output(), output().contains("findAllMatchOffsets/log/latency/NONE/1.0 "));
+
+		Map<String, RegexBenchmark.Result> results = RegexBenchmark.readResults(output);
+		assertEquals(1, results.size());
+		RegexBenchmark.Result result = results.get("findAllMatchOffsets/log/latency/NONE/1.0");
+		assertTrue(result.micros > 0);
+		assertTrue(result.result > 0);
+
+		// timings vary from run to run, so regressions are only checked on made up results below
+		RegexBenchmark.writeResults(Collections.singletonList(result), output);
+		assertEquals(result.toCsv(), RegexBenchmark.readResults(output).get(result.name).toCsv());
+	}
+
+	@Test
+	public void testCompareWithBaselineFile() throws Exception {
+		File baseline = File.createTempFile("baseline", ".csv");
+		baseline.deleteOnExit();
+		RegexBenchmark.writeResults(Collections.singletonList(new RegexBenchmark.Result("a", 10, 0.5, 64, 7)), baseline);
+		Map<String, RegexBenchmark.Result> results = RegexBenchmark.readResults(baseline);
+		assertEquals(1, RegexBenchmark.compare(results,
+				Collections.singletonList(new RegexBenchmark.Result("a", 1000, 0.5, 64, 7)), 10, new PrintStream(out)));
+		assertTrue(output(), output().contains("REGRESSION"));
+	}
+
+	@Test
+	public void testCompare() throws Exception {
+		Map<String, RegexBenchmark.Result> baseline = new HashMap<String, RegexBenchmark.Result>();
+		baseline.put("slower", new RegexBenchmark.Result("slower", 100, 1, 0, 7));
+		baseline.put("noisy", new RegexBenchmark.Result("noisy", 100, 30, 0, 7));
+		baseline.put("faster", new RegexBenchmark.Result("faster", 100, 1, 0, 7));
+		baseline.put("different", new RegexBenchmark.Result("different", 100, 1, 0, 7));
+		List<RegexBenchmark.Result> results = Arrays.asList(
+				new RegexBenchmark.Result("slower", 150, 1, 0, 7),
+				new RegexBenchmark.Result("noisy", 150, 30, 0, 7),
+				new RegexBenchmark.Result("faster", 50, 1, 0, 7),
+				new RegexBenchmark.Result("different", 100, 1, 0, 8),
+				new RegexBenchmark.Result("added", 100, 1, 0, 7));
+		assertEquals(1, RegexBenchmark.compare(baseline, results, 10, new PrintStream(out)));
+		String[] lines = output().split("\n");
+		assertTrue(lines[1], lines[1].endsWith("+50.0%  REGRESSION"));
+		assertTrue(lines[2], lines[2].endsWith("+50.0%"));
+		assertTrue(lines[3], lines[3].endsWith("-50.0%  improved"));
+		assertTrue(lines[4], lines[4].endsWith("RESULT DIFFERS"));
+		assertTrue(lines[5], lines[5].endsWith("new"));
+	}
+
+	@Test
+	public void testBadOptions() throws Exception {
+		assertEquals(RegexBenchmark.EXIT_ERROR, run("--iterations", "many"));
+		assertTrue(err.toString("UTF-8").startsWith("ERROR - Not a number for --iterations"));
+		assertEquals(RegexBenchmark.EXIT_ERROR, run("--jedi"));
+		assertEquals(RegexBenchmark.EXIT_OK, run("--help"));
+		assertTrue(output().contains("usage"));
+	}
+
+	private int run(String... args) {
+		return RegexBenchmark.run(args, new PrintStream(out), new PrintStream(err));
+	}
+
+	private String output() throws Exception {
+		return out.toString("UTF-8");
+	}
+}
@@ -0,0 +1,239 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link RegexCommand}.
+ */
+public class RegexCommandTest {
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+	private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+	@Test
+	public void testMatch() throws Exception {
+		assertEquals(RegexCommand.EXIT_MATCH, run(RegexUtilTest.INPUT, "foo|bar"));
+		assertEquals("foo\nbar\nfoo\nbar\n", output());
+
+		out.reset();
+		assertEquals(RegexCommand.EXIT_MATCH, run(RegexUtilTest.INPUT, "-n", "-o", "case_insensitive", "ABC"));
+		assertTrue(output().startsWith("0:3\tabc\n3:6\tABC\n9:12\tabc\n"));
+
+		out.reset();
+		assertEquals(RegexCommand.EXIT_NO_MATCH, run(RegexUtilTest.INPUT, "jedi"));
+		assertEquals("", output());
+	}
+
+	@Test
+	public void testCount() throws Exception {
+		assertEquals(RegexCommand.EXIT_MATCH, run(RegexUtilTest.INPUT, "abc", "--mode", "count"));
+		assertEquals("4\n", output());
+
+		out.reset();
+		assertEquals(RegexCommand.EXIT_MATCH, run(RegexUtilTest.INPUT, "-m", "count", "-p", "-o", "CASE_INSENSITIVE,LITERAL", "abc"));
+		assertEquals("5\n", output());
+	}
+
+	@Test
+	public void testMaxCount() throws Exception {
+		assertEquals(RegexCommand.EXIT_MATCH, run(RegexUtilTest.INPUT, "-n", "--max-count", "2", "abc"));
+		assertEquals("0:3\tabc\n9:12\tabc\n", output());
+
+		out.reset();
+		assertEquals(RegexCommand.EXIT_MATCH, run(RegexUtilTest.INPUT, "-m", "count", "--max-count", "3", "abc"));
+		assertEquals("3\n", output());
+
+		assertEquals(RegexCommand.EXIT_ERROR, run("", "-m", "replace", "--max-count", "3", "abc"));
+		assertTrue(error().contains("Can only limit matches"));
+	}
+
+	@Test
+	public void testNoPrefilter() throws Exception {
+		assertEquals(RegexCommand.EXIT_MATCH, run(RegexUtilTest.INPUT, "-n", "\\w*bc"));
+		String prefiltered = output();
+
+		out.reset();
+		assertEquals(RegexCommand.EXIT_MATCH, run(RegexUtilTest.INPUT, "-n", "--no-prefilter", "\\w*bc"));
+		assertEquals(prefiltered, output());
+		assertTrue(RegexUtil.isPrefilterEnabled());
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		assertEquals(RegexCommand.EXIT_MATCH, run(RegexUtilTest.INPUT, "--metrics", "-m", "replace", "-r", "~", "abc"));
+		assertTrue(error(), error().matches("compile \\d+\\.\\d ms, replace \\d+\\.\\d ms, 36 chars, 4 matches, .*\n"));
+		EvaluationMetrics metrics = RegexMetrics.getSharedMetrics().getLastMetrics();
+		assertEquals(4, metrics.getMatchCount());
+		assertEquals(36, metrics.getCharactersScanned());
+		assertEquals(0, metrics.getNanos(EvaluationMetrics.Phase.SCAN));
+	}
+
+	@Test
+	public void testSplitMatchesPatternSplit() throws Exception {
+		String[][] cases = {
+				{ "abc", RegexUtilTest.INPUT }, { ",", "a,,b,,," }, { ",", ",a,b" }, { "", "abc" }, { "x*", "axxb" }, { "jedi", "" }
+		};
+		for (String[] splitCase : cases) {
+			out.reset();
+			run(splitCase[1], "-m", "split", "--", splitCase[0]);
+			String[] pieces = Pattern.compile(splitCase[0]).split(splitCase[1]);
+			StringBuilder expected = new StringBuilder();
+			for (String piece : pieces)
+				expected.append(piece).append('\n');
+
+			assertEquals(Arrays.toString(splitCase), expected.toString(), output());
+		}
+	}
+
+	@Test
+	public void testReplaceFiles() throws Exception {
+		File first = createFile("abc DEF\n"), second = createFile("DEF abc\n");
+		try {
+			assertEquals(RegexCommand.EXIT_MATCH, run("", "-m", "replace", "-r", "<$1>", "-e", "ISO-8859-1",
+					"([A-Z]+)", first.getPath(), second.getPath()));
+			assertEquals("abc <DEF>\n<DEF> abc\n", output());
+
+			out.reset();
+			assertEquals(RegexCommand.EXIT_MATCH, run("", "-m", "count", "abc", first.getPath(), second.getPath()));
+			assertEquals(first.getPath() +":1\n"+ second.getPath() +":1\n", output());
+		}
+		finally {
+			assertTrue(first.delete());
+			assertTrue(second.delete());
+		}
+	}
+
+	@Test
+	public void testFollow() throws Exception {
+		final File file = createFile("abc DEF\n");
+		final int[] exitCode = { -1 };
+		try {
+			Thread follower = new Thread() {
+				@Override
+				public void run() {
+					exitCode[0] = RegexCommandTest.this.run("", "-f", "-n", "[A-Z]+", file.getPath());
+				}
+			};
+			follower.start();
+			FileOutputStream outputStream = new FileOutputStream(file, true);
+			try {
+				outputStream.write("GHI jkl\n".getBytes(StandardCharsets.ISO_8859_1));
+			}
+			finally {
+				outputStream.close();
+			}
+			for (int wait = 0; wait < 100 && !output().contains("GHI"); wait++)
+				Thread.sleep(50);
+			follower.interrupt();
+			follower.join(5000);
+			assertFalse(follower.isAlive());
+			assertEquals(RegexCommand.EXIT_MATCH, exitCode[0]);
+			assertEquals("4:7\tDEF\n8:11\tGHI\n", output());
+		}
+		finally {
+			assertTrue(file.delete());
+		}
+
+		assertEquals(RegexCommand.EXIT_ERROR, run("", "-f", "abc"));
+		assertTrue(error().contains("Can only follow a single file in match mode"));
+	}
+
+	@Test
+	public void testDecodeOnlyEncoding() throws Exception {
+		File file = createFile("abc x DEF\n");
+		try {
+			assertEquals(RegexCommand.EXIT_MATCH, run("", "-e", "x-JISAutoDetect", "-n", "x", file.getPath()));
+			assertEquals("4:5\tx\n", output());
+			assertEquals("", error());
+		}
+		finally {
+			assertTrue(file.delete());
+		}
+	}
+
+	@Test
+	public void testRecursive() throws Exception {
+		File first = createFile("abc DEF\n"), second = createFile("x\nDEF abc\n");
+		File directory = first.getParentFile();
+		try {
+			assertEquals(RegexCommand.EXIT_MATCH, run("", "-R", "--include", first.getName() +","+ second.getName(),
+					"[A-Z]+", directory.getPath()));
+			String output = output();
+			assertTrue(output, output.contains(first.getPath() +":1:5:DEF\n"));
+			assertTrue(output, output.contains(second.getPath() +":2:1:DEF\n"));
+			assertEquals(2, output.split("\n").length);
+
+			out.reset();
+			assertEquals(RegexCommand.EXIT_MATCH, run("", "-R", "-n", "--include", second.getName(), "abc", directory.getPath()));
+			assertEquals(second.getPath() +":2:5:6:9\tabc\n", output());
+		}
+		finally {
+			assertTrue(first.delete());
+			assertTrue(second.delete());
+		}
+
+		assertEquals(RegexCommand.EXIT_ERROR, run("", "-R", "-m", "count", "abc"));
+		assertTrue(error().contains("Can only search directories in match mode"));
+	}
+
+	@Test
+	public void testErrors() throws Exception {
+		assertEquals(RegexCommand.EXIT_ERROR, run(""));
+		assertTrue(error().contains("No expression given"));
+
+		err.reset();
+		assertEquals(RegexCommand.EXIT_ERROR, run("", "-o", "JEDI", "abc"));
+		assertTrue(error().contains("Unknown option: JEDI"));
+
+		err.reset();
+		assertEquals(RegexCommand.EXIT_ERROR, run("", "-m", "jedi", "abc"));
+		assertTrue(error().contains("Unknown mode: jedi"));
+
+		err.reset();
+		assertEquals(RegexCommand.EXIT_ERROR, run("", ")))bad pattern))"));
+		assertTrue(error().startsWith("ERROR"));
+
+		err.reset();
+		assertEquals(RegexCommand.EXIT_ERROR, run("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaab", "-t", "1", "(.*a){25}$"));
+		assertTrue(error().startsWith("ERROR"));
+
+		assertEquals(RegexCommand.EXIT_MATCH, run("", "--help"));
+		assertTrue(output().startsWith("usage"));
+	}
+
+	private int run(String input, String... args) {
+		return RegexCommand.run(args, new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+				new PrintStream(out), new PrintStream(err));
+	}
+
+	private String output() throws Exception {
+		return out.toString("UTF-8");
+	}
+
+	private String error() throws Exception {
+		return err.toString("UTF-8");
+	}
+
+	private static File createFile(String content) throws Exception {
+		File file = File.createTempFile("command", ".txt");
+		FileOutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(content.getBytes(StandardCharsets.ISO_8859_1));
+		}
+		finally {
+			outputStream.close();
+		}
+
+		return file;
+	}
+}
@@ -6,13 +6,19 @@ import org.junit.Test;
 import org.uispec4j.Button;
 import org.uispec4j.*;
 import org.uispec4j.Panel;
+import org.uispec4j.assertion.Assertion;
+import org.uispec4j.assertion.UISpecAssert;
 import org.uispec4j.interception.WindowHandler;
 import org.uispec4j.interception.WindowInterceptor;
 
+import javax.swing.*;
 import javax.swing.text.Highlighter;
 import javax.swing.text.JTextComponent;
 import java.awt.*;
 import java.awt.datatransfer.StringSelection;
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
 import java.util.regex.Pattern;
 
 import static org.junit.Assert.*;
@@ -72,7 +78,8 @@ public class RegexEditorTest {
 
 	@Test
 	public void testReplaceMatches() throws Exception {
-		Panel panel = new Panel(createRegexEditor());
+		RegexEditor regexEditor = createRegexEditor();
+		Panel panel = new Panel(regexEditor);
 		CheckBox replaceCheckBox = panel.getCheckBox("checkbox-replace");
 		assertNotNull(replaceCheckBox);
 		assertFalse(replaceCheckBox.isSelected().isTrue());
@@ -88,6 +95,7 @@ public class RegexEditorTest {
 
 		Button applyButton = panel.getButton("button-apply");
 		applyButton.click();	// abcABCfooabcDEFbarabcGHIfooabcZYXbar
+		waitForEvaluation(regexEditor);
 		assertEquals("~ABCfoo~DEFbar~GHIfoo~ZYXbar", inputTextArea.getText());
 		Highlighter.Highlight[] highlights = ((JTextComponent) inputTextArea.getAwtComponent()).getHighlighter().getHighlights();
 		assertNotNull(highlights);
@@ -102,9 +110,71 @@ public class RegexEditorTest {
 		assertEquals(22, highlights[3].getEndOffset());
 	}
 
+	@Test
+	public void testKeepAndUndoReplace() throws Exception {
+		RegexEditor regexEditor = createRegexEditor();
+		Panel panel = new Panel(regexEditor);
+		panel.getCheckBox("checkbox-replace").select();
+		pasteText(panel, RegexUtilTest.INPUT);
+		TextBox inputTextArea = panel.getTextBox("textArea-input");
+		Button keepButton = panel.getButton("button-keepReplaced");
+		Button undoButton = panel.getButton("button-undoReplace");
+		Button redoButton = panel.getButton("button-redoReplace");
+		assertFalse(keepButton.isEnabled().isTrue());
+		assertFalse(undoButton.isEnabled().isTrue());
+
+		setText(panel, "textField-regex", "abc");
+		setText(panel, "textField-matching", "~");
+		panel.getButton("button-apply").click();
+		waitForEvaluation(regexEditor);
+		assertTrue(keepButton.isEnabled().isTrue());
+		keepButton.click();
+		assertEquals("~ABCfoo~DEFbar~GHIfoo~ZYXbar", regexEditor.getInputText());
+
+		setText(panel, "textField-regex", "~");
+		setText(panel, "textField-matching", "=");
+		panel.getButton("button-apply").click();
+		waitForEvaluation(regexEditor);
+		keepButton.click();
+		assertEquals("=ABCfoo=DEFbar=GHIfoo=ZYXbar", inputTextArea.getText());
+
+		undoButton.click();
+		assertEquals("~ABCfoo~DEFbar~GHIfoo~ZYXbar", inputTextArea.getText());
+		undoButton.click();
+		assertEquals(RegexUtilTest.INPUT, inputTextArea.getText());
+		assertFalse(undoButton.isEnabled().isTrue());
+		redoButton.click();
+		assertEquals("~ABCfoo~DEFbar~GHIfoo~ZYXbar", regexEditor.getInputText());
+		assertTrue(redoButton.isEnabled().isTrue());
+
+		pasteText(panel, RegexUtilTest.INPUT);
+		assertFalse(undoButton.isEnabled().isTrue());
+		assertFalse(redoButton.isEnabled().isTrue());
+	}
+
+	@Test
+	public void testSideBySidePreview() throws Exception {
+		RegexEditor regexEditor = createRegexEditor();
+		Panel panel = new Panel(regexEditor);
+		panel.getCheckBox("checkbox-replace").select();
+		panel.getCheckBox("checkbox-sideBySide").select();
+		pasteText(panel, RegexUtilTest.INPUT);
+		setText(panel, "textField-regex", "(?<=foo)abc");
+		setText(panel, "textField-matching", "<$0>");
+		panel.getButton("button-apply").click();
+		waitForEvaluation(regexEditor);
+
+		// the input is left as it is, with its matches highlighted
+		assertEquals(RegexUtilTest.INPUT, panel.getTextBox("textArea-input").getText());
+		assertEquals(2, ((JTextComponent) panel.getTextBox("textArea-input").getAwtComponent()).getHighlighter().getHighlights().length);
+		assertEquals("abcABCfoo<abc>DEFbarabcGHIfoo<abc>ZYXbar", panel.getTextBox("textArea-preview").getText());
+		assertFalse(panel.getButton("button-keepReplaced").isEnabled().isTrue());
+	}
+
 	@Test
 	public void testHighlightMatches() throws Exception {
-		Panel panel = new Panel(createRegexEditor());
+		RegexEditor regexEditor = createRegexEditor();
+		Panel panel = new Panel(regexEditor);
 		setText(panel, "textField-regex", "abc");
 
 		TextBox inputTextArea = panel.getTextBox("textArea-input");
@@ -113,6 +183,7 @@ public class RegexEditorTest {
 
 		Button applyButton = panel.getButton("button-apply");
 		applyButton.click();	// abcABCfooabcDEFbarabcGHIfooabcZYXbar
+		waitForEvaluation(regexEditor);
 		assertEquals(RegexUtilTest.INPUT, inputTextArea.getText());
 		Highlighter.Highlight[] highlights = ((JTextComponent) inputTextArea.getAwtComponent()).getHighlighter().getHighlights();
 		assertNotNull(highlights);
@@ -125,6 +196,266 @@ public class RegexEditorTest {
 		assertEquals(21, highlights[2].getEndOffset());
 		assertEquals(27, highlights[3].getStartOffset());
 		assertEquals(30, highlights[3].getEndOffset());
+		assertEquals("[DFA]", panel.getTextBox("label-engine").getText());
+
+		setText(panel, "textField-regex", "(abc)\\1");
+		applyButton.click();
+		waitForEvaluation(regexEditor);
+		assertEquals("[java.util.regex]", panel.getTextBox("label-engine").getText());
+	}
+
+	@Test
+	public void testBacktrackingAnalysis() throws Exception {
+		RegexEditor regexEditor = createRegexEditor();
+		Panel panel = new Panel(regexEditor);
+		setText(panel, "textField-regex", "x(a|aa)*c");
+		panel.getButton("button-apply").click();
+		UISpecAssert.waitUntil(panel.getTextBox("label-complexity").textEquals("[backtracking: exponential]"), 5000);
+		Highlighter.Highlight[] highlights = ((JTextComponent) panel.getTextBox("textField-regex").getAwtComponent())
+				.getHighlighter().getHighlights();
+		assertEquals(1, highlights.length);
+		assertEquals(1, highlights[0].getStartOffset());
+		assertEquals(8, highlights[0].getEndOffset());
+
+		setText(panel, "textField-regex", "abc");
+		panel.getButton("button-apply").click();
+		UISpecAssert.waitUntil(panel.getTextBox("label-complexity").textEquals("[backtracking: linear]"), 5000);
+	}
+
+	@Test
+	public void testProfile() throws Exception {
+		RegexEditor regexEditor = createRegexEditor();
+		Panel panel = new Panel(regexEditor);
+		regexEditor.setUnmodifiedInputText("b aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaab");
+		UISpecAssert.assertFalse(panel.getButton("button-exportProfile").isEnabled());
+		panel.getCheckBox("checkbox-profile").select();
+		setText(panel, "textField-regex", "a*a*b");
+		panel.getButton("button-apply").click();
+		UISpecAssert.waitUntil(panel.getButton("button-exportProfile").isEnabled(), 5000);
+		assertTrue(panel.getTextBox("label-status").getText(), panel.getTextBox("label-status").getText().startsWith("2 matches, "));
+		assertTrue(panel.getTextBox("label-engine").getText().contains("profiled"));
+		// the match highlights and at least one heat level over the run of a's
+		Highlighter.Highlight[] highlights = ((JTextComponent) panel.getTextBox("textArea-input").getAwtComponent())
+				.getHighlighter().getHighlights();
+		assertTrue(highlights.length > 2);
+
+		File file = File.createTempFile("profile", ".csv");
+		file.deleteOnExit();
+		regexEditor.exportProfile(file);
+		assertTrue(new String(Files.readAllBytes(file.toPath()), "UTF-8")
+				.startsWith("kind,start,end,match_start,match_end,steps,nanos\nmatch,0,1,0,1,"));
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		RegexEditor regexEditor = createRegexEditor();
+		Panel panel = new Panel(regexEditor);
+		regexEditor.setUnmodifiedInputText(RegexUtilTest.INPUT);
+		setText(panel, "textField-regex", "abc");
+		panel.getButton("button-apply").click();
+		UISpecAssert.waitUntil(panel.getTextBox("label-metrics").textContains("<th>Compile</th>"), 5000);
+		assertTrue(panel.getTextBox("label-metrics").getText().contains("<td>36</td><td>4</td>"));
+		assertFalse(panel.getTextBox("label-metrics").isVisible().isTrue());
+		panel.getToggleButton("button-metrics").click();
+		assertTrue(panel.getTextBox("label-metrics").isVisible().isTrue());
+
+		EvaluationMetrics metrics = RegexMetrics.getSharedMetrics().getLastMetrics();
+		assertEquals(4, metrics.getMatchCount());
+		assertTrue(metrics.getNanos(EvaluationMetrics.Phase.SCAN) > 0);
+		assertTrue(metrics.getNanos(EvaluationMetrics.Phase.HIGHLIGHT) > 0);
+		assertTrue(metrics.getNanos(EvaluationMetrics.Phase.RENDER) > 0);
+	}
+
+	@Test
+	public void testEvaluationTimeout() throws Exception {
+		RegexEditor regexEditor = createRegexEditor();
+		Panel panel = new Panel(regexEditor);
+		regexEditor.setUnmodifiedInputText("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaab");
+		// the lookahead keeps it on the backtracking engine, the automaton would finish at once
+		setText(panel, "textField-regex", "(.*a){25}(?=$)");
+		panel.findSwingComponent(JSpinner.class, "spinner-timeBudget").setValue(1);
+
+		Button cancelButton = panel.getButton("button-cancel");
+		assertFalse(cancelButton.isEnabled().isTrue());
+		panel.getButton("button-apply").click();
+		assertTrue(regexEditor.isEvaluating());
+		assertTrue(cancelButton.isEnabled().isTrue());
+
+		waitForEvaluation(regexEditor);
+		assertFalse(cancelButton.isEnabled().isTrue());
+		assertTrue(panel.getTextBox("label-status").getText().startsWith("TIMEOUT"));
+	}
+
+	@Test
+	public void testPagedMatches() throws Exception {
+		RegexEditor regexEditor = createRegexEditor();
+		Panel panel = new Panel(regexEditor);
+		panel.getCheckBox("checkbox-paged").select();
+		panel.findSwingComponent(JSpinner.class, "spinner-matchLimit").setValue(3);
+		pasteText(panel, RegexUtilTest.INPUT);
+		setText(panel, "textField-regex", "abc");
+		panel.getButton("button-apply").click();
+		waitForEvaluation(regexEditor);
+
+		// scrolling past the last match may already have found the next page
+		JTextComponent inputTextArea = (JTextComponent) panel.getTextBox("textArea-input").getAwtComponent();
+		MatchCursor cursor = regexEditor.getMatchCursor();
+		assertTrue(cursor.getMatchCount() >= 3);
+		assertEquals(cursor.getMatchCount(), inputTextArea.getHighlighter().getHighlights().length);
+		if (!cursor.isExhausted()) {
+			assertEquals("\u22653 matches", panel.getTextBox("label-status").getText());
+			panel.getButton("button-nextPage").click();
+			waitForEvaluation(regexEditor);
+		}
+
+		assertTrue(cursor.isExhausted());
+		assertEquals(4, inputTextArea.getHighlighter().getHighlights().length);
+		assertEquals("4 matches", panel.getTextBox("label-status").getText());
+		assertFalse(panel.getButton("button-nextPage").isEnabled().isTrue());
+	}
+
+	@Test
+	public void testCancelEvaluation() throws Exception {
+		RegexEditor regexEditor = createRegexEditor();
+		Panel panel = new Panel(regexEditor);
+		regexEditor.setUnmodifiedInputText("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaab");
+		setText(panel, "textField-regex", "(.*a){25}(?=$)");
+
+		panel.getButton("button-apply").click();
+		assertTrue(regexEditor.isEvaluating());
+		panel.getButton("button-cancel").click();
+
+		waitForEvaluation(regexEditor);
+		assertTrue(panel.getTextBox("label-status").getText().startsWith("CANCELLED"));
+	}
+
+	@Test
+	public void testLiveEvaluation() throws Exception {
+		final int[] highlightCounter = new int[1];
+		final RegexEditor regexEditor = new RegexEditor() {
+			@Override
+			protected void highlightMatches(Pattern pattern) {
+				highlightCounter[0] += 1;
+				super.highlightMatches(pattern);
+			}
+		};
+		Panel panel = new Panel(regexEditor.getViewComponent());
+		regexEditor.setUnmodifiedInputText(RegexUtilTest.INPUT);
+		panel.getCheckBox("checkbox-live").select();
+
+		setText(panel, "textField-regex", "abc");
+		UISpecAssert.waitUntil(panel.getTextBox("label-status").textEquals("4 matches"), 5000);
+		waitForEvaluation(regexEditor);
+		int evaluations = highlightCounter[0];
+
+		// nothing changed, so nothing is re-evaluated
+		regexEditor.applyLiveRegularExpression();
+		assertEquals(evaluations, highlightCounter[0]);
+
+		panel.getCheckBox("checkbox-CASE_INSENSITIVE").select();
+		UISpecAssert.waitUntil(panel.getTextBox("label-status").textEquals("8 matches"), 5000);
+		assertEquals(evaluations + 1, highlightCounter[0]);
+	}
+
+	@Test
+	public void testHighlightPatterns() throws Exception {
+		RegexEditor regexEditor = createRegexEditor();
+		Panel panel = new Panel(regexEditor);
+		regexEditor.setUnmodifiedInputText(RegexUtilTest.INPUT);
+		File patternFile = File.createTempFile("patterns", ".txt");
+		patternFile.deleteOnExit();
+		FileWriter writer = new FileWriter(patternFile);
+		writer.write("abc\n\nfoo|bar\n");
+		writer.close();
+
+		regexEditor.openPatterns(patternFile);	// abcABCfooabcDEFbarabcGHIfooabcZYXbar
+		waitForEvaluation(regexEditor);
+		assertEquals("8 matches of 2 patterns", panel.getTextBox("label-status").getText());
+		Highlighter.Highlight[] highlights = ((JTextComponent) panel.getTextBox("textArea-input").getAwtComponent())
+				.getHighlighter().getHighlights();
+		assertEquals(8, highlights.length);
+		assertEquals(0, highlights[0].getStartOffset());
+		assertEquals(6, highlights[4].getStartOffset());
+		assertNotSame(highlights[0].getPainter(), highlights[4].getPainter());
+	}
+
+	@Test
+	public void testFollowInput() throws Exception {
+		RegexEditor regexEditor = createRegexEditor();
+		Panel panel = new Panel(regexEditor);
+		setText(panel, "textField-regex", "abc");
+		File logFile = File.createTempFile("follow", ".log");
+		logFile.deleteOnExit();
+		FileWriter writer = new FileWriter(logFile);
+		writer.write("abc def\n");
+		writer.close();
+
+		regexEditor.followInput(logFile);
+		TextBox status = panel.getTextBox("label-status");
+		UISpecAssert.waitUntil(status.textEquals("Following "+ logFile.getName() +": 1 match"), 5000);
+		assertTrue(panel.getToggleButton("button-follow").isSelected().isTrue());
+		writer = new FileWriter(logFile, true);
+		writer.write("xyz abc\n");
+		writer.close();
+		UISpecAssert.waitUntil(status.textEquals("Following "+ logFile.getName() +": 2 matches"), 5000);
+		assertEquals("abc def\nxyz abc\n", panel.getTextBox("textArea-input").getText());
+		Highlighter.Highlight[] highlights = ((JTextComponent) panel.getTextBox("textArea-input").getAwtComponent())
+				.getHighlighter().getHighlights();
+		assertEquals(2, highlights.length);
+		assertEquals(12, highlights[1].getStartOffset());
+
+		panel.getToggleButton("button-follow").click();
+		assertEquals("Stopped following", status.getText());
+		assertFalse(regexEditor.isFollowing());
+	}
+
+	@Test
+	public void testGrepDirectory() throws Exception {
+		RegexEditor regexEditor = createRegexEditor();
+		Panel panel = new Panel(regexEditor);
+		File directory = Files.createTempDirectory("grep").toFile();
+		File logFile = new File(directory, "app.log");
+		FileWriter writer = new FileWriter(logFile);
+		writer.write("ok\nERROR 1\nok ERROR 2\n");
+		writer.close();
+		try {
+			setText(panel, "textField-regex", "ERROR \\d");
+			regexEditor.grepDirectory(directory);
+			UISpecAssert.waitUntil(panel.getTextBox("label-grepStatus").textContains("2 matches in 1 files"), 5000);
+			Table table = panel.getTable("table-grep");
+			assertTrue(table.contentEquals(new Object[][] {
+					{ "app.log", 2, 1, "ERROR 1" }, { "app.log", 3, 4, "ERROR 2" } }).isTrue());
+
+			regexEditor.openHit(regexEditor.getGrepPanel().getHits().get(1));
+			assertEquals("ERROR 2", ((JTextComponent) panel.getTextBox("textArea-input").getAwtComponent()).getSelectedText());
+		}
+		finally {
+			assertTrue(logFile.delete());
+			assertTrue(directory.delete());
+		}
+	}
+
+	@Test
+	public void testNavigateMatches() throws Exception {
+		RegexEditor regexEditor = createRegexEditor();
+		Panel panel = new Panel(regexEditor);
+		regexEditor.setUnmodifiedInputText("abc\nx abc\nabc abc");
+		setText(panel, "textField-regex", "abc");
+		panel.getButton("button-apply").click();
+		UISpecAssert.waitUntil(panel.getButton("button-nextMatch").isEnabled(), 5000);
+
+		panel.getButton("button-nextMatch").click();
+		panel.getButton("button-nextMatch").click();
+		assertEquals(1, regexEditor.getCurrentMatchIndex());
+		UISpecAssert.assertTrue(panel.getTextBox("label-matchPosition").textEquals("Match 2 of 4, line 2, column 3"));
+
+		panel.getButton("button-previousMatch").click();
+		panel.getButton("button-previousMatch").click();
+		assertEquals(3, regexEditor.getCurrentMatchIndex());	// wrapped around
+
+		setText(panel, "textField-goToMatch", "3");
+		assertEquals(2, regexEditor.getCurrentMatchIndex());
+		assertEquals(10, ((JTextComponent) panel.getTextBox("textArea-input").getAwtComponent()).getCaretPosition());
 	}
 
 	@Test
@@ -238,6 +569,16 @@ public class RegexEditorTest {
 		return (new RegexEditor()).getViewComponent();
 	}
 
+	protected void waitForEvaluation(final RegexEditor regexEditor) {
+		UISpecAssert.waitUntil(new Assertion() {
+			@Override
+			public void check() {
+				if (regexEditor.isEvaluating())
+					throw new AssertionFailedError("Evaluation still running");
+			}
+		}, 5000);
+	}
+
 	protected void pasteText(Panel panel, String input) {
 		Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new StringSelection(input), null);
 		Button pasteButton = panel.getButton("button-paste");
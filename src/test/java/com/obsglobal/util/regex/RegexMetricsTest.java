@@ -0,0 +1,107 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link RegexMetrics}, {@link EvaluationRecorder} and {@link EvaluationMetrics}.
+ */
+public class RegexMetricsTest {
+
+	@Test
+	public void testRecorder() throws Exception {
+		EvaluationRecorder recorder = new EvaluationRecorder();
+		recorder.begin(EvaluationMetrics.Phase.SCAN);
+		Thread.sleep(5);
+		recorder.end(EvaluationMetrics.Phase.SCAN);
+		recorder.begin(EvaluationMetrics.Phase.SCAN);
+		Thread.sleep(5);
+		recorder.end(EvaluationMetrics.Phase.SCAN);
+		recorder.addCharactersScanned(1000);
+		recorder.addMatches(10);
+		recorder.setEngineName("engine");
+
+		EvaluationMetrics metrics = recorder.getMetrics();
+		assertEquals("engine", metrics.getEngineName());
+		assertTrue(metrics.getNanos(EvaluationMetrics.Phase.SCAN) >= 10000000);
+		assertEquals(0, metrics.getNanos(EvaluationMetrics.Phase.REPLACE));
+		assertEquals(metrics.getNanos(EvaluationMetrics.Phase.SCAN), metrics.getTotalNanos());
+		assertEquals(1000, metrics.getCharactersScanned());
+		assertEquals(10, metrics.getMatchCount());
+		assertTrue(metrics.getMatchesPerSecond() > 0 && metrics.getMatchesPerSecond() <= 1000);
+		assertTrue(metrics.toString(), metrics.toString().matches("scan \\d+\\.\\d ms, 1000 chars, 10 matches, \\d+ matches/s(, .* MB)?"));
+	}
+
+	@Test
+	public void testAllocatedBytes() throws Exception {
+		if (EvaluationRecorder.getAllocatedBytes() < 0)
+			return;	// not counted by this JVM
+
+		EvaluationRecorder recorder = new EvaluationRecorder();
+		recorder.begin(EvaluationMetrics.Phase.SCAN);
+		long[] allocated = new long[100000];
+		recorder.end(EvaluationMetrics.Phase.SCAN);
+		assertTrue(recorder.getMetrics().getAllocatedBytes() >= allocated.length * 8L);
+	}
+
+	@Test
+	public void testHistory() throws Exception {
+		RegexMetrics metrics = new RegexMetrics(2);
+		assertNull(metrics.getLastMetrics());
+		assertEquals(0, metrics.getLastScanMillis(), 0);
+		for (int evaluation = 1; evaluation <= 3; evaluation++) {
+			long[] nanos = new long[EvaluationMetrics.Phase.values().length];
+			nanos[EvaluationMetrics.Phase.SCAN.ordinal()] = evaluation * 1000000L;
+			metrics.record(new EvaluationMetrics("engine"+ evaluation, nanos, 100, evaluation, -1));
+		}
+
+		List<EvaluationMetrics> history = metrics.getHistory();
+		assertEquals(2, history.size());
+		assertEquals("engine2", history.get(0).getEngineName());
+		assertEquals("engine3", metrics.getLastEngineName());
+		assertEquals(3, metrics.getLastScanMillis(), 0);
+		assertEquals(3, metrics.getEvaluationCount());
+		assertEquals(6, metrics.getTotalMillis(), 0);
+		assertEquals(300, metrics.getTotalCharactersScanned());
+		assertEquals(6, metrics.getTotalMatchCount());
+		assertEquals(1000, metrics.getLastMatchesPerSecond(), 0);
+
+		metrics.reset();
+		assertEquals(0, metrics.getEvaluationCount());
+		assertNull(metrics.getLastMetrics());
+	}
+
+	@Test
+	public void testMBean() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(RegexMetrics.OBJECT_NAME);
+		RegexMetrics metrics = new RegexMetrics();
+		assertTrue(metrics.registerMBean());
+		try {
+			assertFalse(new RegexMetrics().registerMBean());
+			metrics.record(new EvaluationMetrics("engine", new long[EvaluationMetrics.Phase.values().length], 10, 2, -1));
+			assertEquals(1L, server.getAttribute(name, "EvaluationCount"));
+			assertEquals(2L, server.getAttribute(name, "LastMatchCount"));
+			assertEquals("engine", server.getAttribute(name, "LastEngineName"));
+			server.invoke(name, "reset", null, null);
+			assertEquals(0L, server.getAttribute(name, "EvaluationCount"));
+		}
+		finally {
+			server.unregisterMBean(name);
+		}
+	}
+
+	@Test
+	public void testShared() throws Exception {
+		EvaluationRecorder recorder = new EvaluationRecorder();
+		recorder.addMatches(42);
+		EvaluationMetrics metrics = recorder.finish();
+		assertSame(metrics, RegexMetrics.getSharedMetrics().getLastMetrics());
+	}
+}
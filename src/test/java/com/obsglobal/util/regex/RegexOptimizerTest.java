@@ -0,0 +1,127 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link RegexOptimizer}.
+ */
+public class RegexOptimizerTest {
+	private static final String INPUT = "12,34 \"quoted\" 5,6 x,y\nsome foo\n\"more\" 7,8";
+
+	@Test
+	public void testPossessive() throws Exception {
+		List<RegexOptimizer.Rewrite> rewrites = RegexOptimizer.findRewrites("\\d+,\\d+", 0);
+		assertEquals(3, rewrites.size());
+		assertEquals("\\d+,\\d++", rewrites.get(0).getExpression());
+		assertEquals("\\d++,\\d+", rewrites.get(1).getExpression());
+		assertEquals(RegexOptimizer.Kind.COMBINED, rewrites.get(2).getKind());
+		assertEquals("\\d++,\\d++", rewrites.get(2).getExpression());
+		// the repeat may have to give back a digit to the one after it
+		assertTrue(RegexOptimizer.findRewrites("\\d+\\d", 0).isEmpty());
+	}
+
+	@Test
+	public void testNegatedClass() throws Exception {
+		List<RegexOptimizer.Rewrite> rewrites = RegexOptimizer.findRewrites("a.*?b", 0);
+		assertEquals(1, rewrites.size());
+		assertEquals(RegexOptimizer.Kind.NEGATED_CLASS, rewrites.get(0).getKind());
+		assertEquals("a[^\\n\\rb\\x{85}\\x{2028}\\x{2029}]*+b", rewrites.get(0).getExpression());
+		assertEquals(1, rewrites.get(0).getStart());
+		assertEquals(4, rewrites.get(0).getEnd());
+		// a greedy repeat runs to the last b, not the first
+		for (RegexOptimizer.Rewrite rewrite : RegexOptimizer.findRewrites("a.*b", 0))
+			assertNotSame(RegexOptimizer.Kind.NEGATED_CLASS, rewrite.getKind());
+	}
+
+	@Test
+	public void testLineAnchor() throws Exception {
+		List<RegexOptimizer.Rewrite> rewrites = RegexOptimizer.findRewrites(".*foo", 0);
+		assertEquals(1, rewrites.size());
+		assertEquals(RegexOptimizer.Kind.LINE_ANCHOR, rewrites.get(0).getKind());
+		assertEquals("(?m:^).*foo", rewrites.get(0).getExpression());
+		// a dot matching line terminators and a rest that may be empty are left alone
+		assertTrue(RegexOptimizer.findRewrites(".*foo", Pattern.DOTALL).isEmpty());
+		for (RegexOptimizer.Rewrite rewrite : RegexOptimizer.findRewrites(".*", 0))
+			assertNotSame(RegexOptimizer.Kind.LINE_ANCHOR, rewrite.getKind());
+	}
+
+	@Test
+	public void testCommonPrefixAndAtomicGroup() throws Exception {
+		List<RegexOptimizer.Rewrite> rewrites = RegexOptimizer.findRewrites("abc|abd|x", 0);
+		assertEquals(1, rewrites.size());
+		assertEquals("ab(?:c|d)|x", rewrites.get(0).getExpression());
+
+		rewrites = RegexOptimizer.findRewrites("(?:foo|bar)\\d", 0);
+		assertEquals(1, rewrites.size());
+		assertEquals(RegexOptimizer.Kind.ATOMIC_GROUP, rewrites.get(0).getKind());
+		assertEquals("(?>foo|bar)\\d", rewrites.get(0).getExpression());
+	}
+
+	@Test
+	public void testNoRewrites() throws Exception {
+		assertTrue(RegexOptimizer.findRewrites(".*foo", Pattern.LITERAL).isEmpty());
+		assertTrue(RegexOptimizer.findRewrites("\\Q.*foo\\E", 0).isEmpty());
+		// the alternation of a line break is not written in the expression
+		assertTrue(RegexOptimizer.findRewrites("\\R\\R|\\R", 0).isEmpty());
+		try {
+			RegexOptimizer.findRewrites("(", 0);
+			fail("Expected an invalid expression to fail");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFindDifference() throws Exception {
+		assertNull(RegexOptimizer.findDifference(Pattern.compile("a+"), Pattern.compile("a++"), "xaa"));
+		assertEquals("match at 1 spans 1-2 instead of 1-3",
+				RegexOptimizer.findDifference(Pattern.compile("a+"), Pattern.compile("a"), "xaa"));
+		assertEquals("has 0 groups instead of 1",
+				RegexOptimizer.findDifference(Pattern.compile("(a)"), Pattern.compile("a"), "xaa"));
+	}
+
+	@Test
+	public void testGenerateSamples() throws Exception {
+		RegexNode root = RegexParser.parse("\\d+,\\d+", 0);
+		List<String> samples = RegexOptimizer.generateSamples(root, 20, 7);
+		assertEquals(20, samples.size());
+		assertEquals(samples, RegexOptimizer.generateSamples(root, 20, 7));
+	}
+
+	@Test
+	public void testSuggest() throws Exception {
+		List<RegexOptimizer.Suggestion> suggestions = RegexOptimizer.suggest("\\d+,\\d+", 0, INPUT, 600,
+				new RegexOptimizer.Visitor() {
+					@Override
+					public boolean visitSuggestion(RegexOptimizer.Suggestion suggestion) {
+						return true;
+					}
+				});
+		assertEquals(3, suggestions.size());
+		for (RegexOptimizer.Suggestion suggestion : suggestions) {
+			assertEquals(RegexOptimizer.Verdict.EQUIVALENT, suggestion.getVerdict());
+			assertNull(suggestion.getDifference());
+			assertTrue(suggestion.getSampleCount() > 0);
+		}
+
+		final List<RegexOptimizer.Suggestion> visited = new ArrayList<RegexOptimizer.Suggestion>();
+		suggestions = RegexOptimizer.suggest("\".*?\"", 0, INPUT, 300, new RegexOptimizer.Visitor() {
+			@Override
+			public boolean visitSuggestion(RegexOptimizer.Suggestion suggestion) {
+				visited.add(suggestion);
+				return false;
+			}
+		});
+		assertEquals(1, visited.size());
+		assertEquals(visited, suggestions);
+		assertEquals(RegexOptimizer.Verdict.EQUIVALENT, suggestions.get(0).getVerdict());
+		assertTrue(suggestions.get(0).getOriginalNanos() > 0);
+	}
+}
@@ -0,0 +1,137 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link RegexParser}.
+ */
+public class RegexParserTest {
+	@Test
+	public void testStructure() throws Exception {
+		RegexNode root = RegexParser.parse("a(b|c)*?d", 0);
+		assertEquals(RegexNode.Type.CONCATENATION, root.getType());
+		assertEquals(3, root.getChildren().size());
+
+		RegexNode repeat = root.getChildren().get(1);
+		assertEquals(RegexNode.Type.REPEAT, repeat.getType());
+		assertEquals(0, repeat.getMin());
+		assertEquals(RegexNode.UNBOUNDED, repeat.getMax());
+		assertEquals(RegexNode.Quantifier.LAZY, repeat.getQuantifier());
+		assertEquals(1, repeat.getStart());
+		assertEquals(8, repeat.getEnd());
+
+		RegexNode group = repeat.getChild();
+		assertEquals(RegexNode.Type.GROUP, group.getType());
+		assertEquals(1, group.getGroup());
+		assertEquals(RegexNode.Type.ALTERNATION, group.getChild().getType());
+	}
+
+	@Test
+	public void testCountedRepetition() throws Exception {
+		RegexNode repeat = RegexParser.parse("x{2,5}+", 0);
+		assertEquals(2, repeat.getMin());
+		assertEquals(5, repeat.getMax());
+		assertEquals(RegexNode.Quantifier.POSSESSIVE, repeat.getQuantifier());
+
+		repeat = RegexParser.parse("(?x) x {3,} # comment", 0);
+		assertEquals(RegexNode.Type.REPEAT, repeat.getType());
+		assertEquals(3, repeat.getMin());
+		assertEquals(RegexNode.UNBOUNDED, repeat.getMax());
+	}
+
+	@Test
+	public void testQuoteQuantifierAppliesToLastCharacter() throws Exception {
+		RegexNode root = RegexParser.parse("\\Qab\\E*", 0);
+		assertEquals(RegexNode.Type.CONCATENATION, root.getType());
+		assertEquals(RegexNode.Type.CHARACTER, root.getChildren().get(0).getType());
+		assertEquals(RegexNode.Type.REPEAT, root.getChildren().get(1).getType());
+	}
+
+	@Test
+	public void testGroupsAndBackreferences() throws Exception {
+		RegexNode root = RegexParser.parse("(?<word>a)(?:b)(?=c)(?<!d)(?>e)\\k<word>\\12", 0);
+		assertEquals(8, root.getChildren().size());
+		assertEquals(RegexNode.Type.LOOKAROUND, root.getChildren().get(2).getType());
+		assertFalse(root.getChildren().get(2).isBehind());
+		assertTrue(root.getChildren().get(3).isBehind());
+		assertTrue(root.getChildren().get(3).isNegative());
+		assertEquals(RegexNode.Type.ATOMIC, root.getChildren().get(4).getType());
+		assertEquals(1, root.getChildren().get(5).getGroup());
+		// only one group exists, so \12 is \1 followed by a literal 2
+		assertEquals(RegexNode.Type.BACKREFERENCE, root.getChildren().get(6).getType());
+		assertEquals(CodePointSet.of('2'), root.getChildren().get(7).getCharacters());
+	}
+
+	@Test
+	public void testInlineFlags() throws Exception {
+		RegexNode root = RegexParser.parse("(a(?i)b)c", 0);
+		RegexNode group = root.getChildren().get(0);
+		assertEquals(CodePointSet.ranges('B', 'B', 'b', 'b'), group.getChild().getChildren().get(1).getCharacters());
+		assertEquals(CodePointSet.of('c'), root.getChildren().get(1).getCharacters());
+
+		root = RegexParser.parse("(?m)^a$", 0);
+		assertEquals(RegexNode.Assertion.BEGIN_LINE, root.getChildren().get(0).getAssertion());
+		assertEquals(RegexNode.Assertion.END_LINE, root.getChildren().get(2).getAssertion());
+		assertEquals(RegexNode.Assertion.BEGIN_INPUT, RegexParser.parse("^", 0).getAssertion());
+	}
+
+	@Test
+	public void testLiteralFlag() throws Exception {
+		RegexNode root = RegexParser.parse("a.*", Pattern.LITERAL);
+		assertEquals(3, root.getChildren().size());
+		assertEquals(CodePointSet.of('*'), root.getChildren().get(2).getCharacters());
+	}
+
+	@Test
+	public void testOpaque() throws Exception {
+		assertEquals(RegexNode.Type.OPAQUE, RegexParser.parse("x{2}{3}", 0).getType());
+		assertEquals(RegexNode.Type.OPAQUE, RegexParser.parse("a", Pattern.CANON_EQ).getType());
+		assertTrue(RegexParser.parse("a\\Xb", 0).contains(RegexNode.Type.OPAQUE));
+	}
+
+	@Test
+	public void testClassesMatchPattern() throws Exception {
+		String[] classes = {
+				"[]a]", "[^]a]", "[a-z&&[^e]b]", "[^a[b]]", "[\\w-z]", "[&&a]", "[a&&]", "[a-]", "[-a]",
+				"[[a]-c]", "[\\Qa-c\\E]", "(?x)[a b]", "(?x)[a#\n]", "[\\x{41}-C]", "[\\p{L}&&[^a]]", "(?i)[^a]",
+				"(?i)[k]", "(?iu)[a-z]", "(?i)\u017f", "(?iu)\u017f", "(?i)\\p{Lower}", "(?U)\\w", "\\w", "\\S",
+				"\\v", "\\h", "\\cA", "\\0101", "\\x41", "\\u0041", ".", "(?s).", "(?d).", "[\\N{LATIN SMALL LETTER A}]"
+		};
+		for (String expression : classes) {
+			RegexNode node = RegexParser.parse(expression, 0);
+			assertEquals(expression, RegexNode.Type.CHARACTER, node.getType());
+
+			Pattern pattern = Pattern.compile(expression);
+			for (int codePoint = 0; codePoint < 0x3000; codePoint++) {
+				boolean expected = pattern.matcher(new String(Character.toChars(codePoint))).matches();
+				assertEquals(expression +" on "+ codePoint, expected, node.getCharacters().contains(codePoint));
+			}
+		}
+	}
+
+	@Test
+	public void testParseCompiledPattern() throws Exception {
+		RegexNode root = RegexParser.parse(Pattern.compile("(?i)a(?m:^)"));
+		assertEquals(RegexNode.Type.CONCATENATION, root.getType());
+		assertEquals(CodePointSet.of('A').union(CodePointSet.of('a')), root.getChild().getCharacters());
+
+		// the flags in effect before the inline flags cannot be told from Pattern.flags()
+		assertEquals(RegexNode.Type.OPAQUE, RegexParser.parse(Pattern.compile("a(?i)b")).getType());
+		assertEquals(RegexNode.Type.CONCATENATION, RegexParser.parse(Pattern.compile("a(?i:b)")).getType());
+	}
+
+	@Test(expected=PatternSyntaxException.class)
+	public void testUnclosedGroup() throws Exception {
+		RegexParser.parse("(a", 0);
+	}
+
+	@Test(expected=PatternSyntaxException.class)
+	public void testIllegalRange() throws Exception {
+		RegexParser.parse("[z-a]", 0);
+	}
+}
@@ -5,11 +5,18 @@ import static org.junit.Assert.*;
 import static org.junit.Assert.assertEquals;
 
 import com.obsglobal.util.UtilTestHelper;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * Unit test for {@link RegexUtil}.
@@ -82,6 +89,172 @@ public class RegexUtilTest {
 		assertEquals(0, matchResults.size());
 	}
 
+	@Test
+	public void testFindAllMatchOffsets() throws Exception {
+		MatchOffsets offsets = RegexUtil.findAllMatchOffsets(Pattern.compile("foo|bar"), INPUT);
+		assertEquals(4, offsets.size());
+		assertArrayEquals(new int[] { 6, 9, 15, 18, 24, 27, 33, 36 }, offsets.toArray());
+	}
+
+	@Test
+	public void testFindMatchOffsets() throws Exception {
+		MatchOffsets offsets = RegexUtil.findMatchOffsets(Pattern.compile("foo|bar"), INPUT, 3);
+		assertArrayEquals(new int[] { 6, 9, 15, 18, 24, 27 }, offsets.toArray());
+		assertEquals(4, RegexUtil.findMatchOffsets(Pattern.compile("foo|bar"), INPUT, 10).size());
+	}
+
+	@Test
+	public void testVisitMatches() throws Exception {
+		final StringBuilder groups = new StringBuilder();
+		int visited = RegexUtil.visitMatches(Pattern.compile("abc(\\w{3})"), INPUT, new MatchVisitor() {
+			@Override
+			public boolean visitMatch(MatchResult match) {
+				groups.append(match.group(1));
+				return groups.length() < 6;
+			}
+		});
+		assertEquals(2, visited);
+		assertEquals("ABCDEF", groups.toString());
+	}
+
+	@Test
+	public void testStreamMatches() throws Exception {
+		List<MatchResult> streamed = RegexUtil.streamMatches(Pattern.compile("abc"), INPUT).collect(Collectors.<MatchResult>toList());
+		List<MatchResult> found = RegexUtil.findAllMatches(Pattern.compile("abc"), INPUT);
+		assertEquals(found.size(), streamed.size());
+		for (int index = 0; index < found.size(); index++) {
+			assertEquals(found.get(index).start(), streamed.get(index).start());
+			assertEquals(found.get(index).end(), streamed.get(index).end());
+		}
+		assertEquals(0, RegexUtil.streamMatches(Pattern.compile("jedi"), INPUT).count());
+	}
+
+	@Test
+	public void testReplaceAll() throws Exception {
+		ReplaceResult result = RegexUtil.replaceAll(Pattern.compile("abc"), INPUT, "~");
+		assertEquals("~ABCfoo~DEFbar~GHIfoo~ZYXbar", result.getText());
+		assertEquals(4, result.getReplacementCount());
+		assertArrayEquals(new int[] { 0, 1, 7, 8, 14, 15, 21, 22 }, result.getReplacedOffsets().toArray());
+	}
+
+	@Test
+	public void testReplaceAllWithGroupsAndLookaround() throws Exception {
+		ReplaceResult result = RegexUtil.replaceAll(Pattern.compile("(?<=foo)abc(\\w{3})"), INPUT, "<$1>");
+		assertEquals("abcABCfoo<DEF>barabcGHIfoo<ZYX>bar", result.getText());
+		assertArrayEquals(new int[] { 9, 14, 26, 31 }, result.getReplacedOffsets().toArray());
+
+		result = RegexUtil.replaceAll(Pattern.compile("jedi"), INPUT, "sith");
+		assertEquals(INPUT, result.getText());
+		assertEquals(0, result.getReplacementCount());
+	}
+
+	@Test
+	public void testReplaceAllToWriter() throws Exception {
+		StringWriter writer = new StringWriter();
+		MatchOffsets replaced = RegexUtil.replaceAll(Pattern.compile("foo|bar"), INPUT, "", writer);
+		assertEquals("abcABCabcDEFabcGHIabcZYX", writer.toString());
+		assertArrayEquals(new int[] { 6, 6, 12, 12, 18, 18, 24, 24 }, replaced.toArray());
+	}
+
+	@Test
+	public void testReplaceAllSharesTable() throws Exception {
+		StringBuilder text = new StringBuilder();
+		for (int line = 0; line < 1000; line++)
+			text.append(INPUT).append(INPUT).append(INPUT).append('\n');	// long enough between matches to share
+		PieceTable input = PieceTable.of(text);
+		PieceTable.Builder builder = new PieceTable.Builder();
+		MatchOffsets replaced = RegexUtil.replaceAll(Pattern.compile("(?m)^abcABC"), new InterruptibleCharSequence(input),
+				"<$0>", builder);
+		PieceTable output = builder.build();
+		assertEquals(text.toString().replaceAll("(?m)^abcABC", "<$0>"), output.toString());
+		assertEquals(1000, replaced.size());
+		assertEquals("<abcABC>", output.subSequence(replaced.start(1), replaced.end(1)).toString());
+		assertEquals(input.getBufferBytes() + PieceTable.APPEND_BUFFER_LENGTH, output.getBufferBytes());
+	}
+
+	@Test
+	public void testReplaceAllCopiesInChunks() throws Exception {
+		String input = StringUtils.repeat('a', 3 * RegexUtil.COPY_CHUNK_LENGTH) +"b";
+		final int[] longestAppend = new int[1];
+		Appendable counting = new Appendable() {
+			final StringBuilder text = new StringBuilder();
+
+			@Override
+			public Appendable append(CharSequence csq) {
+				return append(csq, 0, csq.length());
+			}
+
+			@Override
+			public Appendable append(CharSequence csq, int start, int end) {
+				longestAppend[0] = Math.max(longestAppend[0], end - start);
+				text.append(csq, start, end);
+				return this;
+			}
+
+			@Override
+			public Appendable append(char c) {
+				return append(String.valueOf(c));
+			}
+
+			@Override
+			public String toString() {
+				return text.toString();
+			}
+		};
+		RegexUtil.replaceAll(Pattern.compile("b"), input, "c", counting);
+		assertEquals(input.replace('b', 'c'), counting.toString());
+		assertEquals(RegexUtil.COPY_CHUNK_LENGTH, longestAppend[0]);
+	}
+
+	@Test
+	public void testReplaceAllToChannel() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		WritableByteChannel channel = Channels.newChannel(bytes);
+		assertEquals(4, RegexUtil.replaceAll(Pattern.compile("abc"), INPUT, "é", channel, StandardCharsets.UTF_8));
+		assertEquals("éABCfooéDEFbaréGHIfooéZYXbar", new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+
+		bytes.reset();
+		assertEquals(1, RegexUtil.replaceAll(Pattern.compile("ABC"), INPUT, "\u0100", channel, StandardCharsets.ISO_8859_1));
+		assertEquals("abc?fooabcDEFbarabcGHIfooabcZYXbar", new String(bytes.toByteArray(), StandardCharsets.ISO_8859_1));
+	}
+
+	@Test
+	public void testReplaceRegion() throws Exception {
+		String input = "foo1 bar2\nfoo3 bar4\nfoo5 bar6\n";
+		Pattern pattern = Pattern.compile("(?m)(?<=foo)\\d|^bar\\d|\\d$");
+		String replaced = RegexUtil.replaceAll(pattern, input, "<$0>").getText().toString();
+		// the second line, replaced as it is in the whole input
+		StringBuilder output = new StringBuilder();
+		MatchOffsets replacedOffsets = RegexUtil.replaceRegion(pattern, input, "<$0>", 10, 20, output);
+		assertEquals("foo<3> bar<4>\n", output.toString());
+		assertTrue(replaced.contains(output));
+		assertArrayEquals(new int[] { 3, 6, 10, 13 }, replacedOffsets.toArray());
+
+		// a match starting in the region is replaced whole
+		output.setLength(0);
+		RegexUtil.replaceRegion(Pattern.compile("bar\\d\nfoo"), input, "~", 5, 7, output);
+		assertEquals("~", output.toString());
+	}
+
+	@Test
+	public void testParseOptions() throws Exception {
+		assertEquals(0, RegexUtil.parseOptions(""));
+		assertEquals(Pattern.CASE_INSENSITIVE | Pattern.MULTILINE, RegexUtil.parseOptions("CASE_INSENSITIVE, multiline"));
+		assertEquals(Pattern.DOTALL | Pattern.CANON_EQ, RegexUtil.parseOptions("DOTALL CANON_EQ"));
+	}
+
+	@Test
+	public void testFormatOptions() throws Exception {
+		assertEquals("", RegexUtil.formatOptions(0));
+		assertEquals("CASE_INSENSITIVE,MULTILINE", RegexUtil.formatOptions(Pattern.MULTILINE | Pattern.CASE_INSENSITIVE));
+		assertEquals(Pattern.DOTALL | Pattern.CANON_EQ, RegexUtil.parseOptions(RegexUtil.formatOptions(Pattern.DOTALL | Pattern.CANON_EQ)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseUnknownOption() throws Exception {
+		RegexUtil.parseOptions("CASE_INSENSITIVE,JEDI");
+	}
+
 	@Test(expected = NullPointerException.class)
 	public void testFirstNullPatternParameter() throws Exception {
 		RegexUtil.findFirstMatch(null, INPUT);
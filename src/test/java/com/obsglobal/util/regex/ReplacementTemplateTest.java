@@ -0,0 +1,64 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link ReplacementTemplate}.
+ */
+public class ReplacementTemplateTest {
+	private static final Pattern PATTERN = Pattern.compile("(?<word>[a-z]+)(\\d)?(x)?(y)?(z)?(1)?(2)?(3)?(4)?(5)?(6)?(7)?");
+	private static final String INPUT = "abc1xyz1234567 def ghi9";
+
+	@Test
+	public void testExpandsAsMatcher() throws Exception {
+		String[] replacements = {"", "~", "$0", "<$1>", "$2$1", "${word}!", "\\$1", "a\\\\b", "$10", "$12", "$123",
+				"$1$", "$", "\\", "$a", "${}", "${word", "${9x}", "${nope}", "$99"};
+		for (String replacement : replacements) {
+			Matcher expected = PATTERN.matcher(INPUT), actual = PATTERN.matcher(INPUT);
+			ReplacementTemplate template = new ReplacementTemplate(replacement);
+			int appendPosition = 0;
+			while (expected.find()) {
+				assertTrue(actual.find());
+				StringBuffer expectedText = new StringBuffer();
+				StringBuilder actualText = new StringBuilder();
+				Exception expectedError = null, actualError = null;
+				try {
+					expected.appendReplacement(expectedText, replacement);
+				}
+				catch (Exception ex) {
+					expectedError = ex;
+				}
+				try {
+					template.expand(actual, actualText);
+				}
+				catch (Exception ex) {
+					actualError = ex;
+				}
+
+				if (expectedError != null) {
+					assertNotNull(replacement, actualError);
+					assertEquals(replacement, expectedError.getClass(), actualError.getClass());
+					break;
+				}
+				assertNull(replacement, actualError);
+				// appendReplacement also appends the text since the last match
+				assertEquals(replacement, expectedText.substring(expected.start() - appendPosition), actualText.toString());
+				appendPosition = expected.end();
+			}
+		}
+	}
+
+	@Test
+	public void testUnmatchedGroupIsEmpty() throws Exception {
+		Matcher matcher = Pattern.compile("a(b)?").matcher("ac");
+		assertTrue(matcher.find());
+		StringBuilder output = new StringBuilder();
+		new ReplacementTemplate("[$1]").expand(matcher, output);
+		assertEquals("[]", output.toString());
+	}
+}
@@ -0,0 +1,66 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link RequiredLiterals}.
+ */
+public class RequiredLiteralsTest {
+	@Test
+	public void testLiteralPrefix() throws Exception {
+		RequiredLiterals literals = literals("ERROR \\[(\\w+)\\]", 0);
+		assertEquals(Arrays.asList("ERROR ["), literals.getLiterals());
+		assertFalse(literals.isExact());
+		assertFalse(literals.isCaseInsensitive());
+	}
+
+	@Test
+	public void testExact() throws Exception {
+		RequiredLiterals literals = literals("foo|ba[rz]", 0);
+		assertTrue(literals.isExact());
+		assertEquals(new HashSet<String>(Arrays.asList("foo", "bar", "baz")), new HashSet<String>(literals.getLiterals()));
+
+		literals = literals("a.b", Pattern.LITERAL);
+		assertTrue(literals.isExact());
+		assertEquals(Arrays.asList("a.b"), literals.getLiterals());
+	}
+
+	@Test
+	public void testAlternationOfRequired() throws Exception {
+		RequiredLiterals literals = literals("\\d+ (warning|error): .*", 0);
+		assertEquals(new HashSet<String>(Arrays.asList(" warning: ", " error: ")), new HashSet<String>(literals.getLiterals()));
+	}
+
+	@Test
+	public void testLongestLiteralWins() throws Exception {
+		assertEquals(Arrays.asList(" timeout"), literals("id=\\d+ .* timeout", 0).getLiterals());
+		assertEquals(Arrays.asList("abcabc"), literals("(abc){2}", 0).getLiterals());
+		assertEquals(Arrays.asList("abc"), literals("x*(abc)+", 0).getLiterals());
+	}
+
+	@Test
+	public void testCaseInsensitive() throws Exception {
+		RequiredLiterals literals = literals("Fatal\\s+\\d", Pattern.CASE_INSENSITIVE);
+		assertTrue(literals.isCaseInsensitive());
+		assertEquals(Arrays.asList("fatal"), literals.getLiterals());
+	}
+
+	@Test
+	public void testNothingRequired() throws Exception {
+		assertTrue(literals("\\w+", 0).isEmpty());
+		assertTrue(literals("(abc)?d*", 0).isEmpty());
+		assertTrue(literals("abc|\\d", 0).isEmpty());
+		assertTrue(literals("(a)\\1", 0).getMinLength() <= 1);
+		assertTrue(literals("x{2}{3}", 0).isEmpty());
+	}
+
+	private static RequiredLiterals literals(String expression, int flags) {
+		return RequiredLiterals.of(RegexParser.parse(expression, flags));
+	}
+}
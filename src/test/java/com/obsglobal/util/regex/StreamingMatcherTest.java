@@ -0,0 +1,207 @@
+package com.obsglobal.util.regex;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link StreamingMatcher}.
+ */
+public class StreamingMatcherTest {
+	private static final String[] EXPRESSIONS = {
+			"\\w+", "a.*?b", "a|b.*z", "foo$", "(?m)^line", "(?m)$", "(?<=x)y", "\\bword\\b", "x*", "\\d{2,5}",
+			"ab(?=c)", "\\z", "\\R", "é"
+	};
+
+	@Test
+	public void testMatchesLikeFind() throws Exception {
+		Random random = new Random(42);
+		String alphabet = "abxyzc fo\nliné012<>";
+		String[] words = { "foo", "line", "word", "abc", "\r\n" };
+		for (int iteration = 0; iteration < 200; iteration++) {
+			StringBuilder input = new StringBuilder();
+			for (int length = random.nextInt(300); input.length() < length; ) {
+				if (random.nextInt(8) == 0)
+					input.append(words[random.nextInt(words.length)]);
+				else
+					input.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+
+			for (String expression : EXPRESSIONS) {
+				Pattern pattern = Pattern.compile(expression);
+				long[] expected = toLongs(RegexUtil.findAllMatchOffsets(pattern, input.toString()));
+				List<Long> found = new ArrayList<Long>();
+				new StreamingMatcher(pattern, 400).match(new TrickleReader(input.toString(), iteration), collect(found));
+				assertArrayEquals(expression +" in "+ input, expected, toLongs(found));
+			}
+		}
+	}
+
+	@Test
+	public void testBoundedWindow() throws Exception {
+		StringBuilder input = new StringBuilder();
+		for (int line = 0; line < 20000; line++)
+			input.append("line ").append(line).append(line % 1000 == 0 ? " ERROR\n" : " ok\n");
+
+		List<Long> found = new ArrayList<Long>();
+		Pattern pattern = Pattern.compile("(?m)^line (\\d+) ERROR$");
+		assertEquals(20, new StreamingMatcher(pattern, 100).match(new StringReader(input.toString()), collect(found)));
+		assertArrayEquals(toLongs(RegexUtil.findAllMatchOffsets(pattern, input.toString())), toLongs(found));
+		assertEquals(input.indexOf("line 19000 ERROR"), (long) found.get(38));
+	}
+
+	@Test
+	public void testGroupsAndStop() throws Exception {
+		final List<String> groups = new ArrayList<String>();
+		long matches = new StreamingMatcher(Pattern.compile("(\\w)=(\\d+)")).match(new StringReader("a=1 b=22 c=333"),
+				new StreamingMatcher.Visitor() {
+			@Override
+			public boolean visitMatch(long start, long end, MatchResult match) {
+				groups.add(match.group(1) + match.group(2));
+				return groups.size() < 2;
+			}
+		});
+		assertEquals(2, matches);
+		assertEquals("[a1, b22]", groups.toString());
+	}
+
+	@Test
+	public void testStreamsAndChannels() throws Exception {
+		StringBuilder input = new StringBuilder();
+		for (int index = 0; index < 5000; index++)
+			input.append("café ");
+		byte[] bytes = input.toString().getBytes(StandardCharsets.UTF_8);
+		Pattern pattern = Pattern.compile("café");
+		List<Long> found = new ArrayList<Long>();
+
+		assertEquals(5000, new StreamingMatcher(pattern).match(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, collect(found)));
+		assertEquals(24995, (long) found.get(9998));
+		found.clear();
+		assertEquals(5000, new StreamingMatcher(pattern).match(Channels.newChannel(new ByteArrayInputStream(bytes)),
+				StandardCharsets.UTF_8, collect(found)));
+		assertEquals(24995, (long) found.get(9998));
+	}
+
+	@Test
+	public void testFollow() throws Exception {
+		final File file = File.createTempFile("follow", ".log");
+		file.deleteOnExit();
+		append(file, "start ERROR 1\n");
+		final List<Long> found = new ArrayList<Long>();
+		final Exception[] failure = new Exception[1];
+		Thread follower = new Thread() {
+			@Override
+			public void run() {
+				try {
+					new StreamingMatcher(Pattern.compile("ERROR \\d+")).follow(file, StandardCharsets.UTF_8, 10, collect(found));
+				}
+				catch (Exception ex) {
+					failure[0] = ex;
+				}
+			}
+		};
+		follower.start();
+		Thread.sleep(50);
+		append(file, "ok\nERROR ");
+		Thread.sleep(50);
+		append(file, "23 done\n");
+		for (int wait = 0; wait < 100 && size(found) < 4; wait++)
+			Thread.sleep(20);
+		follower.interrupt();
+		follower.join(5000);
+		assertFalse(follower.isAlive());
+		assertTrue(failure[0] instanceof InterruptedIOException);
+		assertArrayEquals(new long[] { 6, 13, 17, 25 }, toLongs(found));
+	}
+
+	private static int size(List<Long> found) {
+		synchronized (found) {
+			return found.size();
+		}
+	}
+
+	private static StreamingMatcher.Visitor collect(final List<Long> found) {
+		return new StreamingMatcher.Visitor() {
+			@Override
+			public boolean visitMatch(long start, long end, MatchResult match) {
+				synchronized (found) {
+					found.add(start);
+					found.add(end);
+				}
+				return true;
+			}
+		};
+	}
+
+	private static long[] toLongs(MatchOffsets offsets) {
+		long[] longs = new long[offsets.size() * 2];
+		for (int index = 0; index < longs.length; index++)
+			longs[index] = index % 2 == 0 ? offsets.start(index / 2) : offsets.end(index / 2);
+
+		return longs;
+	}
+
+	private static long[] toLongs(List<Long> found) {
+		synchronized (found) {
+			long[] longs = new long[found.size()];
+			for (int index = 0; index < longs.length; index++)
+				longs[index] = found.get(index);
+
+			return longs;
+		}
+	}
+
+	private static void append(File file, String text) throws IOException {
+		FileOutputStream outputStream = new FileOutputStream(file, true);
+		try {
+			outputStream.write(text.getBytes(StandardCharsets.UTF_8));
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+
+	/**
+	 * Returns a few characters per read, so that matches straddle reads.
+	 */
+	private static final class TrickleReader extends Reader {
+		private final String text;
+		private final Random random;
+		private int position = 0;
+
+		TrickleReader(String text, long seed) {
+			this.text = text;
+			this.random = new Random(seed);
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length) {
+			if (position >= text.length())
+				return -1;
+
+			int read = Math.min(Math.min(length, 1 + random.nextInt(7)), text.length() - position);
+			text.getChars(position, position + read, buffer, offset);
+			position += read;
+			return read;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}